@@ -80,13 +80,10 @@ varDecl
     ;
 
 type locals[ boolean isArray= false, boolean isEllipse = false]
-    : name = INT (LSQUARE RSQUARE {$isArray = true;})?  # TypeInt
-    | name = INT ( ELLIPSIS {$isEllipse = true;})? # TypeInt
-    | name = BOOL (LSQUARE RSQUARE {$isArray = true;})?  # TypeBool
-    | name = BOOL ( ELLIPSIS {$isEllipse = true;})? # TypeBool
+    : name = INT (LSQUARE RSQUARE {$isArray = true;} | ELLIPSIS {$isEllipse = true;})? # TypeInt
+    | name = BOOL (LSQUARE RSQUARE {$isArray = true;} | ELLIPSIS {$isEllipse = true;})? # TypeBool
     | name = VOID # TypeVoid
-    | name = ID (LSQUARE RSQUARE {$isArray = true;})? # TypeVariable
-    | name = ID ( ELLIPSIS {$isEllipse = true;})? # TypeVariable
+    | name = ID (LSQUARE RSQUARE {$isArray = true;} | ELLIPSIS {$isEllipse = true;})? # TypeVariable
     ;
 
 methodDecl locals[boolean isPublic=false, boolean isStatic = false, boolean isMain = false]
@@ -118,9 +115,8 @@ stmt
 expr
     : LPAREN expr RPAREN # ParenthExpr
     | expr LSQUARE expr RSQUARE # ArrayExpr
-    // members and methods access
-    | expr DOT name=ID # LengthAttrExpr
-    | expr DOT name=ID LPAREN (expr (COMMA expr)*)? RPAREN # MethodExpr
+    // members and methods access, built as LengthAttrExpr or MethodExpr nodes
+    | expr DOT name=ID (call=LPAREN (expr (COMMA expr)*)? RPAREN)? # MemberExpr
     // unary
     | NOT expr # NegExpr
     // new
@@ -1,5 +1,7 @@
 package pt.up.fe.comp2024;
 
+import org.antlr.v4.runtime.atn.PredictionMode;
+
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
@@ -9,7 +11,23 @@ public class CompilerConfig {
 
     private static final String INPUT_FILE = "inputFile";
     private static final String OPTIMIZE = "optimize";
+    private static final String OPTIMIZATION_LEVEL = "optimizationLevel";
     private static final String REGISTER = "registerAllocation";
+    private static final String SSA = "ssa";
+    private static final String UNROLL = "unroll";
+    private static final String WATCH = "watch";
+    private static final String COMPACT_AST = "compactAst";
+    private static final String VERBOSE = "verbose";
+    private static final String PREDICTION_MODE = "predictionMode";
+
+    private static final int DEFAULT_UNROLL = 4;
+
+    public static final int MAX_OPTIMIZATION_LEVEL = 2;
+
+    /**
+     * Number of characters from which sources get a compact AST by default.
+     */
+    public static final int COMPACT_AST_MIN_SIZE = 1 << 20;
 
 
     static Map<String, String> shortToLong = new HashMap<>();
@@ -17,7 +35,13 @@ public class CompilerConfig {
     static {
         shortToLong.put("i", CompilerConfig.INPUT_FILE);
         shortToLong.put("o", CompilerConfig.OPTIMIZE);
+        shortToLong.put("O", CompilerConfig.OPTIMIZATION_LEVEL);
         shortToLong.put("r", CompilerConfig.REGISTER);
+        shortToLong.put("s", CompilerConfig.SSA);
+        shortToLong.put("u", CompilerConfig.UNROLL);
+        shortToLong.put("w", CompilerConfig.WATCH);
+        shortToLong.put("c", CompilerConfig.COMPACT_AST);
+        shortToLong.put("v", CompilerConfig.VERBOSE);
     }
 
 
@@ -32,14 +56,116 @@ public class CompilerConfig {
         return Optional.of(new File(inputFile));
     }
 
+    /**
+     * Returns true if any optimization level above 0 is enabled.
+     */
     public static boolean getOptimize(Map<String, String> config) {
-        return Boolean.parseBoolean(config.getOrDefault(OPTIMIZE, "false"));
+        return getOptimizationLevel(config) > 0;
+    }
+
+    /**
+     * Returns the optimization level, from 0, which disables optimizations, to {@link #MAX_OPTIMIZATION_LEVEL}.
+     * Passing '-o', or '-O' without a level, selects the highest level.
+     */
+    public static int getOptimizationLevel(Map<String, String> config) {
+        var level = config.get(OPTIMIZATION_LEVEL);
+
+        if (level == null) {
+            return Boolean.parseBoolean(config.getOrDefault(OPTIMIZE, "false")) ? MAX_OPTIMIZATION_LEVEL : 0;
+        }
+
+        int value = level.equals("true") ? MAX_OPTIMIZATION_LEVEL : Integer.parseInt(level);
+        if (value < 0 || value > MAX_OPTIMIZATION_LEVEL) {
+            throw new RuntimeException("Optimization level must be between 0 and " + MAX_OPTIMIZATION_LEVEL
+                    + ", got " + value);
+        }
+
+        return value;
     }
 
     public static int getRegisterAllocation(Map<String, String> config) {
         return Integer.parseInt(config.getOrDefault(REGISTER, "-1"));
     }
 
+    /**
+     * Returns true if methods are converted to SSA form and back before their registers are allocated.
+     */
+    public static boolean getSsa(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(SSA, "false"));
+    }
+
+    /**
+     * Returns true if the code must go through OLLIR, which is only needed to optimize it, to convert it to SSA form
+     * or to allocate its registers. Otherwise, Jasmin is generated directly from the AST.
+     */
+    public static boolean usesOllir(Map<String, String> config) {
+        return getOptimize(config) || getSsa(config) || getRegisterAllocation(config) != -1;
+    }
+
+
+    /**
+     * Returns the factor by which loops with a known trip count are unrolled, where values below 2 disable
+     * unrolling. Passing '-u' without a value uses the default factor. Factors above
+     * {@link pt.up.fe.comp2024.ast_optimization.LoopUnrolling#MAX_FACTOR} are lowered to it.
+     */
+    public static int getUnroll(Map<String, String> config) {
+        var unroll = config.getOrDefault(UNROLL, "0");
+        return unroll.equals("true") ? DEFAULT_UNROLL : Integer.parseInt(unroll);
+    }
+
+    /**
+     * Returns true if the AST of a source with the given number of characters is stored in a
+     * {@link pt.up.fe.comp2024.ast.AstArena}. Unless '-c' says otherwise, only sources of at least
+     * {@link #COMPACT_AST_MIN_SIZE} characters are, since changing regular nodes is cheaper.
+     */
+    public static boolean getCompactAst(Map<String, String> config, int sourceSize) {
+        var compact = config.get(COMPACT_AST);
+
+        if (compact == null) {
+            return sourceSize >= COMPACT_AST_MIN_SIZE;
+        }
+
+        return Boolean.parseBoolean(compact);
+    }
+
+    /**
+     * Returns the directory whose Java-- files are compiled again every time they change. Passing '-w' without a
+     * value watches the directory of the input file.
+     */
+    public static Optional<File> getWatchDirectory(Map<String, String> config) {
+        var watch = config.get(WATCH);
+
+        if (watch == null) {
+            return Optional.empty();
+        }
+
+        if (watch.equals("true")) {
+            return getInputFile(config).map(File::getAbsoluteFile).map(File::getParentFile);
+        }
+
+        return Optional.of(new File(watch));
+    }
+
+    /**
+     * Returns true if '-v' was passed, so the watch mode prints the code of each compilation.
+     */
+    public static boolean getVerbose(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(VERBOSE, "false"));
+    }
+
+    /**
+     * Returns the prediction mode the whole source is parsed with, 'sll' or 'll'. If none is given, the source is
+     * first parsed with SLL, and only parsed again with LL if that fails.
+     */
+    public static Optional<PredictionMode> getPredictionMode(Map<String, String> config) {
+        var mode = config.get(PREDICTION_MODE);
+
+        if (mode == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(PredictionMode.valueOf(mode.toUpperCase()));
+    }
 
     public static Map<String, String> getDefault() {
 
@@ -47,6 +173,7 @@ public class CompilerConfig {
 
         config.put(CompilerConfig.OPTIMIZE, "false");
         config.put(CompilerConfig.REGISTER, "-1");
+        config.put(CompilerConfig.UNROLL, "0");
 
         return config;
     }
@@ -84,28 +211,48 @@ public class CompilerConfig {
 
                     value = arg.substring(3);
                 }
+                // the level can also follow the option directly, as in '-O2'
+                else if (shortOption.equals("O")) {
+
+                    value = arg.substring(2);
+                }
             }
 
             config.put(getLongOpt(shortOption), value);
         }
 
-        if (!config.containsKey(INPUT_FILE)) {
+        // watching a given directory does not need an input file
+        var watch = config.get(WATCH);
+        if (watch != null && !watch.equals("true")) {
+
+            var watchDirectory = new File(watch);
+            if (!watchDirectory.isDirectory()) {
+                throw new RuntimeException("Could not find directory to watch '" + watchDirectory + "'");
+            }
+
+            config.put(WATCH, watchDirectory.getAbsolutePath());
+        }
+        else if (!config.containsKey(INPUT_FILE)) {
 
             throw new RuntimeException("Expected an input file, use '-i=<PATH_TO_FILE>'");
         }
 
         // make sure we save the absolute path of the input file
-        var inputFile = new File(config.get(INPUT_FILE));
-        if (!inputFile.isFile()) {
-            throw new RuntimeException("Could not find input file '" + inputFile + "'");
-        }
+        if (config.containsKey(INPUT_FILE)) {
 
-        var absolutePath = inputFile.getAbsolutePath();
-        config.put(INPUT_FILE, absolutePath);
+            var inputFile = new File(config.get(INPUT_FILE));
+            if (!inputFile.isFile()) {
+                throw new RuntimeException("Could not find input file '" + inputFile + "'");
+            }
+
+            var absolutePath = inputFile.getAbsolutePath();
+            config.put(INPUT_FILE, absolutePath);
+        }
 
         // Verify if values are valid
-        getOptimize(config);
+        getOptimizationLevel(config);
         getRegisterAllocation(config);
+        getUnroll(config);
 
         return config;
     }
@@ -0,0 +1,162 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.backend.JasminGenerator;
+import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+import pt.up.fe.comp2024.optimization.OllirGeneratorVisitor;
+import pt.up.fe.comp2024.optimization_jasmin.AstToJasminImpl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The stages that turn an analysed class into Jasmin, shared by the {@link Launcher}, the embedded compiler and the
+ * incremental compiler.
+ * <p>
+ * Unless the configuration needs OLLIR (see {@link CompilerConfig#usesOllir(Map)}), Jasmin is generated directly
+ * from the AST. Otherwise, the AST is optimized and turned into OLLIR, which is optimized and turned into Jasmin one
+ * method at a time.
+ */
+public class CompilerPipeline {
+
+    private final AstToJasminImpl astToJasmin;
+    private final JmmOptimizationImpl optimization;
+
+    public CompilerPipeline() {
+        this.astToJasmin = new AstToJasminImpl();
+        this.optimization = new JmmOptimizationImpl();
+    }
+
+    /**
+     * @return true if Jasmin is generated directly from the AST, without OLLIR
+     */
+    public static boolean isDirect(Map<String, String> config) {
+        return !CompilerConfig.usesOllir(config);
+    }
+
+    /**
+     * Generates the Jasmin of a class that was analysed without errors.
+     */
+    public Result compile(JmmSemanticsResult semanticsResult) {
+        if (!isDirect(semanticsResult.getConfig())) {
+            return compile(semanticsResult, new OllirGeneratorVisitor(semanticsResult.getSymbolTable()));
+        }
+
+        astToJasmin.optimize(semanticsResult);
+        var jasminResult = astToJasmin.toJasmin(semanticsResult);
+
+        var reports = jasminResult.getReports();
+        return hasErrors(reports) ? Result.newError(reports) : new Result(reports, null, null, null, jasminResult);
+    }
+
+    /**
+     * Generates the Jasmin of a class that was analysed without errors through OLLIR, whatever the configuration.
+     *
+     * @param generator generates the OLLIR of the class, e.g., with the code of some methods coming from elsewhere
+     */
+    public Result compile(JmmSemanticsResult semanticsResult, OllirGeneratorVisitor generator) {
+        optimization.optimize(semanticsResult);
+
+        var ollirResult = new OllirResult(semanticsResult, generator.visit(semanticsResult.getRootNode()),
+                Collections.emptyList());
+        if (hasErrors(ollirResult.getReports())) {
+            return Result.newError(ollirResult.getReports());
+        }
+
+        ollirResult.getOllirClass().buildCFGs();
+        optimization.optimize(ollirResult);
+        if (hasErrors(ollirResult.getReports())) {
+            return Result.newError(ollirResult.getReports());
+        }
+
+        var jasminGenerator = new JasminGenerator(ollirResult);
+        var jasminHeader = jasminGenerator.buildHeader();
+        var jasminMethods = jasminGenerator.buildMethods();
+
+        var jasminCode = new StringBuilder(jasminHeader);
+        jasminMethods.values().forEach(jasminCode::append);
+        var jasminResult = new JasminResult(ollirResult, jasminCode.toString(), jasminGenerator.getReports());
+
+        var reports = jasminResult.getReports();
+        if (hasErrors(reports)) {
+            return Result.newError(reports);
+        }
+
+        return new Result(reports, ollirResult, jasminHeader, jasminMethods, jasminResult);
+    }
+
+    public static boolean hasErrors(List<Report> reports) {
+        return reports.stream().anyMatch(report -> report.getType() == ReportType.ERROR);
+    }
+
+    /**
+     * What the stages generated, or only their reports if there were errors.
+     */
+    public static class Result {
+
+        private final List<Report> reports;
+        private final OllirResult ollirResult;
+        private final String jasminHeader;
+        private final Map<String, String> jasminMethods;
+        private final JasminResult jasminResult;
+
+        private Result(List<Report> reports, OllirResult ollirResult, String jasminHeader,
+                       Map<String, String> jasminMethods, JasminResult jasminResult) {
+            this.reports = reports;
+            this.ollirResult = ollirResult;
+            this.jasminHeader = jasminHeader;
+            this.jasminMethods = jasminMethods;
+            this.jasminResult = jasminResult;
+        }
+
+        private static Result newError(List<Report> reports) {
+            return new Result(reports, null, null, null, null);
+        }
+
+        /**
+         * @return the reports of all stages that ran
+         */
+        public List<Report> getReports() {
+            return reports;
+        }
+
+        public boolean hasErrors() {
+            return CompilerPipeline.hasErrors(reports);
+        }
+
+        /**
+         * @return the optimized OLLIR of the class, or null if there were errors or Jasmin was generated directly
+         */
+        public OllirResult getOllirResult() {
+            return ollirResult;
+        }
+
+        /**
+         * @return the Jasmin of the class up to its methods, or null if there were errors or Jasmin was generated
+         * directly
+         */
+        public String getJasminHeader() {
+            return jasminHeader;
+        }
+
+        /**
+         * @return the Jasmin of each method of the class by name, except the constructor, or null if there were
+         * errors or Jasmin was generated directly
+         */
+        public Map<String, String> getJasminMethods() {
+            return jasminMethods;
+        }
+
+        /**
+         * @return the Jasmin of the whole class, or null if there were errors
+         */
+        public JasminResult getJasminResult() {
+            return jasminResult;
+        }
+    }
+}
@@ -3,34 +3,37 @@ package pt.up.fe.comp2024;
 import org.specs.comp.ollir.OllirErrorException;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
-import pt.up.fe.comp.jmm.jasmin.JasminResult;
-import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
-import pt.up.fe.comp2024.backend.JasminBackendImpl;
-import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+import pt.up.fe.comp2024.incremental.WatchCompiler;
 import pt.up.fe.comp2024.parser.JmmParserImpl;
-import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsSystem;
 
+import java.io.IOException;
 import java.util.Map;
 
 public class Launcher {
 
-    public static void main(String[] args) throws NoSuchFieldException, OllirErrorException {
+    public static void main(String[] args) throws NoSuchFieldException, OllirErrorException, IOException {
         SpecsSystem.programStandardInit();
 
         Map<String, String> config = CompilerConfig.parseArgs(args);
 
+        // Watch mode compiles the files of a directory every time they change, until the program is stopped
+        var watchDirectory = CompilerConfig.getWatchDirectory(config);
+        if (watchDirectory.isPresent()) {
+            new WatchCompiler(watchDirectory.get().toPath(), config).run();
+            return;
+        }
+
         var inputFile = CompilerConfig.getInputFile(config).orElseThrow();
         if (!inputFile.isFile()) {
             throw new RuntimeException("Option '-i' expects a path to an existing input file, got '" + args[0] + "'.");
         }
-        String code = SpecsIo.read(inputFile);
 
         // Parsing stage
         JmmParserImpl parser = new JmmParserImpl();
-        JmmParserResult parserResult = parser.parse(code, config);
+        JmmParserResult parserResult = parser.parse(inputFile.toPath(), config);
         TestUtils.noErrors(parserResult.getReports());
         // Print AST
         //System.out.println(parserResult.getRootNode().toTree());
@@ -46,24 +49,21 @@ public class Launcher {
         //System.out.println(semanticsResult.getSymbolTable().getLocalVariables("main"));
         System.out.println(parserResult.getRootNode().toTree());
 
-        // Optimization stage
-        JmmOptimizationImpl ollirGen = new JmmOptimizationImpl();
-        OllirResult ollirResult = ollirGen.toOllir(semanticsResult);
-        TestUtils.noErrors(ollirResult.getReports());
+        // Optimization and code generation stages, where without optimizations Jasmin is generated from the AST
+        var result = new CompilerPipeline().compile(semanticsResult);
+        TestUtils.noErrors(result.getReports());
 
-        ollirResult.getOllirClass().buildCFGs();
-        ollirGen.optimize(ollirResult);
+        if (result.getOllirResult() == null) {
+            // Print Jasmin code
+            System.out.println(result.getJasminResult().getJasminCode());
+            return;
+        }
 
         // Print OLLIR code
-        System.out.println(ollirResult.getOllirCode());
-
-        // Code generation stage
-        JasminBackendImpl jasminGen = new JasminBackendImpl();
-        JasminResult jasminResult = jasminGen.toJasmin(ollirResult);
-        TestUtils.noErrors(jasminResult.getReports());
+        System.out.println(result.getOllirResult().getOllirCode());
 
         // Print Jasmin code
-        //System.out.println(jasminResult.getJasminCode());
+        //System.out.println(result.getJasminResult().getJasminCode());
     }
 
 }
@@ -1,29 +1,81 @@
 package pt.up.fe.comp2024.analysis;
 
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
-import pt.up.fe.comp.jmm.ast.PreorderJmmVisitor;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.ast.AstTraversal;
+import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.function.BiFunction;
 
 /**
- *
+ * Analysis pass whose visits are run by a {@link FusedAnalysis}, together with the visits of the other passes.
+ * <p>
+ * Visits added with addVisit run when the node is entered, visits added with addPostVisit run after all the children
+ * of the node were visited. Methods can be analysed at the same time on different threads, so visits must not keep
+ * state between nodes, and reports are collected per thread.
  */
-public abstract class AnalysisVisitor extends PreorderJmmVisitor<SymbolTable, Void> implements AnalysisPass {
+public abstract class AnalysisVisitor extends AJmmVisitor<SymbolTable, Void> implements AnalysisPass {
 
-    private List<Report> reports;
-    protected static String currentMethod = "main";
+    private static final BiFunction<JmmNode, SymbolTable, Void> NO_VISIT = (node, table) -> null;
 
-    protected Pattern array_pattern = Pattern.compile("([a-zA-Z0-9]+)(\narray)?(\nellipse)?");
+    // Method whose nodes are being visited on each thread, kept by FusedAnalysis so that the method of a node is not
+    // looked up the tree again for each node
+    private static final ThreadLocal<JmmNode> currentMethod = new ThreadLocal<>();
+
+    private final ThreadLocal<List<Report>> reports;
 
     public AnalysisVisitor() {
-        reports = new ArrayList<>();
-        setDefaultValue(() -> null);
+        reports = ThreadLocal.withInitial(ArrayList::new);
+        setDefaultVisit(NO_VISIT);
+    }
+
+    /**
+     * Adds a visit that only runs after the children of the node were visited, for checks that need the types of the
+     * children.
+     */
+    protected void addPostVisit(Object kind, BiFunction<JmmNode, SymbolTable, Void> method) {
+        addVisit(kind.toString(), new PostVisit(method));
+    }
+
+    /**
+     * @return the visit of this pass for the node, or null if the pass does not visit it
+     */
+    BiFunction<JmmNode, SymbolTable, Void> findVisit(JmmNode node) {
+        var visit = getVisit(node);
+        return visit == NO_VISIT ? null : visit;
+    }
+
+    static boolean isPostVisit(BiFunction<JmmNode, SymbolTable, Void> visit) {
+        return visit instanceof PostVisit;
+    }
+
+    /**
+     * @return the name of the method the node is in, or null if it is outside a method
+     */
+    protected static String getMethodName(JmmNode node) {
+        var method = currentMethod.get();
+        if (method != null) return method.get("name");
+
+        return node.getAncestor(Kind.METHOD_DECL)
+                .map(ancestor -> ancestor.get("name"))
+                .orElse(null);
+    }
+
+    /**
+     * Sets the method whose nodes are visited next on this thread.
+     *
+     * @return the method that was set before, to set back once the method was visited
+     */
+    static JmmNode setCurrentMethod(JmmNode method) {
+        var previous = currentMethod.get();
+        currentMethod.set(method);
+        return previous;
     }
 
     protected void addSemanticReport (JmmNode node, String message ){
@@ -37,20 +89,53 @@ public abstract class AnalysisVisitor extends PreorderJmmVisitor<SymbolTable, Vo
     }
 
     protected void addReport(Report report) {
-        reports.add(report);
+        reports.get().add(report);
     }
 
+    /**
+     * @return the reports added by the visits that ran on the current thread
+     */
     protected List<Report> getReports() {
-        return reports;
+        return reports.get();
     }
 
 
+    /**
+     * Runs this pass on its own over the whole tree, on the calling thread, running the post visits of a node after
+     * its children. This is the order {@link FusedAnalysis} keeps the reports of each pass in.
+     *
+     * @throws RuntimeException the first exception thrown by a visit, which stops the pass
+     */
     @Override
     public List<Report> analyze(JmmNode root, SymbolTable table) {
-        // Visit the node
-        visit(root, table);
+        var reports = getReports();
+        reports.clear();
+
+        AstTraversal.walk(root, node -> {
+            var visit = findVisit(node);
+            if (visit != null && !isPostVisit(visit)) visit.apply(node, table);
+            return true;
+        }, node -> {
+            var visit = findVisit(node);
+            if (visit != null && isPostVisit(visit)) visit.apply(node, table);
+        });
+
+        var passReports = new ArrayList<>(reports);
+        reports.clear();
+        return passReports;
+    }
+
+    private static class PostVisit implements BiFunction<JmmNode, SymbolTable, Void> {
+
+        private final BiFunction<JmmNode, SymbolTable, Void> method;
+
+        private PostVisit(BiFunction<JmmNode, SymbolTable, Void> method) {
+            this.method = method;
+        }
 
-        // Return reports
-        return getReports();
+        @Override
+        public Void apply(JmmNode node, SymbolTable table) {
+            return method.apply(node, table);
+        }
     }
 }
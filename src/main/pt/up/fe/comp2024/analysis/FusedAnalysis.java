@@ -0,0 +1,414 @@
+package pt.up.fe.comp2024.analysis;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.ast.AstTraversal;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TypeUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * Runs several analysis passes over the AST in a single traversal.
+ * <p>
+ * The visits of all passes are gathered, per node kind, in one dispatch table, so each node is visited once. On each
+ * node the visits run in the order of the passes, and post visits only run once the whole subtree was visited, so a
+ * pass reading the node_type of a child sees it as if the passes had run one after the other.
+ * <p>
+ * Once the symbol table is built the methods of a class are independent, so when a class has several methods each
+ * one is analysed as a separate task on the common pool. Each visit is numbered by when it would run in a sequential
+ * traversal, and the reports of each pass are kept apart and sorted by the number of the visit that added them, which
+ * is the order the pass would have produced them when running on its own over the whole tree.
+ * <p>
+ * Run one after the other, the passes stop after the first pass that reports an error, or after the pass that follows
+ * one that throws. By default the fused passes stop the same way: once a pass reports an error, the passes after it
+ * are no longer dispatched on the rest of the tree, in any method, and their results are left out.
+ * <p>
+ * A pass that throws is not run on the rest of the tree, which the other methods, already running, cannot know about.
+ * Since the types a failed pass did not annotate change what the passes after it see, the analysis is run again
+ * sequentially when a pass throws during a concurrent analysis. It is also run again when passes stop after errors,
+ * since the pass that throws may have stopped the pass after it, which must run, by reporting an error first.
+ */
+public class FusedAnalysis {
+
+    // Positions outside methods leave room below them for the positions of the visits inside a method
+    private static final int METHOD_POSITION_SHIFT = 32;
+
+    private final List<AnalysisVisitor> passes;
+    private final boolean parallel;
+    private final boolean stopAfterErrors;
+    private final Map<String, Dispatch> dispatchTable;
+
+    public FusedAnalysis(List<AnalysisVisitor> passes) {
+        this(passes, true, true);
+    }
+
+    /**
+     * @param parallel        if false, the methods of a class are analysed one after the other, on the calling thread
+     * @param stopAfterErrors if false, every pass runs over the whole tree, whatever the passes before it report
+     */
+    public FusedAnalysis(List<AnalysisVisitor> passes, boolean parallel, boolean stopAfterErrors) {
+        this.passes = passes;
+        this.parallel = parallel;
+        this.stopAfterErrors = stopAfterErrors;
+        this.dispatchTable = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Runs all passes over the tree.
+     *
+     * @return the result of each pass that ran, in the order of the passes
+     */
+    public List<PassResult> analyze(JmmNode root, SymbolTable table) {
+        return analyze(root, table, method -> true, false);
+    }
+
+    /**
+     * Runs all passes over the tree, leaving out the methods that are not accepted.
+     *
+     * @param analyseMethod tells if a Method node should be analysed
+     * @param hasErrors     if the code already has errors, e.g., from building the symbol table, in which case only
+     *                      the first pass runs
+     * @return the result of each pass that ran, in the order of the passes
+     */
+    public List<PassResult> analyze(JmmNode root, SymbolTable table, Predicate<JmmNode> analyseMethod,
+                                    boolean hasErrors) {
+        int lastPass = stopAfterErrors && hasErrors ? 0 : passes.size() - 1;
+
+        var traversal = new Traversal(table, 0, parallel ? METHOD_POSITION_SHIFT : 0, analyseMethod,
+                new AtomicInteger(lastPass), stopAfterErrors);
+        traversal.visit(root);
+
+        // A pass that reported errors and then threw did not stop the pass after it, so that one runs again too
+        if (traversal.hasFailed() && (parallel || stopAfterErrors)) {
+            traversal.clearNodeTypes(root);
+            traversal = new Traversal(table, 0, 0, analyseMethod, new AtomicInteger(lastPass), false);
+            traversal.visit(root);
+        }
+
+        var results = new ArrayList<PassResult>(passes.size());
+        for (int i = 0; i <= lastPass; i++) {
+            var result = traversal.merge(i);
+            results.add(result);
+
+            if (!stopAfterErrors) continue;
+
+            // The pass after one that threw still runs
+            if (result.getException() != null) {
+                if (i + 1 <= lastPass) results.add(traversal.merge(i + 1));
+                break;
+            }
+
+            if (result.getReports().stream().anyMatch(report -> report.getType() == ReportType.ERROR)) break;
+        }
+
+        return results;
+    }
+
+    private Dispatch getDispatch(JmmNode node) {
+        return dispatchTable.computeIfAbsent(node.getKind(), kind -> new Dispatch(node));
+    }
+
+    /**
+     * Reports of a pass, or the exception that stopped it.
+     */
+    public static class PassResult {
+
+        private final AnalysisVisitor pass;
+        private final List<Report> reports;
+        private final RuntimeException exception;
+
+        private PassResult(AnalysisVisitor pass, List<Report> reports, RuntimeException exception) {
+            this.pass = pass;
+            this.reports = reports;
+            this.exception = exception;
+        }
+
+        public AnalysisVisitor getPass() {
+            return pass;
+        }
+
+        public List<Report> getReports() {
+            return reports;
+        }
+
+        /**
+         * @return the first exception thrown by a visit of the pass, in which case there are no reports, or null
+         */
+        public RuntimeException getException() {
+            return exception;
+        }
+    }
+
+    /**
+     * The visits of each pass for a node kind, split into the ones run before and after the children.
+     */
+    private class Dispatch {
+
+        private final List<PassVisit> visits;
+        private final List<PassVisit> postVisits;
+
+        private Dispatch(JmmNode node) {
+            this.visits = new ArrayList<>();
+            this.postVisits = new ArrayList<>();
+
+            for (int i = 0; i < passes.size(); i++) {
+                var visit = passes.get(i).findVisit(node);
+                if (visit == null) continue;
+
+                var passVisit = new PassVisit(i, visit);
+                if (AnalysisVisitor.isPostVisit(visit)) postVisits.add(passVisit);
+                else visits.add(passVisit);
+            }
+        }
+    }
+
+    private static class PassVisit {
+
+        private final int pass;
+        private final BiFunction<JmmNode, SymbolTable, Void> method;
+
+        private PassVisit(int pass, BiFunction<JmmNode, SymbolTable, Void> method) {
+            this.pass = pass;
+            this.method = method;
+        }
+    }
+
+    private static class OrderedReport {
+
+        private final long position;
+        private final Report report;
+
+        private OrderedReport(long position, Report report) {
+            this.position = position;
+            this.report = report;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public Report getReport() {
+            return report;
+        }
+    }
+
+    /**
+     * What a pass produced on the nodes of a traversal.
+     */
+    private static class PassState {
+
+        private final List<OrderedReport> reports;
+        private RuntimeException exception;
+        private long exceptionPosition;
+
+        private PassState() {
+            this.reports = new ArrayList<>();
+            this.exception = null;
+            this.exceptionPosition = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Visits a tree, or the subtree of a single method when run as a task.
+     */
+    private class Traversal {
+
+        private final SymbolTable table;
+        private final long base;
+        private final int shift;
+        private final List<PassState> states;
+        private final Predicate<JmmNode> analyseMethod;
+        private final List<Traversal> methodTraversals;
+
+        // Index of the last pass that still runs, shared by the traversals of all methods
+        private final AtomicInteger lastPass;
+        private final boolean stopOnErrors;
+        private int position;
+        private JmmNode outerMethod;
+
+        private Traversal(SymbolTable table, long base, int shift, Predicate<JmmNode> analyseMethod,
+                          AtomicInteger lastPass, boolean stopOnErrors) {
+            this.table = table;
+            this.base = base;
+            this.shift = shift;
+            this.analyseMethod = analyseMethod;
+            this.lastPass = lastPass;
+            this.stopOnErrors = stopOnErrors;
+            this.states = new ArrayList<>(passes.size());
+            this.methodTraversals = new ArrayList<>();
+            this.position = 0;
+            this.outerMethod = null;
+
+            for (int i = 0; i < passes.size(); i++) {
+                states.add(new PassState());
+            }
+        }
+
+        /**
+         * Visits the subtree of the node, keeping the nodes that are being visited in an explicit stack, so that deep
+         * expressions do not overflow the thread stack.
+         */
+        private void visit(JmmNode root) {
+            AstTraversal.walk(root, node -> {
+                if (node != root && isSkipped(node)) return false;
+
+                long nodePosition = nextPosition();
+                run(getDispatch(node).visits, node, nodePosition);
+                if (node.isInstance(Kind.METHOD_DECL)) outerMethod = AnalysisVisitor.setCurrentMethod(node);
+
+                if (shift == 0 || node.getChildren(Kind.METHOD).size() < 2) return true;
+
+                visitChildrenInParallel(node);
+                return false;
+            }, node -> {
+                if (node != root && isSkipped(node)) return;
+
+                if (node.isInstance(Kind.METHOD_DECL)) AnalysisVisitor.setCurrentMethod(outerMethod);
+
+                // Post visits run after the visits of all descendants, so they come after them
+                run(getDispatch(node).postVisits, node, nextPosition());
+            });
+        }
+
+        private long nextPosition() {
+            return base + ((long) position++ << shift);
+        }
+
+        private void visitChildrenInParallel(JmmNode node) {
+            var tasks = new ArrayList<ForkJoinTask<?>>();
+            for (var child : node.getChildren()) {
+                if (isSkipped(child)) continue;
+
+                if (!Kind.METHOD.check(child)) {
+                    visit(child);
+                    continue;
+                }
+
+                // The method takes a single position here, its visits are numbered inside it
+                var methodTraversal = new Traversal(table, nextPosition(), 0, analyseMethod, lastPass,
+                        stopOnErrors);
+                methodTraversals.add(methodTraversal);
+                tasks.add(ForkJoinPool.commonPool().submit(() -> methodTraversal.visit(child)));
+            }
+
+            for (var task : tasks) {
+                task.join();
+            }
+        }
+
+        /**
+         * @return true if a pass threw on this traversal or on the traversal of one of its methods
+         */
+        private boolean hasFailed() {
+            for (var state : states) {
+                if (state.exception != null) return true;
+            }
+
+            for (var methodTraversal : methodTraversals) {
+                if (methodTraversal.hasFailed()) return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Removes the types annotated on the nodes this traversal visits, so that running it again starts from nodes
+         * without types.
+         */
+        private void clearNodeTypes(JmmNode root) {
+            AstTraversal.walk(root, node -> {
+                if (node != root && isSkipped(node)) return false;
+
+                TypeUtils.clearNodeType(node);
+                return true;
+            }, node -> {
+            });
+        }
+
+        private boolean isSkipped(JmmNode node) {
+            return Kind.METHOD.check(node) && !analyseMethod.test(node);
+        }
+
+        private void run(List<PassVisit> visits, JmmNode node, long nodePosition) {
+            for (var visit : visits) {
+                // Visits are in the order of the passes, and the passes after the last one no longer run
+                if (visit.pass > lastPass.get()) break;
+
+                var state = states.get(visit.pass);
+
+                // A pass that failed is not run on the rest of the tree
+                if (state.exception != null) continue;
+
+                var pass = passes.get(visit.pass);
+
+                try {
+                    visit.method.apply(node, table);
+                } catch (RuntimeException e) {
+                    state.exception = e;
+                    state.exceptionPosition = nodePosition;
+                    pass.getReports().clear();
+                    if (stopAfterErrors) stopAfter(visit.pass + 1);
+                    continue;
+                }
+
+                var passReports = pass.getReports();
+                for (var report : passReports) {
+                    state.reports.add(new OrderedReport(nodePosition, report));
+                    if (stopOnErrors && report.getType() == ReportType.ERROR) stopAfter(visit.pass);
+                }
+                passReports.clear();
+            }
+        }
+
+        private void stopAfter(int pass) {
+            lastPass.accumulateAndGet(pass, Math::min);
+        }
+
+        /**
+         * @return the result of the pass over this traversal and the traversals of its methods
+         */
+        private PassResult merge(int pass) {
+            var states = new ArrayList<PassState>();
+            states.add(this.states.get(pass));
+            for (var methodTraversal : methodTraversals) {
+                states.add(methodTraversal.states.get(pass));
+            }
+
+            // Of all failures, keep the one that would have stopped the pass first
+            PassState failed = null;
+            for (var state : states) {
+                if (state.exception == null) continue;
+                if (failed == null || state.exceptionPosition < failed.exceptionPosition) failed = state;
+            }
+
+            if (failed != null) {
+                return new PassResult(passes.get(pass), List.of(), failed.exception);
+            }
+
+            var reports = new ArrayList<OrderedReport>();
+            for (var state : states) {
+                reports.addAll(state.reports);
+            }
+            reports.sort(Comparator.comparingLong(OrderedReport::getPosition));
+
+            var sorted = new ArrayList<Report>(reports.size());
+            for (var report : reports) {
+                sorted.add(report.getReport());
+            }
+
+            return new PassResult(passes.get(pass), sorted, null);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package pt.up.fe.comp2024.analysis;
 
-import pt.up.fe.comp2024.ast_optimization.ASTOptimizationAnalysis;
 import pt.up.fe.comp.jmm.analysis.JmmAnalysis;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
@@ -13,20 +12,45 @@ import pt.up.fe.comp2024.analysis.passes.*;
 import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
 
 import java.util.List;
+import java.util.function.BiPredicate;
 
 public class JmmAnalysisImpl implements JmmAnalysis {
 
 
-    private final List<AnalysisPass> analysisPasses;
+    private final FusedAnalysis analysis;
 
     public JmmAnalysisImpl() {
 
-        this.analysisPasses = List.of(new UndeclaredVariable(),new NodeType(), new Duplicates(), new Operations(),new Init(), new Array(),  new Method(),new Statements());
+        this(getPasses());
 
     }
 
+    /**
+     * @param passes the passes to run, in order
+     */
+    public JmmAnalysisImpl(List<AnalysisVisitor> passes) {
+        this.analysis = new FusedAnalysis(passes);
+    }
+
+    /**
+     * @return new instances of the analysis passes, in the order they run
+     */
+    public static List<AnalysisVisitor> getPasses() {
+        return List.of(new UndeclaredVariable(),new NodeType(), new Duplicates(), new Operations(),new Init(), new Array(),  new Method(),new Statements());
+    }
+
     @Override
     public JmmSemanticsResult semanticAnalysis(JmmParserResult parserResult) {
+        return semanticAnalysis(parserResult, (method, table) -> true);
+    }
+
+    /**
+     * Analyses the code, leaving out the methods that are not accepted, which are known to be correct from a previous
+     * compilation.
+     *
+     * @param analyseMethod tells if a Method node should be analysed, given the symbol table of the code
+     */
+    public JmmSemanticsResult semanticAnalysis(JmmParserResult parserResult, BiPredicate<JmmNode, SymbolTable> analyseMethod) {
 
         JmmNode rootNode = parserResult.getRootNode();
 
@@ -40,26 +64,23 @@ public class JmmAnalysisImpl implements JmmAnalysis {
             if(report.getType() == ReportType.ERROR) new JmmSemanticsResult(parserResult, table, reports);
         }
 
-        // Visit all nodes in the AST
-        for (var analysisPass : analysisPasses) {
-            try {
-                var passReports = analysisPass.analyze(rootNode, table);
+        // Visit all nodes in the AST once, running the passes until the first one with errors
+        boolean hasErrors = reports.stream().anyMatch(report -> report.getType() == ReportType.ERROR);
+        var passResults = analysis.analyze(rootNode, table, method -> analyseMethod.test(method, table), hasErrors);
 
-                reports.addAll(passReports);
-                for (Report report : reports) {
-                    if(report.getType() == ReportType.ERROR) return new JmmSemanticsResult(parserResult, table, reports);
-                }
-            } catch (Exception e) {
+        for (var passResult : passResults) {
+            if (passResult.getException() != null) {
                 reports.add(Report.newError(Stage.SEMANTIC,
                         -1,
                         -1,
-                        "Problem while executing analysis pass '" + analysisPass.getClass() + "'",
-                        e)
+                        "Problem while executing analysis pass '" + passResult.getPass().getClass() + "'",
+                        passResult.getException())
                 );
+                continue;
             }
 
+            reports.addAll(passResult.getReports());
         }
-        if(parserResult.getConfig().get("optimize") !=null && parserResult.getConfig().get("optimize").equals("true"))new ASTOptimizationAnalysis().optimize(parserResult.getRootNode());
         return new JmmSemanticsResult(parserResult, table, reports);
     }
 }
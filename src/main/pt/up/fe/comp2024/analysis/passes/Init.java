@@ -5,16 +5,18 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
+import pt.up.fe.comp2024.ast.JmmType;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
 import static pt.up.fe.comp2024.ast.NodeUtils.isImported;
+import static pt.up.fe.comp2024.ast.TypeUtils.getNodeType;
 
 public class Init extends AnalysisVisitor {
     @Override
     protected void buildVisitor() {
         addVisit(Kind.NEW_OBJ_EXPR, this::visitNewObjectExpression);
-        addVisit(Kind.NEW_ARRAY_EXPR, this::visitNewArrayExpression);
+        addPostVisit(Kind.NEW_ARRAY_EXPR, this::visitNewArrayExpression);
     }
 
     private Void visitNewObjectExpression(JmmNode node, SymbolTable table) {
@@ -26,10 +28,10 @@ public class Init extends AnalysisVisitor {
 
     private Void visitNewArrayExpression(JmmNode node, SymbolTable table) {
         var size = node.getChild(0);
-        if (!size.get("node_type").equals("int")) {
+        if (getNodeType(size) != JmmType.INT) {
             addSemanticReport(node,  String.format(
                     "Array size must be of type int, got %s instead",
-                    size.get("node_type")
+                    getNodeType(size)
             ));
         }
         return null;
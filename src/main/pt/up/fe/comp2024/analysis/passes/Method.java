@@ -3,6 +3,7 @@ package pt.up.fe.comp2024.analysis.passes;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
+import pt.up.fe.comp2024.ast.JmmType;
 import pt.up.fe.comp2024.ast.Kind;
 
 import java.util.ArrayList;
@@ -12,13 +13,13 @@ import static pt.up.fe.comp2024.ast.TypeUtils.*;
 public class Method extends AnalysisVisitor {
     @Override
     protected void buildVisitor() {
-        addVisit(Kind.METHOD_EXPR, this::visitMethodExpr);
+        addPostVisit(Kind.METHOD_EXPR, this::visitMethodExpr);
         addVisit(Kind.METHOD, this::visitMethod);
 
     }
 
     private Void visitMethodExpr(JmmNode node, SymbolTable table) {
-        if (node.get("node_type").equals("unknown") || node.get("node_type").equals("undefined")) return null;
+        if (getNodeType(node) == JmmType.UNKNOWN || getNodeType(node) == JmmType.UNDEFINED) return null;
         var method_params = table.getParameters(node.get("name"));
         int method_param_idx = 0;
         int invoc_param_idx = 1;
@@ -31,21 +32,23 @@ public class Method extends AnalysisVisitor {
                  addSemanticReport(node, "Ellipses should be in the last parameter");
                  return null;
              }
-             if (isEll && isArray(node.getChild(invoc_param_idx).get("node_type"))) {
+             var invoc_param_type = getNodeType(node.getChild(invoc_param_idx));
+             if (isEll && invoc_param_type.isArray()) {
                  invoc_params_size --;
                  break;
              }
-             if(! getType(method_params.get(method_param_idx).getType()).equals( node.getChild(invoc_param_idx).get("node_type"))){
+             var method_param_type = method_params.get(method_param_idx).getType();
+             if(JmmType.of(method_param_type.getName(), method_param_type.isArray(), false) != invoc_param_type){
                 addSemanticReport(node, String.format(
                         "Expected parameter %s to be type %s, got %s instead.",
                         method_params.get(method_param_idx).getName(),
                         method_params.get(method_param_idx).getType().getName(),
-                        node.getChild(invoc_param_idx).get("node_type")
+                        invoc_param_type
                 ));
                 return null;
             }
             if(!isEll) method_param_idx++;
-            if(!isEllipse(node.getChild(invoc_param_idx).get("node_type"))) invoc_param_idx++;
+            if(!invoc_param_type.isEllipse()) invoc_param_idx++;
         };
 
 
@@ -5,38 +5,38 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
+import pt.up.fe.comp2024.ast.AstTraversal;
+import pt.up.fe.comp2024.ast.JmmType;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static pt.up.fe.comp2024.ast.NodeUtils.isImported;
 import static pt.up.fe.comp2024.ast.TypeUtils.getExprType;
+import static pt.up.fe.comp2024.ast.TypeUtils.getNodeType;
+import static pt.up.fe.comp2024.ast.TypeUtils.setNodeType;
 
 public class NodeType extends AnalysisVisitor {
 
-    Pattern array_pattern = Pattern.compile("([a-zA-Z0-9]+)(\narray)?(\nellipse)?");
-
     @Override
     protected void buildVisitor() {
         addVisit(Kind.LIST_ASSIGN_STMT,this::visitAssignStatement);
         addVisit(Kind.ASSIGN_STMT, this::visitAssignStatement);
         addVisit(Kind.PARAM, this::visitParam);
         addVisit(Kind.VAR_DECL, this::visitVarDeclaration);
-        addVisit(Kind.METHOD_EXPR, this::visitMethodExpr);
+        addPostVisit(Kind.METHOD_EXPR, this::visitMethodExpr);
         addVisit(Kind.THIS, this::visitThis);
         addVisit(Kind.NEW_OBJ_EXPR, this::visitNewObjectExpression);
-        addVisit(Kind.INIT_ARRAY_EXPR, this::visitInitArrayExpression);
+        addPostVisit(Kind.INIT_ARRAY_EXPR, this::visitInitArrayExpression);
         addVisit(Kind.NEW_ARRAY_EXPR, this::visitNewArrayExpression);
         addVisit(Kind.METHOD, this::visitMethod);
         addVisit(Kind.LENGTH_ATTR_EXPR, this::visitLengthAttributeExpression);
-        addVisit(Kind.PARENTH_EXPR, this::visitParenthExpression);
+        addPostVisit(Kind.PARENTH_EXPR, this::visitParenthExpression);
         addVisit(Kind.BINARY_EXPR, this::visitBinaryExpression);
-        addVisit(Kind.ARRAY_EXPR, this::visitArrayExpression);
+        addPostVisit(Kind.ARRAY_EXPR, this::visitArrayExpression);
         addVisit(Kind.INTEGER_LITERAL, this::visitIntegerLiteral);
         addVisit(Kind.BOOL_LITERAL, this::visitBooleanLiteral);
         addVisit(Kind.VAR_REF_EXPR, this::visitVarRef);
@@ -45,48 +45,46 @@ public class NodeType extends AnalysisVisitor {
 
     private Void visitBinaryExpression(JmmNode node, SymbolTable table) {
         String node_type = getExprType(node, table).getName();
-        node.put("node_type", node_type);
+        setNodeType(node, JmmType.of(node_type));
         return null;
     }
 
     private Void visitIntegerLiteral(JmmNode node, SymbolTable table) {
-        node.put("node_type", "int");
+        setNodeType(node, JmmType.INT);
         return null;
     }
 
     private Void visitBooleanLiteral(JmmNode node, SymbolTable table) {
-        node.put("node_type", "boolean");
+        setNodeType(node, JmmType.BOOLEAN);
         return null;
     }
 
     private Void visitVarRef(JmmNode node, SymbolTable table) {
         String varRefName = node.get("name");
-        String message = NodeUtils.getLocalVariableType(varRefName, currentMethod, table) ;
+        JmmType message = NodeUtils.getLocalVariableType(varRefName, getMethodName(node), table) ;
         if(message==null) {
             addSemanticReport(node, "Field "+ node.get("name") + " cannot be accessed");
-            node.put("node_type", "undefined");
+            setNodeType(node, JmmType.UNDEFINED);
             return null;
         }
-        node.put("node_type",message );
+        setNodeType(node, message);
         return null;
     }
 
     private Void visitParenthExpression(JmmNode node, SymbolTable table) {
         JmmNode child = node.getChild(0);
-        visit(child, table);
-        node.put("node_type", child.get("node_type"));
+        setNodeType(node, getNodeType(child));
         return null;
     }
 
     private Void visitArrayExpression(JmmNode node, SymbolTable table) {
 
         var left = node.getChild(0);
-        visit(left, table);
-        Matcher matcher = array_pattern.matcher(left.get("node_type"));
-        if (!(matcher.find() && (matcher.group(2) != null || matcher.group(3) !=null))) {
+        JmmType leftType = getNodeType(left);
+        if (!leftType.hasElements()) {
             String message = String.format(
                     "Array expected, got %s instead",
-                    left.get("node_type")
+                    leftType
             );
             addReport(Report.newError(
                     Stage.SEMANTIC,
@@ -96,34 +94,32 @@ public class NodeType extends AnalysisVisitor {
                     null)
             );
         }
-        node.put("node_type", matcher.group(1));
+        setNodeType(node, leftType.getElementType());
         return null;
     }
 
     private Void visitLengthAttributeExpression(JmmNode node, SymbolTable table) {
-        node.put("node_type", "int");
+        setNodeType(node, JmmType.INT);
         return null;
     }
 
     private Void visitMethod(JmmNode node, SymbolTable table) {
-        currentMethod = node.get("name");
-
-        if( Boolean.parseBoolean(node.get("isMain")) && !node.getDescendants(Kind.THIS).isEmpty() ){
+        if( Boolean.parseBoolean(node.get("isMain")) && !AstTraversal.getDescendants(node, Kind.THIS).isEmpty() ){
             addSemanticReport(node, "this nuts");
         }
         var method_type = node.getChild(0).get("name");
-        String isArray = Boolean.parseBoolean(node.getChild(0).get("isArray"))?"\narray":"";
-        node.put("node_type", method_type +isArray);
+        boolean isArray = Boolean.parseBoolean(node.getChild(0).get("isArray"));
+        setNodeType(node, JmmType.of(method_type, isArray, false));
         return null;
     }
 
     private Void visitNegationExpression(JmmNode node, SymbolTable table) {
-        node.put("node_type", "boolean");
+        setNodeType(node, JmmType.BOOLEAN);
         return null;
     }
 
     private Void visitNewArrayExpression(JmmNode node, SymbolTable table) {
-        node.put("node_type", "int\narray");
+        setNodeType(node, JmmType.INT_ARRAY);
         return null;
     }
 
@@ -131,27 +127,25 @@ public class NodeType extends AnalysisVisitor {
 
         if(node.getChildren().isEmpty()){
 
-            node.put("node_type",  "int\narray");
+            setNodeType(node, JmmType.INT_ARRAY);
 
             return null;
         }
 
-        visit(node.getChild(0), table);
-
-        var type = node.getChild(0).get("node_type");
-        node.put("node_type", type + "\narray");
+        var type = getNodeType(node.getChild(0));
+        setNodeType(node, type.toArray());
         return null;
     }
 
     private Void visitNewObjectExpression(JmmNode node, SymbolTable table) {
 
-        node.put("node_type", node.get("name"));
+        setNodeType(node, JmmType.of(node.get("name")));
 
         return null;
     }
 
     private Void visitThis(JmmNode node, SymbolTable table) {
-        node.put("node_type", table.getClassName());
+        setNodeType(node, JmmType.of(table.getClassName()));
         return null;
     }
 
@@ -159,25 +153,24 @@ public class NodeType extends AnalysisVisitor {
         //Check if method belongs to object
         var object = node.getChild(0);
 
-        for(var child: node.getChildren())
-            visit(child, table);
-        if(isImported(object.get("node_type"),table) || object.get("node_type").equals("unknown")){
-            node.put("node_type", "unknown");
+        JmmType objectType = getNodeType(object);
+        if(isImported(objectType.toString(),table) || objectType == JmmType.UNKNOWN){
+            setNodeType(node, JmmType.UNKNOWN);
             return null;
         }
-        if (object.get("node_type").equals(table.getClassName())) {
+        if (objectType.toString().equals(table.getClassName())) {
 
             if (table.getMethods().contains(node.get("name"))) {
                 var return_type = table.getReturnType(node.get("name"));
-                node.put("node_type", return_type.getName() + (return_type.isArray() ? "\narray" : ""));
+                setNodeType(node, JmmType.of(return_type.getName(), return_type.isArray(), false));
                 return null;
             }
             if(table.getSuper() != null){
 
-                node.put("node_type", "unknown");
+                setNodeType(node, JmmType.UNKNOWN);
                 return null;
             }
-            String message = String.format("%s does not contain method %s.", object.get("node_type"), node.get("name"));
+            String message = String.format("%s does not contain method %s.", objectType, node.get("name"));
             addReport(Report.newError(
                     Stage.SEMANTIC,
                     NodeUtils.getLine(node),
@@ -187,7 +180,7 @@ public class NodeType extends AnalysisVisitor {
             );
 
         }
-        node.put("node_type", "undefined");
+        setNodeType(node, JmmType.UNDEFINED);
         return null;
     }
     private Void visitVarDeclaration(JmmNode node, SymbolTable table){
@@ -208,31 +201,32 @@ public class NodeType extends AnalysisVisitor {
         if(!validTypes.contains(type.get("name")))addSemanticReport(node, "Invalid type");
         else if( Boolean.parseBoolean(type.get("isEllipse"))) addSemanticReport(node, "Variables cannot be declared as ellipses");
         else if( type.get("name").equals("void")) addSemanticReport(node, "Variables cannot be declared as void");
-        else node.put("node_type", type.get("name") + (Boolean.parseBoolean(type.get("isArray"))?"\narray":"") );
+        else setNodeType(node, JmmType.of(type.get("name"), Boolean.parseBoolean(type.get("isArray")), false));
         return null;
     }
 
     private Void visitParam(JmmNode node, SymbolTable table){
         var type = node.getChild(0);
         if( type.get("name").equals("void")) addSemanticReport(node, "Parameters cannot be declared as void");
-        else node.put(
-                "node_type",
-                type.get("name") +
-                        (Boolean.parseBoolean(type.get("isArray"))?"\narray":"") +
-                        (Boolean.parseBoolean(type.get("isEllipse"))?"\nellipse":"")
-                );
+        else setNodeType(
+                node,
+                JmmType.of(
+                        type.get("name"),
+                        Boolean.parseBoolean(type.get("isArray")),
+                        Boolean.parseBoolean(type.get("isEllipse"))
+                ));
         return null;
     }
 
     private Void visitAssignStatement(JmmNode node ,SymbolTable table){
         var variable = node.get("name");
-        String variable_type =  NodeUtils.getLocalVariableType(variable, currentMethod, table);
+        JmmType variable_type =  NodeUtils.getLocalVariableType(variable, getMethodName(node), table);
         if(variable_type == null) {
             addSemanticReport(node, "Static method cannot use non static fields");
-            node.put("node_type", "undefined");
+            setNodeType(node, JmmType.UNDEFINED);
         }
         else
-            node.put("node_type", variable_type);
+            setNodeType(node, variable_type);
         return null;
     }
 
@@ -5,72 +5,71 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
+import pt.up.fe.comp2024.ast.JmmType;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
-import java.util.regex.Matcher;
-
 import static pt.up.fe.comp2024.ast.TypeUtils.areTypesAssignable;
-import static pt.up.fe.comp2024.ast.TypeUtils.isArray;
+import static pt.up.fe.comp2024.ast.TypeUtils.getNodeType;
+import static pt.up.fe.comp2024.ast.TypeUtils.setNodeType;
 
 public class Statements extends AnalysisVisitor {
     @Override
     protected void buildVisitor() {
-        addVisit(Kind.WHILE_STMT, this::visitWhileStatement);
-        addVisit(Kind.IF_STMT, this::visitIfStatement);
-        addVisit(Kind.ASSIGN_STMT, this::visitAssignStatement);
-        addVisit(Kind.EXPR_STMT, this::visitExpressionStatement);
-        addVisit(Kind.METHOD, this::visitMethod);
-        addVisit(Kind.LIST_ASSIGN_STMT,this::visitListAssignStatement);
+        addPostVisit(Kind.WHILE_STMT, this::visitWhileStatement);
+        addPostVisit(Kind.IF_STMT, this::visitIfStatement);
+        addPostVisit(Kind.ASSIGN_STMT, this::visitAssignStatement);
+        addPostVisit(Kind.EXPR_STMT, this::visitExpressionStatement);
+        addPostVisit(Kind.METHOD, this::visitMethod);
+        addPostVisit(Kind.LIST_ASSIGN_STMT,this::visitListAssignStatement);
     }
 
     private Void visitWhileStatement(JmmNode node, SymbolTable table) {
-        if(!node.getChild(0).get("node_type").equals("boolean")){
+        if(getNodeType(node.getChild(0)) != JmmType.BOOLEAN){
            addSemanticReport(node, String.format(
                    "While statement should receive type boolean, got %s instead",
-                   node.getChild(0).get("node_type")
+                   getNodeType(node.getChild(0))
            ));
         }
         return null;
     }
 
     private Void visitAssignStatement(JmmNode node, SymbolTable table) {
-        String variable_type = node.get("node_type");
+        JmmType variable_type = getNodeType(node);
         var expr = node.getChild(0);
-        if(! areTypesAssignable(expr.get("node_type"), variable_type, table)) {
+        if(! areTypesAssignable(getNodeType(expr), variable_type, table)) {
             addSemanticReport(node, String.format(
                     "Variable of type %s cannot be assign a value of type %s.",
                     variable_type,
-                    expr.get("node_type")
+                    getNodeType(expr)
             ));
         }
-        if(expr.get("node_type").equals("unknown")) expr.put("node_type", variable_type);
+        if(getNodeType(expr) == JmmType.UNKNOWN) setNodeType(expr, variable_type);
         return null;
     }
 
     private Void visitIfStatement(JmmNode node, SymbolTable table) {
-        if(!node.getChild(0).get("node_type").equals("boolean")){
+        if(getNodeType(node.getChild(0)) != JmmType.BOOLEAN){
            addSemanticReport(node, String.format(
                    "If statement should receive type boolean, got %s instead",
-                   node.getChild(0).get("node_type")
+                   getNodeType(node.getChild(0))
            ));
         }
         return null;
     }
     private Void visitMethod(JmmNode node, SymbolTable table) {
-        currentMethod = node.get("name");
         var return_statements = node.getChildren(Kind.RETURN_STMT);
-        String returnValueType;
+        JmmType returnValueType;
         if(return_statements.isEmpty())
-            returnValueType = "void";
+            returnValueType = JmmType.VOID;
         else
-            returnValueType = return_statements.get(0).getChild(0).get("node_type");
+            returnValueType = getNodeType(return_statements.get(0).getChild(0));
 
-        if(!node.get("node_type").equals(returnValueType) && !returnValueType.equals("unknown")){
+        if(getNodeType(node) != returnValueType && returnValueType != JmmType.UNKNOWN){
             addSemanticReport(node, String.format(
                     "Method of type %s should return type %s, got %s instead.",
-                    node.get("node_type"),
-                    node.get("node_type"),
+                    getNodeType(node),
+                    getNodeType(node),
                     returnValueType
             ));
         }
@@ -91,28 +90,26 @@ public class Statements extends AnalysisVisitor {
             JmmNode method = node.getChild(0);
             String methodName = method.get("name");
             if (table.getMethods().contains(methodName))
-                node.getChild(0).put("node_type", table.getReturnType(methodName).getName());
+                setNodeType(node.getChild(0), JmmType.of(table.getReturnType(methodName).getName()));
             else
-                node.getChild(0).put("node_type", "void");
+                setNodeType(node.getChild(0), JmmType.VOID);
         }
         return null;
     }
     private Void visitListAssignStatement(JmmNode node, SymbolTable table) {
-        var index_type = node.getChild(0).get("node_type");
-        var expr_type = node.getChild(1).get("node_type");
-        if(!index_type.equals("int")) addSemanticReport(node, String.format(
+        var index_type = getNodeType(node.getChild(0));
+        var expr_type = getNodeType(node.getChild(1));
+        if(index_type != JmmType.INT) addSemanticReport(node, String.format(
                 "Expected array index of type int, got %s instead",
                 index_type
         ));
-        if( !isArray(node.get("node_type"))) addSemanticReport(node, String.format(
+        if( !getNodeType(node).isArray()) addSemanticReport(node, String.format(
                 "Expected %s to be array, got %s instead",
                 node.get("name"),
-                node.get("node_type")
+                getNodeType(node)
         ));
-        Matcher matcher = array_pattern.matcher(node.get("node_type"));
-        matcher.find();
-        var var_type =matcher.group(1);
-        if( ! var_type.equals(expr_type)) addSemanticReport(node, String.format(
+        var var_type = getNodeType(node).getElementType();
+        if( var_type != expr_type) addSemanticReport(node, String.format(
                 "Variable of type %s cannot be assign a value of type %s.",
                 var_type,
                 expr_type
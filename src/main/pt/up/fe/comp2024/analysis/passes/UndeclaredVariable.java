@@ -16,40 +16,20 @@ import pt.up.fe.specs.util.SpecsCheck;
  */
 public class UndeclaredVariable extends AnalysisVisitor {
 
-    private String currentMethod;
-
     @Override
     public void buildVisitor() {
-        addVisit(Kind.METHOD_DECL, this::visitMethodDecl);
         addVisit(Kind.VAR_REF_EXPR, this::visitVarRefExpr);
     }
 
-    private Void visitMethodDecl(JmmNode method, SymbolTable table) {
-        currentMethod = method.get("name");
-        return null;
-    }
-
     private Void visitVarRefExpr(JmmNode varRefExpr, SymbolTable table) {
+        var currentMethod = getMethodName(varRefExpr);
         SpecsCheck.checkNotNull(currentMethod, () -> "Expected current method to be set");
 
         // Check if exists a parameter or variable declaration with the same name as the variable reference
         var varRefName = varRefExpr.get("name");
 
-        // Var is a field, return
-        if (table.getFields().stream()
-                .anyMatch(param -> param.getName().equals(varRefName))) {
-            return null;
-        }
-
-        // Var is a parameter, return
-        if (table.getParameters(currentMethod).stream()
-                .anyMatch(param -> param.getName().equals(varRefName))) {
-            return null;
-        }
-
-        // Var is a declared variable, return
-        if (table.getLocalVariables(currentMethod).stream()
-                .anyMatch(varDecl -> varDecl.getName().equals(varRefName))) {
+        // Var is a field, parameter or declared variable, return
+        if (NodeUtils.resolveVariable(varRefName, currentMethod, table).isPresent()) {
             return null;
         }
 
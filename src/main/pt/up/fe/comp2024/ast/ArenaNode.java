@@ -0,0 +1,175 @@
+package pt.up.fe.comp2024.ast;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp.jmm.ast.NodePosition;
+import pt.up.fe.specs.util.SpecsCheck;
+import pt.up.fe.specs.util.SpecsSystem;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A node of an {@link AstArena}, which only holds its index and reads everything else from the arena.
+ */
+class ArenaNode implements JmmNode {
+
+    private final AstArena arena;
+    private final int index;
+
+    ArenaNode(AstArena arena, int index) {
+        this.arena = arena;
+        this.index = index;
+    }
+
+    AstArena getArena() {
+        return arena;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    @Override
+    public String getKind() {
+        return arena.getKind(index);
+    }
+
+    @Override
+    public Collection<String> getHierarchy() {
+        return arena.getHierarchy(index);
+    }
+
+    @Override
+    public Collection<String> getAttributes() {
+        return arena.getAttributes(index);
+    }
+
+    @Override
+    public boolean hasAttribute(String attribute) {
+        return arena.hasAttribute(index, attribute);
+    }
+
+    @Override
+    public Object getObject(String attribute) {
+        var value = arena.getObject(index, attribute);
+
+        SpecsCheck.checkNotNull(value, () -> "Node " + getKind() + " does not contain attribute '" + attribute + "'");
+
+        return value;
+    }
+
+    @Override
+    public Object putObject(String attribute, Object value) {
+        return arena.putObject(index, attribute, value);
+    }
+
+    @Deprecated
+    @Override
+    public JmmNode getJmmParent() {
+        return arena.getParent(index);
+    }
+
+    @Override
+    public List<JmmNode> getChildren() {
+        return arena.getChildren(index);
+    }
+
+    @Override
+    public int getNumChildren() {
+        return arena.getNumChildren(index);
+    }
+
+    @Override
+    public JmmNode getChild(int index) {
+        return arena.getChild(this.index, index);
+    }
+
+    @Override
+    public JmmNode getJmmChild(int index) {
+        return getChild(index);
+    }
+
+    @Override
+    public int getIndexOfSelf() {
+        return arena.getIndexOfSelf(index);
+    }
+
+    @Override
+    public void add(JmmNode child, int index) {
+        arena.add(this.index, child, index);
+    }
+
+    @Override
+    public void setChild(JmmNode newNode, int index) {
+        arena.setChild(this.index, newNode, index);
+    }
+
+    @Override
+    public JmmNode removeJmmChild(int index) {
+        return arena.removeChild(this.index, index);
+    }
+
+    @Deprecated
+    @Override
+    public int removeJmmChild(JmmNode node) {
+        return arena.removeChild(index, node);
+    }
+
+    @Override
+    public JmmNode detach() {
+        var parent = getParent();
+        if (parent == null) {
+            System.out.println("[WARNING] Tried to remove itself from the tree, but node has no parent");
+            return this;
+        }
+
+        parent.removeChild(this);
+
+        return this;
+    }
+
+    @Override
+    public void removeParent() {
+        arena.removeParent(index);
+    }
+
+    @Override
+    public void setParent(JmmNode parent) {
+        arena.setParent(index, parent);
+    }
+
+    @Override
+    public JmmNode copyNode() {
+        // Copies are built by passes one at a time, so they are regular nodes
+        var copy = new JmmNodeImpl(getKind(), this);
+        copy.setHierarchy(getHierarchy());
+
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        var string = new StringBuilder(getKind());
+
+        var attributes = getAttributes().stream()
+                .filter(attribute -> !AstArena.isPosition(attribute))
+                .toList();
+
+        if (!attributes.isEmpty()) {
+            string.append(attributes.stream()
+                    .map(attribute -> attribute + ": " + get(attribute))
+                    .collect(Collectors.joining(", ", " (", ")")));
+        }
+
+        if (SpecsSystem.isDebug()) {
+            string.append(" ").append(get(NodePosition.LINE_START.getKey()))
+                    .append(":").append(get(NodePosition.COL_START.getKey()))
+                    .append("->").append(get(NodePosition.LINE_END.getKey()))
+                    .append(":").append(get(NodePosition.COL_END.getKey()));
+        }
+
+        return string.toString();
+    }
+}
@@ -0,0 +1,519 @@
+package pt.up.fe.comp2024.ast;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.NodePosition;
+import pt.up.fe.specs.util.SpecsCheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Stores a whole AST in arrays indexed by node, instead of in an object per node with its own attribute map, children
+ * list and position strings.
+ * <p>
+ * Each node has an int kind code, the indexes of its parent, first child and next sibling, and its position as ints.
+ * The attributes it was built with are a range of a pool of interned keys and values. Attributes put after building,
+ * such as the types given by the analysis, go to a column per attribute, which adds an array slot per node instead of
+ * a map entry. Nodes are seen as {@link JmmNode}s through one {@link ArenaNode} per node, created when first used, so
+ * the visitors work on them as on any other node.
+ * <p>
+ * Nodes created by the passes, such as folded literals, stay regular nodes, and so do copies of arena nodes. They can
+ * still be added to arena nodes, and are then linked to their siblings by index like the others.
+ */
+public class AstArena {
+
+    private static final int NONE = -1;
+    private static final int POSITION_FIELDS = 4;
+    private static final List<String> POSITION_KEYS = List.of(NodePosition.LINE_START.getKey(),
+            NodePosition.COL_START.getKey(), NodePosition.LINE_END.getKey(), NodePosition.COL_END.getKey());
+
+    // Stands for attributes put as null in the columns, where null means that the node has no value
+    private static final Object NULL = new Object();
+
+    private final String[] kindNames;
+    private final List<Collection<String>> hierarchies;
+    private final int[] kinds;
+    private final int[] positions;
+
+    private final int[] attributeStarts;
+    private final String[] attributeKeys;
+    private final Object[] attributeValues;
+    private final Map<String, Object[]> columns;
+
+    // The nodes built into the arena come first, followed by the regular nodes added to them
+    private final int nodeCount;
+    private int size;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+
+    private final AtomicReferenceArray<ArenaNode> handles;
+    private final List<JmmNode> regularNodes;
+    private final Map<JmmNode, Integer> regularIndexes;
+    // Parents of arena nodes that were added to regular nodes
+    private final Map<Integer, JmmNode> outsideParents;
+    private final int root;
+
+    private AstArena(Builder builder, int root) {
+        this.kindNames = builder.kindNames.toArray(new String[0]);
+        this.hierarchies = List.copyOf(builder.hierarchies);
+
+        this.nodeCount = builder.size;
+        this.size = builder.size;
+        this.kinds = Arrays.copyOf(builder.kinds, nodeCount);
+        this.positions = Arrays.copyOf(builder.positions, nodeCount * POSITION_FIELDS);
+        this.parents = Arrays.copyOf(builder.parents, nodeCount);
+        this.firstChildren = Arrays.copyOf(builder.firstChildren, nodeCount);
+        this.nextSiblings = Arrays.copyOf(builder.nextSiblings, nodeCount);
+
+        this.attributeStarts = Arrays.copyOf(builder.attributeStarts, nodeCount + 1);
+        this.attributeStarts[nodeCount] = builder.attributeCount;
+        this.attributeKeys = Arrays.copyOf(builder.attributeKeys, builder.attributeCount);
+        this.attributeValues = Arrays.copyOf(builder.attributeValues, builder.attributeCount);
+        this.columns = new ConcurrentHashMap<>();
+
+        this.handles = new AtomicReferenceArray<>(nodeCount);
+        this.regularNodes = new ArrayList<>();
+        this.regularIndexes = new IdentityHashMap<>();
+        this.outsideParents = new HashMap<>();
+        this.root = root;
+    }
+
+    public JmmNode getRoot() {
+        return getNode(root);
+    }
+
+    /**
+     * @return the number of nodes built into the arena
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    String getKind(int node) {
+        return kindNames[kinds[node]];
+    }
+
+    Collection<String> getHierarchy(int node) {
+        return hierarchies.get(kinds[node]);
+    }
+
+    // Attributes
+
+    static boolean isPosition(String attribute) {
+        return POSITION_KEYS.contains(attribute);
+    }
+
+    Collection<String> getAttributes(int node) {
+        var attributes = new ArrayList<String>();
+        for (int i = attributeStarts[node]; i < attributeStarts[node + 1]; i++) {
+            attributes.add(attributeKeys[i]);
+        }
+        attributes.addAll(POSITION_KEYS);
+
+        columns.forEach((key, column) -> {
+            if (column[node] != null && !attributes.contains(key)) attributes.add(key);
+        });
+
+        return attributes;
+    }
+
+    boolean hasAttribute(int node, String attribute) {
+        var column = columns.get(attribute);
+        if (column != null && column[node] != null) return true;
+
+        return findBuiltAttribute(node, attribute) != NONE || POSITION_KEYS.contains(attribute);
+    }
+
+    Object getObject(int node, String attribute) {
+        var column = columns.get(attribute);
+        if (column != null && column[node] != null) return column[node] == NULL ? null : column[node];
+
+        int built = findBuiltAttribute(node, attribute);
+        if (built != NONE) return attributeValues[built];
+
+        int position = POSITION_KEYS.indexOf(attribute);
+        if (position != NONE) return Integer.toString(positions[node * POSITION_FIELDS + position]);
+
+        return null;
+    }
+
+    Object putObject(int node, String attribute, Object value) {
+        var previous = getObject(node, attribute);
+
+        // Nodes of different methods may be annotated at the same time, but each slot is only written by one
+        var column = columns.computeIfAbsent(attribute, key -> new Object[nodeCount]);
+        column[node] = value == null ? NULL : value;
+
+        return previous;
+    }
+
+    private int findBuiltAttribute(int node, String attribute) {
+        for (int i = attributeStarts[node]; i < attributeStarts[node + 1]; i++) {
+            if (attributeKeys[i].equals(attribute)) return i;
+        }
+
+        return NONE;
+    }
+
+    // Tree
+
+    JmmNode getParent(int node) {
+        if (!outsideParents.isEmpty()) {
+            var parent = outsideParents.get(node);
+            if (parent != null) return parent;
+        }
+
+        return parents[node] == NONE ? null : getNode(parents[node]);
+    }
+
+    List<JmmNode> getChildren(int node) {
+        var children = new ArrayList<JmmNode>();
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            children.add(getNode(child));
+        }
+
+        return children;
+    }
+
+    int getNumChildren(int node) {
+        int count = 0;
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            count++;
+        }
+
+        return count;
+    }
+
+    JmmNode getChild(int node, int position) {
+        return getNode(getChildIndex(node, position));
+    }
+
+    int getIndexOfSelf(int node) {
+        var outsideParent = outsideParents.isEmpty() ? null : outsideParents.get(node);
+        if (outsideParent != null) return outsideParent.getChildren().indexOf(getNode(node));
+
+        if (parents[node] == NONE) return NONE;
+
+        int position = 0;
+        for (int child = firstChildren[parents[node]]; child != node; child = nextSiblings[child]) {
+            position++;
+        }
+
+        return position;
+    }
+
+    void add(int node, JmmNode child, int position) {
+        int numChildren = getNumChildren(node);
+        if (position < 0 || position > numChildren) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + numChildren);
+        }
+
+        int index = indexOf(child);
+
+        // A node is linked to its siblings, so it can only be in one place of the tree
+        if (parents[index] != NONE) {
+            if (parents[index] == node && getIndexOfSelf(index) < position) position--;
+            unlink(index);
+        }
+        if (index < nodeCount) outsideParents.remove(index);
+
+        link(node, index, position);
+        if (index >= nodeCount) child.setParent(getNode(node));
+    }
+
+    JmmNode removeChild(int node, int position) {
+        int numChildren = getNumChildren(node);
+        if (position >= numChildren) {
+            System.out.println("[WARNING] Tried to remove child at index " + position + ", but node only has "
+                    + numChildren + " children");
+            return null;
+        }
+
+        int index = getChildIndex(node, position);
+        unlink(index);
+
+        var child = getNode(index);
+        if (index >= nodeCount) child.removeParent();
+
+        return child;
+    }
+
+    int removeChild(int node, JmmNode child) {
+        int position = 0;
+        for (int current = firstChildren[node]; current != NONE; current = nextSiblings[current]) {
+            if (getNode(current) == child) {
+                removeChild(node, position);
+                return position;
+            }
+
+            position++;
+        }
+
+        System.out.println("[WARNING] Tried to remove child from node, but could not find it.\nChild:" + child
+                + "\nParent:" + getNode(node));
+        return NONE;
+    }
+
+    /**
+     * Puts the new node at the given position. If the new node already has a parent, the node it replaces takes its
+     * place there, as {@link pt.up.fe.comp.jmm.ast.JmmNodeImpl#setChild} does.
+     */
+    void setChild(int node, JmmNode newNode, int position) {
+        var current = getChild(node, position);
+        if (current == newNode) return;
+
+        var newParent = newNode.getParent();
+        if (newParent == null) {
+            removeChild(node, position);
+            add(node, newNode, position);
+            return;
+        }
+
+        int newPosition = newNode.getIndexOfSelf();
+
+        if (newParent == getNode(node)) {
+            // Swap the two children, removing the last one first so the other keeps its position
+            int first = Math.min(position, newPosition);
+            int last = Math.max(position, newPosition);
+            var lastChild = removeChild(node, last);
+            var firstChild = removeChild(node, first);
+
+            add(node, lastChild, first);
+            add(node, firstChild, last);
+            return;
+        }
+
+        newParent.removeChild(newPosition);
+        removeChild(node, position);
+        add(node, newNode, position);
+        newParent.add(current, newPosition);
+    }
+
+    void removeParent(int node) {
+        if (outsideParents.remove(node) != null) return;
+
+        if (parents[node] != NONE) unlink(node);
+    }
+
+    void setParent(int node, JmmNode parent) {
+        if (parent instanceof ArenaNode arenaParent && arenaParent.getArena() == this) {
+            if (parents[node] != arenaParent.getIndex()) add(arenaParent.getIndex(), getNode(node),
+                    getNumChildren(arenaParent.getIndex()));
+            return;
+        }
+
+        if (parents[node] != NONE) unlink(node);
+        outsideParents.put(node, parent);
+    }
+
+    private JmmNode getNode(int index) {
+        if (index >= nodeCount) return regularNodes.get(index - nodeCount);
+
+        var handle = handles.get(index);
+        if (handle != null) return handle;
+
+        // Nodes are compared by identity, so threads visiting the same node must get the same handle
+        handles.compareAndSet(index, null, new ArenaNode(this, index));
+        return handles.get(index);
+    }
+
+    private int getChildIndex(int node, int position) {
+        int child = firstChildren[node];
+        for (int i = 0; i < position && child != NONE; i++) {
+            child = nextSiblings[child];
+        }
+
+        if (position < 0 || child == NONE) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + getNumChildren(node));
+        }
+
+        return child;
+    }
+
+    private int indexOf(JmmNode node) {
+        if (node instanceof ArenaNode arenaNode && arenaNode.getArena() == this) return arenaNode.getIndex();
+
+        var index = regularIndexes.get(node);
+        if (index != null) return index;
+
+        if (size == parents.length) {
+            int capacity = Math.max(size * 2, 16);
+            parents = Arrays.copyOf(parents, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        }
+
+        // The children of regular nodes are kept by the nodes themselves
+        parents[size] = NONE;
+        firstChildren[size] = NONE;
+        nextSiblings[size] = NONE;
+
+        regularNodes.add(node);
+        regularIndexes.put(node, size);
+        return size++;
+    }
+
+    private void link(int parent, int child, int position) {
+        if (position == 0) {
+            nextSiblings[child] = firstChildren[parent];
+            firstChildren[parent] = child;
+        } else {
+            int previous = getChildIndex(parent, position - 1);
+            nextSiblings[child] = nextSiblings[previous];
+            nextSiblings[previous] = child;
+        }
+
+        parents[child] = parent;
+    }
+
+    private void unlink(int child) {
+        int parent = parents[child];
+
+        if (firstChildren[parent] == child) {
+            firstChildren[parent] = nextSiblings[child];
+        } else {
+            int previous = firstChildren[parent];
+            while (nextSiblings[previous] != child) previous = nextSiblings[previous];
+            nextSiblings[previous] = nextSiblings[child];
+        }
+
+        parents[child] = NONE;
+        nextSiblings[child] = NONE;
+    }
+
+    /**
+     * Adds nodes in postorder, as the parser finishes them, so that the children of a node are added before it.
+     */
+    public static class Builder {
+
+        private final Map<String, Integer> kindCodes;
+        private final List<String> kindNames;
+        private final List<Collection<String>> hierarchies;
+        private final Map<Object, Object> interned;
+
+        private int size;
+        private int[] kinds;
+        private int[] positions;
+        private int[] parents;
+        private int[] firstChildren;
+        private int[] nextSiblings;
+        // Only needed to append children while building
+        private int[] lastChildren;
+
+        private int attributeCount;
+        private int[] attributeStarts;
+        private String[] attributeKeys;
+        private Object[] attributeValues;
+
+        public Builder() {
+            this.kindCodes = new HashMap<>();
+            this.kindNames = new ArrayList<>();
+            this.hierarchies = new ArrayList<>();
+            this.interned = new HashMap<>();
+
+            int capacity = 1024;
+            this.size = 0;
+            this.kinds = new int[capacity];
+            this.positions = new int[capacity * POSITION_FIELDS];
+            this.parents = new int[capacity];
+            this.firstChildren = new int[capacity];
+            this.nextSiblings = new int[capacity];
+            this.lastChildren = new int[capacity];
+            this.attributeStarts = new int[capacity + 1];
+
+            this.attributeCount = 0;
+            this.attributeKeys = new String[capacity];
+            this.attributeValues = new Object[capacity];
+        }
+
+        /**
+         * @return the index of the new node
+         */
+        public int addNode(String kind, Collection<String> hierarchy, int lineStart, int colStart, int lineEnd,
+                           int colEnd) {
+            if (size == kinds.length) growNodes();
+
+            var code = kindCodes.get(kind);
+            if (code == null) {
+                code = kindNames.size();
+                kindCodes.put(kind, code);
+                kindNames.add(kind);
+                hierarchies.add(List.copyOf(hierarchy));
+            }
+
+            int node = size++;
+            kinds[node] = code;
+            parents[node] = NONE;
+            firstChildren[node] = NONE;
+            nextSiblings[node] = NONE;
+            lastChildren[node] = NONE;
+            attributeStarts[node] = attributeCount;
+
+            int position = node * POSITION_FIELDS;
+            positions[position] = lineStart;
+            positions[position + 1] = colStart;
+            positions[position + 2] = lineEnd;
+            positions[position + 3] = colEnd;
+
+            return node;
+        }
+
+        /**
+         * Adds an attribute to the last node added.
+         */
+        public void put(String attribute, Object value) {
+            SpecsCheck.checkArgument(size > 0, () -> "Expected a node to add the attribute to");
+
+            if (attributeCount == attributeKeys.length) {
+                attributeKeys = Arrays.copyOf(attributeKeys, attributeCount * 2);
+                attributeValues = Arrays.copyOf(attributeValues, attributeCount * 2);
+            }
+
+            attributeKeys[attributeCount] = (String) intern(attribute);
+            // Names and operators repeat all over the code, so each is only kept once
+            attributeValues[attributeCount] = value instanceof String ? intern(value) : value;
+            attributeCount++;
+        }
+
+        /**
+         * Adds the child after the children already added to the node.
+         */
+        public void addChild(int node, int child) {
+            SpecsCheck.checkArgument(parents[child] == NONE, () -> "Node " + child + " already has a parent");
+
+            if (lastChildren[node] == NONE) firstChildren[node] = child;
+            else nextSiblings[lastChildren[node]] = child;
+
+            lastChildren[node] = child;
+            parents[child] = node;
+        }
+
+        public AstArena build(int root) {
+            return new AstArena(this, root);
+        }
+
+        private Object intern(Object value) {
+            var previous = interned.putIfAbsent(value, value);
+            return previous == null ? value : previous;
+        }
+
+        private void growNodes() {
+            int capacity = kinds.length * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            positions = Arrays.copyOf(positions, capacity * POSITION_FIELDS);
+            parents = Arrays.copyOf(parents, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            lastChildren = Arrays.copyOf(lastChildren, capacity);
+            attributeStarts = Arrays.copyOf(attributeStarts, capacity + 1);
+        }
+    }
+}
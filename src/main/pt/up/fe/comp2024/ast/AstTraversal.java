@@ -0,0 +1,93 @@
+package pt.up.fe.comp2024.ast;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Traversals of the AST that keep the nodes still to be visited in an explicit stack instead of the call stack.
+ * <p>
+ * Chains of binary operators nest one node per operator, so a recursive visitor needs a stack frame for each operator
+ * of an expression, and long generated expressions overflow the thread stack. These traversals use heap memory in
+ * proportion to the depth of the tree instead, whatever it is.
+ */
+public class AstTraversal {
+
+    private AstTraversal() {
+    }
+
+    /**
+     * Visits the tree in depth-first order, in the same order a recursive visitor would.
+     * <p>
+     * The children of a node are taken after enter runs on it, so enter may replace them.
+     *
+     * @param enter runs before the children of a node, and tells whether they should be visited
+     * @param exit  runs after the children of a node, or right after enter when they are not visited
+     */
+    public static void walk(JmmNode root, Predicate<JmmNode> enter, Consumer<JmmNode> exit) {
+        var stack = new ArrayDeque<Frame>();
+        if (enter.test(root)) stack.push(new Frame(root));
+        else exit.accept(root);
+
+        while (!stack.isEmpty()) {
+            var frame = stack.peek();
+
+            if (frame.next == frame.children.size()) {
+                stack.pop();
+                exit.accept(frame.node);
+                continue;
+            }
+
+            var child = frame.children.get(frame.next++);
+            if (enter.test(child)) stack.push(new Frame(child));
+            else exit.accept(child);
+        }
+    }
+
+    /**
+     * @return the descendants of the node in preorder, as {@link JmmNode#getDescendants()} gives them
+     */
+    public static List<JmmNode> getDescendants(JmmNode node) {
+        return getDescendants(node, descendant -> true);
+    }
+
+    /**
+     * @return the descendants of the node of the given kind in preorder, as {@link JmmNode#getDescendants(Object)}
+     * gives them
+     */
+    public static List<JmmNode> getDescendants(JmmNode node, Kind kind) {
+        return getDescendants(node, descendant -> descendant.isInstance(kind));
+    }
+
+    private static List<JmmNode> getDescendants(JmmNode node, Predicate<JmmNode> filter) {
+        var descendants = new ArrayList<JmmNode>();
+
+        walk(node, descendant -> {
+            if (descendant != node && filter.test(descendant)) descendants.add(descendant);
+            return true;
+        }, descendant -> {
+        });
+
+        return descendants;
+    }
+
+    /**
+     * A node whose children are being visited.
+     */
+    private static class Frame {
+
+        private final JmmNode node;
+        private final List<JmmNode> children;
+        private int next;
+
+        private Frame(JmmNode node) {
+            this.node = node;
+            this.children = node.getChildren();
+            this.next = 0;
+        }
+    }
+}
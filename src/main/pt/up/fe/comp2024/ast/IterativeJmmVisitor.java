@@ -0,0 +1,93 @@
+package pt.up.fe.comp2024.ast;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.specs.util.SpecsCheck;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Visitor that computes a result for each node from the results of its children, like a recursive visitor whose
+ * visits start by visiting all children, but keeping the nodes still to be visited in an explicit stack.
+ * <p>
+ * Visits are registered per node kind as with {@link pt.up.fe.comp.jmm.ast.AJmmVisitor}, and get the results of the
+ * children in their order. Visits added with addEnter run before the children are visited, for work that a recursive
+ * visitor would do before visiting them.
+ */
+public abstract class IterativeJmmVisitor<R> {
+
+    private final Map<String, BiFunction<JmmNode, List<R>, R>> visitMap;
+    private final Map<String, Consumer<JmmNode>> enterMap;
+    private BiFunction<JmmNode, List<R>, R> defaultVisit;
+
+    public IterativeJmmVisitor() {
+        this.visitMap = new HashMap<>();
+        this.enterMap = new HashMap<>();
+
+        buildVisitor();
+    }
+
+    protected abstract void buildVisitor();
+
+    protected void addVisit(Object kind, BiFunction<JmmNode, List<R>, R> method) {
+        visitMap.put(kind.toString(), method);
+    }
+
+    protected void addEnter(Object kind, Consumer<JmmNode> method) {
+        enterMap.put(kind.toString(), method);
+    }
+
+    protected void setDefaultVisit(BiFunction<JmmNode, List<R>, R> defaultVisit) {
+        this.defaultVisit = defaultVisit;
+    }
+
+    public R visit(JmmNode root) {
+        SpecsCheck.checkNotNull(root, () -> "Node should not be null");
+
+        // Results of the children visited so far, of all nodes that are still being visited
+        var results = new ArrayList<R>();
+        var resultStarts = new ArrayList<Integer>();
+
+        AstTraversal.walk(root, node -> {
+            var enter = find(enterMap, node);
+            if (enter != null) enter.accept(node);
+
+            resultStarts.add(results.size());
+            return true;
+        }, node -> {
+            int start = resultStarts.remove(resultStarts.size() - 1);
+            var children = results.subList(start, results.size());
+
+            var result = getVisit(node).apply(node, new ArrayList<>(children));
+            children.clear();
+            results.add(result);
+        });
+
+        return results.get(0);
+    }
+
+    private BiFunction<JmmNode, List<R>, R> getVisit(JmmNode node) {
+        var visit = find(visitMap, node);
+        if (visit != null) return visit;
+
+        SpecsCheck.checkNotNull(defaultVisit,
+                () -> "Could not find a suitable visit method for node of kind " + node.getKind()
+                        + ", and no default visitor is set");
+
+        return defaultVisit;
+    }
+
+    private static <T> T find(Map<String, T> map, JmmNode node) {
+        // Iterate over node hierarchy, in order, until a visit is found
+        for (var kind : node.getHierarchy()) {
+            var method = map.get(kind);
+            if (method != null) return method;
+        }
+
+        return null;
+    }
+}
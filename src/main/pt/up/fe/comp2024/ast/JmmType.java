@@ -0,0 +1,144 @@
+package pt.up.fe.comp2024.ast;
+
+import pt.up.fe.comp.jmm.analysis.table.Type;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Type annotated on a node by the semantic analysis.
+ * <p>
+ * Instances are interned by their encoding (the type name, followed by "\narray" and/or "\nellipse"), so two node
+ * types are the same exactly when they are the same object, and are compared with ==. {@link #equals(Object)} is the
+ * one of {@link Type}, which ignores the ellipse. The encoding is what {@link #toString()} returns, which keeps reports
+ * and printed trees unchanged.
+ * <p>
+ * Types are only weakly held once interned. The names of the classes of every compiled source end up here, so a
+ * long-lived compiler would otherwise keep the types of all the sources it ever compiled. A type that is no longer
+ * referenced can only be interned again as a new instance, which nothing can compare with the old one.
+ */
+public final class JmmType extends Type {
+
+    private static final String SEPARATOR = "\n";
+    private static final String ARRAY = "array";
+    private static final String ELLIPSE = "ellipse";
+
+    private static final Map<String, TypeReference> TYPES = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<JmmType> COLLECTED = new ReferenceQueue<>();
+
+    public static final JmmType INT = of("int");
+    public static final JmmType BOOLEAN = of("boolean");
+    public static final JmmType VOID = of("void");
+    public static final JmmType INT_ARRAY = of("int", true, false);
+    public static final JmmType BOOLEAN_ARRAY = of("boolean", true, false);
+    public static final JmmType UNKNOWN = of("unknown");
+    public static final JmmType UNDEFINED = of("undefined");
+
+    private final String encoding;
+    private final boolean isEllipse;
+
+    private JmmType(String encoding, String name, boolean isArray, boolean isEllipse) {
+        super(name, isArray);
+        this.encoding = encoding;
+        this.isEllipse = isEllipse;
+    }
+
+    /**
+     * @return the type with the given encoding
+     */
+    public static JmmType parse(String encoding) {
+        var reference = TYPES.get(encoding);
+        var type = reference != null ? reference.get() : null;
+        if (type != null) return type;
+
+        removeCollected();
+
+        do {
+            // Replaces the entry of a type that was collected since it was read
+            reference = TYPES.compute(encoding, (key, current) ->
+                    current != null && !current.refersTo(null) ? current : new TypeReference(create(key)));
+            type = reference.get();
+        } while (type == null);
+
+        return type;
+    }
+
+    private static void removeCollected() {
+        for (var reference = COLLECTED.poll(); reference != null; reference = COLLECTED.poll()) {
+            var typeReference = (TypeReference) reference;
+            TYPES.remove(typeReference.encoding, typeReference);
+        }
+    }
+
+    public static JmmType of(String name) {
+        return parse(name);
+    }
+
+    public static JmmType of(String name, boolean isArray, boolean isEllipse) {
+        return parse(name + (isArray ? SEPARATOR + ARRAY : "") + (isEllipse ? SEPARATOR + ELLIPSE : ""));
+    }
+
+    /**
+     * @return the node type of a symbol type, as built by the symbol table
+     */
+    public static JmmType of(Type type) {
+        if (type instanceof JmmType jmmType) return jmmType;
+
+        // Symbol table types are plain types with the ellipse as an attribute
+        boolean isEllipse = type.getAttributes().contains("isEllipse") && type.getObject("isEllipse", Boolean.class);
+        return of(type.getName(), type.isArray(), isEllipse);
+    }
+
+    private static JmmType create(String encoding) {
+        var parts = encoding.split(SEPARATOR);
+
+        int next = 1;
+        boolean isArray = parts.length > next && parts[next].equals(ARRAY);
+        if (isArray) next++;
+        boolean isEllipse = parts.length > next && parts[next].equals(ELLIPSE);
+
+        return new JmmType(encoding, parts[0], isArray, isEllipse);
+    }
+
+    public boolean isEllipse() {
+        return isEllipse;
+    }
+
+    /**
+     * @return true if values of this type hold elements, either as an array or as an ellipse
+     */
+    public boolean hasElements() {
+        return isArray() || isEllipse;
+    }
+
+    /**
+     * @return the type of the elements, which is the name of this type on its own
+     */
+    public JmmType getElementType() {
+        return of(getName());
+    }
+
+    /**
+     * @return the type of an array whose elements are of this type
+     */
+    public JmmType toArray() {
+        return parse(encoding + SEPARATOR + ARRAY);
+    }
+
+    @Override
+    public String toString() {
+        return encoding;
+    }
+
+    private static class TypeReference extends WeakReference<JmmType> {
+
+        private final String encoding;
+
+        private TypeReference(JmmType type) {
+            super(type, COLLECTED);
+            this.encoding = type.encoding;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.specs.util.SpecsStrings;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 public enum Kind {
@@ -37,11 +39,20 @@ public enum Kind {
     NEW_OBJ_EXPR,
     IF_STMT,
     WHILE_STMT,
+    SCOPE_STMT,
     LIST_ASSIGN_STMT;
 
     private static final Set<Kind> STATEMENTS = Set.of(ASSIGN_STMT, RETURN_STMT);
     private static final Set<Kind> EXPRESSIONS = Set.of(BINARY_EXPR, INTEGER_LITERAL, VAR_REF_EXPR, LENGTH_ATTR_EXPR);
     private static final Set<Kind> TYPES = Set.of(TYPE_INT, TYPE_BOOL, TYPE_VOID, TYPE_VARIABLE);
+    private static final Map<String, Kind> BY_NODE_NAME = new HashMap<>();
+
+    static {
+        for (Kind k : Kind.values()) {
+            BY_NODE_NAME.put(k.getNodeName(), k);
+        }
+    }
+
     private final String name;
 
     private Kind(String name) {
@@ -53,13 +64,21 @@ public enum Kind {
     }
 
     public static Kind fromString(String kind) {
+        var k = BY_NODE_NAME.get(kind);
 
-        for (Kind k : Kind.values()) {
-            if (k.getNodeName().equals(kind)) {
-                return k;
-            }
+        if (k == null) {
+            throw new RuntimeException("Could not convert string '" + kind + "' to a Kind");
         }
-        throw new RuntimeException("Could not convert string '" + kind + "' to a Kind");
+
+        return k;
+    }
+
+    /**
+     * @param node
+     * @return the kind of the given node
+     */
+    public static Kind of(JmmNode node) {
+        return fromString(node.getKind());
     }
 
     public String getNodeName() {
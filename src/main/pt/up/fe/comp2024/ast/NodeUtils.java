@@ -1,9 +1,12 @@
 package pt.up.fe.comp2024.ast;
 
-import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+import pt.up.fe.comp2024.symboltable.VariableSymbol;
+
+import java.util.Optional;
 
 public class NodeUtils {
 
@@ -26,38 +29,31 @@ public class NodeUtils {
         String line = node.getOptional(attribute).orElse(defaultVal);
         return Boolean.parseBoolean(line);
     }
-    public static String getLocalVariableType(String varRefName, String currentMethod, SymbolTable table){
-        for (int i = 0; i < table.getLocalVariables(currentMethod).size(); i++) {
-            var variable = table.getLocalVariables(currentMethod).get(i);
-            if (variable.getName().equals(varRefName)) {
-                // TODO: Extract this block to a different function?
-                String isArray = variable.getType().isArray() ? "\narray" : "";
-                String isEllipse = variable.getType().getObject("isEllipse", Boolean.class)?"\nellipse":"";
-                return variable.getType().getName() + isArray + isEllipse;
-            }
-        }
-        for (int i = 0; i < table.getParameters(currentMethod).size(); i++) {
-            var variable = table.getParameters(currentMethod).get(i);
-            if (variable.getName().equals(varRefName)) {
-                String isArray = variable.getType().isArray() ? "\narray" : "";
-                String isEllipse = variable.getType().getObject("isEllipse", Boolean.class)?"\nellipse":"";
-                return variable.getType().getName() + isArray + isEllipse;
-            }
+    /**
+     * Resolves a variable name used inside the given method to its local, parameter or field declaration.
+     */
+    public static Optional<VariableSymbol> resolveVariable(String varRefName, String currentMethod, SymbolTable table) {
+        if (table instanceof JmmSymbolTable jmmTable) {
+            return jmmTable.resolveVariable(currentMethod, varRefName);
         }
 
-            for (int i = 0; i < table.getFields().size(); i++) {
-                var variable = table.getFields().get(i);
-                if (variable.getName().equals(varRefName)) {
-                    if(currentMethod.equals("main")){
-                        return null;
-                    }
-                    String isArray = variable.getType().isArray() ? "\narray" : "";
-                    String isEllipse = variable.getType().getObject("isEllipse", Boolean.class)?"\nellipse":"";
-                    return variable.getType().getName() + isArray + isEllipse;
-                }
-            }
-        return "unknown";
+        var scope = JmmSymbolTable.buildScope(
+                table.getLocalVariables(currentMethod),
+                table.getParameters(currentMethod),
+                table.getFields()
+        );
+        return Optional.ofNullable(scope.get(varRefName));
+    }
+
+    public static JmmType getLocalVariableType(String varRefName, String currentMethod, SymbolTable table){
+        var variable = resolveVariable(varRefName, currentMethod, table);
+        if (variable.isEmpty()) return JmmType.UNKNOWN;
+
+        if (variable.get().isField() && currentMethod.equals("main")) {
+            return null;
+        }
 
+        return JmmType.of(variable.get().getType());
     }
 
     // TODO: Maybe move this to symbolTable?
@@ -74,22 +70,7 @@ public class NodeUtils {
 
     // TODO: Maybe annotate tree so it isn't necessary to do this in Ollir
     public static boolean isFieldRef(String varRef, SymbolTable table, String currMethod) {
-        for (Symbol local: table.getLocalVariables(currMethod)) {
-            if (local.getName().equals(varRef))
-                return false;
-        }
-
-        for (Symbol param: table.getParameters(currMethod)) {
-            if (param.getName().equals(varRef))
-                return false;
-        }
-
-        for (Symbol field: table.getFields()) {
-            if (field.getName().equals(varRef))
-                return true;
-        }
-
-        return false;
+        return resolveVariable(varRef, currMethod, table).map(VariableSymbol::isField).orElse(false);
     }
 
     public static JmmNode createLiteral(String value){
@@ -101,14 +82,14 @@ public class NodeUtils {
 
     public static JmmNode createIntegerLiteral(String value){
         JmmNode node = new JmmNodeImpl("IntegerLiteral");
-        node.put("node_type", "int");
+        TypeUtils.setNodeType(node, JmmType.INT);
         node.put("value", value);
         return node;
     }
 
     public static JmmNode createBooleanLiteral(String value){
         JmmNode node = new JmmNodeImpl("BoolLiteral");
-        node.put("node_type", "boolean");
+        TypeUtils.setNodeType(node, JmmType.BOOLEAN);
         node.put("value", value);
         return node;
     }
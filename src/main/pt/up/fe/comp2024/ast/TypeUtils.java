@@ -1,20 +1,15 @@
 package pt.up.fe.comp2024.ast;
 
-import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import pt.up.fe.comp2024.symboltable.VariableSymbol;
 
 import static pt.up.fe.comp2024.ast.Kind.METHOD_DECL;
 import static pt.up.fe.comp2024.ast.Kind.THIS;
 
 public class TypeUtils {
-    private static Pattern  array_pattern = Pattern.compile("([a-zA-Z0-9]+)(\narray)?(\nellipse)?");
+    private static final String NODE_TYPE = "node_type";
     private static final String INT_TYPE_NAME = "int";
     private static final String BOOL_TYPE_NAME = "boolean";
 
@@ -26,6 +21,33 @@ public class TypeUtils {
         return BOOL_TYPE_NAME;
     }
 
+    /**
+     * Gets the type annotated on the node by the semantic analysis.
+     *
+     * @param node
+     * @return
+     */
+    public static JmmType getNodeType(JmmNode node) {
+        var type = node.getObject(NODE_TYPE);
+        if (type instanceof JmmType jmmType) return jmmType;
+
+        // Copied nodes hold the type as its encoding, so intern it again
+        var jmmType = JmmType.parse(type.toString());
+        setNodeType(node, jmmType);
+        return jmmType;
+    }
+
+    public static void setNodeType(JmmNode node, JmmType type) {
+        node.putObject(NODE_TYPE, type);
+    }
+
+    /**
+     * Removes the type annotated on the node, so that getting it fails as on a node that was never annotated.
+     */
+    public static void clearNodeType(JmmNode node) {
+        if (node.hasAttribute(NODE_TYPE)) node.putObject(NODE_TYPE, null);
+    }
+
     /**
      * Gets the {@link Type} of an arbitrary expression.
      *
@@ -36,12 +58,12 @@ public class TypeUtils {
     public static Type getExprType(JmmNode expr, SymbolTable table) {
         // TODO: Simple implementation that needs to be expanded
 
-        var kind = Kind.fromString(expr.getKind());
+        var kind = Kind.of(expr);
 
         Type type = switch (kind) {
             case BINARY_EXPR -> getBinExprType(expr);
             case VAR_REF_EXPR -> getVarExprType(expr, table);
-            case INTEGER_LITERAL -> new Type(INT_TYPE_NAME, false);
+            case INTEGER_LITERAL -> JmmType.INT;
             case METHOD_EXPR -> getMethodExprType(expr, table);
             case ASSIGN_STMT -> getVarExprType(expr, table); // TODO: Erase this when ASSIGN_STMT is annotated
             default -> throw new UnsupportedOperationException("Can't compute type for expression kind '" + kind + "'");
@@ -50,28 +72,28 @@ public class TypeUtils {
         return type;
     }
 
-    public static Type getExprOperands(JmmNode expr, SymbolTable table) {
+    public static JmmType getExprOperands(JmmNode expr, SymbolTable table) {
         // TODO: Simple implementation that needs to be expanded
 
         String operator = expr.get("op");
 
-        Type type = switch (operator) {
-            case "+", "*","-", "/", "<" -> new Type(INT_TYPE_NAME, false);
-            case "&&", "!" -> new Type(BOOL_TYPE_NAME, false);
+        JmmType type = switch (operator) {
+            case "+", "*","-", "/", "<" -> JmmType.INT;
+            case "&&", "!" -> JmmType.BOOLEAN;
             default -> throw new UnsupportedOperationException("Expression does not contain operands");
         };
 
         return type;
     }
 
-    private static Type getBinExprType(JmmNode binaryExpr) {
+    private static JmmType getBinExprType(JmmNode binaryExpr) {
         // TODO: Simple implementation that needs to be expanded
 
         String operator = binaryExpr.get("op");
 
         return switch (operator) {
-            case "+", "*","-", "/" -> new Type(INT_TYPE_NAME, false);
-            case "&&", "<", "!" -> new Type(BOOL_TYPE_NAME, false);
+            case "+", "*","-", "/" -> JmmType.INT;
+            case "&&", "<", "!" -> JmmType.BOOLEAN;
             default ->
                     throw new RuntimeException("Unknown operator '" + operator + "' of expression '" + binaryExpr + "'");
         };
@@ -86,22 +108,9 @@ public class TypeUtils {
         String methodName = methodNode.get("name");
         String varName = varRefExpr.get("name");
 
-        for (Symbol param: table.getParameters(methodName)) {
-            if (param.getName().equals(varName))
-                return param.getType();
-        }
-
-        for (Symbol local: table.getLocalVariables(methodName)) {
-            if (local.getName().equals(varName))
-                return local.getType();
-        }
-
-        for (Symbol field: table.getFields()) {
-            if (field.getName().equals(varName))
-                return field.getType();
-        }
-
-        return null;
+        return NodeUtils.resolveVariable(varName, methodName, table)
+                .map(VariableSymbol::getType)
+                .orElse(null);
     }
 
     private static Type getMethodExprType(JmmNode node, SymbolTable table) {
@@ -121,28 +130,18 @@ public class TypeUtils {
      * @param destinationType
      * @return true if sourceType can be assigned to destinationType
      */
-    public static boolean areTypesAssignable(String sourceType, String destinationType, SymbolTable table) {
-        ArrayList<String> atomicTypes = new ArrayList<>(Arrays.asList("int", "int\narray", "boolean", "boolean\narray"));
-        return sourceType.equals(destinationType)
-                || sourceType.equals("unknown")
-                || (sourceType.equals(table.getClassName()) && destinationType.equals(table.getSuper()))
+    public static boolean areTypesAssignable(JmmType sourceType, JmmType destinationType, SymbolTable table) {
+        return sourceType == destinationType
+                || sourceType == JmmType.UNKNOWN
+                || (sourceType.toString().equals(table.getClassName()) && destinationType.toString().equals(table.getSuper()))
                 || (
-                        table.getImports().contains(sourceType) &&
-                        !atomicTypes.contains(destinationType)
+                        table.getImports().contains(sourceType.toString()) &&
+                        !isAtomic(destinationType)
         );
     }
 
-    public static boolean isEllipse (String type){
-        Matcher matcher = array_pattern.matcher(type);
-        return (matcher.find() && matcher.group(3) != null);
-    }
-    public static boolean isArray (String type){
-        Matcher matcher = array_pattern.matcher(type);
-        return (matcher.find() && matcher.group(2) != null);
-    }
-    public static String  getType( Type a){
-        String isArray = a.isArray()?"\narray":"";
-        return  a.getName() + isArray;
+    private static boolean isAtomic(JmmType type) {
+        return type == JmmType.INT || type == JmmType.INT_ARRAY || type == JmmType.BOOLEAN || type == JmmType.BOOLEAN_ARRAY;
     }
 
     public static JmmNode calc(String left, String right, String op){
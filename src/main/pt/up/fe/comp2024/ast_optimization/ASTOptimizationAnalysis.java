@@ -8,16 +8,21 @@ public class ASTOptimizationAnalysis {
     private ASTOptimizationVisitor optimizationVisitor;
     public ASTOptimizationAnalysis(){
         this.optimizationVisitor = new ASTOptimizationVisitor();
-        this.optimizationVisitor.buildVisitor();
     }
 
-    public void optimize(JmmNode rootNode){
+    /**
+     * @return true if the AST was changed
+     */
+    public boolean optimize(JmmNode rootNode){
         JmmSymbolTableBuilder tableBuilder = new JmmSymbolTableBuilder();
         SymbolTable table = tableBuilder.build(rootNode);
+        boolean changed = false;
         do {
             this.optimizationVisitor.opt= false;
             this.optimizationVisitor.consts.clear();
             this.optimizationVisitor.optimize(rootNode, table);
+            changed |= this.optimizationVisitor.opt;
         }while (this.optimizationVisitor.opt);
+        return changed;
     }
 }
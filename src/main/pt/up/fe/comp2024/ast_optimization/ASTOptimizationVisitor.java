@@ -3,100 +3,112 @@ package pt.up.fe.comp2024.ast_optimization;
 import org.antlr.v4.runtime.misc.Pair;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
-import pt.up.fe.comp.jmm.ast.PreorderJmmVisitor;
+import pt.up.fe.comp2024.ast.AstTraversal;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
 import pt.up.fe.comp2024.ast.TypeUtils;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Propagates the constants assigned to variables within a method and folds the operations on constants, walking the
+ * tree with an explicit stack. Operations are folded after their operands, so a whole constant expression folds in
+ * one walk.
+ */
+public class ASTOptimizationVisitor {
+    private static final Kind[] LITERALS = {Kind.BOOL_LITERAL, Kind.INTEGER_LITERAL};
+    private static final Kind[] BRANCHES = {Kind.IF_STMT, Kind.WHILE_STMT};
 
-public class ASTOptimizationVisitor extends PreorderJmmVisitor<SymbolTable, Void> {
     public Boolean opt = false;
 
     public ArrayList<Pair<String, String>> consts = new ArrayList<>();
 
-    @Override
-    protected void buildVisitor() {
-        //addVisit(Kind.PROGRAM, this::visitProgram);
-        addVisit(Kind.WHILE_STMT, this::visitWhileStm);
-        addVisit(Kind.ASSIGN_STMT, this::constantPropagation);
-        addVisit(Kind.BINARY_EXPR, this::constantFolding);
-        addVisit(Kind.VAR_REF_EXPR, this::replaceVar);
-        setDefaultVisit(this::defaultVisit);
+    // Variables assigned in the if and while statements being walked, innermost on top
+    private final Deque<Set<String>> branchAssigned = new ArrayDeque<>();
+    private SymbolTable table;
+    private String methodName;
+
+    public void optimize(JmmNode root, SymbolTable table){
+        this.table = table;
+        AstTraversal.walk(root, this::enter, this::exit);
     }
 
-    public Void visitWhileStm(JmmNode node, SymbolTable table){
-        var exp = node.getChild(0);
-        var varInExp = new HashSet<String>();
-        var varUsed = new HashSet<String>();
-        if( exp.getKind().equals(Kind.VAR_REF_EXPR.toString()))
-            varInExp.add(exp.get("name"));
-        else
-            exp.getDescendants(Kind.VAR_REF_EXPR).forEach((el)-> varInExp.add(el.get("name")));
-
-        node.getChild(1).getDescendants(Kind.VAR_REF_EXPR).forEach(
-                (el)-> {
-                    if(varInExp.contains(el.get("name")))
-                        varUsed.add(el.get("name"));
-                }
-                );
-        this.consts.removeIf((el) -> varUsed.contains(el.a));
-        return null;
+    private boolean enter(JmmNode node) {
+        // Each branch starts without the values assigned by the others, while the condition comes before them
+        var parent = node.getParent();
+        if (parent != null && Kind.check(parent, BRANCHES) && parent.getChild(0) != node) forgetBranchAssigned();
+
+        if (Kind.METHOD.check(node)) {
+            methodName = node.get("name");
+            consts.clear();
+        }
+        else if (Kind.check(node, BRANCHES)) visitBranchStm(node);
+        else if (Kind.VAR_REF_EXPR.check(node)) replaceVar(node);
+
+        return true;
     }
 
-    public Void constantPropagation(JmmNode node, SymbolTable table) {
-        var literals = new ArrayList<>();
-        literals.add(Kind.BOOL_LITERAL.toString());
-        literals.add(Kind.INTEGER_LITERAL.toString());
+    private void exit(JmmNode node) {
+        if (Kind.ASSIGN_STMT.check(node)) constantPropagation(node);
+        else if (Kind.BINARY_EXPR.check(node)) constantFolding(node);
+        else if (Kind.METHOD_EXPR.check(node)) {
+            // The called method can change the fields
+            consts.removeIf((pair) -> NodeUtils.isFieldRef(pair.a, table, methodName));
+        }
+        else if (Kind.check(node, BRANCHES)) {
+            // Which branch ran is only known when running
+            forgetBranchAssigned();
+            branchAssigned.pop();
+        }
+    }
+
+    public void visitBranchStm(JmmNode node){
+        var assigned = new HashSet<String>();
+        AstTraversal.getDescendants(node, Kind.ASSIGN_STMT).forEach((el) -> assigned.add(el.get("name")));
+        branchAssigned.push(assigned);
+
+        // Variables assigned in a loop can hold other values from the second iteration on
+        if (Kind.WHILE_STMT.check(node)) forgetBranchAssigned();
+    }
+
+    private void forgetBranchAssigned() {
+        var assigned = branchAssigned.peek();
+        this.consts.removeIf((el) -> assigned.contains(el.a));
+    }
+
+    /**
+     * Runs once the assigned expression was optimized.
+     */
+    public void constantPropagation(JmmNode node) {
         var exp = node.getChild(0);
-        visit(exp);
-        if(literals.contains(exp.getKind())){
+
+        // The variable no longer holds the value of an earlier assignment
+        consts.removeIf((pair) -> pair.a.equals(node.get("name")));
+        if(Kind.check(exp, LITERALS)){
             consts.add(new Pair<>(node.get("name"), exp.get("value")));
-        }else{
-            consts.removeIf((pair) -> pair.a.equals(node.get("name")));
         }
-
-        return null;
     }
 
-    public Void constantFolding(JmmNode node, SymbolTable table) {
+    public void constantFolding(JmmNode node) {
         JmmNode left = node.getChild(0);
         JmmNode right = node.getChild(1);
-        var literals = new ArrayList<>();
-        literals.add(Kind.BOOL_LITERAL.toString());
-        literals.add(Kind.INTEGER_LITERAL.toString());
-        if (literals.contains(left.getKind()) && literals.contains(right.getKind())) {
+        if (Kind.check(left, LITERALS) && Kind.check(right, LITERALS)) {
             node.replace(TypeUtils.calc(left.get("value"), right.get("value"), node.get("op")));
             this.opt = true;
         }
-        return null;
-    }
-
-    private Void defaultVisit(JmmNode node, SymbolTable table) {
-        // Ignore nodes that don't need specific handling
-        visitAllChildren(node, table);
-        return null;
-    }
-    public void optimize(JmmNode root, SymbolTable table){
-        visit(root, table);
     }
 
-    public Void replaceVar(JmmNode node, SymbolTable table ){
-        boolean contain = false;
+    public void replaceVar(JmmNode node){
         for (var el : consts){
-            System.out.println(el.a);
-            if(el.a.equals(node.get("name"))){
-                contain = true;
-            }
-            if(contain) {
+            if(el.a.equals(node.get("name"))) {
                 this.opt = true;
                 node.replace(NodeUtils.createLiteral(el.b));
                 break;
             }
         }
-        return null;
     }
 }
-
-
@@ -0,0 +1,206 @@
+package pt.up.fe.comp2024.ast_optimization;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.AstTraversal;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.NodeUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Unrolls while loops whose number of iterations is known at compile time.
+ * <p>
+ * A loop is unrolled when it has the form
+ * <pre>
+ *     i = c0;
+ *     ...
+ *     while (i &lt; N) {
+ *         ...
+ *         i = i + k;
+ *     }
+ * </pre>
+ * where {@code i} is a local variable that is not assigned anywhere else in the body, {@code c0} and {@code k}
+ * are integer literals and {@code N} is either an integer literal or the length of an array created with a
+ * literal size. Loops that become small enough are fully unrolled; the others have their body repeated
+ * {@code factor} times, followed by the remaining iterations. The factor is at most {@link #MAX_FACTOR}, and is
+ * lowered further when the repeated body would have more than {@link #MAX_UNROLLED_SIZE} nodes.
+ */
+public class LoopUnrolling {
+
+    /**
+     * Maximum number of nodes of a fully unrolled loop.
+     */
+    private static final int MAX_UNROLLED_SIZE = 256;
+
+    /**
+     * Maximum number of times the body of a partially unrolled loop is repeated.
+     */
+    public static final int MAX_FACTOR = 8;
+
+    private final int factor;
+
+    public LoopUnrolling(int factor) {
+        this.factor = Math.min(factor, MAX_FACTOR);
+    }
+
+    public boolean unroll(JmmNode root, SymbolTable table) {
+        boolean changed = false;
+
+        // Inner loops come after their outer loops, so they are unrolled first
+        var loops = new ArrayList<>(AstTraversal.getDescendants(root, Kind.WHILE_STMT));
+        for (int i = loops.size() - 1; i >= 0; i--) {
+            changed |= unrollLoop(loops.get(i), table);
+        }
+
+        return changed;
+    }
+
+    private boolean unrollLoop(JmmNode loop, SymbolTable table) {
+        var parent = loop.getParent();
+        if (parent == null || !Kind.check(parent, Kind.SCOPE_STMT, Kind.METHOD)) return false;
+
+        var cond = loop.getChild(0);
+        var body = loop.getChild(1);
+        if (!Kind.BINARY_EXPR.check(cond) || !cond.get("op").equals("<")) return false;
+        if (!Kind.VAR_REF_EXPR.check(cond.getChild(0)) || !Kind.SCOPE_STMT.check(body)) return false;
+
+        var methodName = loop.getAncestor(Kind.METHOD_DECL).map(method -> method.get("name")).orElse(null);
+        var variable = cond.getChild(0).get("name");
+        if (methodName == null || NodeUtils.isFieldRef(variable, table, methodName)) return false;
+
+        var step = getStep(body, variable);
+        var start = getAssignedValue(loop, variable).filter(Kind.INTEGER_LITERAL::check);
+        var end = getBound(loop, cond.getChild(1), table, methodName);
+        if (step.isEmpty() || start.isEmpty() || end.isEmpty()) return false;
+
+        long first = Long.parseLong(start.get().get("value"));
+        long trips = first < end.get() ? (end.get() - first + step.get() - 1) / step.get() : 0;
+        int size = AstTraversal.getDescendants(body).size();
+
+        if (trips * size <= MAX_UNROLLED_SIZE) {
+            insertCopies(loop, body, (int) trips);
+            loop.detach();
+            return true;
+        }
+
+        int factor = Math.min(this.factor, MAX_UNROLLED_SIZE / size);
+        if (factor < 2) return false;
+
+        long unrolledTrips = trips / factor;
+        if (unrolledTrips == 0) return false;
+
+        // The unrolled loop stops before the remaining iterations, which follow it
+        var limit = first + unrolledTrips * factor * step.get();
+        if (limit > Integer.MAX_VALUE) return false;
+
+        cond.getChild(1).replace(NodeUtils.createIntegerLiteral(String.valueOf(limit)));
+        var unrolledBody = body.copyNode();
+        for (int i = 0; i < factor; i++) {
+            body.getChildren().forEach(stmt -> unrolledBody.add(stmt.copy()));
+        }
+        body.replace(unrolledBody);
+
+        var next = loop.getIndexOfSelf() + 1;
+        if (next < parent.getNumChildren()) {
+            insertCopies(parent.getChild(next), body, (int) (trips % factor));
+        } else {
+            for (int i = 0; i < trips % factor; i++) {
+                body.getChildren().forEach(stmt -> parent.add(stmt.copy()));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the increment of the variable if the last statement of the body is 'var = var + k', with
+     * a positive literal k, and the variable is not assigned anywhere else in the body.
+     */
+    private Optional<Long> getStep(JmmNode body, String var) {
+        var stmts = body.getChildren();
+        if (stmts.isEmpty()) return Optional.empty();
+
+        var last = stmts.get(stmts.size() - 1);
+        if (!isAssignTo(last, var)) return Optional.empty();
+
+        for (var stmt : stmts.subList(0, stmts.size() - 1)) {
+            if (assigns(stmt, var)) return Optional.empty();
+        }
+
+        var expr = last.getChild(0);
+        if (!Kind.BINARY_EXPR.check(expr) || !expr.get("op").equals("+")) return Optional.empty();
+
+        JmmNode literal;
+        if (isVarRef(expr.getChild(0), var)) literal = expr.getChild(1);
+        else if (isVarRef(expr.getChild(1), var)) literal = expr.getChild(0);
+        else return Optional.empty();
+
+        if (!Kind.INTEGER_LITERAL.check(literal)) return Optional.empty();
+
+        long step = Long.parseLong(literal.get("value"));
+        return step > 0 ? Optional.of(step) : Optional.empty();
+    }
+
+    /**
+     * Returns the value of the loop bound, which may be a literal or the length of an array created
+     * with a literal size that is not changed inside the loop.
+     */
+    private Optional<Long> getBound(JmmNode loop, JmmNode bound, SymbolTable table, String methodName) {
+        if (Kind.INTEGER_LITERAL.check(bound)) {
+            return Optional.of(Long.parseLong(bound.get("value")));
+        }
+
+        if (!Kind.LENGTH_ATTR_EXPR.check(bound) || !bound.get("name").equals("length")
+                || !Kind.VAR_REF_EXPR.check(bound.getChild(0))) return Optional.empty();
+
+        var array = bound.getChild(0).get("name");
+        if (NodeUtils.isFieldRef(array, table, methodName) || assigns(loop.getChild(1), array)) {
+            return Optional.empty();
+        }
+
+        return getAssignedValue(loop, array)
+                .filter(Kind.NEW_ARRAY_EXPR::check)
+                .map(newArray -> newArray.getChild(0))
+                .filter(Kind.INTEGER_LITERAL::check)
+                .map(size -> Long.parseLong(size.get("value")));
+    }
+
+    /**
+     * Returns the expression last assigned to the variable by the statements before the given one, if that
+     * assignment is a statement of the same block.
+     */
+    private Optional<JmmNode> getAssignedValue(JmmNode stmt, String var) {
+        var parent = stmt.getParent();
+
+        for (int i = stmt.getIndexOfSelf() - 1; i >= 0; i--) {
+            var previous = parent.getChild(i);
+
+            if (isAssignTo(previous, var)) return Optional.of(previous.getChild(0));
+            if (assigns(previous, var)) return Optional.empty();
+        }
+
+        return Optional.empty();
+    }
+
+    private void insertCopies(JmmNode before, JmmNode body, int times) {
+        for (int i = 0; i < times; i++) {
+            body.getChildren().forEach(stmt -> before.insertBefore(stmt.copy()));
+        }
+    }
+
+    private boolean assigns(JmmNode stmt, String var) {
+        return isAssignTo(stmt, var)
+                || AstTraversal.getDescendants(stmt, Kind.ASSIGN_STMT).stream().anyMatch(assign -> isAssignTo(assign, var));
+    }
+
+    private boolean isAssignTo(JmmNode stmt, String var) {
+        return Kind.ASSIGN_STMT.check(stmt) && stmt.get("name").equals(var);
+    }
+
+    private boolean isVarRef(JmmNode expr, String var) {
+        return Kind.VAR_REF_EXPR.check(expr) && expr.get("name").equals(var);
+    }
+}
@@ -0,0 +1,148 @@
+package pt.up.fe.comp2024.backend;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites class files so that their calls to System.exit(int) call {@link ProgramExit#exit(int)} instead.
+ * <p>
+ * Only the constant pool changes: the class of every method reference to System.exit becomes ProgramExit, whose
+ * entries are appended to the pool, so the indexes used by the rest of the class file stay valid.
+ */
+class ExitRedirection {
+
+    private static final String SYSTEM = "java/lang/System";
+    private static final String PROGRAM_EXIT = ProgramExit.class.getName().replace('.', '/');
+
+    private static final int HEADER_SIZE = 10;
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int METHOD_TYPE = 16;
+    private static final int DYNAMIC = 17;
+    private static final int INVOKE_DYNAMIC = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
+
+    private ExitRedirection() {
+    }
+
+    /**
+     * @return the bytes of the class file with the calls to System.exit redirected, or the same bytes if it has none
+     */
+    static byte[] apply(byte[] classFile) {
+        var bytes = ByteBuffer.wrap(classFile);
+        int count = bytes.getShort(HEADER_SIZE - 2) & 0xffff;
+
+        // Offset of the tag of each entry, 0 for the unused slots
+        var offsets = new int[count];
+        int offset = HEADER_SIZE;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = offset;
+
+            int tag = bytes.get(offset);
+            offset += 1 + getSize(tag, bytes, offset);
+
+            // Longs and doubles take two slots
+            if (tag == LONG || tag == DOUBLE) i++;
+        }
+        int poolEnd = offset;
+
+        List<Integer> exitCalls = new ArrayList<>();
+        for (int i = 1; i < count; i++) {
+            if (offsets[i] != 0 && bytes.get(offsets[i]) == METHOD_REF && isExit(bytes, offsets, offsets[i])) {
+                exitCalls.add(offsets[i]);
+            }
+        }
+
+        if (exitCalls.isEmpty()) {
+            return classFile;
+        }
+
+        // New entries: the name of ProgramExit, at index count, and its class, at index count + 1
+        var patched = ByteBuffer.wrap(classFile.clone());
+        for (var exitCall : exitCalls) {
+            patched.putShort(exitCall + 1, (short) (count + 1));
+        }
+        patched.putShort(HEADER_SIZE - 2, (short) (count + 2));
+
+        var redirected = new ByteArrayOutputStream(classFile.length + PROGRAM_EXIT.length() + 6);
+        redirected.write(patched.array(), 0, poolEnd);
+        try {
+            var entries = new DataOutputStream(redirected);
+            entries.writeByte(UTF8);
+            entries.writeUTF(PROGRAM_EXIT);
+            entries.writeByte(CLASS);
+            entries.writeShort(count);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write constant pool entries", e);
+        }
+        redirected.write(classFile, poolEnd, classFile.length - poolEnd);
+
+        return redirected.toByteArray();
+    }
+
+    private static boolean isExit(ByteBuffer bytes, int[] offsets, int methodRef) {
+        int classOffset = offsets[bytes.getShort(methodRef + 1) & 0xffff];
+        int nameAndTypeOffset = offsets[bytes.getShort(methodRef + 3) & 0xffff];
+
+        return isUtf8(bytes, offsets[bytes.getShort(classOffset + 1) & 0xffff], SYSTEM)
+                && isUtf8(bytes, offsets[bytes.getShort(nameAndTypeOffset + 1) & 0xffff], "exit")
+                && isUtf8(bytes, offsets[bytes.getShort(nameAndTypeOffset + 3) & 0xffff], "(I)V");
+    }
+
+    private static boolean isUtf8(ByteBuffer bytes, int offset, String expected) {
+        var expectedBytes = expected.getBytes(StandardCharsets.UTF_8);
+        if ((bytes.getShort(offset + 1) & 0xffff) != expectedBytes.length) return false;
+
+        for (int i = 0; i < expectedBytes.length; i++) {
+            if (bytes.get(offset + 3 + i) != expectedBytes[i]) return false;
+        }
+
+        return true;
+    }
+
+    private static int getSize(int tag, ByteBuffer bytes, int offset) {
+        switch (tag) {
+            case UTF8:
+                return 2 + (bytes.getShort(offset + 1) & 0xffff);
+            case CLASS:
+            case STRING:
+            case METHOD_TYPE:
+            case MODULE:
+            case PACKAGE:
+                return 2;
+            case METHOD_HANDLE:
+                return 3;
+            case INTEGER:
+            case FLOAT:
+            case FIELD_REF:
+            case METHOD_REF:
+            case INTERFACE_METHOD_REF:
+            case NAME_AND_TYPE:
+            case DYNAMIC:
+            case INVOKE_DYNAMIC:
+                return 4;
+            case LONG:
+            case DOUBLE:
+                return 8;
+            default:
+                throw new RuntimeException("Unknown constant pool tag " + tag + " at offset " + offset);
+        }
+    }
+}
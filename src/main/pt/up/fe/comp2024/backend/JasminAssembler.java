@@ -0,0 +1,65 @@
+package pt.up.fe.comp2024.backend;
+
+import jas.jasError;
+import jasmin.ClassFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+/**
+ * Assembles Jasmin code into the bytes of a class file, without going through the file system.
+ */
+public class JasminAssembler {
+
+    private JasminAssembler() {
+    }
+
+    /**
+     * @param jasminCode the Jasmin code of a single class
+     * @return the name of the class, in binary form (e.g., foo.bar.A), and the bytes of its class file
+     */
+    public static AssembledClass assemble(String jasminCode) {
+        var classFile = new ClassFile();
+
+        try {
+            classFile.readJasmin(new StringReader(jasminCode), "jasmin", true);
+        } catch (jasError e) {
+            throw new RuntimeException("JAS Error: " + e.getMessage() + "\nCode: " + jasminCode, e);
+        } catch (Exception e) {
+            throw new RuntimeException("Exception while assembling Jasmin code: " + e.getMessage()
+                    + "\nCode: " + jasminCode, e);
+        }
+
+        if (classFile.errorCount() > 0) {
+            throw new RuntimeException("Found " + classFile.errorCount() + " errors while compiling Jasmin code.");
+        }
+
+        var bytes = new ByteArrayOutputStream();
+        try {
+            classFile.write(bytes);
+        } catch (Exception e) {
+            throw new RuntimeException("Could not write class file of Jasmin code: " + e.getMessage(), e);
+        }
+
+        return new AssembledClass(classFile.getClassName().replace('/', '.'), bytes.toByteArray());
+    }
+
+    public static class AssembledClass {
+
+        private final String name;
+        private final byte[] bytecode;
+
+        private AssembledClass(String name, byte[] bytecode) {
+            this.name = name;
+            this.bytecode = bytecode;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public byte[] getBytecode() {
+            return bytecode;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package pt.up.fe.comp2024.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads classes assembled in memory, next to the classes of a classpath.
+ * <p>
+ * By default its parent is the platform class loader, so loaded programs only see the Java platform, the classpath
+ * given here and each other, and never the classes of the compiler. Every instance has its own copy of the static
+ * state of the classes it loads, e.g., the input buffer of the io library.
+ * <p>
+ * Calls to System.exit in the classes it loads, assembled or from the classpath, throw a {@link ProgramExit} instead
+ * of ending the JVM.
+ */
+public class JasminClassLoader extends URLClassLoader {
+
+    private final Map<String, byte[]> assembledClasses;
+
+    public JasminClassLoader(List<String> classpath) {
+        this(classpath, ClassLoader.getPlatformClassLoader());
+    }
+
+    /**
+     * @param parent class loader of the classes, besides the classpath, that loaded programs can use
+     */
+    public JasminClassLoader(List<String> classpath, ClassLoader parent) {
+        super(toUrls(classpath), parent);
+        this.assembledClasses = new HashMap<>();
+    }
+
+    /**
+     * Assembles the Jasmin code of a class and loads it.
+     */
+    public Class<?> define(String jasminCode) {
+        var assembledClass = JasminAssembler.assemble(jasminCode);
+        return define(assembledClass.getName(), assembledClass.getBytecode());
+    }
+
+    /**
+     * Loads a class from the bytes of its class file.
+     *
+     * @param name the binary name of the class
+     */
+    public Class<?> define(String name, byte[] bytecode) {
+        synchronized (assembledClasses) {
+            assembledClasses.put(name, bytecode);
+        }
+
+        try {
+            return loadClass(name);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("Could not load class '" + name + "'", e);
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytecode;
+        synchronized (assembledClasses) {
+            bytecode = assembledClasses.remove(name);
+        }
+
+        if (bytecode == null) {
+            bytecode = readClassFile(name);
+        }
+
+        bytecode = ExitRedirection.apply(bytecode);
+        return defineClass(name, bytecode, 0, bytecode.length);
+    }
+
+    private byte[] readClassFile(String name) throws ClassNotFoundException {
+        var path = name.replace('.', '/') + ".class";
+
+        // The classes redirected to ProgramExit must find it, even if the parent does not have it
+        var resource = name.equals(ProgramExit.class.getName())
+                ? ProgramExit.class.getClassLoader().getResource(path)
+                : findResource(path);
+
+        if (resource == null) {
+            throw new ClassNotFoundException(name);
+        }
+
+        try (var stream = resource.openStream()) {
+            return stream.readAllBytes();
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    private static URL[] toUrls(List<String> classpath) {
+        var urls = new URL[classpath.size()];
+
+        for (int i = 0; i < urls.length; i++) {
+            try {
+                urls[i] = new File(classpath.get(i)).toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new RuntimeException("Invalid classpath element '" + classpath.get(i) + "'", e);
+            }
+        }
+
+        return urls;
+    }
+}
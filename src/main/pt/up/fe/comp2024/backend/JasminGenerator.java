@@ -4,9 +4,10 @@ import org.specs.comp.ollir.*;
 import org.specs.comp.ollir.tree.TreeNode;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.optimization.PassManager;
+import pt.up.fe.specs.util.SpecsCollections;
 import pt.up.fe.specs.util.classmap.FunctionClassMap;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
-import pt.up.fe.specs.util.utilities.StringLines;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -36,15 +37,22 @@ public class JasminGenerator {
     int maxStack;
     int currentStack;
 
+    // Lines of the method being generated, reused by every method
+    private final List<String> lines;
+
     private final FunctionClassMap<TreeNode, String> generators;
 
+    private final PassManager passes;
+
 
     public JasminGenerator(OllirResult ollirResult) {
         this.ollirResult = ollirResult;
 
         reports = new ArrayList<>();
+        passes = PassManager.of(ollirResult.getConfig());
         code = null;
         currentMethod = null;
+        lines = new ArrayList<>();
 
         classPathMap = new HashMap<>();
         for (String importEntry : ollirResult.getOllirClass().getImports()) {
@@ -71,8 +79,11 @@ public class JasminGenerator {
         generators.put(GotoInstruction.class, this::generateGoto);
     }
 
+    /**
+     * @return the reports of the code generated so far, followed by the statistics of the passes that optimized it
+     */
     public List<Report> getReports() {
-        return reports;
+        return SpecsCollections.concat(reports, passes.getReports());
     }
 
     public String build() {
@@ -86,8 +97,48 @@ public class JasminGenerator {
     }
 
 
+    /**
+     * Generates the code of the class up to its methods, which are generated by {@link #buildMethods()}.
+     */
+    public String buildHeader() {
+        return generateHeader(ollirResult.getOllirClass());
+    }
+
+    /**
+     * @return the code of each method of the class, except the constructor, by method name and in the order of the
+     * class
+     */
+    public Map<String, String> buildMethods() {
+        var methods = new LinkedHashMap<String, String>();
+
+        for (var method : ollirResult.getOllirClass().getMethods()) {
+
+            // Ignore constructor, since there is always one constructor
+            // that receives no arguments, and is part of the header
+            if (method.isConstructMethod()) {
+                continue;
+            }
+
+            methods.put(method.getMethodName(), generators.apply(method));
+        }
+
+        return methods;
+    }
+
     private String generateClassUnit(ClassUnit classUnit) {
 
+        var code = new StringBuilder(generateHeader(classUnit));
+
+        // generate code for all other methods
+        for (var methodCode : buildMethods().values()) {
+            code.append(methodCode);
+        }
+
+        return code.toString();
+    }
+
+    private String generateHeader(ClassUnit classUnit) {
+
         var code = new StringBuilder();
 
         // generate class name
@@ -136,21 +187,6 @@ public class JasminGenerator {
 
         code.append(defaultConstructor);
 
-
-        // generate code for all other methods
-        for (var method : ollirResult.getOllirClass().getMethods()) {
-
-            // Ignore constructor, since there is always one constructor
-            // that receives no arguments, and has been already added
-            // previously
-            if (method.isConstructMethod()) {
-                continue;
-            }
-
-            code.append(generators.apply(method));
-        }
-        System.out.println(" JASMIN CODE: ");
-        System.out.println(code);
         return code.toString();
     }
 
@@ -200,18 +236,19 @@ public class JasminGenerator {
         maxStack = 0;
         currentStack = 0;
 
-        StringBuilder instructionsCode = new StringBuilder();
+        // Labels added while generating mark instructions already generated, so they can be found beforehand
+        var labels = new IdentityHashMap<Instruction, List<String>>();
+        for (var label : getLabels(method).entrySet()) {
+            labels.computeIfAbsent(label.getValue(), inst -> new ArrayList<>()).add(label.getKey());
+        }
 
+        lines.clear();
         for (var inst : method.getInstructions()) {
 
-            for (Map.Entry<String, Instruction> label : currentMethod.getLabels().entrySet())
-                if (label.getValue().equals(inst))
-                    instructionsCode.append(label.getKey()).append(":").append(NL);
-
-            var instCode = StringLines.getLines(generators.apply(inst)).stream()
-                    .collect(Collectors.joining(NL + TAB, TAB, NL));
+            for (var label : labels.getOrDefault(inst, List.of()))
+                lines.add(label + ":");
 
-            instructionsCode.append(instCode);
+            addIndented(generators.apply(inst));
         }
 
         code.append(TAB).append(".limit stack ").append(maxStack).append(NL);
@@ -234,7 +271,8 @@ public class JasminGenerator {
         code.append(TAB).append(".limit locals ").append(l).append(NL);
 
 
-        code.append(instructionsCode);
+        passes.run(PassManager.JASMIN, lines);
+        lines.forEach(instruction -> code.append(instruction).append(NL));
 
         code.append(".end method\n");
 
@@ -245,6 +283,29 @@ public class JasminGenerator {
     }
 
 
+    /**
+     * @return the labels of the method by name, which are read once per method to place them before their
+     * instructions
+     */
+    protected Map<String, Instruction> getLabels(Method method) {
+        return method.getLabels();
+    }
+
+    /**
+     * Adds each line of the code of an instruction to the lines of the method, indented.
+     */
+    private void addIndented(String instructionCode) {
+        int start = 0;
+        while (start < instructionCode.length()) {
+            int end = instructionCode.indexOf(NL, start);
+            if (end == -1) end = instructionCode.length();
+
+            lines.add(TAB + instructionCode.substring(start, end));
+
+            start = end + NL.length();
+        }
+    }
+
     private String getType(Type type) {
         ElementType elementType = type.getTypeOfElement();
         return switch (elementType) {
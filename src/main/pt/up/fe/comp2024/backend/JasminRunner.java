@@ -0,0 +1,308 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.specs.util.system.ProcessOutputAsString;
+import pt.up.fe.specs.util.utilities.StringLines;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Runs the main method of compiled Jasmin code in the current JVM.
+ * <p>
+ * Does the same as {@link JasminResult#runWithFullOutput(List, List, String)}, without writing class files or
+ * starting a java process: the code is assembled in memory and loaded by a new {@link JasminClassLoader}, so each run
+ * starts from fresh static state. The standard streams are global, so runs that overlap wait for each other.
+ * <p>
+ * Each program runs in its own thread group. A call to System.exit ends the program with that exit value, and a
+ * program that does not finish in time is stopped; if it cannot be stopped, later runs fail until it ends.
+ */
+public class JasminRunner {
+
+    private static final long TIMEOUT_MILLIS = 5_000;
+    private static final long STOP_MILLIS = 1_000;
+    private static final String NEW_LINE = System.getProperty("line.separator");
+
+    // Guards the replacement of System.in, System.out and System.err
+    private static final Object STANDARD_STREAMS_LOCK = new Object();
+
+    // Threads of programs that did not finish in time and could not be stopped
+    private static final List<Thread> LEAKED_THREADS = new ArrayList<>();
+
+    private JasminRunner() {
+    }
+
+    public static ProcessOutputAsString run(JasminResult jasminResult) {
+        return run(jasminResult, Collections.emptyList(), null);
+    }
+
+    public static ProcessOutputAsString run(JasminResult jasminResult, String input) {
+        return run(jasminResult, Collections.emptyList(), input);
+    }
+
+    public static ProcessOutputAsString run(JasminResult jasminResult, List<String> args, String input) {
+        return run(jasminResult.getJasminCode(), args, List.of(TestUtils.getLibsClasspath()), input);
+    }
+
+    /**
+     * Assembles and runs Jasmin code.
+     *
+     * @param args      arguments for the main method
+     * @param classpath paths where the classes used by the program are
+     * @param input     what the program reads from the standard input, or null
+     * @return what the program printed and its exit value: 0, the value given to System.exit, 1 if main threw or -1 if
+     * it did not finish in time
+     */
+    public static ProcessOutputAsString run(String jasminCode, List<String> args, List<String> classpath,
+                                            String input) {
+        var assembledClass = JasminAssembler.assemble(jasminCode);
+
+        try (var classLoader = new JasminClassLoader(classpath)) {
+            return run(classLoader, assembledClass, args, input);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not close class loader", e);
+        }
+    }
+
+    private static ProcessOutputAsString run(JasminClassLoader classLoader,
+                                             JasminAssembler.AssembledClass assembledClass, List<String> args,
+                                             String input) {
+        checkLeakedThreads(assembledClass.getName());
+
+        var stdout = new ByteArrayOutputStream();
+        var stderr = new ByteArrayOutputStream();
+        int[] returnValue = {0};
+        var timedOut = new AtomicBoolean(false);
+
+        var group = new ThreadGroup("jasmin-" + assembledClass.getName());
+        var program = new Thread(group, () -> {
+            try {
+                var mainClass = classLoader.define(assembledClass.getName(), assembledClass.getBytecode());
+                var main = mainClass.getMethod("main", String[].class);
+                main.invoke(null, (Object) args.toArray(new String[0]));
+            } catch (InvocationTargetException e) {
+                end(e.getCause(), timedOut, returnValue,
+                        () -> "Exception in thread \"main\" " + getStackTrace(e.getCause()));
+            } catch (Throwable e) {
+                end(e, timedOut, returnValue, () -> "Error: could not run main of class "
+                        + assembledClass.getName() + ": " + getStackTrace(e));
+            }
+        }, "main");
+        program.setDaemon(true);
+        program.setContextClassLoader(classLoader);
+
+        synchronized (STANDARD_STREAMS_LOCK) {
+            var systemIn = System.in;
+            var systemOut = System.out;
+            var systemErr = System.err;
+
+            System.setIn(new LineInputStream(input == null ? "" : input));
+            System.setOut(new PrintStream(stdout, true));
+            System.setErr(new PrintStream(stderr, true));
+
+            List<Thread> leaked = Collections.emptyList();
+            try {
+                program.start();
+                program.join(TIMEOUT_MILLIS);
+
+                if (program.isAlive()) {
+                    timedOut.set(true);
+                    returnValue[0] = -1;
+                    leaked = stop(group);
+                    System.err.println("Program did not finish after " + TIMEOUT_MILLIS + " ms"
+                            + (leaked.isEmpty() ? "" : " and could not be stopped"));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                timedOut.set(true);
+                leaked = stop(group);
+                throw new RuntimeException("Interrupted while running " + assembledClass.getName(), e);
+            } finally {
+                System.out.flush();
+                System.err.flush();
+
+                System.setIn(systemIn);
+                if (leaked.isEmpty()) {
+                    System.setOut(systemOut);
+                    System.setErr(systemErr);
+                } else {
+                    // What the threads that are still running print is dropped
+                    System.setOut(ignoring(group, systemOut));
+                    System.setErr(ignoring(group, systemErr));
+
+                    synchronized (LEAKED_THREADS) {
+                        LEAKED_THREADS.addAll(leaked);
+                    }
+                }
+            }
+        }
+
+        // Same lines, and line endings, as the output read from a java process
+        var out = normalize(stdout);
+        var err = normalize(stderr);
+        System.out.print(out);
+        System.err.print(err);
+
+        return new ProcessOutputAsString(returnValue[0], out, err);
+    }
+
+    /**
+     * Sets the exit value for a program that threw, and prints the error unless it was a call to System.exit or the
+     * program was stopped for taking too long.
+     */
+    private static void end(Throwable throwable, AtomicBoolean timedOut, int[] returnValue,
+                            Supplier<String> error) {
+        if (timedOut.get()) {
+            return;
+        }
+
+        var exitStatus = ProgramExit.getStatus(throwable);
+        if (exitStatus.isPresent()) {
+            returnValue[0] = exitStatus.getAsInt();
+            return;
+        }
+
+        returnValue[0] = 1;
+        System.err.println(error.get());
+    }
+
+    /**
+     * Stops every thread of a program.
+     *
+     * @return the threads that are still running
+     */
+    @SuppressWarnings({"deprecation", "removal"})
+    private static List<Thread> stop(ThreadGroup group) {
+        var threads = new Thread[group.activeCount() + 1];
+        int count = group.enumerate(threads);
+
+        for (int i = 0; i < count; i++) {
+            threads[i].interrupt();
+            try {
+                threads[i].stop();
+            } catch (UnsupportedOperationException e) {
+                // Newer JDKs can only interrupt threads
+            }
+        }
+
+        var running = new ArrayList<Thread>();
+        for (int i = 0; i < count; i++) {
+            try {
+                threads[i].join(STOP_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (threads[i].isAlive()) {
+                running.add(threads[i]);
+            }
+        }
+
+        return running;
+    }
+
+    /**
+     * Refuses to run programs while one that could not be stopped is still running, since it would be using the same
+     * standard streams.
+     */
+    private static void checkLeakedThreads(String className) {
+        synchronized (LEAKED_THREADS) {
+            LEAKED_THREADS.removeIf(thread -> !thread.isAlive());
+
+            if (!LEAKED_THREADS.isEmpty()) {
+                throw new IllegalStateException("Could not run " + className
+                        + ", programs of earlier runs are still running in threads " + LEAKED_THREADS);
+            }
+        }
+    }
+
+    private static PrintStream ignoring(ThreadGroup group, PrintStream stream) {
+        return new PrintStream(new FilterOutputStream(stream) {
+            @Override
+            public void write(int b) throws IOException {
+                if (!group.parentOf(Thread.currentThread().getThreadGroup())) out.write(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                if (!group.parentOf(Thread.currentThread().getThreadGroup())) out.write(bytes, offset, length);
+            }
+        }, true);
+    }
+
+    private static String normalize(ByteArrayOutputStream output) {
+        var normalized = new StringBuilder();
+        for (var line : StringLines.getLines(output.toString(Charset.defaultCharset()))) {
+            normalized.append(line).append(NEW_LINE);
+        }
+
+        return normalized.toString();
+    }
+
+    private static String getStackTrace(Throwable throwable) {
+        var stackTrace = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(stackTrace));
+        return stackTrace.toString();
+    }
+
+    /**
+     * Gives the input one line at a time, as if it was being typed.
+     * <p>
+     * The io library creates a new reader over System.in on every read, so a stream that gave all its bytes at once
+     * would have the first reader buffer the lines meant for the next ones.
+     */
+    private static class LineInputStream extends InputStream {
+
+        private final byte[] bytes;
+        private int position;
+
+        private LineInputStream(String input) {
+            var lines = new StringBuilder();
+            for (var line : StringLines.getLines(input)) {
+                lines.append(line).append('\n');
+            }
+
+            this.bytes = lines.toString().getBytes(Charset.defaultCharset());
+            this.position = 0;
+        }
+
+        @Override
+        public synchronized int read() {
+            return position < bytes.length ? bytes[position++] & 0xff : -1;
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) {
+            if (length == 0) return 0;
+            if (position >= bytes.length) return -1;
+
+            int read = 0;
+            while (read < length && position < bytes.length) {
+                byte b = bytes[position++];
+                buffer[offset + read++] = b;
+
+                if (b == '\n') break;
+            }
+
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package pt.up.fe.comp2024.backend;
+
+import java.util.OptionalInt;
+
+/**
+ * Ends a program loaded by a {@link JasminClassLoader} when it calls System.exit, instead of the whole JVM.
+ * <p>
+ * The class loader points the calls to System.exit in the classes it loads to {@link #exit(int)}, and, unless its
+ * parent already has it, loads its own copy of this class. Use {@link #getStatus(Throwable)} to recognize the copies
+ * of every class loader.
+ */
+public class ProgramExit extends Error {
+
+    private static final String MESSAGE = "Program exited with status ";
+
+    private final int status;
+
+    public ProgramExit(int status) {
+        super(MESSAGE + status, null, false, false);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Called instead of System.exit.
+     */
+    public static void exit(int status) {
+        throw new ProgramExit(status);
+    }
+
+    /**
+     * @return the exit status, if the throwable is a ProgramExit loaded by any class loader
+     */
+    public static OptionalInt getStatus(Throwable throwable) {
+        if (throwable instanceof ProgramExit) {
+            return OptionalInt.of(((ProgramExit) throwable).getStatus());
+        }
+
+        if (throwable.getClass().getName().equals(ProgramExit.class.getName())) {
+            return OptionalInt.of(Integer.parseInt(throwable.getMessage().substring(MESSAGE.length())));
+        }
+
+        return OptionalInt.empty();
+    }
+}
@@ -0,0 +1,70 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp2024.optimization.Pass;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Removes jumps to the instruction that follows them, such as the jump over an empty else branch.
+ * <p>
+ * Works on the code of a method, one line per element, as generated by {@link JasminGenerator}.
+ */
+public class RedundantJumpElimination implements Pass<List<String>> {
+
+    private static final String GOTO = "goto ";
+
+    @Override
+    public boolean optimize(List<String> code) {
+        // Walk the code backwards, keeping the lines in reverse, so a removed jump lets the one before it be removed
+        var kept = new ArrayList<String>(code.size());
+        // Labels right after the current line, which all mark the next instruction
+        var labels = new HashSet<String>();
+
+        for (int i = code.size() - 1; i >= 0; i--) {
+            var line = code.get(i).strip();
+
+            if (isLabel(line)) {
+                labels.add(line.substring(0, line.length() - 1));
+            } else if (line.startsWith(GOTO) && labels.contains(line.substring(GOTO.length()).strip())) {
+                continue;
+            } else if (!labels.isEmpty()) {
+                labels = new HashSet<>();
+            }
+
+            kept.add(code.get(i));
+        }
+
+        if (kept.size() == code.size()) return false;
+
+        Collections.reverse(kept);
+        code.clear();
+        code.addAll(kept);
+
+        return true;
+    }
+
+    /**
+     * @return the number of lines of the code that are instructions, rather than labels, directives or comments
+     */
+    public static int countInstructions(List<String> code) {
+        int count = 0;
+
+        for (var line : code) {
+            var stripped = line.strip();
+            if (stripped.isEmpty() || isLabel(stripped) || stripped.startsWith(".") || stripped.startsWith(";")) {
+                continue;
+            }
+
+            count++;
+        }
+
+        return count;
+    }
+
+    private static boolean isLabel(String line) {
+        return line.strip().endsWith(":");
+    }
+}
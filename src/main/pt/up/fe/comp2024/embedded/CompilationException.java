@@ -0,0 +1,33 @@
+package pt.up.fe.comp2024.embedded;
+
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Thrown when Java-- source given to an {@link EmbeddedCompiler} does not compile.
+ */
+public class CompilationException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Report> reports;
+
+    public CompilationException(List<Report> reports) {
+        super("Could not compile Java-- code:\n" + reports.stream()
+                .filter(report -> report.getType() == ReportType.ERROR)
+                .map(Report::toString)
+                .collect(Collectors.joining("\n")));
+
+        this.reports = reports;
+    }
+
+    /**
+     * @return the reports of all stages that ran, including the errors
+     */
+    public List<Report> getReports() {
+        return reports;
+    }
+}
@@ -0,0 +1,168 @@
+package pt.up.fe.comp2024.embedded;
+
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.CompilerPipeline;
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.backend.JasminClassLoader;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.parser.ParserPool;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles Java-- source code into loaded classes, without touching the file system.
+ * <p>
+ * The source goes through the same {@link CompilerPipeline} as in the {@link pt.up.fe.comp2024.Launcher}, and the
+ * generated Jasmin is assembled in memory and loaded by its own {@link JasminClassLoader}. Compiled classes are kept in
+ * a cache, by hash of their source, that holds up to a given number of classes and drops the least recently used one
+ * when full.
+ * <p>
+ * Instances can be shared by several threads.
+ */
+public class EmbeddedCompiler {
+
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final Map<String, String> config;
+    private final List<String> classpath;
+    private final ClassLoader parent;
+    private final Map<String, Class<?>> cache;
+
+    /**
+     * Compiles without optimizations, so straight from the AST to Jasmin.
+     *
+     * @param classpath paths of the classes compiled code can import
+     */
+    public EmbeddedCompiler(List<String> classpath) {
+        this(new HashMap<>(), classpath, ClassLoader.getPlatformClassLoader(), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param config    compiler options, as returned by {@link pt.up.fe.comp2024.CompilerConfig#parseArgs(String[])}
+     * @param classpath paths of the classes compiled code can import
+     * @param parent    class loader of the other classes compiled code can import, e.g., the classes of the service
+     * @param cacheSize maximum number of compiled classes that are kept
+     */
+    public EmbeddedCompiler(Map<String, String> config, List<String> classpath, ClassLoader parent, int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative, got " + cacheSize);
+        }
+
+        this.config = new HashMap<>(config);
+        this.classpath = List.copyOf(classpath);
+        this.parent = parent;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        // Fill the parser DFA cache once, before the many compilations that follow
+        ParserPool.prewarm();
+    }
+
+    /**
+     * Compiles a class, or returns the class already compiled from the same source.
+     *
+     * @throws CompilationException if the source has errors
+     */
+    public Class<?> compile(String source) {
+        var key = hash(source);
+
+        synchronized (cache) {
+            var compiledClass = cache.get(key);
+            if (compiledClass != null) return compiledClass;
+        }
+
+        // Compiling takes much longer than a lookup, so other threads are not kept waiting on it
+        var compiledClass = load(source);
+
+        synchronized (cache) {
+            var previous = cache.putIfAbsent(key, compiledClass);
+            return previous != null ? previous : compiledClass;
+        }
+    }
+
+    /**
+     * Compiles a class and returns one of its methods. Java-- has no overloading, so the name identifies the method.
+     * <p>
+     * The handle of an instance method takes the receiver as its first argument.
+     *
+     * @throws CompilationException if the source has errors
+     */
+    public MethodHandle getMethodHandle(String source, String methodName) {
+        var compiledClass = compile(source);
+
+        Method method = null;
+        for (var declaredMethod : compiledClass.getDeclaredMethods()) {
+            if (declaredMethod.getName().equals(methodName)) {
+                method = declaredMethod;
+                break;
+            }
+        }
+
+        if (method == null) {
+            throw new RuntimeException("Could not find method '" + methodName + "' in class "
+                    + compiledClass.getName());
+        }
+
+        // Methods without 'public' are package-private in the class file
+        method.setAccessible(true);
+
+        try {
+            return MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Could not access method '" + methodName + "'", e);
+        }
+    }
+
+    /**
+     * @return the number of compiled classes in the cache
+     */
+    public int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private Class<?> load(String source) {
+        var parserResult = new JmmParserImpl().parse(source, config);
+        checkErrors(parserResult.getReports());
+
+        var semanticsResult = new JmmAnalysisImpl().semanticAnalysis(parserResult);
+        checkErrors(semanticsResult.getReports());
+
+        var result = new CompilerPipeline().compile(semanticsResult);
+        checkErrors(result.getReports());
+
+        return new JasminClassLoader(classpath, parent).define(result.getJasminResult().getJasminCode());
+    }
+
+    private static void checkErrors(List<Report> reports) {
+        if (CompilerPipeline.hasErrors(reports)) {
+            throw new CompilationException(reports);
+        }
+    }
+
+    private static String hash(String source) {
+        try {
+            var digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Could not find digest algorithm " + HASH_ALGORITHM, e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package pt.up.fe.comp2024.incremental;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.CompilerPipeline;
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.ast.AstTraversal;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.optimization.OllirGeneratorVisitor;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles successive versions of the same class, reusing the code of the methods that did not change.
+ * <p>
+ * Each method gets a {@link MethodFingerprint}. Methods whose fingerprint was already compiled are left out of the
+ * semantic analysis and of the OLLIR and Jasmin generation, and their code from the previous compilation is put back
+ * in the class. Only methods that compiled without errors are kept, so reused methods never have reports.
+ * <p>
+ * The OLLIR optimizations and the register allocation look at all methods of the class at once, so when they are
+ * enabled every method is compiled again.
+ */
+public class IncrementalCompiler {
+
+    private final JmmAnalysisImpl analysis;
+    private final CompilerPipeline pipeline;
+
+    // Code of the methods of the last compilation, by fingerprint
+    private Map<String, MethodCode> methods;
+
+    public IncrementalCompiler() {
+        this.analysis = new JmmAnalysisImpl();
+        this.pipeline = new CompilerPipeline();
+        this.methods = new HashMap<>();
+    }
+
+    /**
+     * Compiles the class of a parsed file.
+     */
+    public IncrementalResult compile(JmmParserResult parserResult) {
+        if (hasErrors(parserResult.getReports())) {
+            return IncrementalResult.newError(parserResult.getReports());
+        }
+
+        var config = parserResult.getConfig();
+        boolean reuse = canReuse(config);
+
+        // Fingerprints are taken while the analysis reaches each method, with the new symbol table
+        var fingerprints = new IdentityHashMap<JmmNode, String>();
+        var semanticsResult = analysis.semanticAnalysis(parserResult, (method, table) -> {
+            var fingerprint = MethodFingerprint.of(method, table, config);
+            fingerprints.put(method, fingerprint);
+            return !reuse || !methods.containsKey(fingerprint);
+        });
+
+        if (hasErrors(semanticsResult.getReports())) {
+            return IncrementalResult.newError(semanticsResult.getReports());
+        }
+
+        var methodNodes = AstTraversal.getDescendants(semanticsResult.getRootNode(), Kind.METHOD);
+        var reused = new IdentityHashMap<JmmNode, MethodCode>();
+        for (var method : methodNodes) {
+            var code = reuse ? methods.get(fingerprints.get(method)) : null;
+            if (code != null) reused.put(method, code);
+        }
+
+        // Only the methods that changed go to the OLLIR that is parsed, optimized and turned into Jasmin
+        var generator = new OllirGeneratorVisitor(semanticsResult.getSymbolTable());
+        var ollirMethods = new IdentityHashMap<JmmNode, String>();
+        generator.setMethodCode(method -> {
+            if (reused.containsKey(method)) return "";
+
+            var code = generator.visit(method);
+            ollirMethods.put(method, code);
+            return code;
+        });
+
+        var result = pipeline.compile(semanticsResult, generator);
+        if (result.hasErrors()) {
+            return IncrementalResult.newError(result.getReports());
+        }
+
+        var jasminMethods = result.getJasminMethods();
+        var reports = result.getReports();
+
+        // Put the class back together, with the methods in the order of the source
+        var compiled = new HashMap<String, MethodCode>();
+        var jasminCode = new StringBuilder(result.getJasminHeader());
+        for (var method : methodNodes) {
+            var code = reused.get(method);
+            if (code == null) {
+                code = new MethodCode(ollirMethods.get(method), jasminMethods.get(method.get("name")));
+            }
+
+            compiled.put(fingerprints.get(method), code);
+            jasminCode.append(code.jasmin);
+        }
+
+        // Followed by the methods the optimizations added, which are not in the source
+        var sourceNames = new HashSet<String>();
+        methodNodes.forEach(method -> sourceNames.add(method.get("name")));
+        jasminMethods.forEach((name, code) -> {
+            if (!sourceNames.contains(name)) jasminCode.append(code);
+        });
+
+        generator.setMethodCode(method -> compiled.get(fingerprints.get(method)).ollir);
+        var ollirCode = generator.visit(semanticsResult.getRootNode());
+
+        // Methods that are no longer in the class are dropped
+        methods = compiled;
+
+        var className = result.getOllirResult().getOllirClass().getClassName();
+        var jasminResult = new JasminResult(className, jasminCode.toString(), reports, config);
+
+        return new IncrementalResult(reports, ollirCode, jasminResult, methodNodes.size() - reused.size(),
+                reused.size());
+    }
+
+    /**
+     * Methods are reused when the pipeline would not optimize the code, since the optimizations look at the whole
+     * class. Even then, the code goes through OLLIR, to get the Jasmin of each method.
+     */
+    private static boolean canReuse(Map<String, String> config) {
+        return CompilerPipeline.isDirect(config);
+    }
+
+    private static boolean hasErrors(List<Report> reports) {
+        return CompilerPipeline.hasErrors(reports);
+    }
+
+    /**
+     * The OLLIR and Jasmin code generated for a method.
+     */
+    private static class MethodCode {
+
+        private final String ollir;
+        private final String jasmin;
+
+        private MethodCode(String ollir, String jasmin) {
+            this.ollir = ollir;
+            this.jasmin = jasmin;
+        }
+    }
+}
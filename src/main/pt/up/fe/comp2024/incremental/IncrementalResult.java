@@ -0,0 +1,71 @@
+package pt.up.fe.comp2024.incremental;
+
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+
+import java.util.List;
+
+/**
+ * Result of compiling a class with an {@link IncrementalCompiler}.
+ */
+public class IncrementalResult {
+
+    private final List<Report> reports;
+    private final String ollirCode;
+    private final JasminResult jasminResult;
+    private final int compiledMethods;
+    private final int reusedMethods;
+
+    IncrementalResult(List<Report> reports, String ollirCode, JasminResult jasminResult, int compiledMethods,
+                      int reusedMethods) {
+        this.reports = reports;
+        this.ollirCode = ollirCode;
+        this.jasminResult = jasminResult;
+        this.compiledMethods = compiledMethods;
+        this.reusedMethods = reusedMethods;
+    }
+
+    static IncrementalResult newError(List<Report> reports) {
+        return new IncrementalResult(reports, null, null, 0, 0);
+    }
+
+    /**
+     * @return the reports of all stages that ran
+     */
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    public boolean hasErrors() {
+        return reports.stream().anyMatch(report -> report.getType() == ReportType.ERROR);
+    }
+
+    /**
+     * @return the OLLIR code of the whole class, or null if there were errors
+     */
+    public String getOllirCode() {
+        return ollirCode;
+    }
+
+    /**
+     * @return the Jasmin code of the whole class, or null if there were errors
+     */
+    public JasminResult getJasminResult() {
+        return jasminResult;
+    }
+
+    /**
+     * @return the number of methods that went through all compilation stages
+     */
+    public int getCompiledMethods() {
+        return compiledMethods;
+    }
+
+    /**
+     * @return the number of methods whose code was reused from the previous compilation
+     */
+    public int getReusedMethods() {
+        return reusedMethods;
+    }
+}
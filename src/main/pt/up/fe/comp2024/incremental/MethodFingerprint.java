@@ -0,0 +1,130 @@
+package pt.up.fe.comp2024.incremental;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.NodePosition;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.ast.AstTraversal;
+import pt.up.fe.comp2024.ast.JmmType;
+import pt.up.fe.comp2024.ast.Kind;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Digest of everything the code generated for a method depends on.
+ * <p>
+ * Covers the tree of the method, without node positions, the options that change the generated code, the class
+ * header (name, super class, imports and fields) and the signatures in the symbol table of the methods it calls. Two
+ * methods with the same fingerprint get the same analysis and the same OLLIR and Jasmin code.
+ */
+public class MethodFingerprint {
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final String SEPARATOR = "\n";
+    private static final String NO_METHOD = "-";
+
+    private static final Set<String> IGNORED_ATTRIBUTES = Set.of(
+            NodePosition.LINE_START.getKey(),
+            NodePosition.LINE_END.getKey(),
+            NodePosition.COL_START.getKey(),
+            NodePosition.COL_END.getKey(),
+            "node_type"
+    );
+
+    private MethodFingerprint() {
+    }
+
+    /**
+     * @param method a Method node
+     * @return the fingerprint of the method, as an hexadecimal string
+     */
+    public static String of(JmmNode method, SymbolTable table, Map<String, String> config) {
+        var digest = newDigest();
+
+        update(digest, Integer.toString(CompilerConfig.getOptimizationLevel(config)));
+        update(digest, Integer.toString(CompilerConfig.getRegisterAllocation(config)));
+        update(digest, Integer.toString(CompilerConfig.getUnroll(config)));
+        update(digest, Boolean.toString(CompilerConfig.getSsa(config)));
+
+        update(digest, table.getClassName());
+        update(digest, String.valueOf(table.getSuper()));
+        update(digest, String.join(",", table.getImports()));
+        update(digest, toString(table.getFields()));
+
+        var calledMethods = new TreeSet<String>();
+        updateTree(digest, method, calledMethods);
+
+        for (var calledMethod : calledMethods) {
+            update(digest, calledMethod);
+            update(digest, getSignature(calledMethod, table));
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void updateTree(MessageDigest digest, JmmNode root, Set<String> calledMethods) {
+        // Each node is followed by its number of children, so the preorder sequence identifies the tree
+        updateNode(digest, root, calledMethods);
+        for (var node : AstTraversal.getDescendants(root)) {
+            updateNode(digest, node, calledMethods);
+        }
+    }
+
+    private static void updateNode(MessageDigest digest, JmmNode node, Set<String> calledMethods) {
+        update(digest, node.getKind());
+
+        var attributes = new TreeSet<>(node.getAttributes());
+        attributes.removeAll(IGNORED_ATTRIBUTES);
+        for (var attribute : attributes) {
+            update(digest, attribute + "=" + node.get(attribute));
+        }
+
+        if (Kind.METHOD_EXPR.check(node)) {
+            calledMethods.add(node.get("name"));
+        }
+
+        update(digest, Integer.toString(node.getNumChildren()));
+    }
+
+    private static String getSignature(String methodName, SymbolTable table) {
+        if (!table.getMethods().contains(methodName)) {
+            return NO_METHOD;
+        }
+
+        return JmmType.of(table.getReturnType(methodName)) + "(" + toString(table.getParameters(methodName)) + ")";
+    }
+
+    private static String toString(List<Symbol> symbols) {
+        var strings = new ArrayList<String>(symbols.size());
+        for (var symbol : symbols) {
+            strings.add(symbol.getName() + ":" + JmmType.of(symbol.getType()));
+        }
+
+        return String.join(",", strings);
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update(SEPARATOR.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return a new digest of the algorithm used for fingerprints
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Could not find digest algorithm " + ALGORITHM, e);
+        }
+    }
+}
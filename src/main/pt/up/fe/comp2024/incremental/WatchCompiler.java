@@ -0,0 +1,256 @@
+package pt.up.fe.comp2024.incremental;
+
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.parser.ParserPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiles the Java-- files of a directory, and its subdirectories, every time they change.
+ * <p>
+ * Runs in a single JVM for as long as it is watching, so the parser, the analysis and the code of the methods of each
+ * file stay warm between edits. Files are only compiled again when their contents change, and then only the methods
+ * that changed go through all the compilation stages, see {@link IncrementalCompiler}. Each compilation prints a
+ * status line, followed by the OLLIR of the class with '-v'.
+ */
+public class WatchCompiler {
+
+    /**
+     * What {@link #update(Path)} did with a file.
+     */
+    public enum Update {
+        COMPILED,
+        FAILED,
+        UNCHANGED,
+        REMOVED
+    }
+
+    private static final String EXTENSION = ".jmm";
+
+    // Editors often save a file in more than one step, wait a little for the other events of the same save
+    private static final long SETTLE_MILLIS = 20;
+
+    private final Path directory;
+    private final Map<String, String> config;
+    private final JmmParserImpl parser;
+    private final Map<Path, IncrementalCompiler> compilers;
+    // Digest of the contents of each file, when it was last compiled
+    private final Map<Path, byte[]> digests;
+    private final Set<Path> watchedDirectories;
+    private WatchService watchService;
+
+    public WatchCompiler(Path directory, Map<String, String> config) {
+        this.directory = directory;
+        this.config = config;
+        this.parser = new JmmParserImpl();
+        this.compilers = new HashMap<>();
+        this.digests = new HashMap<>();
+        this.watchedDirectories = new LinkedHashSet<>();
+    }
+
+    /**
+     * Compiles all files in the directory, then keeps compiling the files that change until the thread is
+     * interrupted.
+     */
+    public void run() throws IOException {
+        // Fill the parser DFA cache once, before the many compilations that follow
+        ParserPool.prewarm();
+
+        try (var watchService = directory.getFileSystem().newWatchService()) {
+            start(watchService);
+
+            System.out.println("Watching " + directory + " for changes");
+
+            while (!Thread.currentThread().isInterrupted()) {
+                var changed = new LinkedHashSet<Path>();
+
+                try {
+                    poll(watchService.take(), changed);
+
+                    WatchKey key;
+                    while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                        poll(key, changed);
+                    }
+                } catch (InterruptedException | ClosedWatchServiceException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                for (var file : changed) {
+                    update(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers the directory and its subdirectories in the watch service and compiles all their files.
+     */
+    public void start(WatchService watchService) throws IOException {
+        this.watchService = watchService;
+        register(directory);
+
+        for (var file : findSources(directory)) {
+            update(file);
+        }
+    }
+
+    private void poll(WatchKey key, Set<Path> changed) throws IOException {
+        var keyDirectory = (Path) key.watchable();
+
+        for (var event : key.pollEvents()) {
+            var context = event.kind() == StandardWatchEventKinds.OVERFLOW ? null : (Path) event.context();
+            handleEvent(event.kind(), context == null ? keyDirectory : keyDirectory.resolve(context), changed);
+        }
+
+        key.reset();
+    }
+
+    /**
+     * Adds the files that may have changed after an event to the given set. A new directory is registered, and
+     * its files are added.
+     *
+     * @param path the file or directory of the event, or the watched directory for an overflow
+     */
+    public void handleEvent(WatchEvent.Kind<?> kind, Path path, Set<Path> changed) throws IOException {
+
+        // Events were lost, so look at every file again
+        if (kind == StandardWatchEventKinds.OVERFLOW) {
+            changed.addAll(digests.keySet());
+            changed.addAll(findSources(directory));
+            return;
+        }
+
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+            register(path);
+            changed.addAll(findSources(path));
+            return;
+        }
+
+        if (isSource(path)) {
+            changed.add(path);
+        }
+    }
+
+    /**
+     * Compiles the file if its contents changed since the last time, or forgets it if it no longer exists.
+     */
+    public Update update(Path file) {
+        if (!Files.isRegularFile(file)) {
+            compilers.remove(file);
+            digests.remove(file);
+            return Update.REMOVED;
+        }
+
+        byte[] digest;
+        try {
+            digest = digest(file);
+        } catch (IOException e) {
+            System.out.println("Could not read file '" + file + "': " + e.getMessage());
+            return Update.FAILED;
+        }
+
+        // Saving a file without changes does not compile it again
+        if (MessageDigest.isEqual(digest, digests.get(file))) {
+            return Update.UNCHANGED;
+        }
+        digests.put(file, digest);
+
+        return compile(file) ? Update.COMPILED : Update.FAILED;
+    }
+
+    /**
+     * Digests the contents of a file as they are read, so they are never all in memory.
+     */
+    private static byte[] digest(Path file) throws IOException {
+        var digest = MethodFingerprint.newDigest();
+        try (var input = new DigestInputStream(Files.newInputStream(file), digest)) {
+            input.transferTo(OutputStream.nullOutputStream());
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * @return the files that have a compiler, with the code of their last compilation
+     */
+    public Set<Path> getFiles() {
+        return Collections.unmodifiableSet(compilers.keySet());
+    }
+
+    public Set<Path> getWatchedDirectories() {
+        return Collections.unmodifiableSet(watchedDirectories);
+    }
+
+    private boolean compile(Path file) {
+        long start = System.nanoTime();
+
+        var compiler = compilers.computeIfAbsent(file, path -> new IncrementalCompiler());
+
+        IncrementalResult result;
+        try {
+            result = compiler.compile(parser.parse(file, config));
+        } catch (RuntimeException e) {
+            // Keep watching, the next change may fix it
+            System.out.println("Problem while compiling " + directory.relativize(file) + ": " + e);
+            return false;
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        if (result.hasErrors()) {
+            System.out.println("Failed to compile " + directory.relativize(file) + " (" + millis + " ms)");
+            result.getReports().forEach(System.out::println);
+            return false;
+        }
+
+        System.out.println("Compiled " + directory.relativize(file) + " in " + millis + " ms: "
+                + result.getCompiledMethods() + " methods compiled, " + result.getReusedMethods() + " reused");
+        if (CompilerConfig.getVerbose(config)) {
+            System.out.println(result.getOllirCode());
+        }
+
+        return true;
+    }
+
+    private void register(Path root) throws IOException {
+        try (var directories = Files.walk(root)) {
+            for (var directory : directories.filter(Files::isDirectory).toList()) {
+                directory.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.add(directory);
+            }
+        }
+    }
+
+    private static Set<Path> findSources(Path root) throws IOException {
+        try (var files = Files.walk(root)) {
+            var sources = new LinkedHashSet<Path>();
+            files.filter(WatchCompiler::isSource).sorted().forEach(sources::add);
+            return sources;
+        }
+    }
+
+    private static boolean isSource(Path path) {
+        return path.getFileName().toString().endsWith(EXTENSION);
+    }
+}
@@ -0,0 +1,137 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Control-flow graph of a method, where each node is the index of an instruction in the method.
+ * <p>
+ * Unlike {@link Method#buildCFG()}, this graph can be rebuilt as many times as needed after the
+ * instructions of the method are changed.
+ */
+public class ControlFlowGraph {
+
+    private final Method method;
+    private final List<Instruction> instructions;
+    private final List<List<Integer>> successors;
+    private final List<List<Integer>> predecessors;
+    private final Set<Instruction> labeled;
+
+    public ControlFlowGraph(Method method) {
+        this.method = method;
+        this.instructions = method.getInstructions();
+        this.successors = new ArrayList<>();
+        this.predecessors = new ArrayList<>();
+        this.labeled = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.labeled.addAll(method.getLabels().values());
+
+        var indexes = new IdentityHashMap<Instruction, Integer>();
+        for (int i = 0; i < instructions.size(); i++) {
+            indexes.put(instructions.get(i), i);
+            successors.add(new ArrayList<>());
+            predecessors.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < instructions.size(); i++) {
+            var inst = instructions.get(i);
+
+            if (inst instanceof GotoInstruction gotoInst) {
+                addEdge(i, indexes.get(method.getLabels().get(gotoInst.getLabel())));
+                continue;
+            }
+
+            if (inst instanceof ReturnInstruction) continue;
+
+            if (inst instanceof CondBranchInstruction branch) {
+                addEdge(i, indexes.get(method.getLabels().get(branch.getLabel())));
+            }
+
+            if (i + 1 < instructions.size()) addEdge(i, i + 1);
+        }
+    }
+
+    private void addEdge(int from, Integer to) {
+        if (to == null || successors.get(from).contains(to)) return;
+
+        successors.get(from).add(to);
+        predecessors.get(to).add(from);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public int size() {
+        return instructions.size();
+    }
+
+    public Instruction getInstruction(int index) {
+        return instructions.get(index);
+    }
+
+    public List<Integer> getSuccessors(int index) {
+        return successors.get(index);
+    }
+
+    public List<Integer> getPredecessors(int index) {
+        return predecessors.get(index);
+    }
+
+    /**
+     * Returns the instructions in the postorder of a depth-first search from the entry, followed by the ones that
+     * cannot be reached from it.
+     */
+    public List<Integer> getPostorder() {
+        int size = instructions.size();
+        var postorder = new ArrayList<Integer>(size);
+        var visited = new BitSet(size);
+
+        // Explicit stack of instructions and how many of their successors were already followed, so that long
+        // methods do not overflow the call stack
+        var stack = new int[size];
+        var nextSuccessor = new int[size];
+
+        for (int root = 0; root < size; root++) {
+            if (visited.get(root)) continue;
+
+            int top = 0;
+            stack[0] = root;
+            nextSuccessor[0] = 0;
+            visited.set(root);
+
+            while (top >= 0) {
+                int index = stack[top];
+                var successors = this.successors.get(index);
+
+                if (nextSuccessor[top] < successors.size()) {
+                    int successor = successors.get(nextSuccessor[top]++);
+                    if (!visited.get(successor)) {
+                        visited.set(successor);
+                        top++;
+                        stack[top] = successor;
+                        nextSuccessor[top] = 0;
+                    }
+                    continue;
+                }
+
+                postorder.add(index);
+                top--;
+            }
+        }
+
+        return postorder;
+    }
+
+    /**
+     * Checks if the instruction at the given index is the first one of a basic block.
+     */
+    public boolean isBlockStart(int index) {
+        if (index == 0 || labeled.contains(instructions.get(index))) return true;
+
+        var previous = instructions.get(index - 1);
+        return previous instanceof GotoInstruction
+                || previous instanceof CondBranchInstruction
+                || previous instanceof ReturnInstruction;
+    }
+}
@@ -0,0 +1,132 @@
+package pt.up.fe.comp2024.optimization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dominators of the instructions of a method, computed over its {@link ControlFlowGraph} with the algorithm of
+ * Cooper, Harvey and Kennedy, together with their dominance frontiers.
+ * <p>
+ * An instruction dominates another when every path from the entry to the second goes through the first. Instructions
+ * that cannot be reached from the entry are not part of the tree.
+ */
+public class DominatorTree {
+
+    private final int[] immediateDominators;
+    private final List<List<Integer>> children;
+    private final List<List<Integer>> frontiers;
+
+    public DominatorTree(ControlFlowGraph cfg) {
+        int size = cfg.size();
+        var postorder = cfg.getPostorder();
+
+        // Position of each instruction in the postorder, where the entry comes last
+        var ranks = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            ranks[postorder.get(rank)] = rank;
+        }
+
+        immediateDominators = new int[size];
+        Arrays.fill(immediateDominators, -1);
+        if (size > 0) immediateDominators[0] = 0;
+
+        // Visiting in reverse postorder, each instruction sees its dominator candidates before itself, except across
+        // the back edges of loops, which take more sweeps to settle
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (int rank = size - 1; rank >= 0; rank--) {
+                int index = postorder.get(rank);
+                if (index == 0) continue;
+
+                int dominator = -1;
+                for (var predecessor : cfg.getPredecessors(index)) {
+                    if (immediateDominators[predecessor] == -1) continue;
+
+                    dominator = dominator == -1 ? predecessor : intersect(predecessor, dominator, ranks);
+                }
+
+                if (dominator != immediateDominators[index]) {
+                    immediateDominators[index] = dominator;
+                    changed = true;
+                }
+            }
+        }
+
+        children = new ArrayList<>(size);
+        frontiers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            children.add(new ArrayList<>());
+            frontiers.add(new ArrayList<>());
+        }
+
+        for (int i = 1; i < size; i++) {
+            if (isReachable(i)) children.get(immediateDominators[i]).add(i);
+        }
+
+        // An instruction is in the frontier of the instructions that dominate one of its predecessors, but not itself
+        for (int i = 0; i < size; i++) {
+            if (!isReachable(i)) continue;
+
+            for (var predecessor : cfg.getPredecessors(i)) {
+                if (!isReachable(predecessor)) continue;
+
+                int runner = predecessor;
+                while (runner != immediateDominators[i] || i == 0) {
+                    var frontier = frontiers.get(runner);
+                    if (!frontier.contains(i)) frontier.add(i);
+
+                    if (runner == 0) break;
+                    runner = immediateDominators[runner];
+                }
+            }
+        }
+    }
+
+    private int intersect(int first, int second, int[] ranks) {
+        while (first != second) {
+            while (ranks[first] < ranks[second]) first = immediateDominators[first];
+            while (ranks[second] < ranks[first]) second = immediateDominators[second];
+        }
+
+        return first;
+    }
+
+    public boolean isReachable(int index) {
+        return immediateDominators[index] != -1;
+    }
+
+    /**
+     * @return the closest instruction that dominates the given one, or -1 for the entry and unreachable instructions
+     */
+    public int getImmediateDominator(int index) {
+        return index == 0 ? -1 : immediateDominators[index];
+    }
+
+    /**
+     * @return the instructions whose immediate dominator is the given one
+     */
+    public List<Integer> getChildren(int index) {
+        return children.get(index);
+    }
+
+    /**
+     * @return the instructions where the paths dominated by the given one meet paths that are not
+     */
+    public List<Integer> getFrontier(int index) {
+        return frontiers.get(index);
+    }
+
+    public boolean dominates(int dominator, int index) {
+        if (!isReachable(index)) return false;
+
+        while (index != dominator) {
+            if (index == 0) return false;
+            index = immediateDominators[index];
+        }
+
+        return true;
+    }
+}
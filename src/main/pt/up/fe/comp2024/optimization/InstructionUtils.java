@@ -0,0 +1,113 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.List;
+
+/**
+ * Helpers to edit the instruction list of an OLLIR method while keeping its labels consistent.
+ */
+public class InstructionUtils {
+
+    /**
+     * Replaces the instruction at the given index with a sequence of instructions.
+     * Labels that pointed to the old instruction are moved to the first new one.
+     */
+    public static void replace(Method method, int index, List<Instruction> replacement) {
+        var old = method.getInstructions().get(index);
+
+        method.getInstructions().remove(index);
+        method.getInstructions().addAll(index, replacement);
+
+        moveLabels(method, old, replacement.get(0));
+    }
+
+    /**
+     * Removes the instruction at the given index.
+     * Labels that pointed to it are moved to the instruction that follows.
+     */
+    public static void remove(Method method, int index) {
+        var instructions = method.getInstructions();
+        var old = instructions.remove(index);
+
+        if (index < instructions.size()) {
+            moveLabels(method, old, instructions.get(index));
+        }
+    }
+
+    public static void moveLabels(Method method, Instruction from, Instruction to) {
+        for (var entry : method.getLabels().entrySet()) {
+            if (entry.getValue() == from) entry.setValue(to);
+        }
+    }
+
+    /**
+     * Returns the first variable name with the given prefix that is not used by the given method, and adds it to the
+     * variable table of the method, so that the name only depends on the method.
+     */
+    public static String newVariable(Method method, String prefix, Type type) {
+        String name = prefix + 0;
+        int number = 0;
+        while (method.getVarTable().containsKey(name)) {
+            name = prefix + ++number;
+        }
+
+        method.getVarTable().put(name, new Descriptor(VarScope.LOCAL, -1, type));
+        return name;
+    }
+
+    /**
+     * Returns a label name that is not used by the given method.
+     */
+    public static String newLabel(Method method, String prefix) {
+        String name = prefix;
+        int number = 0;
+        while (method.getLabels().containsKey(name)) {
+            name = prefix + "_" + number++;
+        }
+
+        return name;
+    }
+
+    /**
+     * Rebuilds the variable table of a method after its instructions were changed,
+     * dropping variables that are no longer used.
+     */
+    public static void rebuildVarTable(Method method) {
+        method.getVarTable().clear();
+        method.buildVarTable();
+    }
+
+    /**
+     * Checks if the element is the variable with the given name. An element of an array variable has the name of
+     * the array, but is not the variable.
+     */
+    public static boolean isOperand(Element element, String name) {
+        return element instanceof Operand operand && !(operand instanceof ArrayOperand)
+                && operand.getName().equals(name);
+    }
+
+    /**
+     * Checks if the calls on 'this' of the methods declared in the class always run those methods. A Java-- program
+     * is compiled as a closed world, where no other class extends the class being compiled. A class that extends
+     * another one belongs to a hierarchy that is not all compiled here, so it is left out.
+     */
+    public static boolean isClosed(ClassUnit classUnit) {
+        var superClass = classUnit.getSuperClass();
+        return superClass == null || superClass.equals("Object") || superClass.equals("java/lang/Object");
+    }
+
+    /**
+     * Returns the name of the method invoked by a call, without quotes.
+     */
+    public static String getCalledMethod(CallInstruction call) {
+        return call.getMethodNameTry()
+                .filter(LiteralElement.class::isInstance)
+                .map(element -> ((LiteralElement) element).getLiteral().replace("\"", ""))
+                .orElse("<init>");
+    }
+
+    public static AssignInstruction copy(Operand dest, Element value) {
+        return new AssignInstruction(dest, dest.getType(), new SingleOpInstruction(value));
+    }
+}
@@ -0,0 +1,114 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.dataflow.DataflowResult;
+import pt.up.fe.comp2024.optimization.dataflow.DataflowSolver;
+import pt.up.fe.comp2024.optimization.dataflow.Direction;
+import pt.up.fe.comp2024.optimization.dataflow.GenKillProblem;
+import pt.up.fe.comp2024.optimization.dataflow.SetLattice;
+import pt.up.fe.comp2024.optimization.dataflow.Universe;
+
+import java.util.*;
+
+/**
+ * Live variables of each instruction of a method, computed by a backward data-flow analysis
+ * over its {@link ControlFlowGraph}.
+ */
+public class Liveness {
+
+    private final Universe<String> variables;
+    private final DataflowResult<BitSet> result;
+
+    public Liveness(ControlFlowGraph cfg) {
+        variables = new Universe<>();
+
+        var defs = new ArrayList<BitSet>();
+        var uses = new ArrayList<BitSet>();
+        for (int i = 0; i < cfg.size(); i++) {
+            defs.add(variables.toBitSet(getDefs(cfg.getInstruction(i))));
+            uses.add(variables.toBitSet(getUses(cfg.getInstruction(i))));
+        }
+
+        var problem = new GenKillProblem(Direction.BACKWARD, SetLattice.union(), uses, defs);
+        result = DataflowSolver.solve(cfg, problem);
+    }
+
+    public Set<String> getLiveIn(int index) {
+        return variables.toSet(result.getBefore(index));
+    }
+
+    public Set<String> getLiveOut(int index) {
+        return variables.toSet(result.getAfter(index));
+    }
+
+    public boolean isLiveIn(int index, String variable) {
+        return variables.contains(result.getBefore(index), variable);
+    }
+
+    public boolean isLiveOut(int index, String variable) {
+        return variables.contains(result.getAfter(index), variable);
+    }
+
+    /**
+     * @return how many times the solver visited an instruction to compute the analysis
+     */
+    public int getVisits() {
+        return result.getVisits();
+    }
+
+    /**
+     * Returns the variable written by an instruction, if any.
+     */
+    public static Set<String> getDefs(Instruction inst) {
+        if (inst instanceof AssignInstruction assign
+                && assign.getDest() instanceof Operand dest
+                && !(dest instanceof ArrayOperand)) {
+            return Set.of(dest.getName());
+        }
+
+        return Collections.emptySet();
+    }
+
+    /**
+     * Returns the variables read by an instruction.
+     */
+    public static Set<String> getUses(Instruction inst) {
+        var uses = new HashSet<String>();
+
+        switch (inst.getInstType()) {
+            case ASSIGN -> {
+                var assign = (AssignInstruction) inst;
+                if (assign.getDest() instanceof ArrayOperand dest) addUses(dest, uses);
+                uses.addAll(getUses(assign.getRhs()));
+            }
+            case CALL -> ((CallInstruction) inst).getOperands().forEach(op -> addUses(op, uses));
+            case GETFIELD -> addUses(((GetFieldInstruction) inst).getObject(), uses);
+            case PUTFIELD -> {
+                var putField = (PutFieldInstruction) inst;
+                addUses(putField.getObject(), uses);
+                addUses(putField.getValue(), uses);
+            }
+            case BRANCH -> ((CondBranchInstruction) inst).getOperands().forEach(op -> addUses(op, uses));
+            case RETURN -> {
+                var ret = (ReturnInstruction) inst;
+                if (ret.hasReturnValue()) addUses(ret.getOperand(), uses);
+            }
+            case UNARYOPER, BINARYOPER -> ((OpInstruction) inst).getOperands().forEach(op -> addUses(op, uses));
+            case NOPER -> addUses(((SingleOpInstruction) inst).getSingleOperand(), uses);
+            default -> {
+            }
+        }
+
+        return uses;
+    }
+
+    private static void addUses(Element element, Set<String> uses) {
+        if (!(element instanceof Operand operand)) return;
+
+        uses.add(operand.getName());
+
+        if (operand instanceof ArrayOperand arrayOperand) {
+            arrayOperand.getIndexOperands().forEach(index -> addUses(index, uses));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.Method;
+
+/**
+ * Optimization pass that transforms each method of a class independently.
+ */
+public abstract class MethodPass implements OllirPass {
+
+    /**
+     * Optimizes a single method in place.
+     *
+     * @param method the method that will be transformed
+     * @return true if the method was changed
+     */
+    protected abstract boolean optimize(Method method);
+
+    @Override
+    public boolean optimize(ClassUnit classUnit) {
+        boolean changed = false;
+
+        for (var method : classUnit.getMethods()) {
+            if (method.isConstructMethod()) continue;
+
+            if (optimize(method)) {
+                InstructionUtils.rebuildVarTable(method);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+}
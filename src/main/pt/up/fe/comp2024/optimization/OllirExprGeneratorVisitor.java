@@ -3,22 +3,26 @@ package pt.up.fe.comp2024.optimization;
 import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
-import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.IterativeJmmVisitor;
 import pt.up.fe.comp2024.ast.NodeUtils;
 import pt.up.fe.comp2024.ast.TypeUtils;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Optional;
 
 import static pt.up.fe.comp2024.ast.Kind.*;
 
 /**
  * Generates OLLIR code from JmmNodes that are expressions.
+ * <p>
+ * Each expression is visited after its operands, with their results, so the tree is walked with an explicit stack
+ * and the computation of an expression extends the computation of its first operand.
  */
 
-public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult> {
+public class OllirExprGeneratorVisitor extends IterativeJmmVisitor<OllirExprResult> {
 
     private static final String SPACE = " ";
     private static final String ASSIGN = ":=";
@@ -30,9 +34,21 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
     private static final String COMMA = ",";
     private static final String INIT = "\"<init>\"";
     private final SymbolTable table;
+    private final OllirNumbering numbering;
 
-    public OllirExprGeneratorVisitor(SymbolTable table) {
+    // Numbers taken when entering the && expressions and array initializers that are being visited, innermost on top
+    private final Deque<Integer> andNumbers;
+    private final Deque<String> arrayTemps;
+
+    // Where the expression being visited is, which is the same for all its nodes
+    private String methodName;
+    private boolean inReturn;
+
+    public OllirExprGeneratorVisitor(SymbolTable table, OllirNumbering numbering) {
         this.table = table;
+        this.numbering = numbering;
+        this.andNumbers = new ArrayDeque<>();
+        this.arrayTemps = new ArrayDeque<>();
     }
 
     @Override
@@ -50,18 +66,38 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         addVisit(NEW_ARRAY_EXPR, this::visitNewArrayExpr);
         addVisit(INIT_ARRAY_EXPR, this::visitInitArrayExpr);
 
+        // Labels and temporaries that are numbered before the operands are visited
+        addEnter(BINARY_EXPR, this::enterBinExpr);
+        addEnter(INIT_ARRAY_EXPR, this::enterInitArrayExpr);
+
         setDefaultVisit(this::defaultVisit);
     }
 
+    @Override
+    public OllirExprResult visit(JmmNode root) {
+        methodName = root.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow();
+        inReturn = root.getAncestor(RETURN_STMT).isPresent();
+
+        return super.visit(root);
+    }
+
+    private void enterBinExpr(JmmNode node) {
+        if (node.get("op").equals("&&")) andNumbers.push(numbering.getNextAndNumber());
+    }
 
-    private OllirExprResult visitInteger(JmmNode node, Void unused) {
+    private void enterInitArrayExpr(JmmNode node) {
+        arrayTemps.push(numbering.getTemp());
+    }
+
+
+    private OllirExprResult visitInteger(JmmNode node, List<OllirExprResult> children) {
         Type intType = new Type(TypeUtils.getIntTypeName(), false);
         String ollirIntType = OptUtils.toOllirType(intType);
         String code = node.get("value") + ollirIntType;
         return new OllirExprResult(code);
     }
 
-    private OllirExprResult visitBoolean(JmmNode node, Void unused) {
+    private OllirExprResult visitBoolean(JmmNode node, List<OllirExprResult> children) {
         Type boolType = new Type(TypeUtils.getBoolTypeName(), false);
         String ollirBoolType = OptUtils.toOllirType(boolType);
         String ollirValue = node.get("value").equals("true") ? "1" : "0";
@@ -71,25 +107,20 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
     }
 
 
-    private OllirExprResult visitBinExpr(JmmNode node, Void unused) {
+    private OllirExprResult visitBinExpr(JmmNode node, List<OllirExprResult> children) {
         if (node.get("op").equals("&&"))
-            return visitShortCircuitAnd(node);
-        return visitRegularBinExpr(node);
+            return visitShortCircuitAnd(node, children.get(0), children.get(1));
+        return visitRegularBinExpr(node, children.get(0), children.get(1));
     }
 
-    private OllirExprResult visitRegularBinExpr(JmmNode node) {
-        OllirExprResult lhs = visit(node.getJmmChild(0));
-        OllirExprResult rhs = visit(node.getJmmChild(1));
-
-        StringBuilder computation = new StringBuilder();
-
+    private OllirExprResult visitRegularBinExpr(JmmNode node, OllirExprResult lhs, OllirExprResult rhs) {
         // code to compute the children
-        computation.append(lhs.getComputation());
+        StringBuilder computation = lhs.takeComputation();
         computation.append(rhs.getComputation());
 
         // code to compute self
         String resOllirType = OptUtils.toOllirType(node);
-        String code = OptUtils.getTemp() + resOllirType;
+        String code = numbering.getTemp() + resOllirType;
 
         computation.append(code).append(SPACE)
                 .append(ASSIGN).append(resOllirType).append(SPACE)
@@ -101,19 +132,15 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         return new OllirExprResult(code, computation);
     }
 
-    private OllirExprResult visitShortCircuitAnd (JmmNode node) {
-        int andIdx = OptUtils.getNextAndNumber();
+    private OllirExprResult visitShortCircuitAnd (JmmNode node, OllirExprResult lhs, OllirExprResult rhs) {
+        int andIdx = andNumbers.pop();
         final String AND_RHS_LABEL = "AND_RHS_" + andIdx;
         final String AND_END_LABEL = "AND_END_" + andIdx;
 
-        OllirExprResult lhs = visit(node.getJmmChild(0));
-        OllirExprResult rhs = visit(node.getJmmChild(1));
         String resOllirType = OptUtils.toOllirType(node);
-        String code = OptUtils.getTemp() + resOllirType;
-
-        StringBuilder computation = new StringBuilder();
+        String code = numbering.getTemp() + resOllirType;
 
-        computation.append(lhs.getComputation());
+        StringBuilder computation = lhs.takeComputation();
 
         // short-circuit LHS evaluation
         computation.append("if (").append(lhs.getCode()).append(") goto ").append(AND_RHS_LABEL).append(END_STMT);
@@ -129,29 +156,26 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         return new OllirExprResult(code, computation);
     }
 
-    private OllirExprResult visitNegExpr(JmmNode node, Void unused) {
+    private OllirExprResult visitNegExpr(JmmNode node, List<OllirExprResult> children) {
         StringBuilder code = new StringBuilder();
-        StringBuilder computation = new StringBuilder();
         JmmNode exprNode = node.getChild(0);
 
-        OllirExprResult exprResult = visit(exprNode);
+        OllirExprResult exprResult = children.get(0);
 
         String exprType = OptUtils.toOllirType(exprNode);
-        code.append(OptUtils.getTemp()).append(exprType);
-        computation.append(exprResult.getComputation());
+        code.append(numbering.getTemp()).append(exprType);
+        StringBuilder computation = exprResult.takeComputation();
         computation.append(code).append(SPACE).append(ASSIGN).append(exprType).append(SPACE)
                 .append("!").append(exprType).append(SPACE).append(exprResult.getCode()).append(END_STMT);
 
-        return new OllirExprResult(code.toString(), computation.toString());
+        return new OllirExprResult(code.toString(), computation);
     }
 
 
-    private OllirExprResult visitVarRef(JmmNode node, Void unused) {
-        Optional<JmmNode> method = node.getAncestor(METHOD_DECL);
-
+    private OllirExprResult visitVarRef(JmmNode node, List<OllirExprResult> children) {
         String id = node.get("name");
 
-        if (NodeUtils.isFieldRef(id, table, method.get().get("name")))
+        if (NodeUtils.isFieldRef(id, table, methodName))
             return buildGetField(node);
 
         return buildCommonField(node);
@@ -162,7 +186,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         StringBuilder computation = new StringBuilder();
         String varType = OptUtils.toOllirType(node);
 
-        code.append(OptUtils.getTemp()).append(varType);
+        code.append(numbering.getTemp()).append(varType);
         computation.append(code).append(SPACE).append(ASSIGN).append(varType).append(SPACE).append("getfield(this, ")
                 .append(node.get("name")).append(varType).append(")").append(varType).append(END_STMT);
 
@@ -171,14 +195,11 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
     private OllirExprResult buildCommonField(JmmNode node) {
         StringBuilder code = new StringBuilder();
-        Optional<JmmNode> method = node.getAncestor(METHOD_DECL);
-        Optional<JmmNode> returnStmt = node.getAncestor(RETURN_STMT);
 
         String id = node.get("name");
 
         // This is extra as it only adds the $ before the use of paramaters, which isn't mandatory
-        if (returnStmt.isEmpty()) {
-            String methodName = method.get().get("name");
+        if (!inReturn) {
             List<Symbol> params = table.getParameters(methodName);
 
             for (int i = 1; i <= params.size(); i++) {
@@ -197,28 +218,26 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         return new OllirExprResult(code.toString());
     }
 
-    private OllirExprResult visitMethodExpr(JmmNode node, Void unused) {
+    private OllirExprResult visitMethodExpr(JmmNode node, List<OllirExprResult> children) {
         StringBuilder code = new StringBuilder();
-        StringBuilder computation = new StringBuilder();
         List<String> tmpVars = new ArrayList<>();
         int nParams = -1;
         int nArguments = node.getChildren().size() - 1;
         boolean isLastParamEllipsis = false;
         String ellipsisArrayTmp = "";
 
-        // visit lhs expr to get its ollir representation
-        var object = visit(node.getChild(0));
-        computation.append(object.getComputation());
+        // lhs expr with its ollir representation
+        var object = children.get(0);
+        StringBuilder computation = object.takeComputation();
 
         String ollirMethod = OptUtils.getOllirMethod(table, object.getCode());
         String methodName = node.get("name");
         String returnType = OptUtils.toOllirType(node);
 
 
-        // Visit params as they are expressions as well
-        for (int i = 1; i < node.getChildren().size(); i++) {
-            JmmNode param = node.getChild(i);
-            OllirExprResult res = visit(param);
+        // Params were visited as they are expressions as well
+        for (int i = 1; i < children.size(); i++) {
+            OllirExprResult res = children.get(i);
             computation.append(res.getComputation());
             tmpVars.add(res.getCode());
         }
@@ -247,7 +266,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         }
 
         if (!returnType.equals(".V") && !node.getParent().isInstance(EXPR_STMT)) {
-            String tmpVar = OptUtils.getTemp();
+            String tmpVar = numbering.getTemp();
             code.append(tmpVar).append(returnType);
             computation.append(code).append(SPACE).append(ASSIGN)
                     .append(returnType).append(SPACE);
@@ -271,13 +290,13 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
         computation.append(")").append(returnType).append(END_STMT);
 
-        return new OllirExprResult(code.toString(), computation.toString());
+        return new OllirExprResult(code.toString(), computation);
     }
 
-    private OllirExprResult visitNewObjExpr(JmmNode node, Void unused) {
+    private OllirExprResult visitNewObjExpr(JmmNode node, List<OllirExprResult> children) {
         StringBuilder code = new StringBuilder();
         StringBuilder computation = new StringBuilder();
-        String nextTemp = OptUtils.getTemp();
+        String nextTemp = numbering.getTemp();
         String objectClass = node.get("name");
         String exprType = "." + objectClass;
 
@@ -291,64 +310,62 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         return new OllirExprResult(code.toString(), computation.toString());
     }
 
-    private OllirExprResult visitThis(JmmNode node, Void unused) {
-        return new OllirExprResult("this." + node.get("node_type"));
+    private OllirExprResult visitThis(JmmNode node, List<OllirExprResult> children) {
+        return new OllirExprResult("this." + TypeUtils.getNodeType(node).getName());
     }
 
-    private OllirExprResult visitLengthAttrExpr(JmmNode node, Void unused) {
+    private OllirExprResult visitLengthAttrExpr(JmmNode node, List<OllirExprResult> children) {
         StringBuilder code = new StringBuilder();
-        StringBuilder computation = new StringBuilder();
-        OllirExprResult exprRes = visit(node.getChild(0));
+        OllirExprResult exprRes = children.get(0);
         String intTypeOllir = OptUtils.toOllirType(new Type("int", false));
 
-        code.append(OptUtils.getTemp()).append(intTypeOllir);
-        computation.append(exprRes.getComputation());
+        code.append(numbering.getTemp()).append(intTypeOllir);
+        StringBuilder computation = exprRes.takeComputation();
         computation.append(code).append(SPACE).append(ASSIGN).append(intTypeOllir).append(SPACE).append("arraylength(")
                 .append(exprRes.getCode()).append(")").append(intTypeOllir).append(END_STMT);
 
-        return new OllirExprResult(code.toString(), computation.toString());
+        return new OllirExprResult(code.toString(), computation);
     }
 
-    private OllirExprResult visitArrayExpr(JmmNode node, Void unused) {
+    private OllirExprResult visitArrayExpr(JmmNode node, List<OllirExprResult> children) {
         StringBuilder code = new StringBuilder();
-        StringBuilder computation = new StringBuilder();
         String ollirType = OptUtils.toOllirType(node);
 
-        OllirExprResult arrayExpr = visit(node.getChild(0));
-        OllirExprResult arrayIdx = visit(node.getChild(1));
+        OllirExprResult arrayExpr = children.get(0);
+        OllirExprResult arrayIdx = children.get(1);
 
-        String nextTmp = OptUtils.getTemp();
+        String nextTmp = numbering.getTemp();
         code.append(nextTmp).append(ollirType);
-        computation.append(arrayExpr.getComputation()).append(arrayIdx.getComputation());
+        StringBuilder computation = arrayExpr.takeComputation();
+        computation.append(arrayIdx.getComputation());
         computation.append(code).append(SPACE).append(ASSIGN).append(ollirType).append(SPACE);
         computation.append(OptUtils.removeOllirType(arrayExpr.getCode())).append("[").append(arrayIdx.getCode()).append("]").append(ollirType)
                 .append(END_STMT);
 
 
-        return new OllirExprResult(code.toString(), computation.toString());
+        return new OllirExprResult(code.toString(), computation);
     }
 
-    private OllirExprResult visitNewArrayExpr(JmmNode node, Void unused) {
+    private OllirExprResult visitNewArrayExpr(JmmNode node, List<OllirExprResult> children) {
         StringBuilder code = new StringBuilder();
-        StringBuilder computation = new StringBuilder();
         String ollirType = OptUtils.toOllirType(node);
 
-        OllirExprResult exprRes = visit(node.getChild(0));
-        code.append(OptUtils.getTemp()).append(ollirType);
-        computation.append(exprRes.getComputation());
+        OllirExprResult exprRes = children.get(0);
+        code.append(numbering.getTemp()).append(ollirType);
+        StringBuilder computation = exprRes.takeComputation();
         computation.append(code).append(SPACE).append(ASSIGN).append(ollirType).append(SPACE);
         computation.append("new(array, ").append(exprRes.getCode()).append(")").append(ollirType).append(END_STMT);
 
-        return new OllirExprResult(code.toString(), computation.toString());
+        return new OllirExprResult(code.toString(), computation);
     }
 
-    private OllirExprResult visitInitArrayExpr(JmmNode node, Void unused) {
+    private OllirExprResult visitInitArrayExpr(JmmNode node, List<OllirExprResult> children) {
         StringBuilder code = new StringBuilder();
         StringBuilder computation = new StringBuilder();
-        String nextTmp = OptUtils.getTemp();
+        String nextTmp = arrayTemps.pop();
         String ollirType = OptUtils.toOllirType(node);
         String arrayOllirType = OptUtils.toOllirType(node, false);
-        List<JmmNode> arrExprs = node.getChildren();
+        List<OllirExprResult> arrExprs = children;
 
         code.append(nextTmp).append(ollirType);
 
@@ -358,7 +375,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
         // Store elements of array initializer in the array that was created
         for (int i = 0; i < arrExprs.size(); i++) {
-            OllirExprResult exprRes = visit(arrExprs.get(i));
+            OllirExprResult exprRes = arrExprs.get(i);
             computation.append(exprRes.getComputation());
             computation.append(nextTmp).append("[").append(i).append(".i32]").append(arrayOllirType).append(SPACE).append(ASSIGN)
                     .append(arrayOllirType).append(SPACE).append(exprRes.getCode()).append(END_STMT);
@@ -371,7 +388,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         StringBuilder code = new StringBuilder();
         StringBuilder computation = new StringBuilder();
 
-        code.append(OptUtils.getTemp()).append(ollirType);
+        code.append(numbering.getTemp()).append(ollirType);
         computation.append(code).append(SPACE).append(ASSIGN).append(ollirType).append(SPACE);
         computation.append("new(array, ").append(elems).append(".i32)").append(ollirType).append(END_STMT);
 
@@ -379,23 +396,23 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
     }
 
     /**
-     * Default visitor. Visits every child node and return an empty result.
+     * Default visitor. Joins the results of the child nodes.
      *
      * @param node
-     * @param unused
+     * @param children
      * @return
      */
-    private OllirExprResult defaultVisit(JmmNode node, Void unused) {
+    private OllirExprResult defaultVisit(JmmNode node, List<OllirExprResult> children) {
         StringBuilder code = new StringBuilder();
-        StringBuilder computation = new StringBuilder();
+        StringBuilder computation = children.isEmpty() ? new StringBuilder() : children.get(0).takeComputation();
 
-        for (var child : node.getChildren()) {
-            OllirExprResult res = visit(child);
+        for (int i = 0; i < children.size(); i++) {
+            OllirExprResult res = children.get(i);
             code.append(res.getCode());
-            computation.append(res.getComputation());
+            if (i > 0) computation.append(res.getComputation());
         }
 
-        return new OllirExprResult(code.toString(), computation.toString());
+        return new OllirExprResult(code.toString(), computation);
     }
 
 }
@@ -4,7 +4,7 @@ public class OllirExprResult {
 
     public static final OllirExprResult EMPTY = new OllirExprResult("", "");
 
-    private final String computation;
+    private CharSequence computation;
     private final String code;
 
     public OllirExprResult(String code, String computation) {
@@ -17,11 +17,24 @@ public class OllirExprResult {
     }
 
     public OllirExprResult(String code, StringBuilder computation) {
-        this(code, computation.toString());
+        this.code = code;
+        this.computation = computation;
     }
 
     public String getComputation() {
-        return computation;
+        return computation.toString();
+    }
+
+    /**
+     * Takes the computation, for the expression that uses this result to append its own code to it. Along a chain of
+     * operations this keeps appending to the same builder, instead of copying the computation of the whole chain
+     * again for each operation. The result must not be used afterwards, unless its computation was a string.
+     */
+    StringBuilder takeComputation() {
+        if (!(computation instanceof StringBuilder builder)) return new StringBuilder(computation);
+
+        computation = null;
+        return builder;
     }
 
     public String getCode() {
@@ -8,6 +8,7 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
 import java.util.List;
+import java.util.function.Function;
 
 import static pt.up.fe.comp2024.ast.Kind.*;
 
@@ -25,11 +26,23 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
     private final String R_BRACKET = "}\n";
     private final SymbolTable table;
 
+    private final OllirNumbering numbering;
     private final OllirExprGeneratorVisitor exprVisitor;
+    private Function<JmmNode, String> methodCode;
 
     public OllirGeneratorVisitor(SymbolTable table) {
         this.table = table;
-        exprVisitor = new OllirExprGeneratorVisitor(table);
+        numbering = new OllirNumbering();
+        exprVisitor = new OllirExprGeneratorVisitor(table, numbering);
+        methodCode = this::visit;
+    }
+
+    /**
+     * Sets where the code of each method of the class comes from, instead of visiting the method. Used to put in the
+     * class the code of methods that were generated in a previous compilation.
+     */
+    public void setMethodCode(Function<JmmNode, String> methodCode) {
+        this.methodCode = methodCode;
     }
 
 
@@ -73,7 +86,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
                 }
 
                 code.append(String.join("\n", insts)).append(NL);
-                OptUtils.decrementTempNum();
+                numbering.decrementTempNum();
             }
             else {
                 code.append(node.get("name"));
@@ -127,6 +140,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
 
     private String visitMethodDecl(JmmNode node, Void unused) {
+        numbering.reset();
         StringBuilder code = new StringBuilder(".method ");
 
         boolean isPublic = NodeUtils.getBooleanAttribute(node, "isPublic", "false");
@@ -207,7 +221,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
         var needNl = true;
 
         for (var child : node.getChildren()) {
-            var result = visit(child);
+            var result = child.isInstance(METHOD_DECL) ? methodCode.apply(child) : visit(child);
 
             if (METHOD_DECL.check(child) && needNl) {
                 code.append(NL);
@@ -273,7 +287,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
     private String visitIfStmt(JmmNode node, Void unused) {
         StringBuilder code = new StringBuilder();
-        int ifIdx = OptUtils.getNextIfNum();
+        int ifIdx = numbering.getNextIfNum();
         final String IFBODY_LABEL = "ifBody_" + ifIdx;
         final String ENDIF_LABEL = "endif_" + ifIdx;
 
@@ -300,7 +314,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
     private String visitWhileStmt(JmmNode node, Void unused) {
         StringBuilder code = new StringBuilder();
-        int whileIdx = OptUtils.getNextWhileNum();
+        int whileIdx = numbering.getNextWhileNum();
         final String WHILE_COND_LABEL = "whileCond_" + whileIdx;
         final String WHILE_BODY_LABEL = "whileBody_" + whileIdx;
         final String WHILE_END_LABEL = "whileEnd_" + whileIdx;
@@ -326,14 +340,13 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
         StringBuilder code = new StringBuilder();
 
         String variable = node.get("name");
-        String nodeType = node.get("node_type").split("\n")[0];
-        String ollirType = OptUtils.toOllirType(new Type(nodeType, false));
+        String ollirType = OptUtils.toOllirType(node, false);
 
         OllirExprResult idxRes = exprVisitor.visit(node.getChild(0));
         OllirExprResult exprRes = exprVisitor.visit(node.getChild(1));
 
         if (NodeUtils.isFieldRef(node.get("name"), table, node.getAncestor(METHOD_DECL).get().get("name"))) {
-            String nextTmp = OptUtils.getTemp();
+            String nextTmp = numbering.getTemp();
             String fullOllirType = OptUtils.toOllirType(node);
             variable = nextTmp;
 
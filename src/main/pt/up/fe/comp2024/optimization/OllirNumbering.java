@@ -0,0 +1,57 @@
+package pt.up.fe.comp2024.optimization;
+
+/**
+ * Numbers the temporaries and labels of the OLLIR code of a method.
+ * <p>
+ * Numbering starts over in each method, so the code generated for a method only depends on the method, and not on
+ * what was compiled before it.
+ */
+public class OllirNumbering {
+
+    private int tempNumber;
+    private int ifNumber;
+    private int whileNumber;
+    private int andNumber;
+
+    public OllirNumbering() {
+        reset();
+    }
+
+    /**
+     * Starts numbering the code of a new method.
+     */
+    public void reset() {
+        tempNumber = -1;
+        ifNumber = -1;
+        whileNumber = -1;
+        andNumber = -1;
+    }
+
+    public String getTemp() {
+        return getTemp("tmp");
+    }
+
+    public String getTemp(String prefix) {
+        return prefix + getNextTempNum();
+    }
+
+    public int getNextTempNum() {
+        return ++tempNumber;
+    }
+
+    public void decrementTempNum() {
+        tempNumber--;
+    }
+
+    public int getNextIfNum() {
+        return ++ifNumber;
+    }
+
+    public int getNextWhileNum() {
+        return ++whileNumber;
+    }
+
+    public int getNextAndNumber() {
+        return ++andNumber;
+    }
+}
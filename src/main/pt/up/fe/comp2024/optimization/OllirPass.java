@@ -0,0 +1,19 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.ClassUnit;
+
+/**
+ * Represents an optimization pass over the OLLIR of a class.
+ */
+public interface OllirPass extends Pass<ClassUnit> {
+
+    /**
+     * Optimizes the given class in place.
+     *
+     * @param classUnit the OLLIR class that will be transformed
+     * @return true if any method of the class was changed
+     */
+    @Override
+    boolean optimize(ClassUnit classUnit);
+
+}
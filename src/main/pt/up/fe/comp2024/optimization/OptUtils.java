@@ -3,80 +3,27 @@ package pt.up.fe.comp2024.optimization;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.JmmType;
 import pt.up.fe.comp2024.ast.NodeUtils;
 import pt.up.fe.comp2024.ast.TypeUtils;
 
-import java.util.List;
-
 import static pt.up.fe.comp2024.ast.Kind.*;
 
 public class OptUtils {
-    private static int tempNumber = -1;
-    private static int ifNumber = -1;
-    private static int whileNumber = -1;
-    private static int andNumber = -1;
-
     private final static String VIRTUAL_FUNC = "invokevirtual";
     private final static String STATIC_FUNC = "invokestatic";
 
-    public static String getTemp() {
-
-        return getTemp("tmp");
-    }
-
-    public static String getTemp(String prefix) {
-
-        return prefix + getNextTempNum();
-    }
-
-    public static int getNextTempNum() {
-
-        tempNumber += 1;
-        return tempNumber;
-    }
-
-    public static void decrementTempNum() {
-        tempNumber -= 1;
-    }
-
-    public static int getNextIfNum() {
-        ifNumber++;
-        return ifNumber;
-    }
-
-    public static int getNextWhileNum() {
-        whileNumber++;
-        return whileNumber;
-    }
-
-    public static int getNextAndNumber() {
-        andNumber++;
-        return andNumber;
-    }
-
     public static String toOllirType(JmmNode node) {
-        String type = node.get("node_type");
-        boolean isArray = TypeUtils.isArray(type) || TypeUtils.isEllipse(type);
-        List<String> separatedType = List.of(node.get("node_type").split("\n"));
-        int lastIdx = isArray ? separatedType.size() - 1 : separatedType.size();
-        return toOllirType(String.join("_", separatedType.subList(0, lastIdx)), isArray);
+        return toOllirType(node, true);
     }
 
     public static String toOllirType(JmmNode node, boolean consider_array) {
-        String type = node.get("node_type");
-        boolean isArray = TypeUtils.isArray(type) || TypeUtils.isEllipse(type);
-        List<String> separatedType = List.of(node.get("node_type").split("\n"));
-        int lastIdx = isArray && consider_array ? separatedType.size() - 2 : separatedType.size() - 1;
-        return toOllirType(String.join("_", separatedType.subList(0, lastIdx)), isArray && consider_array);
+        JmmType type = TypeUtils.getNodeType(node);
+        return toOllirType(type.getName(), type.hasElements() && consider_array);
     }
 
     public static String toOllirType(Type type) {
-        boolean isEllispe = false;
-
-        if (type.getAttributes().contains("isEllipse"))
-            isEllispe = type.getObject("isEllipse", Boolean.class);
-
-        return toOllirType(type.getName(), type.isArray() || isEllispe);
+        return toOllirType(type.getName(), JmmType.of(type).hasElements());
     }
 
     private static String toOllirType(String typeName, boolean isArray) {
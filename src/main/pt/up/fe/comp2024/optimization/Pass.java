@@ -0,0 +1,28 @@
+package pt.up.fe.comp2024.optimization;
+
+import pt.up.fe.comp.jmm.report.Report;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents an optimization pass over one of the forms the code takes in the compiler.
+ *
+ * @param <T> the form of the code, e.g., the OLLIR of a class
+ */
+public interface Pass<T> {
+
+    /**
+     * Optimizes the given code in place.
+     *
+     * @return true if the code was changed
+     */
+    boolean optimize(T code);
+
+    /**
+     * @return the reports of the runs of this pass so far
+     */
+    default List<Report> getReports() {
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,296 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.ast.AstTraversal;
+import pt.up.fe.comp2024.ast_optimization.ASTOptimizationAnalysis;
+import pt.up.fe.comp2024.ast_optimization.LoopUnrolling;
+import pt.up.fe.comp2024.backend.RedundantJumpElimination;
+import pt.up.fe.comp2024.optimization.passes.CopyPropagation;
+import pt.up.fe.comp2024.optimization.passes.DeadStoreElimination;
+import pt.up.fe.comp2024.optimization.passes.FieldAccessElimination;
+import pt.up.fe.comp2024.optimization.passes.RegisterAllocation;
+import pt.up.fe.comp2024.optimization.passes.StaticPromotion;
+import pt.up.fe.comp2024.optimization.passes.TailCallElimination;
+import pt.up.fe.comp2024.optimization.ssa.SsaConversion;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Runs the optimization passes over each form of the code, and keeps statistics of every pass that runs: how many
+ * times it ran, for how long and how much smaller it left the code.
+ * <p>
+ * Passes of the same form run in the order they were added, except that a pass always runs after the passes it
+ * depends on. Consecutive passes that are repeated run in turn until none of them changes the code, since each one
+ * can open opportunities for the others, while the other passes run once.
+ */
+public class PassManager {
+
+    /**
+     * The code as an AST, whose size is its number of nodes.
+     */
+    public static final Form<JmmSemanticsResult> AST = new Form<>(Stage.OPTIMIZATION, "nodes",
+            semanticsResult -> AstTraversal.getDescendants(semanticsResult.getRootNode()).size() + 1);
+
+    /**
+     * The code as OLLIR, whose size is its number of instructions.
+     */
+    public static final Form<ClassUnit> OLLIR = new Form<>(Stage.OPTIMIZATION, "instructions",
+            classUnit -> classUnit.getMethods().stream().mapToInt(method -> method.getInstructions().size()).sum());
+
+    /**
+     * The code of a method in Jasmin, one line per element, whose size is its number of instructions.
+     */
+    public static final Form<List<String>> JASMIN = new Form<>(Stage.GENERATION, "instructions",
+            RedundantJumpElimination::countInstructions);
+
+    private final List<Registration<?>> registrations;
+
+    public PassManager() {
+        this.registrations = new ArrayList<>();
+    }
+
+    /**
+     * @return the passes enabled by the optimization level and other options of the given configuration
+     */
+    public static PassManager of(Map<String, String> config) {
+        int level = CompilerConfig.getOptimizationLevel(config);
+        int unroll = CompilerConfig.getUnroll(config);
+        int registers = CompilerConfig.getRegisterAllocation(config);
+        boolean ssa = CompilerConfig.getSsa(config);
+
+        var passes = new PassManager();
+
+        var loopUnrolling = new LoopUnrolling(unroll);
+        passes.addOnce(AST, "LoopUnrolling", unroll > 1,
+                code -> loopUnrolling.unroll(code.getRootNode(), code.getSymbolTable()));
+
+        // Unrolled loops leave their counters as constants
+        var constantFolding = new ASTOptimizationAnalysis();
+        passes.addOnce(AST, "ConstantFolding", level >= 1, code -> constantFolding.optimize(code.getRootNode()),
+                "LoopUnrolling");
+
+        passes.addRepeated(OLLIR, "StaticPromotion", level >= 2, new StaticPromotion());
+        passes.addRepeated(OLLIR, "TailCallElimination", level >= 2, new TailCallElimination());
+        passes.addRepeated(OLLIR, "FieldAccessElimination", level >= 2, new FieldAccessElimination());
+        passes.addRepeated(OLLIR, "CopyPropagation", level >= 1, new CopyPropagation(), "FieldAccessElimination");
+        passes.addRepeated(OLLIR, "DeadStoreElimination", level >= 1, new DeadStoreElimination(), "CopyPropagation");
+
+        // Passes that need SSA form go between its construction and destruction
+        var ssaConversion = new SsaConversion();
+        passes.addOnce(OLLIR, "SsaConstruction", ssa, ssaConversion::construct, "DeadStoreElimination");
+        passes.addOnce(OLLIR, "SsaDestruction", ssa, ssaConversion::destruct, "SsaConstruction");
+
+        passes.addOnce(OLLIR, "RegisterAllocation", registers != -1, new RegisterAllocation(registers),
+                "DeadStoreElimination", "SsaDestruction");
+
+        passes.addOnce(JASMIN, "RedundantJumpElimination", level >= 1, new RedundantJumpElimination());
+
+        return passes;
+    }
+
+    /**
+     * Adds a pass that runs with the repeated passes next to it until none of them changes the code.
+     *
+     * @param enabled      if false, the pass does not run, but passes can still depend on it
+     * @param dependencies names of the passes that must run before this one, when enabled
+     */
+    public <T> void addRepeated(Form<T> form, String name, boolean enabled, Pass<T> pass, String... dependencies) {
+        add(new Registration<>(form, name, enabled, true, pass, List.of(dependencies)));
+    }
+
+    /**
+     * Adds a pass that runs once.
+     *
+     * @param enabled      if false, the pass does not run, but passes can still depend on it
+     * @param dependencies names of the passes that must run before this one, when enabled
+     */
+    public <T> void addOnce(Form<T> form, String name, boolean enabled, Pass<T> pass, String... dependencies) {
+        add(new Registration<>(form, name, enabled, false, pass, List.of(dependencies)));
+    }
+
+    private void add(Registration<?> registration) {
+        for (var other : registrations) {
+            if (other.name.equals(registration.name)) {
+                throw new RuntimeException("Pass '" + registration.name + "' was already added");
+            }
+        }
+
+        registrations.add(registration);
+    }
+
+    /**
+     * Runs the enabled passes of the form of the given code.
+     *
+     * @return true if any pass changed the code
+     */
+    public <T> boolean run(Form<T> form, T code) {
+        var passes = order(form);
+        boolean changed = false;
+
+        int start = 0;
+        while (start < passes.size()) {
+            if (!passes.get(start).repeated) {
+                changed |= passes.get(start).run(code);
+                start++;
+                continue;
+            }
+
+            int end = start;
+            while (end < passes.size() && passes.get(end).repeated) {
+                end++;
+            }
+
+            var group = passes.subList(start, end);
+            boolean groupChanged = true;
+            while (groupChanged) {
+                groupChanged = false;
+                for (var pass : group) {
+                    groupChanged |= pass.run(code);
+                }
+                changed |= groupChanged;
+            }
+
+            start = end;
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return a log with the statistics of each pass that ran, followed by the reports of the pass itself
+     */
+    public List<Report> getReports() {
+        var reports = new ArrayList<Report>();
+
+        for (var registration : registrations) {
+            if (registration.runs == 0) continue;
+
+            var message = String.format(Locale.ROOT, "Pass '%s': %d run%s, %.3f ms, %d %s removed",
+                    registration.name, registration.runs, registration.runs == 1 ? "" : "s",
+                    registration.nanos / 1e6, registration.removed, registration.form.unit);
+            reports.add(Report.newLog(registration.form.stage, -1, -1, message, null));
+            reports.addAll(registration.pass.getReports());
+        }
+
+        return reports;
+    }
+
+    /**
+     * @return the enabled passes of the given form, each after the passes it depends on and otherwise in the order
+     * they were added
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<Registration<T>> order(Form<T> form) {
+        var names = new HashSet<String>();
+        var pending = new ArrayList<Registration<T>>();
+
+        for (var registration : registrations) {
+            if (registration.form != form) continue;
+
+            names.add(registration.name);
+            if (registration.enabled) pending.add((Registration<T>) registration);
+        }
+
+        var enabledNames = new HashSet<String>();
+        for (var registration : pending) {
+            for (var dependency : registration.dependencies) {
+                if (!names.contains(dependency)) {
+                    throw new RuntimeException("Pass '" + registration.name + "' depends on unknown pass '"
+                            + dependency + "'");
+                }
+            }
+            enabledNames.add(registration.name);
+        }
+
+        var ordered = new ArrayList<Registration<T>>();
+        var placed = new HashSet<String>();
+        while (!pending.isEmpty()) {
+            Registration<T> next = null;
+            for (var registration : pending) {
+                boolean ready = registration.dependencies.stream()
+                        .allMatch(dependency -> placed.contains(dependency) || !enabledNames.contains(dependency));
+                if (ready) {
+                    next = registration;
+                    break;
+                }
+            }
+
+            if (next == null) {
+                throw new RuntimeException("Passes have circular dependencies: " + pending);
+            }
+
+            pending.remove(next);
+            ordered.add(next);
+            placed.add(next.name);
+        }
+
+        return ordered;
+    }
+
+    /**
+     * A form the code takes in the compiler, with how its size is measured.
+     */
+    public static final class Form<T> {
+
+        private final Stage stage;
+        private final String unit;
+        private final ToIntFunction<T> size;
+
+        private Form(Stage stage, String unit, ToIntFunction<T> size) {
+            this.stage = stage;
+            this.unit = unit;
+            this.size = size;
+        }
+    }
+
+    private static class Registration<T> {
+
+        private final Form<T> form;
+        private final String name;
+        private final boolean enabled;
+        private final boolean repeated;
+        private final Pass<T> pass;
+        private final List<String> dependencies;
+
+        private int runs;
+        private long nanos;
+        private long removed;
+
+        private Registration(Form<T> form, String name, boolean enabled, boolean repeated, Pass<T> pass,
+                             List<String> dependencies) {
+            this.form = form;
+            this.name = name;
+            this.enabled = enabled;
+            this.repeated = repeated;
+            this.pass = pass;
+            this.dependencies = dependencies;
+        }
+
+        private boolean run(T code) {
+            int sizeBefore = form.size.applyAsInt(code);
+            long start = System.nanoTime();
+
+            boolean changed = pass.optimize(code);
+
+            nanos += System.nanoTime() - start;
+            removed += sizeBefore - form.size.applyAsInt(code);
+            runs++;
+
+            return changed;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
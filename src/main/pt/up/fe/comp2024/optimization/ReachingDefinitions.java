@@ -0,0 +1,70 @@
+package pt.up.fe.comp2024.optimization;
+
+import pt.up.fe.comp2024.optimization.dataflow.DataflowResult;
+import pt.up.fe.comp2024.optimization.dataflow.DataflowSolver;
+import pt.up.fe.comp2024.optimization.dataflow.Direction;
+import pt.up.fe.comp2024.optimization.dataflow.GenKillProblem;
+import pt.up.fe.comp2024.optimization.dataflow.SetLattice;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assignments whose value may reach each instruction of a method, computed by a forward data-flow analysis
+ * over its {@link ControlFlowGraph}.
+ * <p>
+ * Definitions are identified by the index of the instruction that makes them.
+ */
+public class ReachingDefinitions {
+
+    private final Map<String, BitSet> definitions;
+    private final DataflowResult<BitSet> result;
+
+    public ReachingDefinitions(ControlFlowGraph cfg) {
+        definitions = new HashMap<>();
+        for (int i = 0; i < cfg.size(); i++) {
+            for (var variable : Liveness.getDefs(cfg.getInstruction(i))) {
+                definitions.computeIfAbsent(variable, key -> new BitSet()).set(i);
+            }
+        }
+
+        var gen = new ArrayList<BitSet>();
+        var kill = new ArrayList<BitSet>();
+        for (int i = 0; i < cfg.size(); i++) {
+            var generated = new BitSet();
+            var killed = new BitSet();
+
+            // An assignment replaces every other definition of its variable
+            for (var variable : Liveness.getDefs(cfg.getInstruction(i))) {
+                generated.set(i);
+                killed.or(definitions.get(variable));
+            }
+
+            gen.add(generated);
+            kill.add(killed);
+        }
+
+        var problem = new GenKillProblem(Direction.FORWARD, SetLattice.union(), gen, kill);
+        result = DataflowSolver.solve(cfg, problem);
+    }
+
+    /**
+     * @return the indexes of the assignments to the variable whose value may be read right before the instruction
+     */
+    public List<Integer> getDefinitions(int index, String variable) {
+        var reaching = (BitSet) result.getBefore(index).clone();
+        reaching.and(definitions.getOrDefault(variable, new BitSet()));
+
+        return reaching.stream().boxed().toList();
+    }
+
+    /**
+     * @return how many times the solver visited an instruction to compute the analysis
+     */
+    public int getVisits() {
+        return result.getVisits();
+    }
+}
@@ -0,0 +1,24 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+/**
+ * A data-flow analysis over the instructions of a method, to be solved by {@link DataflowSolver}.
+ *
+ * @param <V> the type of the values computed before and after each instruction
+ */
+public interface DataflowProblem<V> {
+
+    Direction getDirection();
+
+    Lattice<V> getLattice();
+
+    /**
+     * @return the value at the entry of the method, for forward problems, or at its exits, for backward problems
+     */
+    V getBoundary();
+
+    /**
+     * Computes the value on one side of an instruction from the value on the other side, which is the value before
+     * the instruction for forward problems and the value after it for backward problems.
+     */
+    V transfer(int index, V value);
+}
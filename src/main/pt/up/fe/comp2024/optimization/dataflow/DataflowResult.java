@@ -0,0 +1,36 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import java.util.List;
+
+/**
+ * The values of a solved data-flow problem right before and right after each instruction, in the order of the code.
+ *
+ * @param <V> the type of the values
+ */
+public class DataflowResult<V> {
+
+    private final List<V> before;
+    private final List<V> after;
+    private final int visits;
+
+    DataflowResult(List<V> before, List<V> after, int visits) {
+        this.before = before;
+        this.after = after;
+        this.visits = visits;
+    }
+
+    public V getBefore(int index) {
+        return before.get(index);
+    }
+
+    public V getAfter(int index) {
+        return after.get(index);
+    }
+
+    /**
+     * @return how many times the solver computed the value of an instruction, which measures the work it took
+     */
+    public int getVisits() {
+        return visits;
+    }
+}
@@ -0,0 +1,77 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import pt.up.fe.comp2024.optimization.ControlFlowGraph;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * Solves data-flow problems with a worklist, taking instructions in reverse postorder for forward problems and in
+ * postorder for backward ones.
+ * <p>
+ * In that order, an instruction is visited after the instructions its value comes from, except across the back edges
+ * of loops, so values settle in a number of passes that depends on how deeply loops are nested rather than on the size
+ * of the method. Only the instructions whose inputs changed are visited again.
+ */
+public class DataflowSolver {
+
+    private DataflowSolver() {
+    }
+
+    public static <V> DataflowResult<V> solve(ControlFlowGraph cfg, DataflowProblem<V> problem) {
+        int size = cfg.size();
+        boolean forward = problem.getDirection() == Direction.FORWARD;
+        var lattice = problem.getLattice();
+
+        // Values that flow into each instruction and out of it, in the direction of the problem
+        var inputs = new ArrayList<V>(size);
+        var outputs = new ArrayList<V>(size);
+        for (int i = 0; i < size; i++) {
+            inputs.add(lattice.top());
+            outputs.add(lattice.top());
+        }
+
+        var postorder = cfg.getPostorder();
+        var order = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            order[rank] = forward ? postorder.get(size - 1 - rank) : postorder.get(rank);
+        }
+
+        var rankOf = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            rankOf[order[rank]] = rank;
+        }
+
+        var pending = new BitSet(size);
+        pending.set(0, size);
+        int visits = 0;
+
+        // Each sweep goes up the order once, so an instruction only waits for the next sweep across a back edge
+        while (!pending.isEmpty()) {
+            for (int rank = pending.nextSetBit(0); rank >= 0; rank = pending.nextSetBit(rank + 1)) {
+                pending.clear(rank);
+                int index = order[rank];
+                visits++;
+
+                var sources = forward ? cfg.getPredecessors(index) : cfg.getSuccessors(index);
+                boolean isBoundary = forward ? index == 0 : cfg.getSuccessors(index).isEmpty();
+
+                var input = isBoundary ? problem.getBoundary() : lattice.top();
+                for (var source : sources) {
+                    input = lattice.meet(input, outputs.get(source));
+                }
+                inputs.set(index, input);
+
+                var output = problem.transfer(index, input);
+                if (output.equals(outputs.get(index))) continue;
+
+                outputs.set(index, output);
+                for (var target : forward ? cfg.getSuccessors(index) : cfg.getPredecessors(index)) {
+                    pending.set(rankOf[target]);
+                }
+            }
+        }
+
+        return forward ? new DataflowResult<>(inputs, outputs, visits) : new DataflowResult<>(outputs, inputs, visits);
+    }
+}
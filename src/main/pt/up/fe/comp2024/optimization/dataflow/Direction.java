@@ -0,0 +1,17 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+/**
+ * Direction in which values flow through the control-flow graph in a data-flow analysis.
+ */
+public enum Direction {
+
+    /**
+     * Values flow from the entry of the method along the edges, e.g., reaching definitions.
+     */
+    FORWARD,
+
+    /**
+     * Values flow from the exits of the method against the edges, e.g., live variables.
+     */
+    BACKWARD
+}
@@ -0,0 +1,50 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A problem over sets where each instruction adds some elements and removes others, independently of the elements
+ * that reach it.
+ */
+public class GenKillProblem implements DataflowProblem<BitSet> {
+
+    private final Direction direction;
+    private final SetLattice lattice;
+    private final List<BitSet> gen;
+    private final List<BitSet> kill;
+
+    /**
+     * @param gen  the elements each instruction adds
+     * @param kill the elements each instruction removes, before adding its own
+     */
+    public GenKillProblem(Direction direction, SetLattice lattice, List<BitSet> gen, List<BitSet> kill) {
+        this.direction = direction;
+        this.lattice = lattice;
+        this.gen = gen;
+        this.kill = kill;
+    }
+
+    @Override
+    public Direction getDirection() {
+        return direction;
+    }
+
+    @Override
+    public Lattice<BitSet> getLattice() {
+        return lattice;
+    }
+
+    @Override
+    public BitSet getBoundary() {
+        return new BitSet();
+    }
+
+    @Override
+    public BitSet transfer(int index, BitSet value) {
+        var result = (BitSet) value.clone();
+        result.andNot(kill.get(index));
+        result.or(gen.get(index));
+        return result;
+    }
+}
@@ -0,0 +1,21 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+/**
+ * The values of a data-flow analysis and how the values coming from several paths are combined.
+ * <p>
+ * Values are never changed after they are created, and are compared with {@link Object#equals(Object)}.
+ *
+ * @param <V> the type of the values
+ */
+public interface Lattice<V> {
+
+    /**
+     * @return the value that every instruction starts with, which is left unchanged when combined with another
+     */
+    V top();
+
+    /**
+     * @return the combination of the values of two paths that join
+     */
+    V meet(V first, V second);
+}
@@ -0,0 +1,53 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import java.util.BitSet;
+
+/**
+ * Lattices of sets of elements of a {@link Universe}, kept as {@link BitSet}s.
+ */
+public class SetLattice implements Lattice<BitSet> {
+
+    private final BitSet top;
+    private final boolean isUnion;
+
+    private SetLattice(BitSet top, boolean isUnion) {
+        this.top = top;
+        this.isUnion = isUnion;
+    }
+
+    /**
+     * @return the lattice of problems where an element holds if it holds along any path, e.g., live variables
+     */
+    public static SetLattice union() {
+        return new SetLattice(new BitSet(), true);
+    }
+
+    /**
+     * @return the lattice of problems where an element holds only if it holds along every path, e.g., available
+     * expressions, over a universe of the given size
+     */
+    public static SetLattice intersection(int universeSize) {
+        var top = new BitSet(universeSize);
+        top.set(0, universeSize);
+        return new SetLattice(top, false);
+    }
+
+    @Override
+    public BitSet top() {
+        return top;
+    }
+
+    @Override
+    public BitSet meet(BitSet first, BitSet second) {
+        // Values are shared, so they are copied before being changed
+        if (first.equals(second)) return first;
+
+        var result = (BitSet) first.clone();
+        if (isUnion) {
+            result.or(second);
+        } else {
+            result.and(second);
+        }
+        return result;
+    }
+}
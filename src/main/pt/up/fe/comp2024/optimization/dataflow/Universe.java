@@ -0,0 +1,81 @@
+package pt.up.fe.comp2024.optimization.dataflow;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The elements a data-flow analysis reasons about, each with an index, so that sets of them can be kept as
+ * {@link BitSet}s.
+ *
+ * @param <T> the type of the elements, e.g., variable names
+ */
+public class Universe<T> {
+
+    private final List<T> elements;
+    private final Map<T, Integer> indexes;
+
+    public Universe() {
+        this.elements = new ArrayList<>();
+        this.indexes = new HashMap<>();
+    }
+
+    /**
+     * @return the index of the element, which is added if it is not in the universe yet
+     */
+    public int add(T element) {
+        var index = indexes.get(element);
+        if (index != null) return index;
+
+        indexes.put(element, elements.size());
+        elements.add(element);
+        return elements.size() - 1;
+    }
+
+    /**
+     * @return the index of the element, or -1 if it is not in the universe
+     */
+    public int indexOf(T element) {
+        return indexes.getOrDefault(element, -1);
+    }
+
+    public T get(int index) {
+        return elements.get(index);
+    }
+
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * @return the set with the given elements, which are added to the universe if needed
+     */
+    public BitSet toBitSet(Collection<T> elements) {
+        var set = new BitSet(size());
+        for (var element : elements) {
+            set.set(add(element));
+        }
+        return set;
+    }
+
+    /**
+     * @return the elements of the set, in the order of their indexes
+     */
+    public Set<T> toSet(BitSet set) {
+        var result = new LinkedHashSet<T>();
+        for (int index = set.nextSetBit(0); index >= 0; index = set.nextSetBit(index + 1)) {
+            result.add(elements.get(index));
+        }
+        return result;
+    }
+
+    public boolean contains(BitSet set, T element) {
+        int index = indexOf(element);
+        return index >= 0 && set.get(index);
+    }
+}
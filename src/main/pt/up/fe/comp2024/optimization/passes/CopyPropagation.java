@@ -0,0 +1,195 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.Liveness;
+import pt.up.fe.comp2024.optimization.MethodPass;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Removes the copies introduced by the OLLIR generator.
+ * <p>
+ * Inside each basic block, reads of a variable that holds a copy of another variable or of a literal
+ * are replaced by that value. Besides that, a temporary that is computed only to be copied to another
+ * variable or array element ({@code t := expr; y := t;}) is replaced by a direct assignment ({@code y := expr;}) when
+ * the temporary is not live after the copy. The copies left unused are removed by
+ * {@link DeadStoreElimination}.
+ */
+public class CopyPropagation extends MethodPass {
+
+    @Override
+    protected boolean optimize(Method method) {
+        boolean changed = propagate(new ControlFlowGraph(method));
+
+        while (coalesce(method)) {
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private boolean propagate(ControlFlowGraph cfg) {
+        boolean changed = false;
+        var copies = new HashMap<String, Element>();
+
+        for (int i = 0; i < cfg.size(); i++) {
+            if (cfg.isBlockStart(i)) copies.clear();
+
+            var inst = cfg.getInstruction(i);
+            changed |= replaceUses(inst, copies);
+
+            for (var def : Liveness.getDefs(inst)) {
+                copies.remove(def);
+                copies.values().removeIf(value -> isOperand(value, def));
+            }
+
+            if (inst instanceof AssignInstruction assign
+                    && assign.getDest() instanceof Operand dest
+                    && !(dest instanceof ArrayOperand)
+                    && assign.getRhs() instanceof SingleOpInstruction single
+                    && !(single.getSingleOperand() instanceof ArrayOperand)
+                    && !isOperand(single.getSingleOperand(), dest.getName())) {
+                copies.put(dest.getName(), single.getSingleOperand());
+            }
+        }
+
+        return changed;
+    }
+
+    private boolean coalesce(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        var liveness = new Liveness(cfg);
+        var instructions = method.getInstructions();
+        var touched = new HashSet<String>();
+        boolean changed = false;
+
+        for (int i = cfg.size() - 2; i >= 0; i--) {
+            if (!(instructions.get(i) instanceof AssignInstruction assign)
+                    || !(instructions.get(i + 1) instanceof AssignInstruction copy)
+                    || cfg.isBlockStart(i + 1)) continue;
+
+            if (!(assign.getDest() instanceof Operand temp) || temp instanceof ArrayOperand) continue;
+            if (!(copy.getDest() instanceof Operand dest)) continue;
+            if (dest instanceof ArrayOperand arrayDest && arrayDest.getIndexOperands().stream()
+                    .anyMatch(index -> isOperand(index, temp.getName()))) continue;
+            if (!(copy.getRhs() instanceof SingleOpInstruction single)
+                    || !isOperand(single.getSingleOperand(), temp.getName())) continue;
+
+            if (dest.getName().equals(temp.getName())
+                    || liveness.isLiveOut(i + 1, temp.getName())
+                    || touched.contains(temp.getName())
+                    || touched.contains(dest.getName())) continue;
+
+            var merged = new AssignInstruction(dest, copy.getTypeOfAssign(), assign.getRhs());
+            instructions.remove(i + 1);
+            replace(method, i, List.of(merged));
+
+            touched.add(temp.getName());
+            touched.add(dest.getName());
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Replaces the variables read by an instruction with the values they are known to hold.
+     */
+    private boolean replaceUses(Instruction inst, Map<String, Element> copies) {
+        if (copies.isEmpty()) return false;
+
+        boolean changed = false;
+
+        switch (inst.getInstType()) {
+            case ASSIGN -> {
+                var assign = (AssignInstruction) inst;
+                if (assign.getDest() instanceof ArrayOperand dest) changed |= replaceIndexes(dest, copies);
+                changed |= replaceUses(assign.getRhs(), copies);
+            }
+            case CALL -> changed |= replaceAll(((CallInstruction) inst).getArguments(), copies);
+            case PUTFIELD -> {
+                var putField = (PutFieldInstruction) inst;
+                var operands = putField.getOperands();
+                changed |= replaceAll(operands.subList(2, operands.size()), copies);
+            }
+            case BRANCH -> changed |= replaceUses(((CondBranchInstruction) inst).getCondition(), copies);
+            case RETURN -> {
+                var ret = (ReturnInstruction) inst;
+                var value = ret.hasReturnValue() ? getValue(ret.getOperand(), copies) : null;
+                if (value != null) {
+                    ret.setOperand(value);
+                    changed = true;
+                }
+            }
+            case UNARYOPER, BINARYOPER -> {
+                var op = (OpInstruction) inst;
+                var operands = new ArrayList<>(op.getOperands());
+                if (replaceAll(operands, copies)) {
+                    op.setOperands(operands);
+                    changed = true;
+                }
+            }
+            case NOPER -> {
+                var single = (SingleOpInstruction) inst;
+                var value = getValue(single.getSingleOperand(), copies);
+                if (value != null) {
+                    single.setSingleOperand(value);
+                    changed = true;
+                }
+            }
+            default -> {
+            }
+        }
+
+        return changed;
+    }
+
+    private boolean replaceAll(List<Element> elements, Map<String, Element> copies) {
+        boolean changed = false;
+
+        for (int i = 0; i < elements.size(); i++) {
+            var element = elements.get(i);
+
+            if (element instanceof ArrayOperand arrayOperand) {
+                changed |= replaceIndexes(arrayOperand, copies);
+                continue;
+            }
+
+            var value = getValue(element, copies);
+            if (value != null) {
+                elements.set(i, value);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private boolean replaceIndexes(ArrayOperand arrayOperand, Map<String, Element> copies) {
+        boolean changed = false;
+        var indexes = arrayOperand.getIndexOperands();
+
+        for (int i = 0; i < indexes.size(); i++) {
+            // Indexes must stay operands, so only copies of other variables are propagated
+            if (getValue(indexes.get(i), copies) instanceof Operand value) {
+                indexes.set(i, value);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private Element getValue(Element element, Map<String, Element> copies) {
+        if (!(element instanceof Operand operand) || operand instanceof ArrayOperand) return null;
+
+        return copies.get(operand.getName());
+    }
+}
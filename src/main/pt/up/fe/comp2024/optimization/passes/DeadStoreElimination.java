@@ -0,0 +1,59 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.Liveness;
+import pt.up.fe.comp2024.optimization.MethodPass;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.remove;
+
+/**
+ * Removes assignments to variables that are not live afterwards, as long as computing the
+ * assigned value has no side effects.
+ */
+public class DeadStoreElimination extends MethodPass {
+
+    @Override
+    protected boolean optimize(Method method) {
+        boolean changed = false;
+        boolean removed = true;
+
+        // Removing a store can make the stores of the values it read dead as well
+        while (removed) {
+            removed = false;
+
+            var cfg = new ControlFlowGraph(method);
+            var liveness = new Liveness(cfg);
+
+            for (int i = cfg.size() - 1; i >= 0; i--) {
+                if (cfg.getInstruction(i) instanceof AssignInstruction assign
+                        && assign.getDest() instanceof Operand dest
+                        && !(dest instanceof ArrayOperand)
+                        && !liveness.isLiveOut(i, dest.getName())
+                        && isPure(assign.getRhs())) {
+                    remove(method, i);
+                    removed = true;
+                }
+            }
+
+            changed |= removed;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Checks if an instruction can be removed without changing the behaviour of the program.
+     * Calls, array accesses and divisions are kept, since they may have side effects or throw.
+     */
+    private boolean isPure(Instruction inst) {
+        return switch (inst.getInstType()) {
+            case NOPER -> !(((SingleOpInstruction) inst).getSingleOperand() instanceof ArrayOperand);
+            case UNARYOPER -> true;
+            case BINARYOPER -> ((BinaryOpInstruction) inst).getOperation().getOpType() != OperationType.DIV
+                    && ((BinaryOpInstruction) inst).getOperands().stream().noneMatch(ArrayOperand.class::isInstance);
+            case GETFIELD -> true;
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.Liveness;
+import pt.up.fe.comp2024.optimization.MethodPass;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Removes redundant field accesses inside each basic block.
+ * <p>
+ * After a field is read or written, its value is known to be in a variable (or to be a literal) until the
+ * field is written again, that variable is reassigned or a method is called. Reads of the field in that region
+ * are replaced by that value. A write to a field that is written again in the same block, before any read
+ * or call, is removed.
+ */
+public class FieldAccessElimination extends MethodPass {
+
+    @Override
+    protected boolean optimize(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        var instructions = method.getInstructions();
+
+        // Value of each field and index of its last write that was not read yet
+        var values = new HashMap<String, Element>();
+        var pendingWrites = new HashMap<String, Integer>();
+        var deadWrites = new TreeSet<Integer>(Comparator.reverseOrder());
+        boolean changed = false;
+
+        for (int i = 0; i < cfg.size(); i++) {
+            if (cfg.isBlockStart(i)) {
+                values.clear();
+                pendingWrites.clear();
+            }
+
+            var inst = instructions.get(i);
+
+            if (inst instanceof PutFieldInstruction putField && isThis(putField.getObject())) {
+                var field = putField.getField().getName();
+
+                var previous = pendingWrites.put(field, i);
+                if (previous != null) deadWrites.add(previous);
+
+                var value = putField.getValue();
+                if (value instanceof ArrayOperand) values.remove(field);
+                else values.put(field, value);
+
+                continue;
+            }
+
+            if (inst instanceof AssignInstruction assign && assign.getRhs() instanceof GetFieldInstruction getField
+                    && isThis(getField.getObject())) {
+                var field = getField.getField().getName();
+                var value = values.get(field);
+
+                if (value != null && !(assign.getDest() instanceof ArrayOperand)) {
+                    var load = new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                            new SingleOpInstruction(value));
+                    instructions.set(i, load);
+                    moveLabels(method, inst, load);
+                    changed = true;
+                } else {
+                    pendingWrites.remove(field);
+                    value = null;
+                }
+
+                kill(values, Liveness.getDefs(inst));
+                if (value == null && assign.getDest() instanceof Operand dest && !(dest instanceof ArrayOperand)) {
+                    values.put(field, dest);
+                }
+
+                continue;
+            }
+
+            if (hasCall(inst)) {
+                values.clear();
+                pendingWrites.clear();
+            }
+
+            kill(values, Liveness.getDefs(inst));
+        }
+
+        deadWrites.forEach(index -> remove(method, index));
+
+        return changed || !deadWrites.isEmpty();
+    }
+
+    private void kill(Map<String, Element> values, Set<String> defs) {
+        for (var def : defs) {
+            values.values().removeIf(value -> isOperand(value, def));
+        }
+    }
+
+    private boolean isThis(Element element) {
+        return isOperand(element, "this");
+    }
+
+    /**
+     * Checks if an instruction calls a method, which may read or write any field.
+     */
+    private boolean hasCall(Instruction inst) {
+        var call = inst instanceof AssignInstruction assign ? assign.getRhs() : inst;
+
+        return call instanceof CallInstruction callInst
+                && callInst.getInvocationType() != CallType.NEW
+                && callInst.getInvocationType() != CallType.arraylength;
+    }
+}
@@ -0,0 +1,129 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.Operand;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.optimization.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.Liveness;
+import pt.up.fe.comp2024.optimization.OllirPass;
+
+import java.util.*;
+
+/**
+ * Gives the variables of each method virtual registers, so that variables that are never live at the same time share
+ * a register.
+ * <p>
+ * 'this' and the parameters keep the registers the JVM passes them in, and every other variable takes the lowest
+ * register not taken by a variable it interferes with, which keeps the registers used contiguous. Reports an error
+ * when a method needs more registers than the given maximum, unless the maximum is 0, which only asks for as few
+ * registers as possible.
+ */
+public class RegisterAllocation implements OllirPass {
+
+    private final int maxRegisters;
+    private final List<Report> reports;
+
+    public RegisterAllocation(int maxRegisters) {
+        this.maxRegisters = maxRegisters;
+        this.reports = new ArrayList<>();
+    }
+
+    @Override
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    @Override
+    public boolean optimize(ClassUnit classUnit) {
+        for (var method : classUnit.getMethods()) {
+            int registers = allocate(method);
+
+            if (maxRegisters > 0 && registers > maxRegisters) {
+                reports.add(Report.newError(Stage.OPTIMIZATION, -1, -1, "Method '" + method.getMethodName()
+                        + "' needs " + registers + " registers, but at most " + maxRegisters + " were allowed", null));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the number of registers the method uses
+     */
+    private int allocate(Method method) {
+        var interference = getInterference(method);
+        var varTable = method.getVarTable();
+        var registers = new HashMap<String, Integer>();
+
+        // Fixed by the calling convention
+        int next = 0;
+        if (!method.isStaticMethod()) registers.put("this", next++);
+        for (var param : method.getParams()) {
+            if (param instanceof Operand operand) registers.put(operand.getName(), next++);
+        }
+
+        int count = next;
+        for (var variable : varTable.keySet()) {
+            if (registers.containsKey(variable)) continue;
+
+            var taken = new HashSet<Integer>();
+            for (var neighbour : interference.getOrDefault(variable, Set.of())) {
+                var register = registers.get(neighbour);
+                if (register != null) taken.add(register);
+            }
+
+            int register = 0;
+            while (taken.contains(register)) register++;
+
+            registers.put(variable, register);
+            count = Math.max(count, register + 1);
+        }
+
+        for (var entry : varTable.entrySet()) {
+            entry.getValue().setVirtualReg(registers.get(entry.getKey()));
+        }
+
+        return count;
+    }
+
+    /**
+     * @return for each variable, the variables that are live at the same time, which cannot share its register
+     */
+    private static Map<String, Set<String>> getInterference(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        var liveness = new Liveness(cfg);
+        var interference = new HashMap<String, Set<String>>();
+
+        // Whatever is live when the method starts holds a value from the start, e.g., the parameters
+        if (cfg.size() > 0) {
+            var liveAtEntry = liveness.getLiveIn(0);
+            for (var variable : liveAtEntry) {
+                for (var other : liveAtEntry) {
+                    addInterference(interference, variable, other);
+                }
+            }
+        }
+
+        // A variable that is written overwrites the register of its variable, so it cannot be shared with any other
+        // variable whose value is still needed
+        for (int i = 0; i < cfg.size(); i++) {
+            var liveOut = liveness.getLiveOut(i);
+            for (var def : Liveness.getDefs(cfg.getInstruction(i))) {
+                for (var live : liveOut) {
+                    addInterference(interference, def, live);
+                }
+            }
+        }
+
+        return interference;
+    }
+
+    private static void addInterference(Map<String, Set<String>> interference, String first, String second) {
+        if (first.equals(second)) return;
+
+        interference.computeIfAbsent(first, key -> new HashSet<>()).add(second);
+        interference.computeIfAbsent(second, key -> new HashSet<>()).add(first);
+    }
+}
@@ -0,0 +1,292 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.InstructionUtils;
+import pt.up.fe.comp2024.optimization.Liveness;
+import pt.up.fe.comp2024.optimization.OllirPass;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Moves the body of instance methods that never use 'this' into private static methods and rewrites the
+ * calls of those methods from 'invokevirtual' to 'invokestatic', which avoids loading the receiver and the virtual
+ * dispatch.
+ * <p>
+ * The instance method stays, forwarding its arguments to the static one, so other classes can still call it.
+ * Calls from the class itself go straight to the static method when their receiver cannot be null: 'this', or a
+ * local variable that only ever holds new objects of the class. Calls on 'this' of methods that are promoted
+ * together do not count as uses of 'this', since they are rewritten, so recursive methods are promoted too. Calls
+ * are only bound at compile time in classes that pass {@link InstructionUtils#isClosed(ClassUnit)}.
+ */
+public class StaticPromotion implements OllirPass {
+
+    private static final String STATIC_SUFFIX = "$static";
+
+    @Override
+    public boolean optimize(ClassUnit classUnit) {
+        if (!InstructionUtils.isClosed(classUnit)) return false;
+
+        var promoted = getPromoted(classUnit);
+        var changedMethods = new HashSet<Method>();
+
+        for (var method : getPromotable(classUnit, promoted)) {
+            var staticMethod = promote(classUnit, method);
+            promoted.add(method.getMethodName());
+            changedMethods.add(method);
+            changedMethods.add(staticMethod);
+        }
+
+        for (var method : classUnit.getMethods()) {
+            if (devirtualizeCalls(method, classUnit.getClassName(), promoted)) {
+                changedMethods.add(method);
+            }
+        }
+
+        changedMethods.forEach(InstructionUtils::rebuildVarTable);
+        return !changedMethods.isEmpty();
+    }
+
+    /**
+     * Returns the names of the methods that already forward to a static method, from an earlier run.
+     */
+    private Set<String> getPromoted(ClassUnit classUnit) {
+        var promoted = new HashSet<String>();
+
+        for (var method : classUnit.getMethods()) {
+            var name = method.getMethodName();
+            if (isStaticCopy(method) && name.endsWith(STATIC_SUFFIX)) {
+                promoted.add(name.substring(0, name.length() - STATIC_SUFFIX.length()));
+            }
+        }
+
+        return promoted;
+    }
+
+    /**
+     * Returns the methods that can be promoted together. Starting from all candidates, the methods that use 'this'
+     * other than to call the remaining candidates are dropped until none is.
+     */
+    private List<Method> getPromotable(ClassUnit classUnit, Set<String> promoted) {
+        var candidates = new LinkedHashMap<String, Method>();
+        for (var method : classUnit.getMethods()) {
+            if (isCandidate(classUnit, method, promoted)) candidates.put(method.getMethodName(), method);
+        }
+
+        var callable = new HashSet<>(promoted);
+        callable.addAll(candidates.keySet());
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (var iterator = candidates.values().iterator(); iterator.hasNext(); ) {
+                var method = iterator.next();
+                if (!usesThis(method, callable)) continue;
+
+                iterator.remove();
+                callable.remove(method.getMethodName());
+                changed = true;
+            }
+        }
+
+        return new ArrayList<>(candidates.values());
+    }
+
+    private boolean isCandidate(ClassUnit classUnit, Method method, Set<String> promoted) {
+        if (method.isConstructMethod() || method.isStaticMethod()) return false;
+        if (promoted.contains(method.getMethodName())) return false;
+
+        // Java-- cannot declare private methods, but a method could already have the name of the copy
+        var staticName = method.getMethodName() + STATIC_SUFFIX;
+        return classUnit.getMethods().stream().noneMatch(other -> other.getMethodName().equals(staticName));
+    }
+
+    private boolean isStaticCopy(Method method) {
+        return method.isStaticMethod() && method.getMethodAccessModifier() == AccessModifier.PRIVATE;
+    }
+
+    /**
+     * Checks if the method uses 'this' other than as the receiver of calls of the given methods.
+     */
+    private boolean usesThis(Method method, Set<String> callable) {
+        for (var inst : method.getInstructions()) {
+            var call = getCall(inst);
+
+            if (call != null && isCallOnThis(call) && callable.contains(InstructionUtils.getCalledMethod(call))) {
+                if (call.getArguments().stream().anyMatch(arg -> InstructionUtils.isOperand(arg, "this"))) {
+                    return true;
+                }
+            } else if (Liveness.getUses(inst).contains("this")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Moves the body of the method into a new private static method and makes the method call it.
+     */
+    private Method promote(ClassUnit classUnit, Method method) {
+        var staticMethod = new Method(classUnit);
+        staticMethod.setMethodName(method.getMethodName() + STATIC_SUFFIX);
+        staticMethod.setMethodAccessModifier(AccessModifier.PRIVATE);
+        staticMethod.setStaticMethod();
+        staticMethod.setReturnType(method.getReturnType());
+        staticMethod.setVarargs(method.isVarargs());
+
+        var arguments = new ArrayList<Element>();
+        for (var param : method.getParams()) {
+            var operand = (Operand) param;
+
+            // Without the receiver, parameters start at register 0
+            var staticParam = new Operand(operand.getName(), operand.getType());
+            staticParam.setParamId(operand.getParamId() - 1);
+            staticMethod.addParam(staticParam);
+
+            arguments.add(new Operand(operand.getName(), operand.getType()));
+        }
+
+        method.getInstructions().forEach(staticMethod::addInstr);
+        method.getLabels().forEach((label, inst) -> staticMethod.addLabel(label, inst));
+        method.getInstructions().clear();
+        method.getLabels().clear();
+
+        var returnType = method.getReturnType();
+        boolean isVoid = returnType.getTypeOfElement() == ElementType.VOID;
+        var call = new CallInstruction(CallType.invokestatic, getClassOperand(classUnit.getClassName()),
+                getMethodLiteral(staticMethod.getMethodName()), arguments, returnType, isVoid);
+
+        ReturnInstruction returnInst;
+        if (isVoid) {
+            method.addInstr(call);
+            returnInst = new ReturnInstruction();
+        } else {
+            var result = new Operand(InstructionUtils.newVariable(method, "tmp", returnType), returnType);
+            method.addInstr(new AssignInstruction(result, returnType, call));
+            returnInst = new ReturnInstruction(result);
+        }
+
+        returnInst.setReturnType(returnType);
+        method.addInstr(returnInst);
+
+        classUnit.addMethod(staticMethod);
+        return staticMethod;
+    }
+
+    private boolean devirtualizeCalls(Method method, String className, Set<String> promoted) {
+        var instructions = method.getInstructions();
+        var nonNull = getNonNullVariables(method, className);
+        boolean changed = false;
+
+        for (int i = 0; i < instructions.size(); i++) {
+            var inst = instructions.get(i);
+            var call = getCall(inst);
+            if (call == null || !isPromotedCall(call, promoted, nonNull)) continue;
+
+            if (inst instanceof AssignInstruction assign) {
+                instructions.set(i, new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                        toStaticCall(call, className)));
+            } else {
+                instructions.set(i, toStaticCall(call, className));
+            }
+
+            InstructionUtils.moveLabels(method, inst, instructions.get(i));
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Returns the call of an instruction that is a call or assigns the result of one, or null otherwise.
+     */
+    private CallInstruction getCall(Instruction inst) {
+        if (inst instanceof CallInstruction call) return call;
+        if (inst instanceof AssignInstruction assign && assign.getRhs() instanceof CallInstruction call) return call;
+        return null;
+    }
+
+    private boolean isCallOnThis(CallInstruction call) {
+        return call.getInvocationType() == CallType.invokevirtual
+                && call.getCaller().getType().getTypeOfElement() == ElementType.THIS;
+    }
+
+    /**
+     * Only calls whose receiver cannot be null are rewritten, since the others may need to throw.
+     */
+    private boolean isPromotedCall(CallInstruction call, Set<String> promoted, Set<String> nonNull) {
+        if (call.getInvocationType() != CallType.invokevirtual) return false;
+        if (!promoted.contains(InstructionUtils.getCalledMethod(call))) return false;
+
+        return isCallOnThis(call)
+                || call.getCaller() instanceof Operand caller && !(caller instanceof ArrayOperand)
+                && nonNull.contains(caller.getName());
+    }
+
+    /**
+     * Returns the local variables of the class type that are only assigned new objects, directly or through other
+     * such variables. Parameters are left out, since the caller may pass null.
+     */
+    private Set<String> getNonNullVariables(Method method, String className) {
+        var nonNull = new HashSet<String>();
+        for (var inst : method.getInstructions()) {
+            if (inst instanceof AssignInstruction assign && assign.getDest() instanceof Operand dest
+                    && !(dest instanceof ArrayOperand) && isOfClass(dest.getType(), className)) {
+                nonNull.add(dest.getName());
+            }
+        }
+        method.getParams().forEach(param -> nonNull.remove(((Operand) param).getName()));
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (var inst : method.getInstructions()) {
+                if (!(inst instanceof AssignInstruction assign)) continue;
+
+                var defs = Liveness.getDefs(assign);
+                if (defs.stream().anyMatch(nonNull::contains) && !isNonNullValue(assign.getRhs(), className, nonNull)) {
+                    changed |= nonNull.removeAll(defs);
+                }
+            }
+        }
+
+        return nonNull;
+    }
+
+    private boolean isNonNullValue(Instruction rhs, String className, Set<String> nonNull) {
+        if (rhs instanceof CallInstruction call) {
+            return call.getInvocationType() == CallType.NEW && isOfClass(call.getReturnType(), className);
+        }
+
+        return rhs instanceof SingleOpInstruction single
+                && single.getSingleOperand() instanceof Operand operand
+                && !(operand instanceof ArrayOperand)
+                && nonNull.contains(operand.getName());
+    }
+
+    private boolean isOfClass(Type type, String className) {
+        return type instanceof ClassType classType
+                && type.getTypeOfElement() == ElementType.OBJECTREF
+                && classType.getName().equals(className);
+    }
+
+    private CallInstruction toStaticCall(CallInstruction call, String className) {
+        var name = getMethodLiteral(InstructionUtils.getCalledMethod(call) + STATIC_SUFFIX);
+        return new CallInstruction(CallType.invokestatic, getClassOperand(className), name, call.getArguments(),
+                call.getReturnType(), call.isIsolated());
+    }
+
+    private Operand getClassOperand(String className) {
+        return new Operand(className, new ClassType(ElementType.CLASS, className));
+    }
+
+    private LiteralElement getMethodLiteral(String name) {
+        return new LiteralElement("\"" + name + "\"", new Type(ElementType.STRING));
+    }
+}
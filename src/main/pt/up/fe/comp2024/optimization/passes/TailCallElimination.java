@@ -0,0 +1,173 @@
+package pt.up.fe.comp2024.optimization.passes;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.MethodPass;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static pt.up.fe.comp2024.optimization.InstructionUtils.*;
+
+/**
+ * Rewrites self-recursive calls in tail position into a reassignment of the parameters
+ * followed by a jump to the beginning of the method, so that recursion does not grow the stack.
+ * <p>
+ * A call is in tail position when its result only flows, through gotos and plain copies, into the
+ * return of the method, or when it is a call of a void method that is followed by a void return.
+ * <p>
+ * Only calls that always run this same method are rewritten: static calls, and calls on 'this' of methods that cannot
+ * be overridden. Private and final methods never are, and neither are the methods of classes that pass
+ * {@link pt.up.fe.comp2024.optimization.InstructionUtils#isClosed(ClassUnit)}, the same policy as
+ * {@link StaticPromotion}.
+ */
+public class TailCallElimination extends MethodPass {
+
+    private static final String ENTRY_LABEL = "tailCallEntry";
+
+    @Override
+    protected boolean optimize(Method method) {
+        var instructions = method.getInstructions();
+        String entryLabel = null;
+
+        for (int i = 0; i < instructions.size(); i++) {
+            var call = getTailCall(method, i);
+            if (call == null) continue;
+
+            if (entryLabel == null) {
+                entryLabel = newLabel(method, ENTRY_LABEL);
+                method.addLabel(entryLabel, instructions.get(0));
+            }
+
+            var replacement = reassignParams(method, call.getArguments());
+            replacement.add(new GotoInstruction(entryLabel));
+            replace(method, i, replacement);
+            i += replacement.size() - 1;
+            removeUnreachable(method, i + 1);
+        }
+
+        return entryLabel != null;
+    }
+
+    /**
+     * Removes the instructions from the given index up to the next label, which nothing can jump to. They may read
+     * the result of the replaced call, which no longer has a definition.
+     */
+    private void removeUnreachable(Method method, int index) {
+        var instructions = method.getInstructions();
+        while (index < instructions.size() && !method.getLabels().containsValue(instructions.get(index))) {
+            remove(method, index);
+        }
+    }
+
+    private CallInstruction getTailCall(Method method, int index) {
+        var inst = method.getInstructions().get(index);
+
+        if (inst instanceof CallInstruction call) {
+            return call.getReturnType().getTypeOfElement() == ElementType.VOID
+                    && returns(method, index + 1, null)
+                    && isSelfCall(method, call) ? call : null;
+        }
+
+        if (inst instanceof AssignInstruction assign
+                && assign.getRhs() instanceof CallInstruction call
+                && assign.getDest() instanceof Operand dest
+                && !(dest instanceof ArrayOperand)) {
+            return returns(method, index + 1, dest.getName()) && isSelfCall(method, call) ? call : null;
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks if the execution starting at the given index reaches a return of the given variable
+     * (or a void return, if the variable is null) only through gotos and plain copies of that variable.
+     */
+    private boolean returns(Method method, int index, String variable) {
+        var instructions = method.getInstructions();
+
+        for (int steps = 0; steps < instructions.size() && index < instructions.size(); steps++) {
+            var inst = instructions.get(index);
+
+            if (inst instanceof ReturnInstruction ret) {
+                return variable == null ? !ret.hasReturnValue()
+                        : ret.hasReturnValue() && isOperand(ret.getOperand(), variable);
+            }
+
+            if (inst instanceof GotoInstruction gotoInst) {
+                index = instructions.indexOf(method.getLabels().get(gotoInst.getLabel()));
+                if (index < 0) return false;
+                continue;
+            }
+
+            if (variable != null
+                    && inst instanceof AssignInstruction assign
+                    && assign.getDest() instanceof Operand dest
+                    && !(dest instanceof ArrayOperand)
+                    && assign.getRhs() instanceof SingleOpInstruction single
+                    && isOperand(single.getSingleOperand(), variable)) {
+                variable = dest.getName();
+                index++;
+                continue;
+            }
+
+            return false;
+        }
+
+        return false;
+    }
+
+    private boolean isSelfCall(Method method, CallInstruction call) {
+        if (!getCalledMethod(call).equals(method.getMethodName())) return false;
+        if (call.getArguments().size() != method.getParams().size()) return false;
+
+        if (method.isStaticMethod()) {
+            return call.getInvocationType() == CallType.invokestatic
+                    && isOperand(call.getCaller(), method.getOllirClass().getClassName());
+        }
+
+        // If another class could override the method, the call must still dispatch
+        return !isOverridable(method)
+                && call.getInvocationType() == CallType.invokevirtual
+                && isOperand(call.getCaller(), "this");
+    }
+
+    private static boolean isOverridable(Method method) {
+        return method.getMethodAccessModifier() != AccessModifier.PRIVATE
+                && !method.isFinalMethod()
+                && !method.getOllirClass().isFinalClass()
+                && !isClosed(method.getOllirClass());
+    }
+
+    /**
+     * Assigns each argument to its parameter. Arguments that read a parameter that is also
+     * being overwritten are first saved in a temporary, so every argument sees the old values.
+     */
+    private List<Instruction> reassignParams(Method method, List<Element> args) {
+        var params = method.getParams();
+        var overwritten = new HashSet<String>();
+        for (int i = 0; i < params.size(); i++) {
+            var param = (Operand) params.get(i);
+            if (!isOperand(args.get(i), param.getName())) overwritten.add(param.getName());
+        }
+
+        var saves = new ArrayList<Instruction>();
+        var assigns = new ArrayList<Instruction>();
+        for (int i = 0; i < params.size(); i++) {
+            var param = (Operand) params.get(i);
+            var arg = args.get(i);
+            if (!overwritten.contains(param.getName())) continue;
+
+            Element value = arg;
+            if (arg instanceof Operand operand && overwritten.contains(operand.getName())) {
+                var temp = new Operand(newVariable(method, "tc", param.getType()), param.getType());
+                saves.add(copy(temp, arg));
+                value = temp;
+            }
+            assigns.add(copy(new Operand(param.getName(), param.getType()), value));
+        }
+
+        saves.addAll(assigns);
+        return saves;
+    }
+}
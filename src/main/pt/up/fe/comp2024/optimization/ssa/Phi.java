@@ -0,0 +1,67 @@
+package pt.up.fe.comp2024.optimization.ssa;
+
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Type;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A phi function at the start of an instruction where paths meet, which gives a new name to a variable with the
+ * value it had on the path that was taken.
+ * <p>
+ * OLLIR has no instruction for phi functions, so they are kept beside the code by {@link SsaForm}.
+ */
+public class Phi {
+
+    private final String variable;
+    private final Type type;
+    private final Map<Instruction, String> sources;
+    private String target;
+
+    Phi(String variable, Type type) {
+        this.variable = variable;
+        this.type = type;
+        this.sources = new IdentityHashMap<>();
+        this.target = variable;
+    }
+
+    /**
+     * @return the name of the variable before the conversion to SSA
+     */
+    public String getVariable() {
+        return variable;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the name this phi function assigns
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    void setTarget(String target) {
+        this.target = target;
+    }
+
+    /**
+     * @param predecessor the instruction the path comes from, or null for the entry of the method
+     * @return the name that holds the value of the variable on that path
+     */
+    public String getSource(Instruction predecessor) {
+        return sources.get(predecessor);
+    }
+
+    void setSource(Instruction predecessor, String name) {
+        sources.put(predecessor, name);
+    }
+
+    @Override
+    public String toString() {
+        return target + " := phi(" + String.join(", ", sources.values()) + ")";
+    }
+}
@@ -0,0 +1,47 @@
+package pt.up.fe.comp2024.optimization.ssa;
+
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.Method;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps the methods of a class in SSA form from {@link #construct} to {@link #destruct}, so that the passes that run
+ * in between can rely on every variable being assigned once.
+ */
+public class SsaConversion {
+
+    private final Map<Method, SsaForm> forms;
+
+    public SsaConversion() {
+        this.forms = new IdentityHashMap<>();
+    }
+
+    public boolean construct(ClassUnit classUnit) {
+        for (var method : classUnit.getMethods()) {
+            if (method.isConstructMethod()) continue;
+
+            forms.put(method, SsaForm.construct(method));
+        }
+
+        return !forms.isEmpty();
+    }
+
+    public boolean destruct(ClassUnit classUnit) {
+        boolean changed = !forms.isEmpty();
+
+        forms.values().forEach(SsaForm::destruct);
+        forms.clear();
+
+        return changed;
+    }
+
+    /**
+     * @return the SSA form of the method, if it is in SSA form
+     */
+    public Optional<SsaForm> getForm(Method method) {
+        return Optional.ofNullable(forms.get(method));
+    }
+}
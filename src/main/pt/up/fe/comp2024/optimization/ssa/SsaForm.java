@@ -0,0 +1,437 @@
+package pt.up.fe.comp2024.optimization.ssa;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.DominatorTree;
+import pt.up.fe.comp2024.optimization.InstructionUtils;
+import pt.up.fe.comp2024.optimization.Liveness;
+
+import java.util.*;
+
+/**
+ * A method in static single assignment form, where each variable is assigned by a single instruction.
+ * <p>
+ * Every assignment gives its variable a new name, and phi functions are placed in the dominance frontiers of the
+ * assignments, where the variable is live, to merge the names that reach them. Since OLLIR has no phi instruction,
+ * the phi functions are kept beside the instructions until {@link #destruct()} replaces them with copies in the
+ * predecessors.
+ */
+public class SsaForm {
+
+    private final Method method;
+    private final Map<Instruction, List<Phi>> phis;
+
+    private SsaForm(Method method, Map<Instruction, List<Phi>> phis) {
+        this.method = method;
+        this.phis = phis;
+    }
+
+    /**
+     * Converts a method to SSA form in place.
+     */
+    public static SsaForm construct(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        var dominators = new DominatorTree(cfg);
+        var phisAt = placePhis(cfg, dominators);
+
+        new Renamer(method, cfg, dominators, phisAt).rename();
+
+        // Renaming may replace instructions, so phis are only attached to them at the end
+        var phis = new IdentityHashMap<Instruction, List<Phi>>();
+        for (int i = 0; i < cfg.size(); i++) {
+            if (!phisAt.get(i).isEmpty()) phis.put(method.getInstructions().get(i), phisAt.get(i));
+        }
+
+        InstructionUtils.rebuildVarTable(method);
+        return new SsaForm(method, phis);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the phi functions at the start of the given instruction
+     */
+    public List<Phi> getPhis(Instruction inst) {
+        return phis.getOrDefault(inst, Collections.emptyList());
+    }
+
+    /**
+     * Converts the method back from SSA form, replacing each phi function with copies at the end of the paths that
+     * reach it.
+     * <p>
+     * Copies for a conditional jump cannot be made before it, since they would also run when the jump is not taken,
+     * so the jump is redirected to a new block with the copies at the end of the method.
+     */
+    public void destruct() {
+        var cfg = new ControlFlowGraph(method);
+        var instructions = method.getInstructions();
+
+        // Copies run when falling through into an instruction, which jumps to it skip, and copies run before a goto
+        var fallthroughCopies = new IdentityHashMap<Instruction, List<Instruction>>();
+        var jumpCopies = new IdentityHashMap<Instruction, List<Instruction>>();
+        var edgeBlocks = new ArrayList<Instruction>();
+
+        for (int i = 0; i < cfg.size(); i++) {
+            var join = instructions.get(i);
+            var joinPhis = getPhis(join);
+            if (joinPhis.isEmpty()) continue;
+
+            if (i == 0) fallthroughCopies.put(join, getCopies(joinPhis, null));
+
+            for (var predecessorIndex : cfg.getPredecessors(i)) {
+                var predecessor = instructions.get(predecessorIndex);
+
+                if (predecessor instanceof GotoInstruction) {
+                    jumpCopies.put(predecessor, getCopies(joinPhis, predecessor));
+                    continue;
+                }
+
+                if (predecessor instanceof CondBranchInstruction branch
+                        && method.getLabels().get(branch.getLabel()) == join) {
+                    var copies = getCopies(joinPhis, predecessor);
+
+                    if (!copies.isEmpty()) {
+                        var label = InstructionUtils.newLabel(method, "ssa_" + branch.getLabel());
+                        method.addLabel(label, copies.get(0));
+                        edgeBlocks.addAll(copies);
+                        edgeBlocks.add(new GotoInstruction(branch.getLabel()));
+                        branch.setLabel(label);
+                    }
+                }
+
+                if (predecessorIndex == i - 1 && !(predecessor instanceof ReturnInstruction)) {
+                    fallthroughCopies.put(join, getCopies(joinPhis, predecessor));
+                }
+            }
+        }
+
+        var result = new ArrayList<Instruction>();
+        for (var inst : instructions) {
+            result.addAll(fallthroughCopies.getOrDefault(inst, Collections.emptyList()));
+
+            var copies = jumpCopies.getOrDefault(inst, Collections.emptyList());
+            if (!copies.isEmpty()) InstructionUtils.moveLabels(method, inst, copies.get(0));
+            result.addAll(copies);
+
+            result.add(inst);
+        }
+        result.addAll(edgeBlocks);
+
+        instructions.clear();
+        instructions.addAll(result);
+        phis.clear();
+
+        InstructionUtils.rebuildVarTable(method);
+    }
+
+    /**
+     * Returns the copies that give the phi functions their values when coming from the given predecessor.
+     * <p>
+     * The copies are meant to happen at the same time, so they are ordered such that no variable is overwritten before
+     * it is read, and cycles are broken with a temporary.
+     */
+    private List<Instruction> getCopies(List<Phi> joinPhis, Instruction predecessor) {
+        // Target of each copy to its source
+        var pending = new LinkedHashMap<String, String>();
+        var types = new HashMap<String, Type>();
+        for (var phi : joinPhis) {
+            var source = phi.getSource(predecessor);
+            if (source == null || source.equals(phi.getTarget())) continue;
+
+            pending.put(phi.getTarget(), source);
+            types.put(phi.getTarget(), phi.getType());
+        }
+
+        var copies = new ArrayList<Instruction>();
+        while (!pending.isEmpty()) {
+            String ready = null;
+            for (var target : pending.keySet()) {
+                if (!pending.containsValue(target)) {
+                    ready = target;
+                    break;
+                }
+            }
+
+            if (ready != null) {
+                var type = types.get(ready);
+                copies.add(InstructionUtils.copy(new Operand(ready, type), new Operand(pending.remove(ready), type)));
+                continue;
+            }
+
+            // Every target is still to be read, so one of them is saved first
+            var saved = pending.keySet().iterator().next();
+            var type = types.get(saved);
+            var temp = InstructionUtils.newVariable(method, "ssa_tmp", type);
+            copies.add(InstructionUtils.copy(new Operand(temp, type), new Operand(saved, type)));
+
+            pending.replaceAll((target, source) -> source.equals(saved) ? temp : source);
+        }
+
+        return copies;
+    }
+
+    /**
+     * Places the phi functions of each variable in the iterated dominance frontier of its assignments, only where the
+     * variable is live.
+     */
+    private static List<List<Phi>> placePhis(ControlFlowGraph cfg, DominatorTree dominators) {
+        var liveness = new Liveness(cfg);
+        var phisAt = new ArrayList<List<Phi>>(cfg.size());
+        for (int i = 0; i < cfg.size(); i++) {
+            phisAt.add(new ArrayList<>());
+        }
+
+        var assignments = new LinkedHashMap<String, List<Integer>>();
+        var types = new HashMap<String, Type>();
+        for (int i = 0; i < cfg.size(); i++) {
+            if (!dominators.isReachable(i)) continue;
+
+            var dest = getAssignedVariable(cfg.getInstruction(i));
+            if (dest != null) {
+                assignments.computeIfAbsent(dest.getName(), key -> new ArrayList<>()).add(i);
+                types.putIfAbsent(dest.getName(), dest.getType());
+            }
+        }
+
+        for (var entry : assignments.entrySet()) {
+            var variable = entry.getKey();
+            var placed = new BitSet(cfg.size());
+            var queued = new BitSet(cfg.size());
+            var worklist = new ArrayDeque<>(entry.getValue());
+            entry.getValue().forEach(queued::set);
+
+            while (!worklist.isEmpty()) {
+                int index = worklist.poll();
+
+                for (var join : dominators.getFrontier(index)) {
+                    if (placed.get(join) || !liveness.isLiveIn(join, variable)) continue;
+
+                    placed.set(join);
+                    phisAt.get(join).add(new Phi(variable, types.get(variable)));
+
+                    // The phi function is an assignment too
+                    if (!queued.get(join)) {
+                        queued.set(join);
+                        worklist.add(join);
+                    }
+                }
+            }
+        }
+
+        return phisAt;
+    }
+
+    /**
+     * @return the variable an instruction assigns, or null if it does not assign one
+     */
+    private static Operand getAssignedVariable(Instruction inst) {
+        if (inst instanceof AssignInstruction assign
+                && assign.getDest() instanceof Operand dest
+                && !(dest instanceof ArrayOperand)) {
+            return dest;
+        }
+
+        return null;
+    }
+
+    /**
+     * Gives new names to the variables, walking the dominator tree so that each read sees the name given by the
+     * closest assignment that dominates it.
+     * <p>
+     * Operands are never renamed in place, since passes may share them between instructions. Instead, they are replaced
+     * with new operands, rebuilding the instructions that hold them in fields that cannot be changed.
+     */
+    private static class Renamer {
+
+        private final Method method;
+        private final ControlFlowGraph cfg;
+        private final DominatorTree dominators;
+        private final List<List<Phi>> phisAt;
+
+        // Names of each variable given by the assignments that dominate the current instruction, the last on top
+        private final Map<String, Deque<String>> names;
+        private final Set<String> taken;
+        private final Map<String, Integer> versions;
+
+        private Renamer(Method method, ControlFlowGraph cfg, DominatorTree dominators, List<List<Phi>> phisAt) {
+            this.method = method;
+            this.cfg = cfg;
+            this.dominators = dominators;
+            this.phisAt = phisAt;
+            this.names = new HashMap<>();
+            this.taken = new HashSet<>(method.getVarTable().keySet());
+            this.versions = new HashMap<>();
+        }
+
+        private void rename() {
+            if (cfg.size() == 0) return;
+
+            // On entry, every variable holds the value it had before the method started, under its own name
+            for (var phi : phisAt.get(0)) {
+                phi.setSource(null, phi.getVariable());
+            }
+
+            // Explicit stack of the instructions to visit, where ~index marks leaving an instruction, so that long
+            // chains of dominators do not overflow the call stack
+            var stack = new ArrayDeque<Integer>();
+            var pushed = new HashMap<Integer, List<String>>();
+            stack.push(0);
+
+            while (!stack.isEmpty()) {
+                int index = stack.pop();
+
+                if (index < 0) {
+                    for (var variable : pushed.remove(~index)) {
+                        names.get(variable).pop();
+                    }
+                    continue;
+                }
+
+                var defined = new ArrayList<String>();
+                for (var phi : phisAt.get(index)) {
+                    phi.setTarget(define(phi.getVariable(), defined));
+                }
+
+                var inst = renameUses(cfg.getInstruction(index));
+                var dest = getAssignedVariable(inst);
+                if (dest != null) {
+                    var assign = (AssignInstruction) inst;
+                    var newDest = new Operand(define(dest.getName(), defined), dest.getType());
+                    inst = new AssignInstruction(newDest, assign.getTypeOfAssign(), assign.getRhs());
+                }
+
+                if (inst != method.getInstructions().get(index)) {
+                    InstructionUtils.replace(method, index, List.of(inst));
+                }
+
+                for (var successor : cfg.getSuccessors(index)) {
+                    for (var phi : phisAt.get(successor)) {
+                        phi.setSource(inst, getName(phi.getVariable()));
+                    }
+                }
+
+                pushed.put(index, defined);
+                stack.push(~index);
+                for (var child : dominators.getChildren(index)) {
+                    stack.push(child);
+                }
+            }
+        }
+
+        private String define(String variable, List<String> defined) {
+            int version = versions.getOrDefault(variable, 0);
+            String name;
+            do {
+                name = variable + "_" + ++version;
+            } while (taken.contains(name));
+
+            versions.put(variable, version);
+            taken.add(name);
+
+            names.computeIfAbsent(variable, key -> new ArrayDeque<>()).push(name);
+            defined.add(variable);
+            return name;
+        }
+
+        private String getName(String variable) {
+            var stack = names.get(variable);
+            return stack == null || stack.isEmpty() ? variable : stack.peek();
+        }
+
+        /**
+         * @return the instruction with the variables it reads renamed, which is a new one if they could not be changed
+         * in place
+         */
+        private Instruction renameUses(Instruction inst) {
+            switch (inst.getInstType()) {
+                case ASSIGN -> {
+                    var assign = (AssignInstruction) inst;
+                    var dest = assign.getDest() instanceof ArrayOperand ? rename(assign.getDest()) : assign.getDest();
+                    var rhs = renameUses(assign.getRhs());
+
+                    if (dest != assign.getDest() || rhs != assign.getRhs()) {
+                        return new AssignInstruction(dest, assign.getTypeOfAssign(), rhs);
+                    }
+                }
+                case CALL -> {
+                    var call = (CallInstruction) inst;
+                    var caller = rename(call.getCaller());
+                    var arguments = new ArrayList<>(call.getArguments());
+
+                    if (renameAll(arguments, 0) || caller != call.getCaller()) {
+                        return new CallInstruction(call.getInvocationType(), caller,
+                                call.getMethodNameTry().orElse(null), arguments, call.getReturnType(),
+                                call.isIsolated());
+                    }
+                }
+                case GETFIELD, PUTFIELD -> {
+                    var field = (FieldInstruction) inst;
+                    var operands = new ArrayList<>(field.getOperands());
+
+                    // The field itself, the second operand, is not a variable
+                    var object = rename(operands.get(0));
+                    boolean changed = object != operands.get(0);
+                    operands.set(0, object);
+
+                    if (renameAll(operands, 2) || changed) field.setOperands(operands);
+                }
+                case BRANCH -> renameUses(((CondBranchInstruction) inst).getCondition());
+                case RETURN -> {
+                    var ret = (ReturnInstruction) inst;
+                    if (ret.hasReturnValue()) ret.setOperand(rename(ret.getOperand()));
+                }
+                case UNARYOPER, BINARYOPER -> {
+                    var op = (OpInstruction) inst;
+                    var operands = new ArrayList<>(op.getOperands());
+                    if (renameAll(operands, 0)) op.setOperands(operands);
+                }
+                case NOPER -> {
+                    var single = (SingleOpInstruction) inst;
+                    single.setSingleOperand(rename(single.getSingleOperand()));
+                }
+                default -> {
+                }
+            }
+
+            return inst;
+        }
+
+        private boolean renameAll(List<Element> elements, int from) {
+            boolean changed = false;
+
+            for (int i = from; i < elements.size(); i++) {
+                var element = rename(elements.get(i));
+                if (element != elements.get(i)) {
+                    elements.set(i, element);
+                    changed = true;
+                }
+            }
+
+            return changed;
+        }
+
+        /**
+         * @return the element with the variables it reads renamed, which is the same element if none was renamed
+         */
+        private Element rename(Element element) {
+            if (element instanceof ArrayOperand arrayOperand) {
+                var indexes = new ArrayList<>(arrayOperand.getIndexOperands());
+                boolean changed = renameAll(indexes, 0);
+
+                var name = getName(arrayOperand.getName());
+                if (!changed && name.equals(arrayOperand.getName())) return element;
+
+                return new ArrayOperand(name, arrayOperand.getType(), indexes);
+            }
+
+            if (element instanceof Operand operand) {
+                var name = getName(operand.getName());
+                return name.equals(operand.getName()) ? element : new Operand(name, operand.getType());
+            }
+
+            return element;
+        }
+    }
+}
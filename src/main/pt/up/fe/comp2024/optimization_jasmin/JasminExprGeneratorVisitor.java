@@ -1,64 +1,473 @@
 package pt.up.fe.comp2024.optimization_jasmin;
 
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
-import pt.up.fe.comp.jmm.ast.PostorderJmmVisitor;
+import pt.up.fe.comp2024.ast.AstTraversal;
+import pt.up.fe.comp2024.ast.JmmType;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.NodeUtils;
+import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.VariableSymbol;
 import pt.up.fe.specs.util.SpecsCheck;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
-public class JasminExprGeneratorVisitor extends PostorderJmmVisitor<StringBuilder, Void> {
+import static pt.up.fe.comp2024.ast.Kind.*;
 
-    private static final String NL = "\n";
+/**
+ * Generates the Jasmin code that leaves the value of an expression on top of the stack, or that jumps depending on the
+ * value of a condition.
+ * <p>
+ * Operators take their operands from the stack, so their code comes after the code of their operands, and expressions
+ * made of operators are walked with an explicit stack. Chains of operators can then be as long as needed, e.g., in
+ * generated code, without overflowing the thread stack.
+ */
+public class JasminExprGeneratorVisitor extends AJmmVisitor<JasminMethodCode, Void> {
 
-    private final Map<String, Integer> currentRegisters;
+    private final SymbolTable table;
+    private final JasminTypes types;
 
-    public JasminExprGeneratorVisitor(Map<String, Integer> currentRegisters) {
-        this.currentRegisters = currentRegisters;
+    public JasminExprGeneratorVisitor(SymbolTable table, JasminTypes types) {
+        this.table = table;
+        this.types = types;
     }
 
     @Override
     protected void buildVisitor() {
-        // Using strings to avoid compilation problems in projects that
-        // might no longer have the equivalent enums in Kind class.
-        addVisit("IntegerLiteral", this::visitIntegerLiteral);
-        addVisit("VarRefExpr", this::visitVarRefExpr);
-        addVisit("BinaryExpr", this::visitBinaryExpr);
+        addVisit(INTEGER_LITERAL, this::visitIntegerLiteral);
+        addVisit(BOOL_LITERAL, this::visitBoolLiteral);
+        addVisit(VAR_REF_EXPR, this::visitVarRefExpr);
+        addVisit(THIS, this::visitThis);
+        addVisit(BINARY_EXPR, this::visitConditionExpr);
+        addVisit(INIT_ARRAY_EXPR, this::visitInitArrayExpr);
+        addVisit(NEW_OBJ_EXPR, this::visitNewObjExpr);
+        addVisit(METHOD_EXPR, this::visitMethodExpr);
+
+        setDefaultVisit((node, code) -> {
+            throw new NotImplementedException(node.getKind());
+        });
     }
 
-    private Void visitIntegerLiteral(JmmNode integerLiteral, StringBuilder code) {
-        code.append("ldc " + integerLiteral.get("value") + NL);
+    /**
+     * Generates the code that leaves the value of the expression on top of the stack.
+     */
+    @Override
+    public Void visit(JmmNode expr, JasminMethodCode code) {
+        AstTraversal.walk(expr, node -> {
+            if (isOperator(node)) return true;
+
+            super.visit(node, code);
+            return false;
+        }, node -> {
+            if (isOperator(node)) emitOperator(node, code);
+        });
+
         return null;
     }
 
-    private Void visitVarRefExpr(JmmNode varRefExpr, StringBuilder code) {
-        var name = varRefExpr.get("name");
+    /**
+     * @return true if the code of the expression is the code of its operands followed by its own instructions
+     */
+    private static boolean isOperator(JmmNode node) {
+        return switch (Kind.of(node)) {
+            case PARENTH_EXPR, NEG_EXPR, ARRAY_EXPR, LENGTH_ATTR_EXPR, NEW_ARRAY_EXPR -> true;
+            case BINARY_EXPR -> !isCondition(node);
+            default -> false;
+        };
+    }
 
-        // get register
-        var reg = currentRegisters.get(name);
-        SpecsCheck.checkNotNull(reg, () -> "No register mapped for variable '" + name + "'");
+    private static boolean isCondition(JmmNode binaryExpr) {
+        var op = binaryExpr.get("op");
+        return op.equals("&&") || op.equals("<");
+    }
 
-        code.append("iload " + reg + NL);
+    private void emitOperator(JmmNode node, JasminMethodCode code) {
+        switch (Kind.of(node)) {
+            case PARENTH_EXPR -> {
+            }
+            case NEG_EXPR -> {
+                code.emit("iconst_1", 1);
+                code.emit("ixor", -1);
+            }
+            case ARRAY_EXPR -> code.emit(getArrayInstruction(getType(node), "aload"), -1);
+            case LENGTH_ATTR_EXPR -> code.emit("arraylength", 0);
+            case NEW_ARRAY_EXPR -> code.emit(newArray(JmmType.INT), 0);
+            case BINARY_EXPR -> {
+                var op = node.get("op");
+                var instruction = switch (op) {
+                    case "+" -> "iadd";
+                    case "-" -> "isub";
+                    case "*" -> "imul";
+                    case "/" -> "idiv";
+                    default -> throw new NotImplementedException(op);
+                };
+                code.emit(instruction, -1);
+            }
+            default -> throw new NotImplementedException(node.getKind());
+        }
+    }
 
-        return null;
+    /**
+     * Generates code that jumps to the label when the condition has the given value, and otherwise goes on to the next
+     * instruction. The && operator only evaluates its right operand when needed.
+     */
+    public void visitCondition(JmmNode condition, JasminMethodCode code, String label, boolean jumpIf) {
+        // Parentheses and negations only change the value that jumps
+        while (PARENTH_EXPR.check(condition) || NEG_EXPR.check(condition)) {
+            if (NEG_EXPR.check(condition)) jumpIf = !jumpIf;
+            condition = condition.getChild(0);
+        }
+
+        switch (Kind.of(condition)) {
+            case BOOL_LITERAL -> {
+                if (condition.get("value").equals("true") == jumpIf) code.emit("goto " + label, 0);
+            }
+            case BINARY_EXPR -> {
+                switch (condition.get("op")) {
+                    case "&&" -> visitAndCondition(condition, code, label, jumpIf);
+                    case "<" -> visitLessCondition(condition, code, label, jumpIf);
+                    default -> throw new NotImplementedException(condition.get("op"));
+                }
+            }
+            default -> {
+                visit(condition, code);
+                code.emit((jumpIf ? "ifne " : "ifeq ") + label, -1);
+            }
+        }
     }
 
-    private Void visitBinaryExpr(JmmNode binaryExpr, StringBuilder code) {
+    private void visitAndCondition(JmmNode condition, JasminMethodCode code, String label, boolean jumpIf) {
+        var operands = getAndOperands(condition);
+        var last = operands.remove(operands.size() - 1);
+
+        if (!jumpIf) {
+            for (var operand : operands) {
+                visitCondition(operand, code, label, false);
+            }
+            visitCondition(last, code, label, false);
+            return;
+        }
+
+        // Only true when all are, so a false operand skips the ones after it
+        var endLabel = code.newLabel("andEnd");
+        for (var operand : operands) {
+            visitCondition(operand, code, endLabel, false);
+        }
+        visitCondition(last, code, label, true);
+        code.label(endLabel);
+    }
 
-        // since this is a post-order visitor that automatically visits the children
-        // we can assume the value for the operation are already loaded in the stack
+    /**
+     * @return the operands of a chain of && operators, which nests down the left operands, from left to right
+     */
+    private static List<JmmNode> getAndOperands(JmmNode condition) {
+        var operands = new ArrayList<JmmNode>();
+        var left = condition;
 
-        // get the operation
-        var op = switch (binaryExpr.get("op")) {
-            case "+" -> "iadd";
-            case "*" -> "imul";
-            default -> throw new NotImplementedException(binaryExpr.get("op"));
+        while (isAnd(left)) {
+            operands.add(left.getChild(1));
+
+            left = left.getChild(0);
+            while (PARENTH_EXPR.check(left)) left = left.getChild(0);
+        }
+
+        operands.add(left);
+        Collections.reverse(operands);
+        return operands;
+    }
+
+    private static boolean isAnd(JmmNode node) {
+        return BINARY_EXPR.check(node) && node.get("op").equals("&&");
+    }
+
+    private void visitLessCondition(JmmNode condition, JasminMethodCode code, String label, boolean jumpIf) {
+        visit(condition.getChild(0), code);
+
+        var right = condition.getChild(1);
+        if (INTEGER_LITERAL.check(right) && right.get("value").equals("0")) {
+            code.emit((jumpIf ? "iflt " : "ifge ") + label, -1);
+            return;
+        }
+
+        visit(right, code);
+        code.emit((jumpIf ? "if_icmplt " : "if_icmpge ") + label, -2);
+    }
+
+    /**
+     * Gets the type of the value of an expression. Calls to methods outside the class have an unknown type, which is
+     * taken from where their value is used.
+     */
+    public JmmType getType(JmmNode expr) {
+        var type = TypeUtils.getNodeType(expr);
+        if (type != JmmType.UNKNOWN) return type;
+
+        var parent = expr.getParent();
+        return switch (Kind.of(parent)) {
+            case PARENTH_EXPR -> getType(parent);
+            case BINARY_EXPR -> parent.get("op").equals("&&") ? JmmType.BOOLEAN : JmmType.INT;
+            case NEG_EXPR, IF_STMT, WHILE_STMT -> JmmType.BOOLEAN;
+            case ARRAY_EXPR, LENGTH_ATTR_EXPR -> expr.getIndexOfSelf() == 0 ? JmmType.INT_ARRAY : JmmType.INT;
+            case LIST_ASSIGN_STMT -> expr.getIndexOfSelf() == 0 ? JmmType.INT : TypeUtils.getNodeType(parent).getElementType();
+            case ASSIGN_STMT -> TypeUtils.getNodeType(parent);
+            case RETURN_STMT -> JmmType.of(table.getReturnType(getMethodName(expr)));
+            case EXPR_STMT -> JmmType.VOID;
+            case METHOD_EXPR -> getArgumentType(parent, expr.getIndexOfSelf());
+            default -> JmmType.INT;
         };
+    }
 
-        // apply operation
-        code.append(op).append(NL);
+    private JmmType getArgumentType(JmmNode methodExpr, int index) {
+        // The object of the call
+        if (index == 0) return JmmType.of("Object");
 
+        var params = getDeclaredParameters(methodExpr);
+        if (params == null || params.isEmpty()) return JmmType.INT;
+
+        var param = JmmType.of(params.get(Math.min(index, params.size()) - 1).getType());
+
+        // Arguments past the last parameter, or the only one given to it, are elements of the ellipse
+        return param.isEllipse() ? param.getElementType() : param;
+    }
+
+    private Void visitIntegerLiteral(JmmNode node, JasminMethodCode code) {
+        pushInt(Integer.parseInt(node.get("value")), code);
+        return null;
+    }
+
+    private Void visitBoolLiteral(JmmNode node, JasminMethodCode code) {
+        code.emit(node.get("value").equals("true") ? "iconst_1" : "iconst_0", 1);
         return null;
     }
 
+    private Void visitVarRefExpr(JmmNode node, JasminMethodCode code) {
+        var name = node.get("name");
+        var variable = resolveVariable(name, code);
+
+        if (variable.isField()) {
+            code.emit("aload_0", 1);
+            code.emit("getfield " + getFieldReference(variable), 0);
+            return null;
+        }
+
+        code.emit(load(variable, code), 1);
+        return null;
+    }
+
+    private Void visitThis(JmmNode node, JasminMethodCode code) {
+        code.emit("aload_0", 1);
+        return null;
+    }
+
+    /**
+     * Generates the value of a condition, which is computed with jumps.
+     */
+    private Void visitConditionExpr(JmmNode node, JasminMethodCode code) {
+        var falseLabel = code.newLabel("false");
+        var endLabel = code.newLabel("end");
+
+        visitCondition(node, code, falseLabel, false);
+        code.emit("iconst_1", 1);
+        code.emit("goto " + endLabel, 0);
+        code.label(falseLabel);
+
+        // Reached with the stack as it was before the 1 above, so the stack ends up the same in both branches
+        code.emit("iconst_0", 0);
+        code.label(endLabel);
+
+        return null;
+    }
+
+    private Void visitInitArrayExpr(JmmNode node, JasminMethodCode code) {
+        var elementType = getType(node).getElementType();
+        newArray(elementType, node.getChildren(), code);
+        return null;
+    }
+
+    private Void visitNewObjExpr(JmmNode node, JasminMethodCode code) {
+        var classPath = types.getClassPath(node.get("name"));
+
+        code.emit("new " + classPath, 1);
+        code.emit("dup", 1);
+        code.emit("invokespecial " + classPath + "/<init>()V", -1);
+
+        return null;
+    }
+
+    private Void visitMethodExpr(JmmNode node, JasminMethodCode code) {
+        var object = node.getChild(0);
+        var methodName = node.get("name");
+        var args = node.getChildren().subList(1, node.getNumChildren());
+
+        boolean isStatic = isClassReference(object, code);
+        String owner;
+        if (isStatic) {
+            owner = types.getClassPath(object.get("name"));
+        } else {
+            visit(object, code);
+            owner = types.getClassPath(getType(object).getName());
+        }
+
+        var params = getDeclaredParameters(node);
+        String descriptor;
+        JmmType returnType;
+        int argsOnStack;
+
+        if (params != null) {
+            argsOnStack = pushArguments(args, params, code);
+            descriptor = types.getMethodDescriptor(methodName);
+            returnType = JmmType.of(table.getReturnType(methodName));
+        } else {
+            var argsDescriptor = new StringBuilder();
+            for (var arg : args) {
+                visit(arg, code);
+                argsDescriptor.append(types.getDescriptor(getType(arg)));
+            }
+
+            argsOnStack = args.size();
+            returnType = getType(node);
+            descriptor = "(" + argsDescriptor + ")" + types.getDescriptor(returnType);
+        }
+
+        var invoke = isStatic ? "invokestatic " : "invokevirtual ";
+        int stackChange = -argsOnStack - (isStatic ? 0 : 1) + (returnType == JmmType.VOID ? 0 : 1);
+        code.emit(invoke + owner + "/" + methodName + descriptor, stackChange);
+
+        return null;
+    }
+
+    /**
+     * Pushes the arguments of a call to a method of the class. Arguments given to an ellipse are put in a new array,
+     * unless a single array is given.
+     *
+     * @return the number of values pushed
+     */
+    private int pushArguments(List<JmmNode> args, List<Symbol> params,
+                              JasminMethodCode code) {
+        var lastParam = params.isEmpty() ? null : JmmType.of(params.get(params.size() - 1).getType());
+        boolean packEllipse = lastParam != null && lastParam.isEllipse()
+                && !(args.size() == params.size() && getType(args.get(args.size() - 1)).isArray());
+
+        if (!packEllipse) {
+            for (var arg : args) {
+                visit(arg, code);
+            }
+            return args.size();
+        }
+
+        for (int i = 0; i < params.size() - 1; i++) {
+            visit(args.get(i), code);
+        }
+
+        newArray(lastParam.getElementType(), args.subList(params.size() - 1, args.size()), code);
+        return params.size();
+    }
+
+    /**
+     * Pushes a new array with the values of the given expressions.
+     */
+    private void newArray(JmmType elementType, List<JmmNode> elements, JasminMethodCode code) {
+        pushInt(elements.size(), code);
+        code.emit(newArray(elementType), 0);
+
+        for (int i = 0; i < elements.size(); i++) {
+            code.emit("dup", 1);
+            pushInt(i, code);
+            visit(elements.get(i), code);
+            code.emit(getArrayInstruction(elementType, "astore"), -3);
+        }
+    }
+
+    private String newArray(JmmType elementType) {
+        return switch (elementType.getName()) {
+            case "int" -> "newarray int";
+            case "boolean" -> "newarray boolean";
+            default -> "anewarray " + types.getClassPath(elementType.getName());
+        };
+    }
+
+    /**
+     * @param operation either "aload" or "astore"
+     */
+    public static String getArrayInstruction(JmmType elementType, String operation) {
+        return switch (elementType.getName()) {
+            case "int" -> "i" + operation;
+            case "boolean" -> "b" + operation;
+            default -> "a" + operation;
+        };
+    }
+
+    public static void pushInt(int value, JasminMethodCode code) {
+        String instruction;
+        if (value >= -1 && value <= 5) {
+            instruction = value == -1 ? "iconst_m1" : "iconst_" + value;
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            instruction = "bipush " + value;
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            instruction = "sipush " + value;
+        } else {
+            instruction = "ldc " + value;
+        }
+
+        code.emit(instruction, 1);
+    }
+
+    public static String load(VariableSymbol variable, JasminMethodCode code) {
+        return (JasminTypes.isReference(variable.getType()) ? "aload" : "iload")
+                + registerSuffix(getRegister(variable, code));
+    }
+
+    public static String store(VariableSymbol variable, JasminMethodCode code) {
+        return (JasminTypes.isReference(variable.getType()) ? "astore" : "istore")
+                + registerSuffix(getRegister(variable, code));
+    }
+
+    public static int getRegister(VariableSymbol variable, JasminMethodCode code) {
+        var register = code.getRegister(variable.getName());
+        SpecsCheck.checkNotNull(register, () -> "No register mapped for variable '" + variable.getName() + "'");
+        return register;
+    }
+
+    private static String registerSuffix(int register) {
+        return register <= 3 ? "_" + register : " " + register;
+    }
+
+    public VariableSymbol resolveVariable(String name, JasminMethodCode code) {
+        return NodeUtils.resolveVariable(name, code.getMethodName(), table)
+                .orElseThrow(() -> new RuntimeException("Could not find variable '" + name + "'"));
+    }
+
+    public String getFieldReference(VariableSymbol field) {
+        return table.getClassName() + "/" + field.getName() + " " + types.getDescriptor(field.getType());
+    }
+
+    /**
+     * @return true if the expression names an imported class, whose methods are called as static
+     */
+    private boolean isClassReference(JmmNode expr, JasminMethodCode code) {
+        return VAR_REF_EXPR.check(expr)
+                && NodeUtils.isImported(expr.get("name"), table)
+                && NodeUtils.resolveVariable(expr.get("name"), code.getMethodName(), table).isEmpty();
+    }
+
+    /**
+     * @return the parameters of the called method, if it is a method declared in the class, or null otherwise
+     */
+    private List<Symbol> getDeclaredParameters(JmmNode methodExpr) {
+        var object = methodExpr.getChild(0);
+        var methodName = methodExpr.get("name");
+
+        boolean isOwnMethod = (THIS.check(object) || TypeUtils.getNodeType(object).getName().equals(table.getClassName()))
+                && table.getMethods().contains(methodName);
+
+        return isOwnMethod ? table.getParameters(methodName) : null;
+    }
+
+    private static String getMethodName(JmmNode node) {
+        return node.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow();
+    }
 }
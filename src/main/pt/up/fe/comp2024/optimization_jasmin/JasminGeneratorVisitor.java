@@ -3,178 +3,266 @@ package pt.up.fe.comp2024.optimization_jasmin;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.JmmType;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.NodeUtils;
 import pt.up.fe.specs.util.SpecsCheck;
-import pt.up.fe.specs.util.utilities.StringLines;
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.stream.Collectors;
+import static pt.up.fe.comp2024.ast.Kind.*;
 
-public class JasminGeneratorVisitor extends AJmmVisitor<Void, String> {
+/**
+ * Generates Jasmin code directly from the AST, without going through OLLIR.
+ * <p>
+ * Classes and methods are returned as code. Statements are added to the code of the method being generated, which is
+ * given as argument, and return an empty string.
+ */
+public class JasminGeneratorVisitor extends AJmmVisitor<JasminMethodCode, String> {
 
     private static final String NL = "\n";
     private static final String TAB = "   ";
 
     private final SymbolTable table;
-
-    private JasminExprGeneratorVisitor exprGenerator;
-
-    private String currentMethod;
-    private int nextRegister;
-
-    private Map<String, Integer> currentRegisters;
+    private final JasminTypes types;
+    private final JasminExprGeneratorVisitor exprGenerator;
 
     public JasminGeneratorVisitor(SymbolTable table) {
         this.table = table;
-        this.exprGenerator = null;
-        currentMethod = null;
-        nextRegister = -1;
-        currentRegisters = null;
+        this.types = new JasminTypes(table);
+        this.exprGenerator = new JasminExprGeneratorVisitor(table, types);
     }
 
 
     @Override
     protected void buildVisitor() {
-        // Using strings to avoid compilation problems in projects that
-        // might no longer have the equivalent enums in Kind class.
-        addVisit("Program", this::visitProgram);
-        addVisit("ClassDecl", this::visitClassDecl);
-        addVisit("MethodDecl", this::visitMethodDecl);
-        addVisit("AssignStmt", this::visitAssignStmt);
-        addVisit("ReturnStmt", this::visitReturnStmt);
+        addVisit(PROGRAM, this::visitProgram);
+        addVisit(CLASS_DECL, this::visitClassDecl);
+        addVisit(METHOD_DECL, this::visitMethodDecl);
+        addVisit(ASSIGN_STMT, this::visitAssignStmt);
+        addVisit(LIST_ASSIGN_STMT, this::visitListAssignStmt);
+        addVisit(EXPR_STMT, this::visitExprStmt);
+        addVisit(RETURN_STMT, this::visitReturnStmt);
+        addVisit(IF_STMT, this::visitIfStmt);
+        addVisit(WHILE_STMT, this::visitWhileStmt);
+        addVisit(SCOPE_STMT, this::visitScopeStmt);
+
+        setDefaultVisit((node, code) -> {
+            throw new NotImplementedException(node.getKind());
+        });
     }
 
 
-    private String visitProgram(JmmNode program, Void unused) {
-
-        // Get class decl node
-        var classDecl = program.getChild(0);
-        SpecsCheck.checkArgument(classDecl.isInstance("ClassDecl"), () -> "Expected a node of type 'ClassDecl', but instead got '" + classDecl.getKind() + "'");
+    private String visitProgram(JmmNode program, JasminMethodCode unused) {
+        // Imports come before the class
+        var classDecl = program.getChild(program.getNumChildren() - 1);
+        SpecsCheck.checkArgument(CLASS_DECL.check(classDecl), () -> "Expected a node of type 'ClassDecl', but instead got '" + classDecl.getKind() + "'");
 
         return visit(classDecl);
     }
 
-    private String visitClassDecl(JmmNode classDecl, Void unused) {
+    private String visitClassDecl(JmmNode classDecl, JasminMethodCode unused) {
         var code = new StringBuilder();
 
-        // generate class name
-        var className = table.getClassName();
-        code.append(".class ").append(className).append(NL).append(NL);
+        code.append(".class public ").append(table.getClassName()).append(NL);
+
+        var superPath = types.getSuperPath();
+        code.append(".super ").append(superPath).append(NL).append(NL);
 
-        // TODO: Hardcoded to Object, needs to be expanded
-        code.append(".super java/lang/Object").append(NL);
+        for (var field : table.getFields()) {
+            code.append(".field public ").append(field.getName()).append(" ")
+                    .append(types.getDescriptor(field.getType())).append(NL);
+        }
 
         // generate a single constructor method
-        var defaultConstructor = """
-                ;default constructor
-                .method public <init>()V
-                    aload_0
-                    invokespecial java/lang/Object/<init>()V
-                    return
-                .end method
-                """;
-        code.append(defaultConstructor);
-
-        // generate code for all other methods
-        for (var method : classDecl.getChildren("MethodDecl")) {
-            code.append(visit(method));
+        code.append(NL);
+        code.append(".method public <init>()V").append(NL);
+        code.append(TAB).append("aload_0").append(NL);
+        code.append(TAB).append("invokespecial ").append(superPath).append("/<init>()V").append(NL);
+        code.append(TAB).append("return").append(NL);
+        code.append(".end method").append(NL);
+
+        for (var method : classDecl.getChildren()) {
+            if (method.isInstance(METHOD_DECL)) {
+                code.append(visit(method));
+            }
         }
 
         return code.toString();
     }
 
-    private String visitMethodDecl(JmmNode methodDecl, Void unused) {
+    private String visitMethodDecl(JmmNode methodDecl, JasminMethodCode unused) {
         var methodName = methodDecl.get("name");
+        boolean isPublic = NodeUtils.getBooleanAttribute(methodDecl, "isPublic", "false");
+        boolean isStatic = NodeUtils.getBooleanAttribute(methodDecl, "isStatic", "false");
 
+        var methodCode = new JasminMethodCode(methodName, isStatic);
 
-        // set method
-        currentMethod = methodName;
+        // Parameters take the registers after 'this', in order, and locals the ones after them
+        for (var param : table.getParameters(methodName)) {
+            methodCode.addRegister(param.getName());
+        }
+        for (var local : table.getLocalVariables(methodName)) {
+            methodCode.addRegister(local.getName());
+        }
 
-        // set next register that can be used
-        // if method is static, then can start at 0
-        // if method is not static, 0 contains 'this', and must start at 1
-        // for the initial language, there are no static methods
-        nextRegister = 1;
+        boolean hasReturn = false;
+        for (var child : methodDecl.getChildren()) {
+            var kind = Kind.of(child);
+            if (kind.isType() || kind == PARAM || kind == VAR_DECL) continue;
 
-        // initialize register map and set parameters
-        currentRegisters = new HashMap<>();
-        for (var param : methodDecl.getChildren("Param")) {
-            currentRegisters.put(param.get("name"), nextRegister);
-            nextRegister++;
+            visit(child, methodCode);
+            hasReturn |= kind == RETURN_STMT;
         }
 
-        exprGenerator = new JasminExprGeneratorVisitor(currentRegisters);
+        // Java-- has no 'return;', so void methods always end with this one
+        if (!hasReturn) {
+            methodCode.emit("return", 0);
+        }
 
-        var code = new StringBuilder();
+        var code = new StringBuilder(NL);
+        code.append(".method ");
+        if (isPublic) code.append("public ");
+        if (isStatic) code.append("static ");
+        code.append(methodName).append(types.getMethodDescriptor(methodName)).append(NL);
 
-        // calculate modifier
-        var modifier = methodDecl.getObject("isPublic", Boolean.class) ? "public " : "";
+        code.append(TAB).append(".limit stack ").append(methodCode.getMaxStack()).append(NL);
+        code.append(TAB).append(".limit locals ").append(methodCode.getLocals()).append(NL);
+        code.append(methodCode);
+        code.append(".end method").append(NL);
 
+        return code.toString();
+    }
 
-        // TODO: Hardcoded param types and return type, needs to be expanded
-        code.append("\n.method ").append(modifier).append(methodName).append("(I)I").append(NL);
+    private String visitAssignStmt(JmmNode assignStmt, JasminMethodCode code) {
+        var variable = exprGenerator.resolveVariable(assignStmt.get("name"), code);
+        var value = assignStmt.getChild(0);
 
-        // Add limits
-        code.append(TAB).append(".limit stack 99").append(NL);
-        code.append(TAB).append(".limit locals 99").append(NL);
+        if (variable.isField()) {
+            code.emit("aload_0", 1);
+            exprGenerator.visit(value, code);
+            code.emit("putfield " + exprGenerator.getFieldReference(variable), -2);
+            return "";
+        }
+
+        var increment = getIncrement(assignStmt);
+        if (increment != null) {
+            code.emit("iinc " + JasminExprGeneratorVisitor.getRegister(variable, code) + " " + increment, 0);
+            return "";
+        }
 
-        for (var stmt : methodDecl.getChildren("Stmt")) {
-            // Get code for statement, split into lines and insert the necessary indentation
-            var instCode = StringLines.getLines(visit(stmt)).stream()
-                    .collect(Collectors.joining(NL + TAB, TAB, NL));
+        exprGenerator.visit(value, code);
+        code.emit(JasminExprGeneratorVisitor.store(variable, code), -1);
 
-            code.append(instCode);
+        return "";
+    }
+
+    /**
+     * @return the constant added to a local variable by an assignment like 'i = i + 1', if it fits in an iinc, or null
+     * otherwise
+     */
+    private Integer getIncrement(JmmNode assignStmt) {
+        var value = assignStmt.getChild(0);
+        if (!BINARY_EXPR.check(value)) return null;
+
+        var op = value.get("op");
+        if (!op.equals("+") && !op.equals("-")) return null;
+
+        var name = assignStmt.get("name");
+        var left = value.getChild(0);
+        var right = value.getChild(1);
+
+        JmmNode constant;
+        if (isReference(left, name) && INTEGER_LITERAL.check(right)) {
+            constant = right;
+        } else if (op.equals("+") && INTEGER_LITERAL.check(left) && isReference(right, name)) {
+            constant = left;
+        } else {
+            return null;
         }
 
-        code.append(".end method\n");
+        long increment = Long.parseLong(constant.get("value"));
+        if (op.equals("-")) increment = -increment;
 
-        // reset information
-        exprGenerator = null;
-        nextRegister = -1;
-        currentRegisters = null;
-        currentMethod = null;
+        return increment >= Byte.MIN_VALUE && increment <= Byte.MAX_VALUE ? (int) increment : null;
+    }
 
-        return code.toString();
+    private static boolean isReference(JmmNode expr, String name) {
+        return VAR_REF_EXPR.check(expr) && expr.get("name").equals(name);
     }
 
-    private String visitAssignStmt(JmmNode assignStmt, Void unused) {
-        var code = new StringBuilder();
+    private String visitListAssignStmt(JmmNode listAssignStmt, JasminMethodCode code) {
+        var variable = exprGenerator.resolveVariable(listAssignStmt.get("name"), code);
 
-        // generate code that will put the value on the right on top of the stack
-        exprGenerator.visit(assignStmt.getChild(1), code);
+        if (variable.isField()) {
+            code.emit("aload_0", 1);
+            code.emit("getfield " + exprGenerator.getFieldReference(variable), 0);
+        } else {
+            code.emit(JasminExprGeneratorVisitor.load(variable, code), 1);
+        }
 
-        // store value in top of the stack in destination
-        var lhs = assignStmt.getChild(0);
-        SpecsCheck.checkArgument(lhs.isInstance("VarRefExpr"), () -> "Expected a node of type 'VarRefExpr', but instead got '" + lhs.getKind() + "'");
+        exprGenerator.visit(listAssignStmt.getChild(0), code);
+        exprGenerator.visit(listAssignStmt.getChild(1), code);
 
-        var destName = lhs.get("name");
+        var elementType = JmmType.of(variable.getType()).getElementType();
+        code.emit(JasminExprGeneratorVisitor.getArrayInstruction(elementType, "astore"), -3);
 
-        // get register
-        var reg = currentRegisters.get(destName);
+        return "";
+    }
 
-        // If no mapping, variable has not been assigned yet, create mapping
-        if (reg == null) {
-            reg = nextRegister;
-            currentRegisters.put(destName, reg);
-            nextRegister++;
+    private String visitExprStmt(JmmNode exprStmt, JasminMethodCode code) {
+        var expr = exprStmt.getChild(0);
+        exprGenerator.visit(expr, code);
+
+        // The value is not used
+        if (exprGenerator.getType(expr) != JmmType.VOID) {
+            code.emit("pop", -1);
         }
 
-        // TODO: Hardcoded for int type, needs to be expanded
-        code.append("istore ").append(reg).append(NL);
+        return "";
+    }
+
+    private String visitReturnStmt(JmmNode returnStmt, JasminMethodCode code) {
+        exprGenerator.visit(returnStmt.getChild(0), code);
 
-        return code.toString();
+        var returnType = table.getReturnType(code.getMethodName());
+        code.emit(JasminTypes.isReference(returnType) ? "areturn" : "ireturn", -1);
+
+        return "";
     }
 
-    private String visitReturnStmt(JmmNode returnStmt, Void unused) {
+    private String visitIfStmt(JmmNode ifStmt, JasminMethodCode code) {
+        var elseLabel = code.newLabel("ifElse");
+        var endLabel = code.newLabel("ifEnd");
 
-        var code = new StringBuilder();
+        exprGenerator.visitCondition(ifStmt.getChild(0), code, elseLabel, false);
+        visit(ifStmt.getChild(1), code);
+        code.emit("goto " + endLabel, 0);
 
-        // TODO: Hardcoded to always return an int type, needs to be expanded
+        code.label(elseLabel);
+        visit(ifStmt.getChild(2), code);
+        code.label(endLabel);
 
-        // generate code that will put the value of the return on the top of the stack
-        exprGenerator.visit(returnStmt.getChild(0), code);
-        code.append("ireturn").append(NL);
+        return "";
+    }
 
-        return code.toString();
+    private String visitWhileStmt(JmmNode whileStmt, JasminMethodCode code) {
+        var condLabel = code.newLabel("whileCond");
+        var endLabel = code.newLabel("whileEnd");
+
+        code.label(condLabel);
+        exprGenerator.visitCondition(whileStmt.getChild(0), code, endLabel, false);
+        visit(whileStmt.getChild(1), code);
+        code.emit("goto " + condLabel, 0);
+        code.label(endLabel);
+
+        return "";
+    }
+
+    private String visitScopeStmt(JmmNode scopeStmt, JasminMethodCode code) {
+        for (var stmt : scopeStmt.getChildren()) {
+            visit(stmt, code);
+        }
+
+        return "";
     }
-}
\ No newline at end of file
+}
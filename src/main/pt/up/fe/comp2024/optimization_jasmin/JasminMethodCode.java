@@ -0,0 +1,91 @@
+package pt.up.fe.comp2024.optimization_jasmin;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Instructions of the method being generated, with the registers of its variables and the size of the operand stack.
+ * <p>
+ * Every instruction is emitted with the change it makes to the stack, after popping its operands and pushing its
+ * result, so the maximum size of the stack is known once the method is generated.
+ */
+public class JasminMethodCode {
+
+    private static final String NL = "\n";
+    private static final String TAB = "   ";
+
+    private final String methodName;
+    private final StringBuilder code;
+    private final Map<String, Integer> registers;
+    private int nextRegister;
+    private int stack;
+    private int maxStack;
+    private int nextLabel;
+
+    /**
+     * @param isStatic if false, register 0 holds 'this'
+     */
+    public JasminMethodCode(String methodName, boolean isStatic) {
+        this.methodName = methodName;
+        this.code = new StringBuilder();
+        this.registers = new HashMap<>();
+        this.nextRegister = isStatic ? 0 : 1;
+        this.stack = 0;
+        this.maxStack = 0;
+        this.nextLabel = 0;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * Gives the next free register to a variable. A variable that already has a register keeps it.
+     */
+    public void addRegister(String name) {
+        if (registers.putIfAbsent(name, nextRegister) == null) {
+            nextRegister++;
+        }
+    }
+
+    /**
+     * @return the register of a parameter or local variable, or null if it has none
+     */
+    public Integer getRegister(String name) {
+        return registers.get(name);
+    }
+
+    public int getLocals() {
+        return nextRegister;
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * @param stackChange how many values the instruction leaves on the stack, minus how many it takes
+     */
+    public void emit(String instruction, int stackChange) {
+        code.append(TAB).append(instruction).append(NL);
+
+        stack += stackChange;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    /**
+     * @return a label that is not used elsewhere in the method
+     */
+    public String newLabel(String prefix) {
+        return prefix + "_" + nextLabel++;
+    }
+
+    public void label(String label) {
+        code.append(label).append(":").append(NL);
+    }
+
+    @Override
+    public String toString() {
+        return code.toString();
+    }
+}
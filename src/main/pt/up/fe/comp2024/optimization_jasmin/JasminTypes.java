@@ -0,0 +1,77 @@
+package pt.up.fe.comp2024.optimization_jasmin;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp2024.ast.JmmType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Names of classes and descriptors of types as they appear in Jasmin code.
+ */
+public class JasminTypes {
+
+    private static final String OBJECT = "java/lang/Object";
+
+    private final SymbolTable table;
+    private final Map<String, String> classPaths;
+
+    public JasminTypes(SymbolTable table) {
+        this.table = table;
+        this.classPaths = new HashMap<>();
+
+        for (var importEntry : table.getImports()) {
+            var parts = importEntry.split("\\.");
+            classPaths.put(parts[parts.length - 1], importEntry.replace('.', '/'));
+        }
+    }
+
+    /**
+     * @param className a class name as written in the code, e.g., A for a class imported as foo.bar.A
+     * @return the full name of the class, e.g., foo/bar/A
+     */
+    public String getClassPath(String className) {
+        if (className.equals("Object")) return OBJECT;
+        if (className.equals("String")) return "java/lang/String";
+
+        return classPaths.getOrDefault(className, className);
+    }
+
+    public String getSuperPath() {
+        return table.getSuper() == null ? OBJECT : getClassPath(table.getSuper());
+    }
+
+    public String getDescriptor(Type type) {
+        var jmmType = JmmType.of(type);
+        var elementDescriptor = switch (jmmType.getName()) {
+            case "int" -> "I";
+            case "boolean" -> "Z";
+            case "void" -> "V";
+            default -> "L" + getClassPath(jmmType.getName()) + ";";
+        };
+
+        return jmmType.hasElements() ? "[" + elementDescriptor : elementDescriptor;
+    }
+
+    /**
+     * @return the descriptor of a method declared in the class
+     */
+    public String getMethodDescriptor(String methodName) {
+        var descriptor = new StringBuilder("(");
+        for (var param : table.getParameters(methodName)) {
+            descriptor.append(getDescriptor(param.getType()));
+        }
+        descriptor.append(")").append(getDescriptor(table.getReturnType(methodName)));
+
+        return descriptor.toString();
+    }
+
+    /**
+     * @return true if values of the type are stored as references, false if they are stored as int
+     */
+    public static boolean isReference(Type type) {
+        var jmmType = JmmType.of(type);
+        return jmmType.hasElements() || !(jmmType.getName().equals("int") || jmmType.getName().equals("boolean"));
+    }
+}
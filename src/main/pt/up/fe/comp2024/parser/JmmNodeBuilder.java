@@ -0,0 +1,296 @@
+package pt.up.fe.comp2024.parser;
+
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp.jmm.ast.NodePosition;
+import pt.up.fe.comp.jmm.ast.antlr.JmmErrorListener;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.JavammParser;
+import pt.up.fe.comp2024.ast.AstArena;
+import pt.up.fe.specs.util.SpecsSystem;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Builds the JmmNode AST while the parser runs, replacing the generic conversion done by AntlrParser.
+ * <p>
+ * Each context is turned into a node as soon as the parser exits it, and its children are then dropped, so the parse
+ * tree never exists in full next to the AST. Nodes get the same kinds, hierarchies and attributes the generic
+ * conversion gives them, but the fields to read are found only once per context class. MemberExpr contexts are
+ * directly built as LengthAttrExpr or MethodExpr nodes.
+ * <p>
+ * Large sources are built into an {@link AstArena} instead, as configured by
+ * {@link CompilerConfig#getCompactAst(Map, int)}.
+ */
+public class JmmNodeBuilder implements ParseTreeListener {
+
+    private static final ClassValue<NodeShape> SHAPES = new ClassValue<>() {
+        @Override
+        protected NodeShape computeValue(Class<?> type) {
+            return new NodeShape(type);
+        }
+    };
+
+    private final Parser parser;
+    // Nodes of the contexts that were already exited but not yet added to their parent
+    private final Map<ParserRuleContext, JmmNode> pending;
+    private JmmNode root;
+
+    // Used instead of the nodes when building a compact AST
+    private final AstArena.Builder arena;
+    private final Map<ParserRuleContext, Integer> pendingIndexes;
+    private int rootIndex;
+
+    private JmmNodeBuilder(Parser parser, boolean compact) {
+        this.parser = parser;
+        this.pending = new IdentityHashMap<>();
+        this.root = null;
+
+        this.arena = compact ? new AstArena.Builder() : null;
+        this.pendingIndexes = new IdentityHashMap<>();
+        this.rootIndex = -1;
+    }
+
+    /**
+     * Parses the code using the given parser rule, building the AST as the parser goes.
+     *
+     * @return If there were no errors, a JmmParserResult with the root node, otherwise an error JmmParserResult
+     * without root node
+     */
+    public static JmmParserResult parse(Lexer lex, JavammParser parser, String ruleName, Map<String, String> config) {
+
+        lex.removeErrorListeners();
+        var lexerListener = new JmmErrorListener(Stage.LEXICAL);
+        lex.addErrorListener(lexerListener);
+
+        parser.removeErrorListeners();
+        var parserListener = new JmmErrorListener(Stage.SYNTATIC);
+        parser.addErrorListener(parserListener);
+
+        var compact = CompilerConfig.getCompactAst(config, lex.getInputStream().size());
+        var builder = new JmmNodeBuilder(parser, compact);
+        parser.addParseListener(builder);
+
+        try {
+            SpecsSystem.invoke(parser, ruleName);
+        } finally {
+            parser.removeParseListener(builder);
+        }
+
+        var reports = new ArrayList<Report>();
+        reports.addAll(lexerListener.getReports());
+        reports.addAll(parserListener.getReports());
+
+        if (reports.stream().anyMatch(r -> r.getType().equals(ReportType.ERROR))) {
+            return new JmmParserResult(null, reports, config);
+        }
+
+        return new JmmParserResult(builder.getRoot(), reports, config);
+    }
+
+    private JmmNode getRoot() {
+        if (arena == null) return root;
+
+        return rootIndex == -1 ? null : arena.build(rootIndex).getRoot();
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+        // The tree of a code with syntax errors is never used
+        if (parser.getNumberOfSyntaxErrors() > 0) {
+            pending.clear();
+            pendingIndexes.clear();
+            return;
+        }
+
+        var shape = SHAPES.get(ctx.getClass());
+        var kind = shape.getKind(ctx);
+
+        // Left recursive contexts only get their stop token after being exited, in which case use the last token read
+        var stop = ctx.stop != null ? ctx.stop : parser.getInputStream().LT(-1);
+
+        if (arena != null) {
+            int node = arena.addNode(kind, shape.getHierarchy(kind), ctx.start.getLine(),
+                    ctx.start.getCharPositionInLine(), stop.getLine(), stop.getCharPositionInLine());
+            shape.addAttributes(ctx, arena::put);
+            takeChildren(ctx, pendingIndexes, child -> arena.addChild(node, child));
+
+            pendingIndexes.put(ctx, node);
+            rootIndex = node;
+            return;
+        }
+
+        var node = new JmmNodeImpl(kind);
+        node.setHierarchy(shape.getHierarchy(kind));
+
+        addPosition(node, ctx.start, stop);
+        shape.addAttributes(ctx, node::putObject);
+        takeChildren(ctx, pending, node::add);
+
+        pending.put(ctx, node);
+        root = node;
+    }
+
+    /**
+     * Gives the nodes of the children of the context, in order, to the consumer.
+     */
+    private static <T> void takeChildren(ParserRuleContext ctx, Map<ParserRuleContext, T> pending,
+                                         Consumer<T> consumer) {
+        if (ctx.children == null) return;
+
+        for (var child : ctx.children) {
+            if (!(child instanceof ParserRuleContext)) continue;
+
+            var childNode = pending.remove(child);
+            if (childNode == null) {
+                throw new IllegalStateException("Context '" + child.getClass().getSimpleName()
+                        + "' was not exited before its parent");
+            }
+
+            consumer.accept(childNode);
+        }
+
+        // The children are no longer needed once they have been converted
+        ctx.children = null;
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+    }
+
+    @Override
+    public void visitErrorNode(ErrorNode node) {
+    }
+
+    private static void addPosition(JmmNode node, Token start, Token stop) {
+        node.put(NodePosition.LINE_START.getKey(), Integer.toString(start.getLine()));
+        node.put(NodePosition.COL_START.getKey(), Integer.toString(start.getCharPositionInLine()));
+
+        node.put(NodePosition.LINE_END.getKey(), Integer.toString(stop.getLine()));
+        node.put(NodePosition.COL_END.getKey(), Integer.toString(stop.getCharPositionInLine()));
+    }
+
+    /**
+     * The kind, hierarchy and public fields of a context class.
+     */
+    private static class NodeShape {
+
+        private static final String MEMBER_EXPR = "MemberExpr";
+        private static final String CALL_FIELD = "call";
+
+        private final String kind;
+        private final List<String> hierarchy;
+        private final List<Field> fields;
+
+        private NodeShape(Class<?> type) {
+            var hierarchy = new ArrayList<String>();
+            var fields = new ArrayList<Field>();
+
+            for (var current = type; !current.equals(ParserRuleContext.class); current = current.getSuperclass()) {
+                hierarchy.add(getKind(current));
+
+                for (var field : current.getDeclaredFields()) {
+                    if (!Modifier.isPublic(field.getModifiers())) continue;
+
+                    if (ParserRuleContext.class.isAssignableFrom(field.getType())) {
+                        throw new RuntimeException("Labeled rule references are not supported, found field '"
+                                + field.getName() + "' in " + current.getSimpleName());
+                    }
+
+                    fields.add(field);
+                }
+            }
+
+            this.kind = hierarchy.get(0);
+            this.hierarchy = List.copyOf(hierarchy);
+            this.fields = List.copyOf(fields);
+        }
+
+        private static String getKind(Class<?> type) {
+            var className = type.getSimpleName();
+
+            // Rules end with context
+            if (!className.endsWith("Context")) {
+                throw new RuntimeException("Expected classname to end with 'Context' " + className);
+            }
+
+            return className.substring(0, className.length() - "Context".length());
+        }
+
+        public String getKind(ParserRuleContext ctx) {
+            if (!kind.equals(MEMBER_EXPR)) return kind;
+
+            return ((JavammParser.MemberExprContext) ctx).call != null ? "MethodExpr" : "LengthAttrExpr";
+        }
+
+        public List<String> getHierarchy(String kind) {
+            if (kind.equals(this.kind)) return hierarchy;
+
+            return List.of(kind, hierarchy.get(1));
+        }
+
+        public void addAttributes(ParserRuleContext ctx, BiConsumer<String, Object> put) {
+            for (var field : fields) {
+                var name = field.getName();
+
+                if (kind.equals(MEMBER_EXPR) && name.equals(CALL_FIELD)) continue;
+
+                Object value;
+                try {
+                    value = field.get(ctx);
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException("Could not access field '" + name + "' from node " + ctx);
+                }
+
+                if (field.getType().isAssignableFrom(Token.class)) {
+                    // If no token for the given field, skip
+                    if (value instanceof Token token) put.accept(name, token.getText());
+                    continue;
+                }
+
+                put.accept(name, toAttribute(value));
+            }
+        }
+
+        private static Object toAttribute(Object value) {
+            // If Token, convert to String
+            if (value instanceof Token token) {
+                return token.getText();
+            }
+
+            // If List, convert elements
+            if (value instanceof List<?> list) {
+                var converted = new ArrayList<>(list.size());
+                for (var element : list) {
+                    converted.add(toAttribute(element));
+                }
+
+                return converted;
+            }
+
+            return value;
+        }
+    }
+}
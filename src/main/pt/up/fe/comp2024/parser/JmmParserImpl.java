@@ -1,14 +1,23 @@
 package pt.up.fe.comp2024.parser;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CommonTokenStream;
-import pt.up.fe.comp.jmm.ast.antlr.AntlrParser;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import pt.up.fe.comp.jmm.parser.JmmParser;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
 
-import java.util.Collections;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
 
 /**
@@ -33,24 +42,97 @@ public class JmmParserImpl implements JmmParser {
 
     @Override
     public JmmParserResult parse(String jmmCode, String startingRule, Map<String, String> config) {
+        // Convert code string into a character stream
+        return parse(new ANTLRInputStream(jmmCode), startingRule, config);
+    }
 
+    /**
+     * Parses the Java-- file at the given path using the default rule. The file is memory-mapped and decoded directly
+     * into the character buffer the lexer reads, so its text is never also kept as a String.
+     */
+    public JmmParserResult parse(Path path, Map<String, String> config) {
+        CharStream input;
         try {
-            // Convert code string into a character stream
-            var input = new ANTLRInputStream(jmmCode);
-            // Transform characters into tokens using the lexer
-            var lex = new pt.up.fe.comp2024.JavammLexer(input);
-            // Wrap lexer around a token stream
-            var tokens = new CommonTokenStream(lex);
-            // Transforms tokens into a parse tree
-            var parser = new pt.up.fe.comp2024.JavammParser(tokens);
+            input = readSource(path);
+        } catch (IOException e) {
+            return JmmParserResult.newError(Report.newError(Stage.SYNTATIC, -1, -1, "Could not read file '" + path + "'", e), config);
+        }
+
+        return parse(input, getDefaultRule(), config);
+    }
+
+    /**
+     * Parses the characters of the stream, from its beginning.
+     */
+    public JmmParserResult parse(CharStream input, String startingRule, Map<String, String> config) {
+
+        // Reuse the lexer, token stream and parser of this thread
+        var pool = ParserPool.acquire(input);
+
+        try {
+            var lex = pool.getLexer();
+            var parser = pool.getParser();
+
+            // A single parse with the given prediction mode, recovering from syntax errors
+            var predictionMode = CompilerConfig.getPredictionMode(config);
+            if (predictionMode.isPresent()) {
+                parser.getInterpreter().setPredictionMode(predictionMode.get());
+                return JmmNodeBuilder.parse(lex, parser, startingRule, config);
+            }
+
+            // First try the faster SLL prediction, which gives up at the first syntax error
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            parser.setErrorHandler(new BailErrorStrategy());
+
+            try {
+                // Build the JmmNode AST while parsing
+                return JmmNodeBuilder.parse(lex, parser, startingRule, config);
+            } catch (RuntimeException e) {
+                if (!isParseCancellation(e)) throw e;
+            }
 
+            // SLL failed, either because the code has errors or needs full context, so parse again with full LL
+            pool.reset(input);
 
-            // Convert ANTLR CST to JmmNode AST
-            return AntlrParser.parse(lex, parser, startingRule, config);
+            return JmmNodeBuilder.parse(lex, parser, startingRule, config);
 
         } catch (Exception e) {
             // There was an uncaught exception during parsing, create an error JmmParserResult without root node
             return JmmParserResult.newError(Report.newError(Stage.SYNTATIC, -1, -1, "Exception during parsing", e), config);
+        } finally {
+            pool.release();
         }
     }
+
+    private static ANTLRInputStream readSource(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be parsed: " + size + " bytes");
+            }
+
+            var bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            var decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+            // UTF-8 never decodes to more characters than it has bytes, so a single buffer of that size is enough
+            var chars = CharBuffer.allocate((int) size);
+            decoder.decode(bytes, chars, true);
+            decoder.flush(chars);
+
+            var input = new ANTLRInputStream(chars.array(), chars.position());
+            input.name = path.toString();
+
+            return input;
+        }
+    }
+
+    private static boolean isParseCancellation(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ParseCancellationException) return true;
+        }
+
+        return false;
+    }
 }
@@ -0,0 +1,172 @@
+package pt.up.fe.comp2024.parser;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import pt.up.fe.comp2024.JavammLexer;
+import pt.up.fe.comp2024.JavammParser;
+
+import java.util.HashMap;
+
+/**
+ * Keeps one lexer, token stream and parser per thread, which are reset and reused for every parse instead of
+ * being allocated again.
+ * <p>
+ * The DFA that ANTLR builds during prediction is shared by all parsers, so parsing a small corpus at startup
+ * with {@link #prewarm()} makes the first real parse as fast as the following ones. This only pays off for compilers
+ * that parse many sources, like the watch mode or the embedded compiler.
+ * <p>
+ * Once a parse is done, {@link #release()} points everything at an empty input, so that a pooled parser does not keep
+ * the last source and its tokens alive.
+ */
+public class ParserPool {
+
+    private static final ThreadLocal<ParserPool> POOL = ThreadLocal.withInitial(ParserPool::new);
+
+    /**
+     * Program that goes through every rule of the grammar, used to fill the DFA cache.
+     */
+    private static final String WARMUP_CORPUS = """
+            import io;
+            import java.util.List;
+
+            class Warmup extends Base {
+                int count;
+                boolean flag;
+                int[] values;
+                Warmup other;
+
+                public int sum(int[] a, int... rest) {
+                    int i;
+                    int total;
+                    boolean done;
+                    i = 0;
+                    total = 0;
+                    done = !(i < a.length) && true;
+                    while (i < a.length && !done) {
+                        total = total + a[i] * 2 - (rest[0] / 1);
+                        i = i + 1;
+                    }
+                    if (total < 10) {
+                        values = new int[total];
+                        values[0] = this.sum(values, 1, 2, 3);
+                    } else {
+                        other = new Warmup();
+                        total = other.sum([1, 2, 3]);
+                    }
+                    {
+                        io.println(total);
+                        count = count + rest.length;
+                    }
+                    return total;
+                }
+
+                public static void main(String[] args) {
+                    Warmup w;
+                    w = new Warmup();
+                    io.println(w.sum(new int[3], 1));
+                }
+            }
+            """;
+
+    private final JavammLexer lexer;
+    private final ReusableTokenStream tokens;
+    private final JavammParser parser;
+
+    private ParserPool() {
+        var input = new ANTLRInputStream("");
+        lexer = new JavammLexer(input);
+        tokens = new ReusableTokenStream(lexer);
+        parser = new JavammParser(tokens);
+    }
+
+    /**
+     * Returns the parser of the current thread, reset to read the given input.
+     */
+    public static ParserPool acquire(CharStream input) {
+        var pool = POOL.get();
+        pool.reset(input);
+        return pool;
+    }
+
+    /**
+     * Parses the warm-up corpus in both prediction modes, so that their DFA caches are filled.
+     */
+    public static void prewarm() {
+        var parser = new JmmParserImpl();
+        var config = new HashMap<String, String>();
+
+        parser.parse(WARMUP_CORPUS, config);
+
+        var pool = acquire(new ANTLRInputStream(WARMUP_CORPUS));
+        pool.getParser().getInterpreter().setPredictionMode(PredictionMode.LL);
+        pool.getParser().removeErrorListeners();
+        pool.getParser().program();
+        pool.release();
+    }
+
+    /**
+     * Points the lexer, token stream and parser at an empty input, dropping the tokens of the last parse.
+     */
+    public void release() {
+        // The simulator keeps the context of its last prediction, which reaches the source through its tokens
+        var interpreter = parser.getInterpreter();
+        parser.setInterpreter(new ParserATNSimulator(parser, parser.getATN(), interpreter.decisionToDFA,
+                interpreter.getSharedContextCache()));
+
+        // The error listeners of the last parse keep its reports, whose exceptions reach the source
+        lexer.removeErrorListeners();
+        parser.removeErrorListeners();
+
+        reset(new ANTLRInputStream(""));
+    }
+
+    /**
+     * Rewinds the lexer, token stream and parser to the beginning of a new input.
+     */
+    public void reset(CharStream input) {
+        input.seek(0);
+        lexer.setInputStream(input);
+        tokens.setTokenSource(lexer);
+        parser.setTokenStream(tokens);
+        // Resetting the parser keeps the state it stopped at, which would become the invoking state of the new root
+        // context and break error recovery
+        parser.setState(ATNState.INVALID_STATE_NUMBER);
+        parser.setErrorHandler(new DefaultErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+    }
+
+    public JavammLexer getLexer() {
+        return lexer;
+    }
+
+    public CommonTokenStream getTokens() {
+        return tokens;
+    }
+
+    public JavammParser getParser() {
+        return parser;
+    }
+
+    /**
+     * Token stream that can be pointed at a new token source. The ANTLR version in use does not clear the
+     * end-of-file flag when the source changes, so a reused stream would not fetch any token.
+     */
+    private static class ReusableTokenStream extends CommonTokenStream {
+
+        ReusableTokenStream(TokenSource tokenSource) {
+            super(tokenSource);
+        }
+
+        @Override
+        public void setTokenSource(TokenSource tokenSource) {
+            super.setTokenSource(tokenSource);
+            fetchedEOF = false;
+        }
+    }
+}
@@ -4,12 +4,15 @@ import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.VariableSymbol.Scope;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 public class JmmSymbolTable implements SymbolTable {
     private final List<String> imports;
@@ -20,6 +23,9 @@ public class JmmSymbolTable implements SymbolTable {
     private final Map<String, Type> returnTypes;
     private final Map<String, List<Symbol>> params;
     private final Map<String, List<Symbol>> locals;
+    // Variables visible in each method, by name
+    private final Map<String, Map<String, VariableSymbol>> variables;
+    private final Map<String, VariableSymbol> fieldVariables;
 
     public JmmSymbolTable(List<String> imports,
                           String className,
@@ -29,19 +35,61 @@ public class JmmSymbolTable implements SymbolTable {
                           Map<String, Type> returnTypes,
                           Map<String, List<Symbol>> params,
                           Map<String, List<Symbol>> locals) {
-        this.imports = imports;
+        this.imports = Collections.unmodifiableList(imports);
         this.className = className;
         this.superName = superName;
-        this.fields = fields;
-        this.methods = methods;
+        this.fields = Collections.unmodifiableList(fields);
+        this.methods = Collections.unmodifiableList(methods);
         this.returnTypes = returnTypes;
-        this.params = params;
-        this.locals = locals;
+        this.params = new HashMap<>();
+        this.locals = new HashMap<>();
+        this.variables = new HashMap<>();
+        this.fieldVariables = buildScope(List.of(), List.of(), fields);
+
+        params.forEach((method, methodParams) -> this.params.put(method, Collections.unmodifiableList(methodParams)));
+        locals.forEach((method, methodLocals) -> this.locals.put(method, Collections.unmodifiableList(methodLocals)));
+
+        for (var method : params.keySet()) {
+            variables.put(method, buildScope(locals.getOrDefault(method, List.of()), params.get(method), fields));
+        }
+    }
+
+    /**
+     * Maps each name to the declaration it refers to. Locals hide parameters, which hide fields, and the first of
+     * repeated declarations in the same scope is the one that is used.
+     */
+    public static Map<String, VariableSymbol> buildScope(List<Symbol> locals, List<Symbol> params, List<Symbol> fields) {
+        var scope = new HashMap<String, VariableSymbol>();
+
+        addToScope(scope, locals, Scope.LOCAL);
+        addToScope(scope, params, Scope.PARAM);
+        addToScope(scope, fields, Scope.FIELD);
+
+        return scope;
+    }
+
+    private static void addToScope(Map<String, VariableSymbol> scope, List<Symbol> symbols, Scope kind) {
+        for (int i = 0; i < symbols.size(); i++) {
+            var symbol = symbols.get(i);
+            scope.putIfAbsent(symbol.getName(), new VariableSymbol(symbol, kind, i));
+        }
+    }
+
+    /**
+     * Resolves a variable name used inside the given method.
+     *
+     * @param methodSignature
+     * @param name
+     * @return the local, parameter or field the name refers to, or empty if there is none
+     */
+    public Optional<VariableSymbol> resolveVariable(String methodSignature, String name) {
+        var scope = variables.getOrDefault(methodSignature, fieldVariables);
+        return Optional.ofNullable(scope.get(name));
     }
 
     @Override
     public List<String> getImports() {
-        return Collections.unmodifiableList(imports);
+        return imports;
     }
 
 
@@ -58,12 +106,12 @@ public class JmmSymbolTable implements SymbolTable {
 
     @Override
     public List<Symbol> getFields() {
-        return Collections.unmodifiableList(fields);
+        return fields;
     }
 
     @Override
     public List<String> getMethods() {
-        return Collections.unmodifiableList(methods);
+        return methods;
     }
 
     @Override
@@ -73,12 +121,12 @@ public class JmmSymbolTable implements SymbolTable {
 
     @Override
     public List<Symbol> getParameters(String methodSignature) {
-        return Collections.unmodifiableList(params.get(methodSignature));
+        return params.get(methodSignature);
     }
 
     @Override
     public List<Symbol> getLocalVariables(String methodSignature) {
-        return Collections.unmodifiableList(locals.get(methodSignature));
+        return locals.get(methodSignature);
     }
 
 }
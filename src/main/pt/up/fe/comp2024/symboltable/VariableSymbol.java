@@ -0,0 +1,59 @@
+package pt.up.fe.comp2024.symboltable;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+
+/**
+ * A variable name resolved inside a method, with where it was declared and its position among the declarations of
+ * that scope.
+ */
+public class VariableSymbol {
+
+    public enum Scope {
+        LOCAL,
+        PARAM,
+        FIELD
+    }
+
+    private final Symbol symbol;
+    private final Scope scope;
+    private final int slot;
+
+    public VariableSymbol(Symbol symbol, Scope scope, int slot) {
+        this.symbol = symbol;
+        this.scope = scope;
+        this.slot = slot;
+    }
+
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    public String getName() {
+        return symbol.getName();
+    }
+
+    public Type getType() {
+        return symbol.getType();
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * @return the index of the declaration among the locals, parameters or fields
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    public boolean isField() {
+        return scope == Scope.FIELD;
+    }
+
+    @Override
+    public String toString() {
+        return scope + " " + slot + " " + symbol;
+    }
+}
@@ -13,6 +13,7 @@
 
 package pt.up.fe.comp.cp1;
 
+import org.junit.Assert;
 import org.junit.Test;
 import pt.up.fe.comp.TestUtils;
 
@@ -254,4 +255,27 @@ public class GrammarTest {
         TestUtils.parseVerbose("[10, 20, 30]", EXPRESSION);
     }
 
+    @Test
+    public void testSyntaxErrorAtEof() {
+        // The SLL attempt reads up to EOF before bailing out, so the LL attempt must start over from the first token
+        assertSyntaxError("class A { int x; ", 1);
+        assertSyntaxError("class A { int x; int foo() { return 1; }", 1);
+        assertSyntaxError("class A {\n int x;\n", 3);
+    }
+
+    @Test
+    public void testParseAfterSyntaxErrorAtEof() {
+        assertSyntaxError("class A { int x; ", 1);
+        TestUtils.parseVerbose("class A { int x; }");
+    }
+
+    private static void assertSyntaxError(String code, int line) {
+        var reports = TestUtils.parse(code).getReports();
+        TestUtils.mustFail(reports);
+
+        var error = reports.get(0);
+        Assert.assertEquals("Wrong error line in " + error, line, error.getLine());
+        Assert.assertTrue("Expected an error at EOF, got " + error, error.getMessage().contains("<EOF>"));
+    }
+
 }
@@ -13,13 +13,47 @@
 
 package pt.up.fe.comp.cpf;
 
+import org.antlr.v4.Tool;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.tool.Grammar;
+import org.junit.Assert;
 import org.junit.Test;
 import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp.jmm.ast.NodePosition;
+import pt.up.fe.comp.jmm.ast.antlr.AntlrParser;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.JavammLexer;
+import pt.up.fe.comp2024.JavammParser;
+import pt.up.fe.comp2024.ast.AstTraversal;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.parser.ParserPool;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
 public class Cpf1_ParserAndTree {
 
     static JasminResult getJmmResult(String filename) {
@@ -34,4 +68,397 @@ public class Cpf1_ParserAndTree {
                 result);
     }
 
+    @Test
+    public void section2_CompactAst_SameTree() {
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/1_parser_and_tree/AddMultConstants.jmm");
+
+        var regular = TestUtils.parse(code, Map.of("compactAst", "false")).getRootNode();
+        var compact = TestUtils.parse(code, Map.of("compactAst", "true")).getRootNode();
+        Assert.assertNotEquals("Expected a compact AST", regular.getClass(), compact.getClass());
+
+        var regularNodes = AstTraversal.getDescendants(regular);
+        var compactNodes = AstTraversal.getDescendants(compact);
+        Assert.assertEquals("Expected the same number of nodes", regularNodes.size(), compactNodes.size());
+
+        for (int i = 0; i < regularNodes.size(); i++) {
+            assertSameNode(regularNodes.get(i), compactNodes.get(i));
+        }
+
+        var result = TestUtils.backend(code, Map.of("compactAst", "true"));
+        TestUtils.noErrors(result.getReports());
+        CpUtils.assertEquals("Wrong results", "7\n12\n9", SpecsStrings.normalizeFileContents(result.run(), true),
+                result);
+    }
+
+    private static void assertSameNode(JmmNode expected, JmmNode actual) {
+        Assert.assertEquals(expected.getKind(), actual.getKind());
+        Assert.assertEquals(expected.getHierarchy(), actual.getHierarchy());
+        Assert.assertEquals(expected.getNumChildren(), actual.getNumChildren());
+        Assert.assertEquals(expected.getParent().getKind(), actual.getParent().getKind());
+        Assert.assertEquals(new HashSet<>(expected.getAttributes()), new HashSet<>(actual.getAttributes()));
+
+        for (var attribute : expected.getAttributes()) {
+            Assert.assertEquals(expected.getOptionalObject(attribute), actual.getOptionalObject(attribute));
+        }
+    }
+
+    /**
+     * Sources with syntax errors, next to the test resources, which have none.
+     */
+    static final List<String> SYNTAX_ERRORS = List.of(
+            "class A { int x; ",
+            "class A { int x; int foo() { return 1; }",
+            "class A {\n int x;\n",
+            "class A { int x = 1; }",
+            "class A { public int foo() { return 1 + ; } }",
+            "class A { public int foo() { a[1 = 2; return a.length(; } }",
+            "import a.; class A { }");
+
+    static final Set<String> POSITION_KEYS = Arrays.stream(NodePosition.values())
+            .map(NodePosition::getKey)
+            .collect(Collectors.toSet());
+
+    /**
+     * @return every node of the tree in preorder, with its hierarchy and all its attributes, including positions
+     */
+    static String dumpTree(JmmNode root) {
+        return dumpTree(root, true);
+    }
+
+    static String dumpTree(JmmNode root, boolean positions) {
+        var dump = new StringBuilder();
+        AstTraversal.walk(root, node -> {
+            var attributes = new TreeMap<String, Object>();
+            for (var attribute : node.getAttributes()) {
+                if (!positions && POSITION_KEYS.contains(attribute)) continue;
+                attributes.put(attribute, node.getOptionalObject(attribute).orElse(null));
+            }
+
+            int depth = 0;
+            for (var parent = node.getParent(); parent != null; parent = parent.getParent()) depth++;
+            dump.append("  ".repeat(depth)).append(node.getHierarchy()).append(' ').append(attributes).append('\n');
+            return true;
+        }, node -> {
+        });
+
+        return dump.toString();
+    }
+
+    /**
+     * @return the tree and the reports of the result
+     */
+    static String dumpResult(JmmParserResult result) {
+        var root = result.getRootNode();
+        return (root == null ? "<no tree>\n" : dumpTree(root)) + result.getReports();
+    }
+
+    static List<String> getParserInputs() {
+        var inputs = new ArrayList<String>();
+        for (var resource : CpUtils.getJmmResources()) {
+            inputs.add(SpecsIo.getResource(resource));
+        }
+        inputs.addAll(SYNTAX_ERRORS);
+
+        return inputs;
+    }
+
+    /**
+     * Test if parsing with SLL first gives the same trees and reports as parsing with SLL or LL only.
+     */
+    @Test
+    public void section3_Prediction_SameResults() {
+        for (var code : getParserInputs()) {
+            var twoStage = dumpResult(TestUtils.parse(code, Map.of()));
+
+            Assert.assertEquals("SLL only:\n" + code, twoStage,
+                    dumpResult(TestUtils.parse(code, Map.of("predictionMode", "sll"))));
+            Assert.assertEquals("LL only:\n" + code, twoStage,
+                    dumpResult(TestUtils.parse(code, Map.of("predictionMode", "ll"))));
+        }
+    }
+
+    /**
+     * Test if the SLL stage alone parses every resource, so the LL stage only runs on code with syntax errors, and
+     * if full LL prediction would not look further ahead on any of them.
+     */
+    @Test
+    public void section3_Prediction_SllLookahead() {
+        for (var resource : CpUtils.getJmmResources()) {
+            var code = SpecsIo.getResource(resource);
+
+            // Throws if SLL gives up
+            var sll = newProfilingParser(code, PredictionMode.SLL);
+            sll.setErrorHandler(new BailErrorStrategy());
+            sll.program();
+
+            var ll = newProfilingParser(code, PredictionMode.LL);
+            ll.program();
+
+            long sllLookahead = 0;
+            for (var decision : sll.getParseInfo().getDecisionInfo()) {
+                sllLookahead += decision.SLL_TotalLook;
+            }
+
+            long llLookahead = 0;
+            long fullContextLookahead = 0;
+            for (var decision : ll.getParseInfo().getDecisionInfo()) {
+                llLookahead += decision.SLL_TotalLook;
+                fullContextLookahead += decision.LL_TotalLook;
+            }
+
+            Assert.assertEquals("Full context lookahead of " + resource, 0, fullContextLookahead);
+            Assert.assertEquals("Lookahead of " + resource, llLookahead, sllLookahead);
+        }
+    }
+
+    static JavammParser newProfilingParser(String code, PredictionMode mode) {
+        var parser = new JavammParser(new CommonTokenStream(new JavammLexer(new ANTLRInputStream(code))));
+        parser.removeErrorListeners();
+        parser.setProfile(true);
+        parser.getInterpreter().setPredictionMode(mode);
+
+        return parser;
+    }
+
+    /**
+     * Parses the code on a new thread, and so with a parser that was never used.
+     */
+    static String parseOnNewThread(String code) throws InterruptedException {
+        var result = new AtomicReference<String>();
+        var thread = new Thread(() -> result.set(dumpResult(TestUtils.parse(code, Map.of()))));
+        thread.start();
+        thread.join();
+
+        return result.get();
+    }
+
+    /**
+     * Test if the parser of a thread gives the same results as a new parser, after parsing other code, with and
+     * without syntax errors.
+     */
+    @Test
+    public void section4_Pool_IndependentParses() throws InterruptedException {
+        var first = SpecsIo.getResource("pt/up/fe/comp/cpf/1_parser_and_tree/AddMultConstants.jmm");
+        var second = SpecsIo.getResource("pt/up/fe/comp/cpf/2_semantic_analysis/fused/ManyMethods.jmm");
+        var sources = List.of(first, SYNTAX_ERRORS.get(4), second, SYNTAX_ERRORS.get(0), first);
+
+        ParserPool.prewarm();
+
+        for (var code : sources) {
+            Assert.assertEquals("Parse of:\n" + code, parseOnNewThread(code),
+                    dumpResult(TestUtils.parse(code, Map.of())));
+        }
+    }
+
+    /**
+     * Test if the parser of a thread does not keep the last source reachable once the parse is done.
+     */
+    @Test
+    public void section4_Pool_ReleasesSource() throws InterruptedException {
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/2_semantic_analysis/fused/ManyMethods.jmm");
+        var parser = new JmmParserImpl();
+
+        for (var source : List.of(code, SYNTAX_ERRORS.get(4))) {
+            var input = new ANTLRInputStream(source);
+            var inputReference = new WeakReference<>(input);
+
+            // Reports of syntax errors keep their exception, which reaches the source, so only keep their text
+            var result = dumpResult(parser.parse(input, parser.getDefaultRule(), Map.of()));
+            input = null;
+
+            for (int i = 0; i < 20 && inputReference.get() != null; i++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+
+            Assert.assertNull("Expected the source to be collected after parsing:\n" + source, inputReference.get());
+            Assert.assertEquals(parseOnNewThread(source), result);
+        }
+    }
+
+    /**
+     * Test if the trees of the test resources have the same shapes as before the type and member access rules were
+     * left-factored, as listed in AstShapes.txt.
+     */
+    @Test
+    public void section5_Grammar_SameShapes() {
+        var shapes = SpecsIo.getResource("pt/up/fe/comp/cpf/1_parser_and_tree/AstShapes.txt");
+
+        int numResources = 0;
+        for (var entry : shapes.split("(?m)^== ")) {
+            if (entry.isEmpty()) continue;
+
+            int nameEnd = entry.indexOf('\n');
+            var resource = entry.substring(0, nameEnd);
+            var expected = entry.substring(nameEnd + 1);
+
+            var root = TestUtils.parse(SpecsIo.getResource(resource), Map.of()).getRootNode();
+            Assert.assertNotNull("Could not parse " + resource, root);
+            Assert.assertEquals("Shape of " + resource, expected, dumpTree(root, false));
+            numResources++;
+        }
+
+        Assert.assertTrue("Expected the shapes of all resources, got " + numResources, numResources > 100);
+    }
+
+    /**
+     * Test if the left-factored grammar needs less lookahead than the grammar before, in Javamm_unfactored.g4, to
+     * parse the test resources. Both grammars are interpreted, so that they are profiled the same way.
+     */
+    @Test
+    public void section5_Grammar_LessLookahead() throws IOException {
+        var factored = loadGrammar(Files.readString(Path.of("src/main/antlr/comp2024/grammar/Javamm.g4")));
+        var unfactored = loadGrammar(SpecsIo.getResource("pt/up/fe/comp/cpf/1_parser_and_tree/Javamm_unfactored.g4"));
+
+        long factoredLookahead = 0;
+        long unfactoredLookahead = 0;
+        for (var resource : CpUtils.getJmmResources()) {
+            var code = SpecsIo.getResource(resource);
+            factoredLookahead += getLookahead(factored, code);
+            unfactoredLookahead += getLookahead(unfactored, code);
+        }
+
+        Assert.assertTrue("Expected less lookahead, got " + factoredLookahead + " instead of " + unfactoredLookahead,
+                factoredLookahead < unfactoredLookahead);
+    }
+
+    /**
+     * Test if the AST built while parsing is the same, including node positions, as the one the generic AntlrParser
+     * conversion gives for the parse tree, once its MemberExpr nodes are split into LengthAttrExpr and MethodExpr.
+     */
+    @Test
+    public void section6_Builder_SameAsConversion() {
+        for (var code : getParserInputs()) {
+            var parser = new JavammParser(new CommonTokenStream(new JavammLexer(new ANTLRInputStream(code))));
+            var converted = AntlrParser.parse((Lexer) parser.getTokenStream().getTokenSource(), parser, "program",
+                    Map.of());
+            if (converted.getRootNode() != null) splitMembers(converted.getRootNode());
+
+            Assert.assertEquals("Tree of:\n" + code, dumpResult(converted),
+                    dumpResult(TestUtils.parse(code, Map.of())));
+        }
+    }
+
+    /**
+     * Replaces each MemberExpr node of the generic conversion with the node kind the compiler uses, which depends on
+     * whether the member access has a call token.
+     */
+    static void splitMembers(JmmNode root) {
+        for (var member : root.getDescendants("MemberExpr")) {
+            var kind = member.hasAttribute("call") ? "MethodExpr" : "LengthAttrExpr";
+            var node = new JmmNodeImpl(kind);
+            node.setHierarchy(List.of(kind, "Expr"));
+
+            for (var attribute : member.getAttributes()) {
+                if (!attribute.equals("call")) node.putObject(attribute, member.getObject(attribute));
+            }
+
+            while (member.getNumChildren() > 0) {
+                node.add(member.removeJmmChild(0));
+            }
+
+            member.replace(node);
+        }
+    }
+
+    /**
+     * Test if parsing a file gives the same result as parsing its contents, for every resource.
+     */
+    @Test
+    public void section7_ParseFile_SameAsString() {
+        var parser = new JmmParserImpl();
+        for (var resource : CpUtils.getJmmResources()) {
+            var file = Path.of("test", resource);
+            Assert.assertEquals("Parse of " + resource, dumpResult(TestUtils.parse(SpecsIo.getResource(resource))),
+                    dumpResult(parser.parse(file, Map.of())));
+        }
+    }
+
+    /**
+     * Test if a file with characters outside ASCII is decoded as UTF-8, so that positions count characters and not
+     * bytes.
+     */
+    @Test
+    public void section7_ParseFile_NonAscii() throws IOException {
+        // Escaped, so that the test compiles with any default encoding
+        var code = "/* N\u00famero de a\u00e7\u00f5es: \ud83d\ude00 */ class A {\n"
+                + "    // Fun\u00e7\u00e3o sem c\u00f3digo\n    int x;\n}\n";
+        var file = Files.createTempFile("nonAscii", ".jmm");
+        try {
+            Files.writeString(file, code, StandardCharsets.UTF_8);
+            var result = new JmmParserImpl().parse(file, Map.of());
+
+            TestUtils.noErrors(result);
+            Assert.assertEquals(dumpResult(TestUtils.parse(code)), dumpResult(result));
+
+            var classDecl = result.getRootNode().getChildren("ClassDecl").get(0);
+            Assert.assertEquals(Integer.toString(code.indexOf("class")),
+                    classDecl.get(NodePosition.COL_START.getKey()));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test if an empty file is parsed as empty code.
+     */
+    @Test
+    public void section7_ParseFile_Empty() throws IOException {
+        var file = Files.createTempFile("empty", ".jmm");
+        try {
+            Assert.assertEquals(dumpResult(TestUtils.parse("")),
+                    dumpResult(new JmmParserImpl().parse(file, Map.of())));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test if a file that cannot be read gives an error report instead of throwing.
+     */
+    @Test
+    public void section7_ParseFile_Unreadable() throws IOException {
+        var directory = Files.createTempDirectory("unreadable");
+        try {
+            for (var file : List.of(directory.resolve("Missing.jmm"), directory)) {
+                var result = new JmmParserImpl().parse(file, Map.of());
+
+                Assert.assertNull("Expected no tree for " + file, result.getRootNode());
+                Assert.assertEquals("Expected a single report for " + file, 1, result.getReports().size());
+                var report = result.getReports().get(0);
+                Assert.assertEquals(ReportType.ERROR, report.getType());
+                Assert.assertTrue(report.getMessage(), report.getMessage().contains(file.toString()));
+            }
+        } finally {
+            SpecsIo.deleteFolder(directory.toFile());
+        }
+    }
+
+    static Grammar loadGrammar(String text) {
+        var tool = new Tool();
+        var grammar = tool.createGrammar(tool.parseGrammarFromString(text));
+        tool.process(grammar, false);
+
+        return grammar;
+    }
+
+    /**
+     * @return the number of tokens SLL prediction looked at to parse the code
+     */
+    static long getLookahead(Grammar grammar, String code) {
+        // Both grammars have the same tokens
+        var tokens = new CommonTokenStream(new JavammLexer(new ANTLRInputStream(code)));
+        var parser = grammar.createParserInterpreter(tokens);
+        parser.removeErrorListeners();
+        parser.setProfile(true);
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.parse(grammar.getRule("program").index);
+
+        long lookahead = 0;
+        for (var decision : parser.getParseInfo().getDecisionInfo()) {
+            lookahead += decision.SLL_TotalLook;
+        }
+
+        return lookahead;
+    }
 }
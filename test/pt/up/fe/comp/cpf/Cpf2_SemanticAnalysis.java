@@ -13,14 +13,45 @@
 
 package pt.up.fe.comp.cpf;
 
+import com.google.gson.GsonBuilder;
 import org.junit.Test;
 import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp.jmm.ast.JmmSerializer;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.analysis.AnalysisVisitor;
+import pt.up.fe.comp2024.analysis.FusedAnalysis;
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.analysis.passes.NodeType;
+import pt.up.fe.comp2024.analysis.passes.Operations;
+import pt.up.fe.comp2024.ast.AstTraversal;
+import pt.up.fe.comp2024.ast.JmmType;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.backend.JasminRunner;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
+import pt.up.fe.comp2024.symboltable.VariableSymbol.Scope;
 import pt.up.fe.specs.util.SpecsIo;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class Cpf2_SemanticAnalysis {
 
@@ -86,6 +117,53 @@ public class Cpf2_SemanticAnalysis {
         CpUtils.assertEquals("Parameter 3", "Parameters", parameters.get(2).getType().getName(), st);
     }
 
+    static JmmSymbolTable getSymbolTable(String filename) {
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/2_semantic_analysis/" + filename);
+        return new JmmSymbolTableBuilder().build(TestUtils.parse(code, Collections.emptyMap()).getRootNode());
+    }
+
+    static void assertResolves(JmmSymbolTable table, String method, String name, Scope scope, int slot,
+                               String type) {
+        var variable = table.resolveVariable(method, name);
+        assertTrue("Expected '" + name + "' to be resolved in " + method, variable.isPresent());
+        CpUtils.assertEquals("Scope of '" + name + "' in " + method, scope, variable.get().getScope(), table);
+        CpUtils.assertEquals("Slot of '" + name + "' in " + method, slot, variable.get().getSlot(), table);
+        CpUtils.assertEquals("Type of '" + name + "' in " + method, type, variable.get().getType().getName(), table);
+    }
+
+    /**
+     * Test if locals hide parameters, which hide fields.
+     */
+    @Test
+    public void section1_SymbolTable_Shadowing() {
+        var table = getSymbolTable("symboltable/Shadowing.jmm");
+
+        assertResolves(table, "foo", "a", Scope.LOCAL, 0, "int");
+        assertResolves(table, "foo", "b", Scope.PARAM, 1, "int");
+        assertResolves(table, "foo", "c", Scope.FIELD, 2, "int");
+
+        assertResolves(table, "bar", "a", Scope.FIELD, 0, "int");
+        assertResolves(table, "bar", "b", Scope.FIELD, 1, "boolean");
+
+        assertResolves(table, "main", "args", Scope.PARAM, 0, "String");
+        assertTrue("Expected 'x' not to be resolved", table.resolveVariable("foo", "x").isEmpty());
+    }
+
+    /**
+     * Test if the first of repeated declarations in the same scope is the one that is used.
+     */
+    @Test
+    public void section1_SymbolTable_RepeatedDeclarations() {
+        var table = getSymbolTable("symboltable/Shadowing.jmm");
+
+        assertResolves(table, "foo", "d", Scope.PARAM, 2, "int");
+        assertResolves(table, "foo", "e", Scope.LOCAL, 1, "boolean");
+        assertResolves(table, "bar", "c", Scope.FIELD, 2, "int");
+
+        // Names used outside of any known method only see the fields
+        assertResolves(table, "unknown", "c", Scope.FIELD, 2, "int");
+    }
+
     /**
      * Test if fields are not being accessed from static methods.
      */
@@ -110,7 +188,7 @@ public class Cpf2_SemanticAnalysis {
     public void section2_Lookup_VarLookup_Local() {
         var jasminResult = getJasminResult("lookup/VarLookup_Local.jmm");
 
-        assertEquals("10", jasminResult.run().trim());
+        assertEquals("10", JasminRunner.run(jasminResult).getOutput().trim());
     }
 
     /**
@@ -120,8 +198,320 @@ public class Cpf2_SemanticAnalysis {
     public void section2_Lookup_VarLookup_Field() {
         var jasminResult = getJasminResult("lookup/VarLookup_Field.jmm");
 
-        CpUtils.assertEquals("Lookup of field", "10", jasminResult.run().trim(), jasminResult);
+        CpUtils.assertEquals("Lookup of field", "10", JasminRunner.run(jasminResult).getOutput().trim(), jasminResult);
+    }
+
+    /**
+     * Runs the passes over a fresh parse of the code, with the methods analysed concurrently or one after the other.
+     * Every pass runs, even after errors, so that all of them report.
+     *
+     * @return the reports of each pass, followed by the message of the exception that stopped it, if any
+     */
+    static List<String> analyseFused(String code, List<AnalysisVisitor> passes, boolean parallel) {
+        JmmNode root = TestUtils.parse(code, Collections.emptyMap()).getRootNode();
+        SymbolTable table = new JmmSymbolTableBuilder().build(root);
+
+        var outcome = new ArrayList<String>();
+        for (var result : new FusedAnalysis(passes, parallel, false).analyze(root, table)) {
+            outcome.add(result.getPass().getClass().getSimpleName() + ": " + result.getReports());
+            if (result.getException() != null) outcome.add("exception: " + result.getException().getMessage());
+        }
+
+        return outcome;
+    }
+
+    static void assertSameAsSequential(String code, List<AnalysisVisitor> passes) {
+        var sequential = analyseFused(code, passes, false);
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals("Run " + i + " differs from the sequential analysis", sequential,
+                    analyseFused(code, passes, true));
+        }
+    }
+
+    /**
+     * Test if the methods analysed concurrently give the reports of each pass in the order of a sequential analysis.
+     */
+    @Test
+    public void section3_Fused_ParallelReportOrder() {
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/2_semantic_analysis/fused/ManyMethods.jmm");
+        var passes = JmmAnalysisImpl.getPasses();
+
+        JmmNode root = TestUtils.parse(code, Collections.emptyMap()).getRootNode();
+        var results = new FusedAnalysis(passes, false, false).analyze(root, new JmmSymbolTableBuilder().build(root));
+        int numReports = 0;
+        for (var result : results) {
+            assertNull("Expected no pass to throw", result.getException());
+            numReports += result.getReports().size();
+        }
+        assertTrue("Expected several reports per method, got " + numReports, numReports > 40);
+
+        assertSameAsSequential(code, passes);
+    }
+
+    /**
+     * Test if a pass that throws in one method gives the same results as in a sequential analysis, where it is not
+     * run on the methods after it and the passes after it do not get the node types it did not annotate.
+     */
+    @Test
+    public void section3_Fused_ParallelException() {
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/2_semantic_analysis/fused/ManyMethods.jmm");
+        var passes = new ArrayList<>(JmmAnalysisImpl.getPasses());
+        passes.set(1, new FailingNodeType("arrayAccessOnInt"));
+
+        var sequential = analyseFused(code, passes, false);
+        assertTrue("Expected NodeType to throw", sequential.contains("exception: arrayAccessOnInt"));
+
+        assertSameAsSequential(code, passes);
+
+        // The failure of another pass in a later method does not change which failure is kept
+        passes.set(0, new FailingPass("more"));
+        assertSameAsSequential(code, passes);
+    }
+
+    /**
+     * Test if the passes after one that reports an error are not run on the rest of the tree.
+     */
+    @Test
+    public void section3_Fused_StopAfterErrors() {
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/2_semantic_analysis/fused/ManyMethods.jmm");
+        var counting = new CountingPass();
+        List<AnalysisVisitor> passes = List.of(new FailingPass("none"), counting);
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            counting.visits.set(0);
+            JmmNode root = TestUtils.parse(code, Collections.emptyMap()).getRootNode();
+            var table = new JmmSymbolTableBuilder().build(root);
+            var results = new FusedAnalysis(passes, parallel, true).analyze(root, table);
+
+            assertEquals("Expected only the results of the pass with errors", 1, results.size());
+            if (!parallel) {
+                assertEquals("Expected the pass after errors not to run", 0, counting.visits.get());
+            }
+        }
+    }
+
+    /**
+     * Counts the methods it visits.
+     */
+    static class CountingPass extends AnalysisVisitor {
+
+        private final AtomicInteger visits = new AtomicInteger();
+
+        @Override
+        protected void buildVisitor() {
+            addVisit(Kind.METHOD, this::visitMethod);
+        }
+
+        private Void visitMethod(JmmNode node, SymbolTable table) {
+            visits.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Throws on the return statement of the given method, after annotating the types of the nodes before it.
+     */
+    static class FailingNodeType extends NodeType {
+
+        private final String method;
+
+        FailingNodeType(String method) {
+            this.method = method;
+        }
+
+        @Override
+        protected void buildVisitor() {
+            super.buildVisitor();
+            addVisit(Kind.RETURN_STMT, this::visitReturn);
+        }
+
+        private Void visitReturn(JmmNode node, SymbolTable table) {
+            if (method.equals(getMethodName(node))) throw new RuntimeException(method);
+            return null;
+        }
+    }
+
+    /**
+     * Reports every method, and throws on the given one.
+     */
+    static class FailingPass extends AnalysisVisitor {
+
+        private final String method;
+
+        FailingPass(String method) {
+            this.method = method;
+        }
+
+        @Override
+        protected void buildVisitor() {
+            addVisit(Kind.METHOD, this::visitMethod);
+        }
+
+        private Void visitMethod(JmmNode node, SymbolTable table) {
+            if (method.equals(node.get("name"))) throw new RuntimeException(method);
+            addSemanticReport(node, "Method " + node.get("name"));
+            return null;
+        }
+    }
+
+    /**
+     * Analyses the code as before the passes were fused: each pass runs on its own over the whole tree, and the
+     * passes after the first one that reports an error are not run.
+     */
+    static List<String> analysePerPass(String code, List<AnalysisVisitor> passes) {
+        JmmNode root = TestUtils.parse(code, Collections.emptyMap()).getRootNode();
+        var tableBuilder = new JmmSymbolTableBuilder();
+        SymbolTable table = tableBuilder.build(root);
+        List<Report> reports = tableBuilder.getReports();
+
+        for (var pass : passes) {
+            try {
+                reports.addAll(pass.analyze(root, table));
+                if (reports.stream().anyMatch(report -> report.getType() == ReportType.ERROR)) break;
+            } catch (Exception e) {
+                reports.add(Report.newError(Stage.SEMANTIC, -1, -1,
+                        "Problem while executing analysis pass '" + pass.getClass() + "'", e));
+            }
+        }
+
+        return reports.stream().map(Report::toString).toList();
+    }
+
+    static List<String> analyse(String code, List<AnalysisVisitor> passes) {
+        var parserResult = TestUtils.parse(code, Collections.emptyMap());
+        var reports = new JmmAnalysisImpl(passes).semanticAnalysis(parserResult).getReports();
+        return reports.stream().map(Report::toString).toList();
+    }
+
+    /**
+     * Test if the fused passes give the same reports, in the same order, as the passes running one after the other.
+     */
+    @Test
+    public void section4_Fused_SameReportsAsPerPass() {
+        int numFailing = 0;
+        for (var resource : CpUtils.getJmmResources()) {
+            var code = SpecsIo.getResource(resource);
+            if (!TestUtils.parse(code, Collections.emptyMap()).getReports().isEmpty()) continue;
+
+            var expected = analysePerPass(code, JmmAnalysisImpl.getPasses());
+            assertEquals("Reports of " + resource, expected, analyse(code, JmmAnalysisImpl.getPasses()));
+            if (!expected.isEmpty()) numFailing++;
+        }
+
+        assertTrue("Expected several resources with reports, got " + numFailing, numFailing > 20);
+    }
+
+    /**
+     * Test if the reports of a pass that visits nodes after their children come after the reports of the children.
+     */
+    @Test
+    public void section4_Fused_PostVisitReportOrder() {
+        var code = "class A { public int foo(int a, boolean b) { return (a < b) + a; } "
+                + "public static void main(String[] args) { } }";
+
+        var reports = analyse(code, JmmAnalysisImpl.getPasses());
+        assertEquals(analysePerPass(code, JmmAnalysisImpl.getPasses()), reports);
+        assertEquals("Expected one report for each operation, got " + reports, 2, reports.size());
+        assertTrue("Expected the inner operation first, got " + reports, reports.get(0).contains("int and boolean"));
+        assertTrue("Expected the outer operation last, got " + reports, reports.get(1).contains("boolean and int"));
+    }
+
+    /**
+     * Test if no pass after the first one with errors adds reports.
+     */
+    @Test
+    public void section4_Fused_LaterPassesSuppressed() {
+        var code = "class A { public int foo(int a, boolean b) { a = c; return a + b; } "
+                + "public static void main(String[] args) { } }";
+
+        var reports = analyse(code, JmmAnalysisImpl.getPasses());
+        assertEquals(analysePerPass(code, JmmAnalysisImpl.getPasses()), reports);
+        assertEquals("Expected only the undeclared variable, got " + reports, 1, reports.size());
+        assertTrue(reports.get(0).contains("Variable 'c' does not exist"));
+
+        // Operations reports the same code when it runs
+        var passes = List.<AnalysisVisitor>of(new NodeType(), new Operations());
+        var operationReports = analyse(code, passes);
+        assertEquals(analysePerPass(code, passes), operationReports);
+        assertTrue("Expected Operations to report, got " + operationReports,
+                operationReports.stream().anyMatch(report -> report.contains("Expected both operands")));
+    }
+
+    /**
+     * Test if a pass that throws adds an error, and only the pass after it still adds its reports.
+     */
+    @Test
+    public void section4_Fused_PassException() {
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/2_semantic_analysis/fused/ManyMethods.jmm");
+        var passes = List.<AnalysisVisitor>of(new FailingPass("negation"), new FailingPass("none"),
+                new FailingPass("none"));
+
+        var reports = analyse(code, passes);
+        assertEquals(analysePerPass(code, passes), reports);
+
+        var methods = new JmmSymbolTableBuilder().build(TestUtils.parse(code, Collections.emptyMap()).getRootNode())
+                .getMethods().size();
+        assertEquals("Expected the exception and the reports of the second pass, got " + reports, 1 + methods,
+                reports.size());
+        assertTrue(reports.get(0).contains("Problem while executing analysis pass"));
+    }
+
+    /**
+     * Test if the node types of copied and deserialized trees, which hold them as strings, are interned again as the
+     * same instances.
+     */
+    @Test
+    public void section5_NodeType_CopiesReintern() {
+        var semantics = TestUtils.analyse(
+                SpecsIo.getResource("pt/up/fe/comp/cpf/3_ollir/arrays/VarargsAndArrayInit.jmm"));
+        TestUtils.noErrors(semantics.getReports());
+        var root = semantics.getRootNode();
+
+        var json = new GsonBuilder().registerTypeAdapter(JmmNode.class, new JmmSerializer()).create()
+                .toJson(root, JmmNode.class);
+
+        for (var copy : List.of(root.copy(), JmmNodeImpl.fromJson(json))) {
+            var nodes = AstTraversal.getDescendants(root);
+            var copiedNodes = AstTraversal.getDescendants(copy);
+            assertEquals(nodes.size(), copiedNodes.size());
+
+            var types = new ArrayList<JmmType>();
+            for (int i = 0; i < nodes.size(); i++) {
+                if (!nodes.get(i).hasAttribute("node_type")) continue;
+
+                var type = TypeUtils.getNodeType(nodes.get(i));
+                assertSame("Type of " + copiedNodes.get(i), type, TypeUtils.getNodeType(copiedNodes.get(i)));
+                types.add(type);
+            }
+
+            assertTrue("Expected array types", types.contains(JmmType.INT_ARRAY));
+            assertTrue("Expected ellipse types", types.stream().anyMatch(JmmType::isEllipse));
+        }
     }
 
+    /**
+     * Test if an interned type that is no longer referenced can be collected, and then interned again.
+     */
+    @Test
+    public void section5_NodeType_WeaklyInterned() throws InterruptedException {
+        var name = "Unreferenced" + System.nanoTime();
+        var type = JmmType.of(name, true, false);
+        assertSame(type, JmmType.of(name, true, false));
+        assertSame(type, JmmType.parse(type.toString()));
 
+        var typeReference = new WeakReference<>(type);
+        type = null;
+
+        for (int i = 0; i < 20 && typeReference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("Expected the type to be collected", typeReference.get());
+
+        var interned = JmmType.of(name, true, false);
+        assertEquals(name, interned.getName());
+        assertTrue(interned.isArray());
+        assertSame(interned, JmmType.of(name, true, false));
+    }
 }
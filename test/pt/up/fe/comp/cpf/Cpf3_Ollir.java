@@ -20,8 +20,11 @@ import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.specs.util.SpecsIo;
 
+import java.util.Map;
 import java.util.stream.Collectors;
 
+import static org.junit.Assert.assertEquals;
+
 public class Cpf3_Ollir {
 
     static OllirResult getOllirResult(String filename) {
@@ -289,4 +292,28 @@ public class Cpf3_Ollir {
 
     }
 
+    /*checks that the code of a program does not depend on what was compiled before it */
+    @Test
+    public void section5_Names_Deterministic() {
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/3_ollir/control_flow/SwitchStat.jmm");
+        var config = Map.of("optimize", "true");
+
+        var first = TestUtils.optimize(code, config);
+        var firstJasmin = TestUtils.backend(code, config).getJasminCode();
+
+        // Another program takes temporaries and labels in between
+        getOllirResult("arrays/VarargsAndArrayInit.jmm");
+
+        var second = TestUtils.optimize(code, config);
+        assertEquals("Expected the same OLLIR", first.getOllirCode(), second.getOllirCode());
+        assertEquals("Expected the same Jasmin", firstJasmin, TestUtils.backend(code, config).getJasminCode());
+
+        // Numbering starts over in each method
+        var result = getOllirResult("arrays/VarargsAndArrayInit.jmm");
+        for (var method : result.getOllirClass().getMethods()) {
+            var temps = method.getVarTable().keySet().stream().filter(name -> name.startsWith("tmp")).toList();
+            CpUtils.assertTrue("Expected the temporaries of method '" + method.getMethodName()
+                    + "' to start at tmp0, got " + temps, temps.isEmpty() || temps.contains("tmp0"), result);
+        }
+    }
 }
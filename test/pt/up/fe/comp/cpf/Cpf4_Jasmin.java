@@ -14,18 +14,36 @@
 package pt.up.fe.comp.cpf;
 
 import org.junit.Test;
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
 import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.backend.JasminGenerator;
+import pt.up.fe.comp2024.backend.JasminRunner;
+import pt.up.fe.comp2024.optimization_jasmin.AstToJasminImpl;
 import pt.up.fe.specs.util.SpecsCheck;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
+import pt.up.fe.specs.util.system.ProcessOutputAsString;
 import utils.ProjectTestUtils;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 public class Cpf4_Jasmin {
@@ -310,4 +328,235 @@ public class Cpf4_Jasmin {
         // Make sure the code compiles
         jasminResult.compile();
     }
+
+    /*checks if the work to place the labels of a method grows linearly with its labels */
+    @Test
+    public void section7_Emission_LinearScaling() {
+
+        var sizes = List.of(500, 1000, 2000, 4000);
+        var reads = new int[sizes.size()];
+
+        for (int i = 0; i < sizes.size(); i++) {
+            var ollirResult = new OllirResult(getLabelsOllir(sizes.get(i)), Collections.emptyMap());
+
+            // Counted before generating, since comparisons add labels as they are generated
+            int instructions = 0;
+            int labels = 0;
+            for (var method : ollirResult.getOllirClass().getMethods()) {
+                instructions += method.getInstructions().size();
+                labels += method.getLabels().size();
+            }
+
+            var countingLabels = new ArrayList<CountingLabels>();
+            var jasminCode = new JasminGenerator(ollirResult) {
+                @Override
+                protected Map<String, Instruction> getLabels(Method method) {
+                    var methodLabels = new CountingLabels(super.getLabels(method));
+                    countingLabels.add(methodLabels);
+                    return methodLabels;
+                }
+            }.build();
+            reads[i] = countingLabels.stream().mapToInt(CountingLabels::getReads).sum();
+
+            for (int label = 0; label < sizes.get(i); label++) {
+                var labelLine = "\nskip_" + label + ":\n";
+                int first = jasminCode.indexOf(labelLine);
+                assertTrue("Expected label 'skip_" + label + "' once", first != -1
+                        && jasminCode.indexOf(labelLine, first + 1) == -1);
+            }
+
+            // Reading every label for every instruction would take instructions * labels reads
+            assertTrue("Expected at most " + (instructions + labels) + " label reads for " + instructions
+                            + " instructions and " + labels + " labels, got " + reads[i],
+                    reads[i] <= instructions + labels);
+        }
+
+        System.out.println("Labels | Label reads");
+        for (int i = 0; i < sizes.size(); i++) {
+            System.out.println(String.format(Locale.ROOT, "%6d | %11d", sizes.get(i), reads[i]));
+        }
+    }
+
+    /**
+     * Labels of a method that count how many times a label is read, through its entries or by its name.
+     */
+    private static class CountingLabels extends HashMap<String, Instruction> {
+
+        private int reads;
+
+        private CountingLabels(Map<String, Instruction> labels) {
+            super(labels);
+        }
+
+        int getReads() {
+            return reads;
+        }
+
+        @Override
+        public Instruction get(Object key) {
+            reads++;
+            return super.get(key);
+        }
+
+        @Override
+        public Set<Map.Entry<String, Instruction>> entrySet() {
+            var entries = super.entrySet();
+
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<String, Instruction>> iterator() {
+                    var iterator = entries.iterator();
+
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, Instruction> next() {
+                            reads++;
+                            return iterator.next();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return entries.size();
+                }
+            };
+        }
+    }
+
+    private static final String PROGRAM_INPUT = "3\n4\n5\n";
+
+    private static JasminResult getAstToJasminResult(String code) {
+        var backend = new AstToJasminImpl();
+        return backend.toJasmin(backend.optimize(TestUtils.analyse(code)));
+    }
+
+    private static ProcessOutputAsString run(JasminResult jasminResult) {
+        return JasminRunner.run(jasminResult.getJasminCode(), List.of(), List.of(TestUtils.getLibsClasspath()),
+                PROGRAM_INPUT);
+    }
+
+    /**
+     * Runs the code through the OLLIR backend, or returns null if it does not compile or run.
+     */
+    private static ProcessOutputAsString runOllirOrNull(String code) {
+        try {
+            var output = run(TestUtils.backend(code));
+            return output.getReturnValue() == 0 ? output : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /*checks the code generated from the AST, for if/while, arrays, fields, calls, && and a library superclass */
+    @Test
+    public void section8_AstToJasmin_Constructs() {
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/ast_to_jasmin/AstToJasmin.jmm");
+        var jasminResult = getAstToJasminResult(code);
+
+        CpUtils.matches(jasminResult.getJasminCode(), "\\.super\\s+GetterAndSetter");
+        CpUtils.matches(jasminResult.getJasminCode(), "invokespecial\\s+GetterAndSetter/<init>\\(\\)V");
+
+        // The call on the right side of the first && never runs, otherwise the total would be 105
+        var output = run(jasminResult);
+        assertEquals("Program failed: " + output.getStdErr(), 0, output.getReturnValue());
+        assertEquals("17\n5\n7\n9", SpecsStrings.normalizeFileContents(output.getStdOut(), true));
+
+        var expected = runOllirOrNull(code);
+        assertNotNull("Expected the OLLIR backend to run the code", expected);
+        assertEquals("Expected the same output as the OLLIR backend", expected.getStdOut(), output.getStdOut());
+    }
+
+    /*checks that the code generated from the AST prints the same as the code generated from OLLIR */
+    @Test
+    public void section8_AstToJasmin_SameAsOllir() throws IOException {
+
+        var files = new ArrayList<Path>();
+        for (var directory : List.of("test/pt/up/fe/comp/cp2", "test/pt/up/fe/comp/cpf")) {
+            try (var paths = Files.walk(Path.of(directory))) {
+                paths.filter(path -> path.toString().endsWith(".jmm")).sorted().forEach(files::add);
+            }
+        }
+
+        var different = new ArrayList<String>();
+        int compared = 0;
+        for (var file : files) {
+            var code = Files.readString(file);
+
+            var expected = runOllirOrNull(code);
+            if (expected == null) continue;
+
+            try {
+                var output = run(getAstToJasminResult(code));
+                if (output.getReturnValue() != 0 || !expected.getStdOut().equals(output.getStdOut())) {
+                    different.add(file + " (" + output.getStdErr().lines().findFirst().orElse("") + ")");
+                }
+            } catch (RuntimeException e) {
+                different.add(file + " (" + e.getMessage() + ")");
+            }
+            compared++;
+        }
+
+        assertTrue("Expected programs to be compiled", compared > 0);
+        assertTrue("Expected the same output from both backends, but changed for " + different,
+                different.isEmpty());
+    }
+
+    private static ProcessOutputAsString runJasminResource(String resource) {
+        var jasminCode = SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/runner/" + resource);
+        return JasminRunner.run(jasminCode, List.of(), List.of(TestUtils.getLibsClasspath()), null);
+    }
+
+    /*checks that System.exit ends the program with its exit value, and not the tests */
+    @Test
+    public void section9_Runner_Exit() {
+        var output = runJasminResource("Exit.j");
+
+        assertEquals("Program failed: " + output.getStdErr(), 3, output.getReturnValue());
+        assertEquals("1", SpecsStrings.normalizeFileContents(output.getStdOut(), true));
+        assertEquals("", output.getStdErr().trim());
+    }
+
+    /*checks that a program that does not end is stopped, and that the next runs still work */
+    @Test
+    public void section9_Runner_NonTerminating() {
+        var output = runJasminResource("Forever.j");
+
+        assertEquals(-1, output.getReturnValue());
+        assertEquals("1", SpecsStrings.normalizeFileContents(output.getStdOut(), true));
+        assertTrue("Expected a timeout message, got " + output.getStdErr(),
+                output.getStdErr().startsWith("Program did not finish"));
+
+        var running = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getThreadGroup() != null
+                        && thread.getThreadGroup().getName().equals("jasmin-Forever"))
+                .toList();
+        assertTrue("Expected the program to be stopped, but is running in " + running, running.isEmpty());
+
+        var next = runJasminResource("Exit.j");
+        assertEquals(3, next.getReturnValue());
+        assertEquals("1", SpecsStrings.normalizeFileContents(next.getStdOut(), true));
+    }
+
+    private static String getLabelsOllir(int labels) {
+        var code = new StringBuilder();
+        code.append("Labels {\n");
+        code.append(".construct Labels().V {\ninvokespecial(this, \"<init>\").V;\n}\n");
+        code.append(".method public static count(n.i32).i32 {\n");
+        code.append("c.i32 :=.i32 0.i32;\n");
+
+        for (int k = 0; k < labels; k++) {
+            code.append("if (c.i32 >=.bool n.i32) goto skip_").append(k).append(";\n");
+            code.append("c.i32 :=.i32 c.i32 +.i32 1.i32;\n");
+            code.append("skip_").append(k).append(":\n");
+        }
+
+        code.append("ret.i32 c.i32;\n}\n}\n");
+        return code.toString();
+    }
 }
@@ -13,16 +13,41 @@
 
 package pt.up.fe.comp.cpf;
 
+import org.junit.Assert;
 import org.junit.Test;
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.CallInstruction;
 import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.ast.AstTraversal;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast_optimization.ASTOptimizationVisitor;
+import pt.up.fe.comp2024.ast_optimization.LoopUnrolling;
+import pt.up.fe.comp2024.backend.JasminRunner;
+import pt.up.fe.comp2024.incremental.IncrementalCompiler;
+import pt.up.fe.comp2024.optimization.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.InstructionUtils;
+import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+import pt.up.fe.comp2024.optimization.Liveness;
+import pt.up.fe.comp2024.optimization.ReachingDefinitions;
+import pt.up.fe.comp2024.optimization.passes.TailCallElimination;
+import pt.up.fe.comp2024.optimization.ssa.SsaForm;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,6 +74,12 @@ public class Cpf5_Optimizations {
         return TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
     }
 
+    static JasminResult getJasminResultUnroll(String filename, int factor) {
+        Map<String, String> config = new HashMap<>();
+        config.put("unroll", String.valueOf(factor));
+        return TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
+    }
+
     /**
      * Test if small integers are loaded with iconst
      */
@@ -195,4 +226,553 @@ public class Cpf5_Optimizations {
     }
 
 
+    /**
+     * Test if tail calls of a private method and of a static method are replaced by jumps, so that deep recursion does
+     * not grow the stack.
+     */
+    @Test
+    public void section4_TailCall_Recursion() {
+
+        var config = Map.of("optimize", "true");
+        var ollirResult = new OllirResult(
+                SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/tail_call/TailCall.ollir"), config);
+        JasminResult optimized = TestUtils.backend(new JmmOptimizationImpl().optimize(ollirResult));
+
+        String sum = CpUtils.getJasminMethod(optimized, "sum");
+        CpUtils.assertEquals("Expected tail call in 'sum' to be replaced by a jump", -1,
+                sum.indexOf("/sum("), optimized);
+
+        String countDown = CpUtils.getJasminMethod(optimized, "static\\s+countDown");
+        CpUtils.assertEquals("Expected tail call in 'countDown' to be replaced by a jump", -1,
+                countDown.indexOf("/countDown("), optimized);
+
+        CpUtils.runJasmin(optimized, "705082704\n0");
+    }
+
+    /**
+     * Test if tail calls on 'this' of Java-- methods are replaced, both in the static copies made by static promotion
+     * and in instance methods that use fields, so that recursion a million calls deep does not overflow the stack.
+     */
+    @Test
+    public void section4_TailCall_DeepRecursion() {
+
+        String filename = "tail_call/DeepRecursion.jmm";
+
+        JasminResult original = getJasminResult(filename);
+        CpUtils.assertTrue("Expected the recursion to overflow the stack without optimizations",
+                JasminRunner.run(original).getStdErr().contains("StackOverflowError"), original);
+
+        JasminResult optimized = getJasminResultOpt(filename);
+
+        String sum = CpUtils.getJasminMethod(optimized, "static\\s+sum\\$static");
+        CpUtils.assertEquals("Expected tail call in 'sum' to be replaced by a jump", -1,
+                sum.indexOf("/sum$static("), optimized);
+
+        String count = CpUtils.getJasminMethod(optimized, "count");
+        CpUtils.assertEquals("Expected tail call in 'count' to be replaced by a jump", -1,
+                count.indexOf("/count("), optimized);
+
+        CpUtils.runJasmin(optimized, "1784293664\n1000000");
+    }
+
+    /**
+     * Test if tail calls on 'this' are only replaced when they cannot run another method: always in a class that
+     * extends no other class, and only for private and final methods otherwise.
+     */
+    @Test
+    public void section4_TailCall_OnlyNonOverridable() {
+
+        var closed = Map.of("static", false, "private", false, "public_final", false, "public", false, "", false);
+        assertTailCallsKept("TailCallAccess", closed);
+
+        var extending = Map.of("static", false, "private", false, "public_final", false, "public", true, "", true);
+        assertTailCallsKept("TailCallAccess extends Base", extending);
+    }
+
+    private static void assertTailCallsKept(String classHeader, Map<String, Boolean> expected) {
+        var code = new StringBuilder();
+        code.append(classHeader).append(" {\n");
+        code.append(".construct TailCallAccess().V {\ninvokespecial(this, \"<init>\").V;\n}\n");
+        code.append(getSelfCallOllir("static", "invokestatic(TailCallAccess"));
+        code.append(getSelfCallOllir("private", "invokevirtual(this"));
+        code.append(getSelfCallOllir("public final", "invokevirtual(this"));
+        code.append(getSelfCallOllir("public", "invokevirtual(this"));
+        code.append(getSelfCallOllir("", "invokevirtual(this"));
+        code.append("}\n");
+
+        var ollirResult = new OllirResult(code.toString(), Collections.emptyMap());
+        new TailCallElimination().optimize(ollirResult.getOllirClass());
+
+        for (var entry : expected.entrySet()) {
+            var name = "call_" + entry.getKey();
+            var method = CpUtils.assertMethodExists(name, ollirResult);
+            boolean called = method.getInstructions().stream()
+                    .anyMatch(inst -> inst instanceof AssignInstruction assign
+                            && assign.getRhs() instanceof CallInstruction call
+                            && InstructionUtils.getCalledMethod(call).equals(name));
+
+            CpUtils.assertEquals("Expected the tail call in '" + name + "' of '" + classHeader + "' to be kept",
+                    entry.getValue(), called, ollirResult);
+        }
+    }
+
+    /**
+     * @return a method with the given modifiers that calls itself in tail position until its argument is zero
+     */
+    private static String getSelfCallOllir(String modifiers, String caller) {
+        var name = "call_" + modifiers.replace(' ', '_');
+        return ".method " + modifiers + " " + name + "(n.i32).i32 {\n"
+                + "if (n.i32 <.bool 1.i32) goto done;\n"
+                + "m.i32 :=.i32 n.i32 -.i32 1.i32;\n"
+                + "r.i32 :=.i32 " + caller + ", \"" + name + "\", m.i32).i32;\n"
+                + "ret.i32 r.i32;\n"
+                + "done:\n"
+                + "ret.i32 n.i32;\n"
+                + "}\n";
+    }
+
+    @Test
+    public void section5_CopyProp_FewerLocals() {
+
+        String filename = "copy_prop/CopyProp.jmm";
+
+        JasminResult original = getJasminResult(filename);
+        JasminResult optimized = getJasminResultOpt(filename);
+
+        int originalLocals = getLimitLocals(CpUtils.getJasminMethod(original, "calc"));
+        int optimizedLocals = getLimitLocals(CpUtils.getJasminMethod(optimized, "calc"));
+
+        CpUtils.assertTrue("Expected 'calc' to use fewer locals with -o flag, got " + optimizedLocals
+                        + " (original: " + originalLocals + ")",
+                optimizedLocals < originalLocals,
+                optimized);
+
+        CpUtils.runJasmin(optimized, "15\n6");
+    }
+
+    @Test
+    public void section5_CopyProp_ArrayElements() {
+
+        // An element read from an array is not a copy of the array
+        JasminResult optimized = getJasminResultOpt("copy_prop/CopyPropArrays.jmm");
+
+        CpUtils.runJasmin(optimized, "2");
+    }
+
+    @Test
+    public void section6_Unroll_ConstantTripCount() {
+
+        String filename = "unroll/Unroll.jmm";
+
+        JasminResult original = getJasminResult(filename);
+        JasminResult unrolled = getJasminResultUnroll(filename, 4);
+
+        int originalGotos = CpUtils.countOccurences(original, "goto");
+        int unrolledGotos = CpUtils.countOccurences(unrolled, "goto");
+
+        CpUtils.assertTrue("Expected fewer jumps after unrolling, got " + unrolledGotos
+                        + " (original: " + originalGotos + ")",
+                unrolledGotos < originalGotos,
+                unrolled);
+
+        CpUtils.runJasmin(unrolled, "2707");
+    }
+
+    @Test
+    public void section6_Unroll_LargeFactorIsClamped() {
+
+        String filename = "unroll/UnrollLarge.jmm";
+
+        JasminResult unrolled = getJasminResultUnroll(filename, 1000);
+
+        // Each copy of the body adds to 's' and 'i', in the unrolled loop and in the remaining iterations
+        int additions = CpUtils.countOccurrencesRegex(unrolled, "\\b(iadd|iinc)\\b");
+        int maxAdditions = 2 * 2 * LoopUnrolling.MAX_FACTOR;
+
+        CpUtils.assertTrue("Expected at most " + maxAdditions + " additions after unrolling, got " + additions,
+                additions > 2 && additions <= maxAdditions,
+                unrolled);
+
+        CpUtils.runJasmin(unrolled, "1000003");
+    }
+
+    @Test
+    public void section7_StaticPromotion() {
+
+        String filename = "static_promotion/StaticPromotion.jmm";
+
+        JasminResult optimized = getJasminResultOpt(filename);
+
+        // The public methods keep their signature and forward to the static copies
+        CpUtils.matches(optimized, "\\.method\\s+public\\s+square\\(I\\)I");
+        CpUtils.matches(optimized, "\\.method\\s+public\\s+sumSquares\\(II\\)I");
+        CpUtils.matches(optimized, "\\.method\\s+private\\s+static\\s+square\\$static\\(I\\)I");
+        CpUtils.matches(optimized, "\\.method\\s+private\\s+static\\s+sumSquares\\$static\\(II\\)I");
+        CpUtils.matches(optimized, "invokestatic\\s+StaticPromotion/square\\$static");
+        CpUtils.matches(optimized, "invokevirtual\\s+StaticPromotion/next");
+
+        // Calls on a new object of the class cannot throw, so they skip the forwarder too
+        var main = CpUtils.getJasminMethod(optimized, "static\\s+main");
+        CpUtils.assertTrue("Expected main to call the static copy in:\n" + main,
+                main.contains("invokestatic StaticPromotion/sumSquares$static("), optimized);
+
+        // Calls on a field may need to throw, so they stay virtual
+        var squareOther = CpUtils.getJasminMethod(optimized, "squareOther");
+        CpUtils.assertTrue("Expected the call on a field to stay virtual in:\n" + squareOther,
+                squareOther.contains("invokevirtual StaticPromotion/square("),
+                optimized);
+
+        CpUtils.runJasmin(optimized, "49\n25\n1");
+    }
+
+    @Test
+    public void section7_StaticPromotion_Incremental() {
+
+        String filename = "static_promotion/StaticPromotion.jmm";
+
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        var parserResult = TestUtils.parse(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename),
+                config);
+
+        // The class is put back together from the methods of the source, plus the static copies
+        var result = new IncrementalCompiler().compile(parserResult);
+        TestUtils.noErrors(result.getReports());
+
+        CpUtils.runJasmin(result.getJasminResult(), "49\n25\n1");
+    }
+
+    @Test
+    public void section8_FieldAccess_Redundant() {
+
+        String filename = "field_access/FieldAccess.jmm";
+
+        JasminResult original = getJasminResult(filename);
+        JasminResult optimized = getJasminResultOpt(filename);
+
+        String fieldAccess = "(getfield|putfield)";
+        int originalAccesses = CpUtils.countOccurrencesRegex(original, fieldAccess);
+        int optimizedAccesses = CpUtils.countOccurrencesRegex(optimized, fieldAccess);
+
+        CpUtils.assertTrue("Expected fewer field accesses with -o flag, got " + optimizedAccesses
+                        + " (original: " + originalAccesses + ")",
+                optimizedAccesses < originalAccesses,
+                optimized);
+
+        CpUtils.runJasmin(optimized, "35\n38");
+    }
+
+    @Test
+    public void section2_RegAlloc_WithLoops() {
+
+        String filename = "unroll/Unroll.jmm";
+
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        config.put("registerAllocation", "0");
+        JasminResult optimized = TestUtils.backend(
+                SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
+
+        CpUtils.runJasmin(optimized, "2707");
+    }
+
+    // Each instruction is visited once, and again for each change that comes around the back edge of its loop
+    private static final int MAX_VISITS_PER_INSTRUCTION = 3;
+
+    @Test
+    public void section9_Dataflow_LinearScaling() {
+
+        // A method with 'loops' loops in sequence, all updating the same few variables
+        var sizes = List.of(250, 500, 1000, 2000);
+        var livenessVisits = new int[sizes.size()];
+        var reachingVisits = new int[sizes.size()];
+        var instructions = new int[sizes.size()];
+
+        for (int i = 0; i < sizes.size(); i++) {
+            var ollirResult = new OllirResult(getLoopsOllir(sizes.get(i)), Collections.emptyMap());
+            var method = CpUtils.assertMethodExists("sum", ollirResult);
+            var cfg = new ControlFlowGraph(method);
+
+            // The loop counter is live around every loop, and its header sees the reset before it and the increment
+            var liveness = new Liveness(cfg);
+            var reaching = new ReachingDefinitions(cfg);
+            int header = getHeader(cfg, "loop_0");
+            CpUtils.assertTrue("Expected 'i' to be live at the header of the first loop",
+                    liveness.getLiveIn(header).contains("i"), ollirResult);
+            CpUtils.assertEquals("Definitions of 'i' reaching the header of the first loop", 2,
+                    reaching.getDefinitions(header, "i").size(), ollirResult);
+
+            livenessVisits[i] = liveness.getVisits();
+            reachingVisits[i] = reaching.getVisits();
+            instructions[i] = cfg.size();
+        }
+
+        System.out.println("Instructions | Liveness (visits) | Reaching definitions (visits)");
+        for (int i = 0; i < sizes.size(); i++) {
+            System.out.println(String.format(Locale.ROOT, "%12d | %17d | %29d", instructions[i],
+                    livenessVisits[i], reachingVisits[i]));
+        }
+
+        // Loops are not nested, so each instruction should be visited a few times however long the method is
+        for (int i = 0; i < sizes.size(); i++) {
+            Assert.assertTrue("Expected liveness to visit each instruction at most " + MAX_VISITS_PER_INSTRUCTION
+                            + " times, but took " + livenessVisits[i] + " visits for " + instructions[i]
+                            + " instructions",
+                    livenessVisits[i] <= MAX_VISITS_PER_INSTRUCTION * instructions[i]);
+            Assert.assertTrue("Expected reaching definitions to visit each instruction at most "
+                            + MAX_VISITS_PER_INSTRUCTION + " times, but took " + reachingVisits[i] + " visits for "
+                            + instructions[i] + " instructions",
+                    reachingVisits[i] <= MAX_VISITS_PER_INSTRUCTION * instructions[i]);
+        }
+    }
+
+    @Test
+    public void section10_Ssa_SingleAssignment() {
+
+        var ollirResult = new OllirResult(getLoopsOllir(3), Collections.emptyMap());
+        var method = CpUtils.assertMethodExists("sum", ollirResult);
+        var ssa = SsaForm.construct(method);
+
+        var assigned = new HashSet<String>();
+        int phis = 0;
+        for (var inst : method.getInstructions()) {
+            for (var phi : ssa.getPhis(inst)) {
+                CpUtils.assertTrue("Expected '" + phi.getTarget() + "' to be assigned once",
+                        assigned.add(phi.getTarget()), ollirResult);
+                phis++;
+            }
+            for (var def : Liveness.getDefs(inst)) {
+                CpUtils.assertTrue("Expected '" + def + "' to be assigned once", assigned.add(def), ollirResult);
+            }
+        }
+
+        // 's' and 'i' meet at the header of each loop
+        CpUtils.assertEquals("Number of phi functions", 6, phis, ollirResult);
+
+        ssa.destruct();
+        CpUtils.assertEquals("Phi functions left after leaving SSA form", 0,
+                method.getInstructions().stream().mapToInt(inst -> ssa.getPhis(inst).size()).sum(), ollirResult);
+    }
+
+    @Test
+    public void section10_Ssa_RoundTrip() throws IOException {
+
+        List<Path> files;
+        try (var paths = Files.walk(Path.of("test"))) {
+            files = paths.filter(path -> path.toString().endsWith(".jmm")).sorted().toList();
+        }
+
+        var different = new ArrayList<String>();
+        int compared = 0;
+        for (var file : files) {
+            var code = Files.readString(file);
+
+            Map<String, String> config = new HashMap<>();
+            config.put("optimize", "true");
+            var expected = runOrNull(code, config);
+            if (expected == null) continue;
+
+            config.put("ssa", "true");
+            if (!expected.equals(runOrNull(code, config))) different.add(file.toString());
+            compared++;
+        }
+
+        Assert.assertTrue("Expected programs to be compiled", compared > 0);
+        Assert.assertTrue("Expected the same output after going through SSA form, but changed for " + different,
+                different.isEmpty());
+    }
+
+    @Test
+    public void section3_ConstProp_IfElse() {
+
+        String filename = "const_prop/PropIfElse.jmm";
+
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        var output = runOrNull(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
+
+        Assert.assertEquals("Expected the values assigned in the branch that ran", "8\n1", output.trim());
+    }
+
+    @Test
+    public void section3_ConstProp_Scopes() {
+
+        String filename = "const_prop/PropScopes.jmm";
+
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        var output = runOrNull(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
+
+        // Constants stay in their method, fields may change in calls and only the last assignment counts
+        Assert.assertEquals("Wrong results", "5\n11\n7\n2", output.trim());
+    }
+
+    @Test
+    public void section3_ConstProp_SingleWalk() {
+
+        var code = "class A { public int f() { int a; int b; a = 2; b = a * 3 + 1; return b - 4 / 2; } }";
+        var semantics = TestUtils.analyse(code);
+        TestUtils.noErrors(semantics);
+
+        var visitor = new ASTOptimizationVisitor();
+        visitor.optimize(semantics.getRootNode(), semantics.getSymbolTable());
+
+        // Operations are folded after their operands, and variables replaced once their value is known
+        var returnStmt = AstTraversal.getDescendants(semantics.getRootNode(), Kind.RETURN_STMT).get(0);
+        Assert.assertTrue("Expected a single walk to fold every operation",
+                AstTraversal.getDescendants(returnStmt, Kind.BINARY_EXPR).isEmpty());
+        Assert.assertEquals("Wrong folded value", "5", returnStmt.getChild(0).get("value"));
+    }
+
+    @Test
+    public void section11_DeepExpr_SmallStack() throws InterruptedException {
+
+        int terms = 20000;
+        var code = new StringBuilder();
+        code.append("import io;\n");
+        code.append("class Deep {\n");
+        code.append("public int sum(int a) {\nint c;\nc = a");
+        code.append(" + a".repeat(terms - 1));
+        code.append(";\nreturn c;\n}\n");
+        code.append("public static void main(String[] args) {\nDeep d;\nd = new Deep();\nio.println(d.sum(3));\n}\n");
+        code.append("}\n");
+        var source = code.toString();
+
+        var outputs = new ArrayList<String>();
+        var errors = new ArrayList<Throwable>();
+        // Far less stack than a frame per operator would take
+        var thread = new Thread(null, () -> {
+            try {
+                outputs.add(TestUtils.backend(source).getJasminCode());
+
+                Map<String, String> config = new HashMap<>();
+                config.put("optimize", "true");
+                outputs.add(TestUtils.optimize(source, config).getOllirCode());
+            } catch (Throwable e) {
+                errors.add(e);
+            }
+        }, "deep-expr", 512 * 1024);
+        thread.start();
+        thread.join();
+
+        Assert.assertTrue("Expected the expression to compile, but got " + errors, errors.isEmpty());
+        // The method is too long for the JVM to load, so only the code is checked
+        var additions = Pattern.compile("\\biadd\\b").matcher(outputs.get(0)).results().count();
+        Assert.assertEquals("Expected an addition per operator", terms - 1, additions);
+        Assert.assertTrue("Expected OLLIR code", outputs.get(1).contains("sum(a.i32).i32"));
+    }
+
+    private static final Pattern PASS_STATISTICS = Pattern.compile(
+            "Pass '(\\w+)': (\\d+) runs?, \\d+\\.\\d{3} ms, (-?\\d+) (?:nodes|instructions) removed");
+
+    /**
+     * @return the statistics reported for each pass that ran, by pass name
+     */
+    private static Map<String, Matcher> getPassStatistics(JasminResult jasminResult) {
+        var statistics = new HashMap<String, Matcher>();
+
+        for (var report : jasminResult.getReports()) {
+            var matcher = PASS_STATISTICS.matcher(report.getMessage());
+            if (matcher.matches()) statistics.put(matcher.group(1), matcher);
+        }
+
+        return statistics;
+    }
+
+    private static JasminResult getJasminResultLevel(String filename, int level, int unroll) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimizationLevel", String.valueOf(level));
+        config.put("unroll", String.valueOf(unroll));
+        return TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
+    }
+
+    @Test
+    public void section12_Levels_PassSets() {
+
+        var levels = List.of(
+                Set.<String>of(),
+                Set.of("ConstantFolding", "CopyPropagation", "DeadStoreElimination", "RedundantJumpElimination"),
+                Set.of("ConstantFolding", "CopyPropagation", "DeadStoreElimination", "RedundantJumpElimination",
+                        "StaticPromotion", "TailCallElimination", "FieldAccessElimination"));
+
+        for (int level = 0; level < levels.size(); level++) {
+            var jasminResult = getJasminResultLevel("copy_prop/CopyProp.jmm", level, 1);
+            Assert.assertEquals("Wrong passes at -O" + level, levels.get(level),
+                    getPassStatistics(jasminResult).keySet());
+            CpUtils.runJasmin(jasminResult, "15\n6");
+
+            // Unrolling is enabled on its own, at any level
+            var unrolled = getPassStatistics(getJasminResultLevel("copy_prop/CopyProp.jmm", level, 4)).keySet();
+            var expected = new HashSet<>(levels.get(level));
+            expected.add("LoopUnrolling");
+            Assert.assertEquals("Wrong passes at -O" + level + " with unrolling", expected, unrolled);
+        }
+    }
+
+    @Test
+    public void section12_Levels_PassStatistics() {
+
+        var statistics = getPassStatistics(getJasminResultLevel("copy_prop/CopyProp.jmm", 1, 1));
+        Assert.assertFalse("Expected statistics of the passes that ran", statistics.isEmpty());
+
+        for (var pass : statistics.values()) {
+            Assert.assertTrue("Expected pass " + pass.group(1) + " to run at least once",
+                    Integer.parseInt(pass.group(2)) > 0);
+        }
+
+        // Copy propagation leaves copies that are only removed by dead store elimination
+        var deadStores = statistics.get("DeadStoreElimination");
+        Assert.assertTrue("Expected dead stores to be removed, got '" + deadStores.group() + "'",
+                Integer.parseInt(deadStores.group(3)) > 0);
+    }
+
+    /**
+     * @return the output of the program, or null if it does not compile or run
+     */
+    private static String runOrNull(String code, Map<String, String> config) {
+        try {
+            var jasminResult = TestUtils.backend(code, config);
+            return JasminRunner.run(jasminResult.getJasminCode(), List.of(), List.of(TestUtils.getLibsClasspath()),
+                    "3\n4\n5\n").getOutput();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String getLoopsOllir(int loops) {
+        var code = new StringBuilder();
+        code.append("Loops {\n");
+        code.append(".construct Loops().V {\ninvokespecial(this, \"<init>\").V;\n}\n");
+        code.append(".method public static sum(n.i32).i32 {\n");
+        code.append("s.i32 :=.i32 0.i32;\n");
+
+        for (int k = 0; k < loops; k++) {
+            var t = "t" + (k % 4);
+            code.append("i.i32 :=.i32 0.i32;\n");
+            code.append("loop_").append(k).append(":\n");
+            code.append("if (i.i32 >=.bool n.i32) goto end_").append(k).append(";\n");
+            code.append(t).append(".i32 :=.i32 i.i32 *.i32 2.i32;\n");
+            code.append("s.i32 :=.i32 s.i32 +.i32 ").append(t).append(".i32;\n");
+            code.append("i.i32 :=.i32 i.i32 +.i32 1.i32;\n");
+            code.append("goto loop_").append(k).append(";\n");
+            code.append("end_").append(k).append(":\n");
+        }
+
+        code.append("ret.i32 s.i32;\n}\n}\n");
+        return code.toString();
+    }
+
+    private static int getHeader(ControlFlowGraph cfg, String label) {
+        var labels = cfg.getMethod().getLabels();
+        for (int i = 0; i < cfg.size(); i++) {
+            if (cfg.getInstruction(i) == labels.get(label)) return i;
+        }
+        return -1;
+    }
+
+    private static int getLimitLocals(String jasminMethod) {
+        Matcher matcher = CpUtils.getLimitLocalsRegex().matcher(jasminMethod);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
 }
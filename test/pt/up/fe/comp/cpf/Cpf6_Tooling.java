@@ -0,0 +1,277 @@
+/**
+ * Copyright 2022 SPeCS.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.comp.cpf;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.embedded.CompilationException;
+import pt.up.fe.comp2024.embedded.EmbeddedCompiler;
+import pt.up.fe.comp2024.incremental.IncrementalCompiler;
+import pt.up.fe.comp2024.incremental.IncrementalResult;
+import pt.up.fe.comp2024.incremental.WatchCompiler;
+import pt.up.fe.comp2024.incremental.WatchCompiler.Update;
+import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.specs.util.SpecsStrings;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class Cpf6_Tooling {
+
+    static String getCode(String filename) {
+        return SpecsIo.getResource("pt/up/fe/comp/cpf/6_tooling/" + filename);
+    }
+
+    static IncrementalResult compile(IncrementalCompiler compiler, String code) {
+        var result = compiler.compile(TestUtils.parse(code, Collections.emptyMap()));
+        TestUtils.noErrors(result.getReports());
+        return result;
+    }
+
+    static void assertMethods(String message, int compiled, int reused, IncrementalResult result) {
+        Assert.assertEquals(message + ": wrong number of compiled methods", compiled, result.getCompiledMethods());
+        Assert.assertEquals(message + ": wrong number of reused methods", reused, result.getReusedMethods());
+    }
+
+    static void assertOutput(String expected, IncrementalResult result) {
+        Assert.assertEquals("Wrong results", expected,
+                SpecsStrings.normalizeFileContents(result.getJasminResult().run(), true));
+    }
+
+    @Test
+    public void section1_Incremental_Unchanged() {
+        var code = getCode("incremental/Incremental.jmm");
+        var compiler = new IncrementalCompiler();
+
+        assertMethods("First compilation", 4, 0, compile(compiler, code));
+
+        var result = compile(compiler, code);
+        assertMethods("Same code", 0, 4, result);
+        assertOutput("6", result);
+    }
+
+    @Test
+    public void section1_Incremental_ChangedBody() {
+        var code = getCode("incremental/Incremental.jmm");
+        var compiler = new IncrementalCompiler();
+        compile(compiler, code);
+
+        var result = compile(compiler, code.replace("return x * 3;", "return x * 4;"));
+        assertMethods("Changed body of 'triple'", 1, 3, result);
+        assertOutput("8", result);
+
+        // Positions are not part of the fingerprint
+        result = compile(compiler, "\n\n" + code.replace("return x * 3;", "return x * 4;"));
+        assertMethods("Moved code", 0, 4, result);
+    }
+
+    @Test
+    public void section1_Incremental_ChangedCalleeSignature() {
+        var code = getCode("incremental/Incremental.jmm");
+        var compiler = new IncrementalCompiler();
+        compile(compiler, code);
+
+        // The call in 'caller' does not change, but its OLLIR depends on the return type of 'callee'
+        var changed = code.replace("public int callee() {\n        return 1;",
+                "public boolean callee() {\n        return true;");
+        Assert.assertNotEquals("Expected the signature to change", code, changed);
+
+        var result = compile(compiler, changed);
+        assertMethods("Changed signature of 'callee'", 2, 2, result);
+        assertOutput("6", result);
+    }
+
+    @Test
+    public void section1_Incremental_AddedAndRemovedMethod() {
+        var code = getCode("incremental/Incremental.jmm");
+        var compiler = new IncrementalCompiler();
+        compile(compiler, code);
+
+        var added = code.replace("    public int triple(int x) {",
+                "    public int twice(int x) {\n        return x * 2;\n    }\n\n    public int triple(int x) {");
+
+        var result = compile(compiler, added);
+        assertMethods("Added 'twice'", 1, 4, result);
+        assertOutput("6", result);
+
+        var removed = code.replace("    public int triple(int x) {\n        return x * 3;\n    }\n", "")
+                .replace("inc.triple(inc.caller())", "inc.caller()");
+
+        result = compile(compiler, removed);
+        assertMethods("Removed 'triple'", 1, 2, result);
+        assertOutput("2", result);
+    }
+
+    @Test
+    public void section1_Incremental_ChangedHeader() {
+        var code = getCode("incremental/Incremental.jmm");
+        var compiler = new IncrementalCompiler();
+        compile(compiler, code);
+
+        // Fields and imports are part of every fingerprint
+        var result = compile(compiler, code.replace("int total;", "int total;\n    boolean done;"));
+        assertMethods("Added field", 4, 0, result);
+        assertOutput("6", result);
+
+        result = compile(compiler, code.replace("import io;", "import io;\nimport other;"));
+        assertMethods("Added import", 4, 0, result);
+        assertOutput("6", result);
+    }
+
+    static Path writeSource(Path directory, String filename) throws IOException {
+        var file = directory.resolve(filename);
+        Files.writeString(file, getCode("incremental/Incremental.jmm"), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    public void section2_Watch_SameBytesSkipped() throws IOException {
+        var directory = Files.createTempDirectory("watch");
+        var file = writeSource(directory, "Incremental.jmm");
+
+        try (var watchService = directory.getFileSystem().newWatchService()) {
+            var watch = new WatchCompiler(directory, Collections.emptyMap());
+            watch.start(watchService);
+            Assert.assertEquals("Expected the file to be compiled at start", Set.of(file), watch.getFiles());
+
+            // Saving the same contents again
+            Files.write(file, Files.readAllBytes(file));
+            Assert.assertEquals("Expected unchanged bytes to be skipped", Update.UNCHANGED, watch.update(file));
+
+            Files.writeString(file, getCode("incremental/Incremental.jmm").replace("x * 3", "x * 4"));
+            Assert.assertEquals("Expected changed bytes to be compiled", Update.COMPILED, watch.update(file));
+        } finally {
+            SpecsIo.deleteFolder(directory.toFile());
+        }
+    }
+
+    @Test
+    public void section2_Watch_DeletedFileDropped() throws IOException {
+        var directory = Files.createTempDirectory("watch");
+        var file = writeSource(directory, "Incremental.jmm");
+
+        try (var watchService = directory.getFileSystem().newWatchService()) {
+            var watch = new WatchCompiler(directory, Collections.emptyMap());
+            watch.start(watchService);
+
+            Files.delete(file);
+            var changed = new LinkedHashSet<Path>();
+            watch.handleEvent(StandardWatchEventKinds.ENTRY_DELETE, file, changed);
+            Assert.assertEquals("Expected the deleted file to be updated", Set.of(file), changed);
+
+            Assert.assertEquals(Update.REMOVED, watch.update(file));
+            Assert.assertTrue("Expected the compiler of the deleted file to be dropped", watch.getFiles().isEmpty());
+
+            // Creating it again compiles it from scratch
+            writeSource(directory, "Incremental.jmm");
+            Assert.assertEquals(Update.COMPILED, watch.update(file));
+        } finally {
+            SpecsIo.deleteFolder(directory.toFile());
+        }
+    }
+
+    @Test
+    public void section2_Watch_NewDirectoryRegistered() throws IOException {
+        var directory = Files.createTempDirectory("watch");
+
+        try (var watchService = directory.getFileSystem().newWatchService()) {
+            var watch = new WatchCompiler(directory, Collections.emptyMap());
+            watch.start(watchService);
+            Assert.assertEquals(Set.of(directory), watch.getWatchedDirectories());
+
+            // A directory created with files already in it, as when it is copied or moved in
+            var subdirectory = Files.createDirectories(directory.resolve("sub/inner"));
+            var file = writeSource(subdirectory, "Incremental.jmm");
+
+            var changed = new LinkedHashSet<Path>();
+            watch.handleEvent(StandardWatchEventKinds.ENTRY_CREATE, directory.resolve("sub"), changed);
+
+            Assert.assertEquals("Expected the new directories to be watched",
+                    Set.of(directory, directory.resolve("sub"), subdirectory), watch.getWatchedDirectories());
+            Assert.assertEquals("Expected the files of the new directory to be updated", Set.of(file), changed);
+            Assert.assertEquals(Update.COMPILED, watch.update(file));
+        } finally {
+            SpecsIo.deleteFolder(directory.toFile());
+        }
+    }
+
+    static EmbeddedCompiler newEmbeddedCompiler(int cacheSize) {
+        return new EmbeddedCompiler(Collections.emptyMap(), List.of(TestUtils.getLibsClasspath()),
+                ClassLoader.getPlatformClassLoader(), cacheSize);
+    }
+
+    static String getCalcCode(int factor) {
+        return "class Calc { public int scale(int a) { return a * " + factor + "; } "
+                + "public static void main(String[] args) { } }";
+    }
+
+    @Test
+    public void section3_Embedded_CacheHitAndEviction() {
+        var compiler = newEmbeddedCompiler(2);
+
+        var first = compiler.compile(getCalcCode(1));
+        Assert.assertSame("Expected the same source to hit the cache", first, compiler.compile(getCalcCode(1)));
+
+        var second = compiler.compile(getCalcCode(2));
+        Assert.assertNotSame(first, second);
+
+        // Using the first class makes the second one the least recently used
+        compiler.compile(getCalcCode(1));
+        compiler.compile(getCalcCode(3));
+        Assert.assertEquals(2, compiler.getCacheSize());
+
+        Assert.assertSame("Expected the recently used class to stay", first, compiler.compile(getCalcCode(1)));
+        Assert.assertNotSame("Expected the least recently used class to be compiled again",
+                second, compiler.compile(getCalcCode(2)));
+    }
+
+    @Test
+    public void section3_Embedded_MethodHandle() throws Throwable {
+        var compiler = newEmbeddedCompiler(EmbeddedCompiler.DEFAULT_CACHE_SIZE);
+
+        var code = getCalcCode(7);
+        var handle = compiler.getMethodHandle(code, "scale");
+
+        // Instance methods take the receiver first
+        var receiver = compiler.compile(code).getDeclaredConstructor().newInstance();
+        Assert.assertEquals(42, (int) handle.invoke(receiver, 6));
+    }
+
+    @Test
+    public void section3_Embedded_CompilationException() {
+        var compiler = newEmbeddedCompiler(EmbeddedCompiler.DEFAULT_CACHE_SIZE);
+
+        try {
+            compiler.compile("class Bad { public int f() { return true; } }");
+            Assert.fail("Expected a CompilationException");
+        } catch (CompilationException e) {
+            var errors = e.getReports().stream().filter(report -> report.getType() == ReportType.ERROR).toList();
+            Assert.assertEquals("Expected one error, got " + e.getReports(), 1, errors.size());
+            Assert.assertEquals(1, errors.get(0).getLine());
+            Assert.assertTrue("Expected the message to list the error",
+                    e.getMessage().contains(errors.get(0).getMessage()));
+        }
+
+        Assert.assertEquals("Classes that do not compile are not cached", 0, compiler.getCacheSize());
+    }
+}